@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rebuild of a hash table from the scrambled cache that a QuickSelect leaves behind, with the
+ * batched array insert of HashOperations and with the per-hash insert loop it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashOperationsBenchmark {
+
+  @Param({"12", "16", "20"})
+  int lgArrLongs;
+
+  private long[] srcArr;
+  private long[] hashTable;
+  private long thetaLong;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rand = new Random(1);
+    int arrLongs = 1 << lgArrLongs;
+    srcArr = new long[arrLongs];
+    //a table at the rebuild threshold of 15/16 k, with k = arrLongs / 2, in random order
+    for (int i = 0; i < ((arrLongs / 2) * 15) / 16; i++) {
+      srcArr[i] = rand.nextLong() >>> 1;
+    }
+    for (int i = arrLongs - 1; i > 0; i--) {
+      int j = rand.nextInt(i + 1);
+      long tmp = srcArr[i];
+      srcArr[i] = srcArr[j];
+      srcArr[j] = tmp;
+    }
+    thetaLong = (Long.MAX_VALUE / 4) * 3;
+    hashTable = new long[arrLongs];
+  }
+
+  @Benchmark
+  public int batchedArrayInsert() {
+    Arrays.fill(hashTable, 0L);
+    return HashOperations.hashArrayInsert(srcArr, hashTable, lgArrLongs, thetaLong);
+  }
+
+  @Benchmark
+  public int scalarArrayInsert() {
+    Arrays.fill(hashTable, 0L);
+    int count = 0;
+    for (int i = 0; i < srcArr.length; i++) {
+      long hash = srcArr[i];
+      HashOperations.checkHashCorruption(hash);
+      if (HashOperations.continueCondition(thetaLong, hash)) { continue; }
+      if (HashOperations.hashSearchOrInsert(hashTable, lgArrLongs, hash) < 0) { count++; }
+    }
+    return count;
+  }
+}
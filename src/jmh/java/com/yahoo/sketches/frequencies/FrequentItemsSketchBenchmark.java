@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yahoo.sketches.ArrayOfStringsSerDe;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * Hot paths of the frequent items sketches: update, query, serialization and merge, for both
+ * the LongsSketch and the ItemsSketch of Strings. The input stream is skewed so that the
+ * sketches exercise both the increment and the purge paths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrequentItemsSketchBenchmark {
+  static final int BATCH = 1024;
+  private static final int ITEMS_MASK = (1 << 20) - 1;
+  private static final ArrayOfStringsSerDe SERDE = new ArrayOfStringsSerDe();
+
+  @Param({"1024", "65536"})
+  int maxMapSize;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  private long[] items;
+  private String[] strItems;
+  private int pos;
+  private LongsSketch updSketch;
+  private ItemsSketch<String> updItemsSketch;
+  private LongsSketch sketchA;
+  private LongsSketch sketchB;
+  private ItemsSketch<String> itemsSketchA;
+  private Memory sketchMem;
+  private Memory itemsSketchMem;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rand = new Random(1);
+    items = new long[ITEMS_MASK + 1];
+    strItems = new String[ITEMS_MASK + 1];
+    for (int i = 0; i < items.length; i++) {
+      items[i] = skewed(rand);
+      strItems[i] = Long.toString(items[i]);
+    }
+    updSketch = new LongsSketch(maxMapSize);
+    updItemsSketch = new ItemsSketch<String>(maxMapSize);
+    sketchA = new LongsSketch(maxMapSize);
+    sketchB = new LongsSketch(maxMapSize);
+    itemsSketchA = new ItemsSketch<String>(maxMapSize);
+    for (int i = 0; i < n; i++) {
+      long item = skewed(rand);
+      sketchA.update(item);
+      sketchB.update(skewed(rand));
+      itemsSketchA.update(Long.toString(item));
+    }
+    sketchMem = new NativeMemory(sketchA.toByteArray());
+    itemsSketchMem = new NativeMemory(itemsSketchA.toByteArray(SERDE));
+  }
+
+  //a roughly power-law distribution over a large domain
+  private static long skewed(Random rand) {
+    return (long) Math.exp(rand.nextDouble() * 20.0);
+  }
+
+  //update
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public LongsSketch updateLongs() {
+    final int start = pos;
+    for (int i = 0; i < BATCH; i++) {
+      updSketch.update(items[(start + i) & ITEMS_MASK]);
+    }
+    pos = (start + BATCH) & ITEMS_MASK;
+    return updSketch;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public ItemsSketch<String> updateStrings() {
+    final int start = pos;
+    for (int i = 0; i < BATCH; i++) {
+      updItemsSketch.update(strItems[(start + i) & ITEMS_MASK]);
+    }
+    pos = (start + BATCH) & ITEMS_MASK;
+    return updItemsSketch;
+  }
+
+  //query
+
+  @Benchmark
+  public long getEstimate() {
+    return sketchA.getEstimate(1L);
+  }
+
+  @Benchmark
+  public LongsSketch.Row[] getFrequentItems() {
+    return sketchA.getFrequentItems(ErrorType.NO_FALSE_POSITIVES);
+  }
+
+  //serialization
+
+  @Benchmark
+  public byte[] longsToByteArray() {
+    return sketchA.toByteArray();
+  }
+
+  @Benchmark
+  public LongsSketch longsGetInstance() {
+    return LongsSketch.getInstance(sketchMem);
+  }
+
+  @Benchmark
+  public byte[] stringsToByteArray() {
+    return itemsSketchA.toByteArray(SERDE);
+  }
+
+  @Benchmark
+  public ItemsSketch<String> stringsGetInstance() {
+    return ItemsSketch.getInstance(itemsSketchMem, SERDE);
+  }
+
+  //set operations
+
+  @Benchmark
+  public LongsSketch merge() {
+    LongsSketch merged = new LongsSketch(maxMapSize);
+    merged.merge(sketchA);
+    merged.merge(sketchB);
+    return merged;
+  }
+}
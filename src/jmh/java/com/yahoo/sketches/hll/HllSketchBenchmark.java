@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.hll;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * Hot paths of the HLL sketches: update, estimate, serialization and union for each of the
+ * field representations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HllSketchBenchmark {
+  static final int BATCH = 1024;
+  private static final int ITEMS_MASK = (1 << 20) - 1;
+
+  @Param({"12", "16"})
+  int lgK;
+
+  /**
+   * sparse: starts as a hash set and converts to dense; dense; compressed: dense nibbles;
+   * direct: starts as a hash set in Memory and converts to dense in place. HIP is not supported
+   * in Memory, so the hip param is ignored for direct.
+   */
+  @Param({"sparse", "dense", "compressed", "direct"})
+  String fields;
+
+  @Param({"false", "true"})
+  boolean hip;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  private long[] items;
+  private int pos;
+  private HllSketch updSketch;
+  private HllSketch sketchA;
+  private HllSketch sketchB;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rand = new Random(1);
+    items = new long[ITEMS_MASK + 1];
+    for (int i = 0; i < items.length; i++) { items[i] = rand.nextLong(); }
+    updSketch = newSketch();
+    sketchA = newSketch();
+    sketchB = newSketch();
+    for (int i = 0; i < n; i++) {
+      sketchA.update(i);
+      sketchB.update(i + (n / 2)); //half overlap
+    }
+  }
+
+  private HllSketch newSketch() {
+    return newSketch(hip);
+  }
+
+  private HllSketch newSketch(boolean hipEstimator) {
+    if ("direct".equals(fields)) {
+      return HllSketch.builder()
+          .setLogBuckets(lgK)
+          .setMemory(new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(lgK)]))
+          .build();
+    }
+    return HllSketch.builder()
+        .setLogBuckets(lgK)
+        .setDenseMode(!"sparse".equals(fields))
+        .setCompressedDense("compressed".equals(fields))
+        .setHipEstimator(hipEstimator)
+        .build();
+  }
+
+  //update
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public HllSketch update() {
+    final int start = pos;
+    for (int i = 0; i < BATCH; i++) {
+      updSketch.update(items[(start + i) & ITEMS_MASK]);
+    }
+    pos = (start + BATCH) & ITEMS_MASK;
+    return updSketch;
+  }
+
+  //query
+
+  @Benchmark
+  public double getEstimate() {
+    return sketchA.getEstimate();
+  }
+
+  @Benchmark
+  public double getUpperBound() {
+    return sketchA.getUpperBound(2);
+  }
+
+  //serialization
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return sketchA.toByteArray();
+  }
+
+  @Benchmark
+  public HllSketch asCompact() {
+    return sketchA.asCompact();
+  }
+
+  //set operations
+
+  @Benchmark
+  public HllSketch union() {
+    HllSketch union = newSketch(false); //HIP sketches cannot be merged into
+    union.union(sketchA);
+    union.union(sketchB);
+    return union;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.quantiles;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * Hot paths of the DoublesSketch: update, quantile and rank queries, serialization and union,
+ * on the Java heap and in Memory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DoublesSketchBenchmark {
+  static final int BATCH = 1024;
+  private static final int ITEMS_MASK = (1 << 20) - 1;
+  private static final double[] SPLIT_POINTS = {0.1, 0.25, 0.5, 0.75, 0.9};
+
+  @Param({"128", "1024"})
+  int k;
+
+  @Param({"false", "true"})
+  boolean direct;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  private double[] items;
+  private int pos;
+  private DoublesSketch updSketch;
+  private DoublesSketch sketchA;
+  private DoublesSketch sketchB;
+  private Memory sketchMem;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rand = new Random(1);
+    items = new double[ITEMS_MASK + 1];
+    for (int i = 0; i < items.length; i++) { items[i] = rand.nextDouble(); }
+    updSketch = newSketch();
+    sketchA = newSketch();
+    sketchB = newSketch();
+    for (int i = 0; i < n; i++) {
+      sketchA.update(rand.nextDouble());
+      sketchB.update(rand.nextDouble());
+    }
+    sketchMem = new NativeMemory(sketchA.toByteArray());
+  }
+
+  private DoublesSketch newSketch() {
+    DoublesSketchBuilder bldr = DoublesSketch.builder().setK(k);
+    if (direct) { //room for every level a long benchmark run can reach
+      bldr.initMemory(new NativeMemory(
+          new byte[DoublesSketch.getUpdatableStorageBytes(k, Long.MAX_VALUE)]));
+    }
+    return bldr.build();
+  }
+
+  //update
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public DoublesSketch update() {
+    final int start = pos;
+    for (int i = 0; i < BATCH; i++) {
+      updSketch.update(items[(start + i) & ITEMS_MASK]);
+    }
+    pos = (start + BATCH) & ITEMS_MASK;
+    return updSketch;
+  }
+
+  //query
+
+  @Benchmark
+  public double getQuantile() {
+    return sketchA.getQuantile(0.5);
+  }
+
+  @Benchmark
+  public double[] getQuantiles() {
+    return sketchA.getQuantiles(10);
+  }
+
+  @Benchmark
+  public double getRank() {
+    return sketchA.getRank(0.5);
+  }
+
+  /** A query right after an update, which has to rebuild the sorted view. */
+  @Benchmark
+  public double updateThenGetQuantile() {
+    updSketch.update(items[pos]);
+    pos = (pos + 1) & ITEMS_MASK;
+    return updSketch.getQuantile(0.5);
+  }
+
+  @Benchmark
+  public double[] getCDF() {
+    return sketchA.getCDF(SPLIT_POINTS);
+  }
+
+  @Benchmark
+  public double[] getPMF() {
+    return sketchA.getPMF(SPLIT_POINTS);
+  }
+
+  //serialization
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return sketchA.toByteArray();
+  }
+
+  @Benchmark
+  public DoublesSketch heapify() {
+    return DoublesSketch.heapify(sketchMem);
+  }
+
+  @Benchmark
+  public DoublesSketch wrap() {
+    return direct ? DoublesSketch.wrap(((DirectDoublesSketch) sketchA).getMemory()) : sketchA;
+  }
+
+  //set operations
+
+  @Benchmark
+  public DoublesSketch union() {
+    DoublesUnion union = DoublesUnion.builder().setK(k).build();
+    union.update(sketchA);
+    union.update(sketchB);
+    return union.getResult();
+  }
+}
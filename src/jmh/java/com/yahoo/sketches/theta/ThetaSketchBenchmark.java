@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.theta;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * Hot paths of the Theta sketches: update, query, serialization and set operations,
+ * on the Java heap and in Memory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ThetaSketchBenchmark {
+  static final int BATCH = 1024;
+  private static final int ITEMS_MASK = (1 << 20) - 1;
+
+  @Param({"12", "16"})
+  int lgK;
+
+  @Param({"false", "true"})
+  boolean direct;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  private long[] items;
+  private int pos;
+  private UpdateSketch updSketch;
+
+  private UpdateSketch sketchA;
+  private Sketch compactA;
+  private Sketch compactB;
+  private Memory updMem;
+  private Memory compactMem;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rand = new Random(1);
+    items = new long[ITEMS_MASK + 1];
+    for (int i = 0; i < items.length; i++) { items[i] = rand.nextLong(); }
+    updSketch = newSketch();
+
+    sketchA = newSketch();
+    UpdateSketch sketchB = newSketch();
+    for (int i = 0; i < n; i++) {
+      sketchA.update(i);
+      sketchB.update(i + (n / 2)); //half overlap
+    }
+    updMem = new NativeMemory(sketchA.toByteArray());
+    compactMem = new NativeMemory(sketchA.compact().toByteArray());
+    if (direct) {
+      compactA = Sketch.wrap(compactMem);
+      compactB = Sketch.wrap(new NativeMemory(sketchB.compact().toByteArray()));
+    }
+    else {
+      compactA = sketchA.compact();
+      compactB = sketchB.compact();
+    }
+  }
+
+  private UpdateSketch newSketch() {
+    UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(1 << lgK);
+    if (direct) {
+      bldr.initMemory(new NativeMemory(new byte[Sketch.getMaxUpdateSketchBytes(1 << lgK)]));
+    }
+    return bldr.build();
+  }
+
+  //update
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public UpdateSketch updateScalar() {
+    final int start = pos;
+    for (int i = 0; i < BATCH; i++) {
+      updSketch.update(items[(start + i) & ITEMS_MASK]);
+    }
+    pos = (start + BATCH) & ITEMS_MASK;
+    return updSketch;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public UpdateSketch updateAll() {
+    final int start = pos;
+    updSketch.updateAll(items, start, start + BATCH);
+    pos = (start + BATCH) & ITEMS_MASK;
+    return updSketch;
+  }
+
+  //query
+
+  @Benchmark
+  public double getEstimate() {
+    return sketchA.getEstimate();
+  }
+
+  @Benchmark
+  public double getUpperBound() {
+    return sketchA.getUpperBound(2);
+  }
+
+  //serialization
+
+  @Benchmark
+  public CompactSketch compact() {
+    return sketchA.compact();
+  }
+
+  @Benchmark
+  public byte[] compactToByteArray() {
+    return compactA.toByteArray();
+  }
+
+  @Benchmark
+  public Sketch heapifyCompact() {
+    return Sketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public Sketch wrapCompact() {
+    return Sketch.wrap(compactMem);
+  }
+
+  @Benchmark
+  public Sketch heapifyUpdate() {
+    return Sketch.heapify(updMem);
+  }
+
+  @Benchmark
+  public Sketch wrapUpdate() {
+    return Sketch.wrap(updMem);
+  }
+
+  //set operations
+
+  @Benchmark
+  public CompactSketch union() {
+    Union union = SetOperation.builder().setNominalEntries(1 << lgK).buildUnion();
+    union.update(compactA);
+    union.update(compactB);
+    return union.getResult();
+  }
+
+  @Benchmark
+  public CompactSketch intersection() {
+    Intersection inter = SetOperation.builder().buildIntersection();
+    inter.update(compactA);
+    inter.update(compactB);
+    return inter.getResult();
+  }
+
+  @Benchmark
+  public CompactSketch aNotB() {
+    AnotB aNotB = SetOperation.builder().buildANotB();
+    aNotB.update(compactA, compactB);
+    return aNotB.getResult();
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.theta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * Many-way union of serialized compact sketches, serially through one Union and in parallel
+ * through a ParallelUnion on the common pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ThetaUnionBenchmark {
+
+  @Param({"10"})
+  int lgK;
+
+  @Param({"1000", "10000"})
+  int numSketches;
+
+  private List<Memory> images;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rand = new Random(1);
+    images = new ArrayList<>(numSketches);
+    for (int i = 0; i < numSketches; i++) {
+      UpdateSketch sketch = UpdateSketch.builder().setNominalEntries(1 << lgK).build();
+      int n = rand.nextInt(4 << lgK);
+      for (int j = 0; j < n; j++) { sketch.update(rand.nextLong()); }
+      images.add(new NativeMemory(sketch.compact().toByteArray()));
+    }
+  }
+
+  @Benchmark
+  public CompactSketch serial() {
+    Union union = SetOperation.builder().setNominalEntries(1 << lgK).buildUnion();
+    for (Memory image : images) { union.update(image); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public CompactSketch parallel() {
+    return SetOperation.builder().setNominalEntries(1 << lgK)
+        .buildParallelUnion(ForkJoinPool.commonPool()).unionMemories(images.iterator());
+  }
+}
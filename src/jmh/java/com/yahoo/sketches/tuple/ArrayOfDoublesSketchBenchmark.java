@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.tuple;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * Hot paths of the ArrayOfDoubles tuple sketches: update, query, serialization and set
+ * operations, on the Java heap and in Memory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArrayOfDoublesSketchBenchmark {
+  static final int BATCH = 1024;
+  private static final int ITEMS_MASK = (1 << 20) - 1;
+  private static final ArrayOfDoublesCombiner SUM = new ArrayOfDoublesCombiner() {
+    @Override
+    public double[] combine(final double[] a, final double[] b) {
+      final double[] result = new double[a.length];
+      for (int i = 0; i < a.length; i++) { result[i] = a[i] + b[i]; }
+      return result;
+    }
+  };
+
+  @Param({"12", "16"})
+  int lgK;
+
+  @Param({"false", "true"})
+  boolean direct;
+
+  @Param({"1", "4"})
+  int numValues;
+
+  @Param({"1000", "1000000"})
+  int n;
+
+  private long[] items;
+  private double[] values;
+  private int pos;
+  private ArrayOfDoublesUpdatableSketch updSketch;
+
+  private ArrayOfDoublesUpdatableSketch sketchA;
+  private ArrayOfDoublesSketch compactA;
+  private ArrayOfDoublesSketch compactB;
+  private Memory compactMem;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rand = new Random(1);
+    items = new long[ITEMS_MASK + 1];
+    for (int i = 0; i < items.length; i++) { items[i] = rand.nextLong(); }
+    values = new double[numValues];
+    for (int i = 0; i < numValues; i++) { values[i] = i + 1; }
+    updSketch = newSketch();
+
+    sketchA = newSketch();
+    ArrayOfDoublesUpdatableSketch sketchB = newSketch();
+    for (int i = 0; i < n; i++) {
+      sketchA.update(i, values);
+      sketchB.update(i + (n / 2), values); //half overlap
+    }
+    compactMem = new NativeMemory(sketchA.compact().toByteArray());
+    if (direct) {
+      compactA = ArrayOfDoublesSketches.wrapSketch(compactMem);
+      Memory memB = new NativeMemory(sketchB.compact().toByteArray());
+      compactB = ArrayOfDoublesSketches.wrapSketch(memB);
+    }
+    else {
+      compactA = sketchA.compact();
+      compactB = sketchB.compact();
+    }
+  }
+
+  private ArrayOfDoublesUpdatableSketch newSketch() {
+    ArrayOfDoublesUpdatableSketchBuilder bldr = new ArrayOfDoublesUpdatableSketchBuilder()
+        .setNominalEntries(1 << lgK).setNumberOfValues(numValues);
+    if (direct) {
+      int bytes = ArrayOfDoublesQuickSelectSketch.getMaxBytes(1 << lgK, numValues);
+      bldr.setMemory(new NativeMemory(new byte[bytes]));
+    }
+    return bldr.build();
+  }
+
+  //update
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public ArrayOfDoublesUpdatableSketch update() {
+    final int start = pos;
+    for (int i = 0; i < BATCH; i++) {
+      updSketch.update(items[(start + i) & ITEMS_MASK], values);
+    }
+    pos = (start + BATCH) & ITEMS_MASK;
+    return updSketch;
+  }
+
+  //query
+
+  @Benchmark
+  public double getEstimate() {
+    return sketchA.getEstimate();
+  }
+
+  @Benchmark
+  public double[][] getValues() {
+    return compactA.getValues();
+  }
+
+  //serialization
+
+  @Benchmark
+  public ArrayOfDoublesCompactSketch compact() {
+    return sketchA.compact();
+  }
+
+  @Benchmark
+  public byte[] compactToByteArray() {
+    return compactA.toByteArray();
+  }
+
+  @Benchmark
+  public ArrayOfDoublesSketch heapifyCompact() {
+    return ArrayOfDoublesSketches.heapifySketch(compactMem);
+  }
+
+  @Benchmark
+  public ArrayOfDoublesSketch wrapCompact() {
+    return ArrayOfDoublesSketches.wrapSketch(compactMem);
+  }
+
+  //set operations
+
+  @Benchmark
+  public ArrayOfDoublesCompactSketch union() {
+    ArrayOfDoublesUnion union = new ArrayOfDoublesSetOperationBuilder()
+        .setNominalEntries(1 << lgK).setNumberOfValues(numValues).buildUnion();
+    union.update(compactA);
+    union.update(compactB);
+    return union.getResult();
+  }
+
+  @Benchmark
+  public ArrayOfDoublesCompactSketch intersection() {
+    ArrayOfDoublesIntersection inter = new ArrayOfDoublesSetOperationBuilder()
+        .setNominalEntries(1 << lgK).setNumberOfValues(numValues).buildIntersection();
+    inter.update(compactA, SUM);
+    inter.update(compactB, SUM);
+    return inter.getResult();
+  }
+
+  @Benchmark
+  public ArrayOfDoublesCompactSketch aNotB() {
+    ArrayOfDoublesAnotB aNotB = new ArrayOfDoublesSetOperationBuilder()
+        .setNumberOfValues(numValues).buildAnotB();
+    aNotB.update(compactA, compactB);
+    return aNotB.getResult();
+  }
+}
@@ -5,6 +5,7 @@
 
 package com.yahoo.sketches;
 
+import com.yahoo.sketches.memory.FastMemory;
 import com.yahoo.sketches.memory.Memory;
 
 /**
@@ -21,6 +22,11 @@ public final class HashOperations {
    */
   public static final int STRIDE_MASK = (1 << STRIDE_HASH_BITS) - 1;
 
+  /**
+   * The number of source values that the array insert methods screen at a time.
+   */
+  private static final int INSERT_BATCH_LONGS = 1024;
+
   private HashOperations() {}
 
   /**
@@ -98,6 +104,11 @@ public final class HashOperations {
    * of the other OADH insert methods in this class and they may not be dirty. 
    * This method performs additional checks against potentially invalid hash values or theta values.
    * 
+   * <p>The source is processed in batches. Each batch is first screened against theta without a
+   * data dependent branch per value, see {@link #copyValidHashes(long[], int, int, long, long[])},
+   * and only the surviving hashes are then inserted. This removes the mispredicted branches of
+   * the sparse or partially dirty source arrays of rebuilds and resizes from the probe loop.</p>
+   * 
    * @param srcArr the source hash array to be potentially inserted
    * @param hashTable The correctly sized target hash table that must be a power of two. 
    * @param lgArrLongs <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
@@ -108,22 +119,141 @@ public final class HashOperations {
    */
   public static int hashArrayInsert(final long[] srcArr, final long[] hashTable, 
       final int lgArrLongs, final long thetaLong) {
-    int count = 0;
+    checkThetaCorruption(thetaLong);
     final int arrLen = srcArr.length;
+    final long[] batch = new long[Math.min(arrLen, INSERT_BATCH_LONGS)];
+    int count = 0;
+    for (int start = 0; start < arrLen; start += INSERT_BATCH_LONGS) {
+      final int end = Math.min(start + INSERT_BATCH_LONGS, arrLen);
+      checkHashCorruption(srcArr, start, end);
+      final int n = copyValidHashes(srcArr, start, end, thetaLong, batch);
+      for (int i = 0; i < n; i++) {
+        count += hashSearchOrInsert(hashTable, lgArrLongs, batch[i]) >>> 31; //1 if inserted
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Inserts the given range of longs of the source Memory into the given hash table array.
+   * Otherwise this is the same as {@link #hashArrayInsert(long[], long[], int, long)}.
+   * Useful for scanning the hash table or compact cache of a Direct sketch in place.
+   * 
+   * @param srcMem the source Memory of the hashes to be potentially inserted
+   * @param srcOffsetBytes offset in the source Memory where the hashes start
+   * @param srcLongs the number of longs to be scanned in the source Memory
+   * @param hashTable The correctly sized target hash table that must be a power of two. 
+   * @param lgArrLongs <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * lgArrLongs &le; log2(hashTable.length).
+   * @param thetaLong must greater than zero 
+   * <a href="{@docRoot}/resources/dictionary.html#thetaLong">See Theta Long</a>
+   * @return the count of values actually inserted
+   */
+  public static int hashArrayInsert(final Memory srcMem, final int srcOffsetBytes,
+      final int srcLongs, final long[] hashTable, final int lgArrLongs, final long thetaLong) {
     checkThetaCorruption(thetaLong);
-    for (int i = 0; i < arrLen; i++ ) { // scan source array, build target array
-      final long hash = srcArr[i];
-      checkHashCorruption(hash);
-      if (continueCondition(thetaLong, hash) ) { 
-        continue; 
+    final long[] batch = new long[Math.min(srcLongs, INSERT_BATCH_LONGS)];
+    int count = 0;
+    for (int start = 0; start < srcLongs; start += INSERT_BATCH_LONGS) {
+      final int len = Math.min(INSERT_BATCH_LONGS, srcLongs - start);
+      srcMem.getLongArray(srcOffsetBytes + (start << 3), batch, 0, len);
+      checkHashCorruption(batch, 0, len);
+      final int n = copyValidHashes(batch, 0, len, thetaLong, batch);
+      for (int i = 0; i < n; i++) {
+        count += hashSearchOrInsert(hashTable, lgArrLongs, batch[i]) >>> 31;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Inserts the given long array into the hash table of a Memory through its FastMemory
+   * accessor. Otherwise this is the same as {@link #hashArrayInsert(long[], long[], int, long)}.
+   * 
+   * @param srcArr the source hash array to be potentially inserted
+   * @param mem The FastMemory accessor of the Memory hash table to insert into.
+   * @param lgArrLongs <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * @param thetaLong must greater than zero 
+   * <a href="{@docRoot}/resources/dictionary.html#thetaLong">See Theta Long</a>
+   * @param memOffsetBytes offset in the memory where the hash array starts
+   * @return the count of values actually inserted
+   */
+  public static int hashArrayInsert(final long[] srcArr, final FastMemory mem,
+      final int lgArrLongs, final long thetaLong, final int memOffsetBytes) {
+    checkThetaCorruption(thetaLong);
+    final int arrLen = srcArr.length;
+    final long[] batch = new long[Math.min(arrLen, INSERT_BATCH_LONGS)];
+    int count = 0;
+    for (int start = 0; start < arrLen; start += INSERT_BATCH_LONGS) {
+      final int end = Math.min(start + INSERT_BATCH_LONGS, arrLen);
+      checkHashCorruption(srcArr, start, end);
+      final int n = copyValidHashes(srcArr, start, end, thetaLong, batch);
+      for (int i = 0; i < n; i++) {
+        count += hashSearchOrInsert(mem, lgArrLongs, batch[i], memOffsetBytes) >>> 31;
       }
-      if (hashSearchOrInsert(hashTable, lgArrLongs, hash) < 0) {
-        count++ ;
+    }
+    return count;
+  }
+
+  /**
+   * Inserts the given range of longs of the source Memory into the hash table of a Memory through
+   * its FastMemory accessor.
+   * Otherwise this is the same as {@link #hashArrayInsert(long[], long[], int, long)}.
+   * 
+   * @param srcMem the source Memory of the hashes to be potentially inserted
+   * @param srcOffsetBytes offset in the source Memory where the hashes start
+   * @param srcLongs the number of longs to be scanned in the source Memory
+   * @param mem The FastMemory accessor of the Memory hash table to insert into.
+   * @param lgArrLongs <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * @param thetaLong must greater than zero 
+   * <a href="{@docRoot}/resources/dictionary.html#thetaLong">See Theta Long</a>
+   * @param memOffsetBytes offset in the memory where the hash array starts
+   * @return the count of values actually inserted
+   */
+  public static int hashArrayInsert(final Memory srcMem, final int srcOffsetBytes,
+      final int srcLongs, final FastMemory mem, final int lgArrLongs, final long thetaLong,
+      final int memOffsetBytes) {
+    checkThetaCorruption(thetaLong);
+    final long[] batch = new long[Math.min(srcLongs, INSERT_BATCH_LONGS)];
+    int count = 0;
+    for (int start = 0; start < srcLongs; start += INSERT_BATCH_LONGS) {
+      final int len = Math.min(INSERT_BATCH_LONGS, srcLongs - start);
+      srcMem.getLongArray(srcOffsetBytes + (start << 3), batch, 0, len);
+      checkHashCorruption(batch, 0, len);
+      final int n = copyValidHashes(batch, 0, len, thetaLong, batch);
+      for (int i = 0; i < n; i++) {
+        count += hashSearchOrInsert(mem, lgArrLongs, batch[i], memOffsetBytes) >>> 31;
       }
     }
     return count;
   }
 
+  /**
+   * Copies the hashes of the given range of the source array that are greater than zero and less
+   * than the given theta to the start of the destination array, in order, and returns how many
+   * were copied. Every source value is written to the destination and the position advances only
+   * for the valid ones, so there is no data dependent branch per value.
+   * The destination may be the source array if srcStart is zero.
+   * 
+   * @param srcArr the source hash array
+   * @param srcStart the index of the first source value, inclusive
+   * @param srcEnd the index of the last source value, exclusive
+   * @param thetaLong <a href="{@docRoot}/resources/dictionary.html#thetaLong">See Theta Long</a>
+   * @param dstArr the destination array, which must have room for srcEnd - srcStart values
+   * @return the number of valid hashes copied to the destination array
+   */
+  public static int copyValidHashes(final long[] srcArr, final int srcStart, final int srcEnd,
+      final long thetaLong, final long[] dstArr) {
+    int n = 0;
+    for (int i = srcStart; i < srcEnd; i++) {
+      final long hash = srcArr[i];
+      dstArr[n] = hash;
+      //the complement of the continueCondition, as 0 or 1
+      n += (int) (~((hash - 1L) | (thetaLong - hash - 1L)) >>> 63);
+    }
+    return n;
+  }
+
   /**
    * This is a classical Knuth-style Open Addressing, Double Hash insert scheme.
    * 
@@ -203,6 +333,70 @@ public final class HashOperations {
     return ~curProbe;
   }
 
+  /**
+   * This is a classical Knuth-style Open Addressing, Double Hash insert scheme, but inserts
+   * values directly into a Memory through its FastMemory accessor.
+   * 
+   * @param mem The FastMemory accessor of the Memory hash table to insert into.
+   * @param lgArrLongs <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * lgArrLongs &le; log2(hashTable.length).
+   * @param hash A hash value that must not be zero and if not a duplicate will be inserted into the
+   * array into an empty slot.
+   * @param memOffsetBytes offset in the memory where the hash array starts
+   * @return index if found, -(index + 1) if inserted
+   */
+  public static int hashSearchOrInsert(final FastMemory mem, final int lgArrLongs, final long hash, 
+      final int memOffsetBytes) {
+    final int arrayMask = (1 << lgArrLongs) - 1; // current Size -1
+    final int stride = getStride(hash, lgArrLongs);
+    int curProbe = (int) (hash & arrayMask);
+    int curProbeOffsetBytes = (curProbe << 3) + memOffsetBytes; 
+    long curArrayHash = mem.getLong(curProbeOffsetBytes);
+    // search for duplicate or zero
+    while (curArrayHash != 0) {
+      if (curArrayHash == hash) return curProbe; // curArrayHash is a duplicate
+      // curArrayHash is not a duplicate and not zero, continue searching
+      curProbe = (curProbe + stride) & arrayMask;
+      curProbeOffsetBytes = (curProbe << 3) + memOffsetBytes;
+      curArrayHash = mem.getLong(curProbeOffsetBytes);
+    }
+    // must be zero, so insert
+    mem.putLong(curProbeOffsetBytes, hash);
+    return ~curProbe;
+  }
+
+  /**
+   * This is a classical Knuth-style Open Addressing, Double Hash insert scheme, but inserts
+   * values directly into a Memory using compare-and-swap so that multiple threads or processes 
+   * may insert into the same table concurrently. The probe sequence is identical to 
+   * {@link #hashSearchOrInsert(Memory, int, long, int)}. The caller must guarantee that the table
+   * has at least one empty slot and that no other party is rebuilding or resizing it.
+   * 
+   * @param mem The Memory hash table to insert into.
+   * @param lgArrLongs <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * lgArrLongs &le; log2(hashTable.length).
+   * @param hash A hash value that must not be zero and if not a duplicate will be inserted into the
+   * array into an empty slot.
+   * @param memOffsetBytes offset in the memory where the hash array starts
+   * @return index if found, -(index + 1) if inserted
+   */
+  public static int hashSearchOrInsertAtomic(final Memory mem, final int lgArrLongs, 
+      final long hash, final int memOffsetBytes) {
+    final int arrayMask = (1 << lgArrLongs) - 1; // current Size -1
+    final int stride = getStride(hash, lgArrLongs);
+    int curProbe = (int) (hash & arrayMask);
+    while (true) {
+      final int curProbeOffsetBytes = (curProbe << 3) + memOffsetBytes;
+      final long curArrayHash = mem.getLongVolatile(curProbeOffsetBytes);
+      if (curArrayHash == hash) return curProbe; // a duplicate
+      if (curArrayHash == 0) {
+        if (mem.compareAndSwapLong(curProbeOffsetBytes, 0L, hash)) return ~curProbe;
+        continue; // lost the race for this slot, examine it again
+      }
+      curProbe = (curProbe + stride) & arrayMask;
+    }
+  }
+
   /**
    * This is a classical Knuth-style Open Addressing, Double Hash search scheme.
    * 
@@ -228,6 +422,33 @@ public final class HashOperations {
     return -1;
   }
 
+  /**
+   * This is a classical Knuth-style Open Addressing, Double Hash search scheme, which
+   * searches a Memory through its FastMemory accessor.
+   * 
+   * @param mem The FastMemory accessor of the Memory hash table to search.
+   * @param lgArrLongs <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * lgArrLongs &le; log2(hashTable.length).
+   * @param hash A hash value to search for. Must not be zero.
+   * @param memOffsetBytes offset in the memory where the hash array starts
+   * @return index if found, -1 if not found.
+   */
+  public static int hashSearch(final FastMemory mem, final int lgArrLongs, final long hash,
+      final int memOffsetBytes) {
+    final int arrayMask = (1 << lgArrLongs) - 1;
+    final int stride = getStride(hash, lgArrLongs);
+    int curProbe = (int) (hash & arrayMask);
+    int curProbeOffsetBytes = (curProbe << 3) + memOffsetBytes; 
+    long curArrayHash = mem.getLong(curProbeOffsetBytes);
+    while (curArrayHash != 0) {
+      if (curArrayHash == hash) return curProbe;
+      curProbe = (curProbe + stride) & arrayMask;
+      curProbeOffsetBytes = (curProbe << 3) + memOffsetBytes;
+      curArrayHash = mem.getLong(curProbeOffsetBytes);
+    }
+    return -1;
+  }
+
   /**
    * This is a classical Knuth-style Open Addressing, Double Hash insert scheme, but inserts
    * values directly into a Memory.
@@ -258,6 +479,36 @@ public final class HashOperations {
     return curProbe;
   }
 
+  /**
+   * This is a classical Knuth-style Open Addressing, Double Hash insert scheme, but inserts
+   * values directly into a Memory through its FastMemory accessor.
+   * This method assumes that the input hash is not a duplicate.
+   * Useful for rebuilding tables to avoid unnecessary comparisons.
+   *
+   * @param mem The FastMemory accessor of the Memory hash table to insert into.
+   * @param lgArrLongs <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * lgArrLongs &le; log2(hashTable.length).
+   * @param hash value that must not be zero and will be inserted into the array into an empty slot.
+   * @param memOffsetBytes offset in the memory where the hash array starts
+   * @return index of insertion.
+   */
+  public static int hashInsertOnly(final FastMemory mem, final int lgArrLongs, final long hash, 
+      final int memOffsetBytes) {
+    final int arrayMask = (1 << lgArrLongs) - 1; // current Size -1
+    final int stride = getStride(hash, lgArrLongs);
+    int curProbe = (int) (hash & arrayMask);
+    int curProbeOffsetBytes = (curProbe << 3) + memOffsetBytes; 
+    long curArrayHash = mem.getLong(curProbeOffsetBytes);
+    // search for duplicate or zero
+    while (curArrayHash != 0L) {
+      curProbe = (curProbe + stride) & arrayMask;
+      curProbeOffsetBytes = (curProbe << 3) + memOffsetBytes;
+      curArrayHash = mem.getLong(curProbeOffsetBytes);
+    }
+    mem.putLong(curProbeOffsetBytes, hash);
+    return curProbe;
+  }
+
   /**
    * @param thetaLong must be greater than zero otherwise throws an exception.
    * <a href="{@docRoot}/resources/dictionary.html#thetaLong">See Theta Long</a>
@@ -282,6 +533,19 @@ public final class HashOperations {
     }
   }
 
+  //Checks a range of hashes with a single branch unless one of them is negative.
+  private static void checkHashCorruption(final long[] arr, final int start, final int end) {
+    long or = 0;
+    for (int i = start; i < end; i++) {
+      or |= arr[i];
+    }
+    if (or < 0L) {
+      for (int i = start; i < end; i++) {
+        checkHashCorruption(arr[i]);
+      }
+    }
+  }
+
   /**
    * Return true (continue) if hash is greater than or equal to thetaLong, or if hash == 0, 
    * or if hash == Long.MAX_VALUE.
@@ -0,0 +1,22 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches;
+
+/**
+ * Write attempted on a read-only Memory
+ */
+public class SketchesReadOnlyException extends SketchesException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructs a new runtime exception with the message "Memory is read only." The cause is not
+   * initialized, and may subsequently be initialized by a call to
+   * Throwable.initCause(java.lang.Throwable).
+   */
+  public SketchesReadOnlyException() {
+    super("Memory is read only.");
+  }
+}
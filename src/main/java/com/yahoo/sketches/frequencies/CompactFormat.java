@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import java.util.Arrays;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.FastMemory;
+import com.yahoo.sketches.memory.Memory;
+
+/**
+ * The variable length encoding of the compact serialization of the frequencies sketches, which
+ * is identified by serialization version {@link PreambleUtil#SER_VER_COMPACT}.
+ *
+ * <p>A long is written as an unsigned varint: 7 bits per byte, least significant group first,
+ * with the high bit of each byte set if more bytes follow. A signed value is first mapped by
+ * zigzag encoding, so that small negative values are short as well.</p>
+ *
+ * <p>A compact sketch starts with the first preamble long, which has one preamble long and is
+ * not empty, followed by the varints of the number of active items, the stream length, the
+ * offset and the counts, and then by the items in the same order. An empty sketch is always
+ * serialized in the standard form of 8 bytes.</p>
+ */
+final class CompactFormat {
+
+  private static final int INSERTION_SORT_LIMIT = 32;
+  private static final int MAX_VAR_LONG_BYTES = 10;
+
+  private CompactFormat() {}
+
+  /**
+   * Returns the number of bytes of the unsigned varint of the given value.
+   * @param value the given value, interpreted as unsigned
+   * @return the number of bytes of the unsigned varint of the given value, from 1 to 10
+   */
+  static int varLongBytes(final long value) {
+    return Math.max(1, ((Long.SIZE - Long.numberOfLeadingZeros(value)) + 6) / 7);
+  }
+
+  /**
+   * Writes the unsigned varint of the given value to the given array, which must have room for
+   * it, as computed with {@link #varLongBytes(long)}.
+   * @param arr the given array
+   * @param offset the index in the array of the first byte of the varint
+   * @param value the given value, interpreted as unsigned
+   * @return the index in the array just past the varint
+   */
+  static int putVarLong(final byte[] arr, final int offset, final long value) {
+    int pos = offset;
+    long v = value;
+    while ((v & ~0X7FL) != 0) {
+      arr[pos++] = (byte) ((v & 0X7FL) | 0X80L);
+      v >>>= 7;
+    }
+    arr[pos++] = (byte) v;
+    return pos;
+  }
+
+  static long zigZag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  static long unZigZag(final long value) {
+    return (value >>> 1) ^ -(value & 1L);
+  }
+
+  /**
+   * Sorts the given keys into ascending order and moves the given values along with them.
+   * This is a least significant digit radix sort on the bytes of the keys, which makes a pass
+   * only for the bytes in which some keys differ, so that keys of a small range take only a
+   * pass or two.
+   * @param keys the given keys
+   * @param values the given values, which correspond to the keys by index
+   */
+  static void sortTandem(final long[] keys, final long[] values) {
+    final int n = keys.length;
+    if (n < INSERTION_SORT_LIMIT) {
+      insertionSortTandem(keys, values);
+      return;
+    }
+    final long first = keys[0];
+    long diff = 0;
+    for (int i = 1; i < n; i++) {
+      diff |= keys[i] ^ first;
+    }
+    final int[] offsets = new int[256];
+    long[] srcKeys = keys;
+    long[] srcValues = values;
+    long[] dstKeys = new long[n];
+    long[] dstValues = new long[n];
+    for (int shift = 0; shift < Long.SIZE; shift += 8) {
+      if (((diff >>> shift) & 0XFFL) == 0) {
+        continue; //this byte is the same in every key
+      }
+      //the sign bit is flipped so that the unsigned order of the top byte is the signed order
+      final long flip = (shift == 56) ? Long.MIN_VALUE : 0L;
+      Arrays.fill(offsets, 0);
+      for (int i = 0; i < n; i++) {
+        offsets[(int) ((srcKeys[i] ^ flip) >>> shift) & 0XFF]++;
+      }
+      int start = 0;
+      for (int b = 0; b < 256; b++) {
+        final int count = offsets[b];
+        offsets[b] = start;
+        start += count;
+      }
+      for (int i = 0; i < n; i++) {
+        final long key = srcKeys[i];
+        final int j = offsets[(int) ((key ^ flip) >>> shift) & 0XFF]++;
+        dstKeys[j] = key;
+        dstValues[j] = srcValues[i];
+      }
+      final long[] tmpKeys = srcKeys;
+      final long[] tmpValues = srcValues;
+      srcKeys = dstKeys;
+      srcValues = dstValues;
+      dstKeys = tmpKeys;
+      dstValues = tmpValues;
+    }
+    if (srcKeys != keys) {
+      System.arraycopy(srcKeys, 0, keys, 0, n);
+      System.arraycopy(srcValues, 0, values, 0, n);
+    }
+  }
+
+  private static void insertionSortTandem(final long[] keys, final long[] values) {
+    for (int i = 1; i < keys.length; i++) {
+      final long key = keys[i];
+      final long value = values[i];
+      int j = i - 1;
+      while ((j >= 0) && (keys[j] > key)) {
+        keys[j + 1] = keys[j];
+        values[j + 1] = values[j];
+        j--;
+      }
+      keys[j + 1] = key;
+      values[j + 1] = value;
+    }
+  }
+
+  /**
+   * Writes varints sequentially to a Memory. The Memory must be large enough for all of the
+   * values written, which the caller computes in advance with {@link #varLongBytes(long)}.
+   */
+  static final class Writer {
+    private final FastMemory mem;
+    private long pos;
+
+    Writer(final Memory mem, final long offsetBytes) {
+      this.mem = FastMemory.wrap(mem);
+      this.pos = offsetBytes;
+    }
+
+    void putVarLong(final long value) {
+      long v = value;
+      while ((v & ~0X7FL) != 0) {
+        mem.putByte(pos++, (byte) ((v & 0X7FL) | 0X80L));
+        v >>>= 7;
+      }
+      mem.putByte(pos++, (byte) v);
+    }
+
+    void putByteArray(final byte[] bytes) {
+      mem.getMemory().putByteArray(pos, bytes, 0, bytes.length);
+      pos += bytes.length;
+    }
+
+    long getPosition() {
+      return pos;
+    }
+  }
+
+  /**
+   * Reads varints sequentially from a Memory. Reading past the capacity of the Memory or a
+   * varint of more than 10 bytes throws a SketchesArgumentException.
+   */
+  static final class Reader {
+    private final FastMemory mem;
+    private final long capacity;
+    private long pos;
+
+    Reader(final Memory mem, final long offsetBytes) {
+      this.mem = FastMemory.wrap(mem);
+      this.capacity = mem.getCapacity();
+      this.pos = offsetBytes;
+    }
+
+    long getVarLong() {
+      if ((capacity - pos) < MAX_VAR_LONG_BYTES) {
+        return getVarLongChecked();
+      }
+      //the longest varint fits, so its first 8 bytes are read at once, in little-endian order
+      final long word = mem.getLong(pos);
+      if ((word & 0X80L) == 0) {
+        pos += 1;
+        return word & 0X7FL;
+      }
+      if ((word & 0X8000L) == 0) {
+        pos += 2;
+        return (word & 0X7FL) | ((word >>> 1) & 0X3F80L);
+      }
+      long value = 0;
+      for (int i = 0; i < Long.BYTES; i++) {
+        final long b = (word >>> (i << 3)) & 0XFFL;
+        value |= (b & 0X7FL) << (7 * i);
+        if (b < 0X80L) {
+          pos += i + 1;
+          return value;
+        }
+      }
+      final byte b8 = mem.getByte(pos + 8);
+      value |= (b8 & 0X7FL) << 56;
+      if (b8 >= 0) {
+        pos += 9;
+        return value;
+      }
+      final byte b9 = mem.getByte(pos + 9);
+      value |= (b9 & 0X7FL) << 63;
+      if (b9 >= 0) {
+        pos += 10;
+        return value;
+      }
+      throw new SketchesArgumentException("Possible Corruption: Varint longer than 10 bytes");
+    }
+
+    private long getVarLongChecked() {
+      long value = 0;
+      for (int shift = 0; shift < Long.SIZE; shift += 7) {
+        if (pos >= capacity) {
+          throw new SketchesArgumentException(
+              "Possible Corruption: Varint past the end of Memory: " + capacity);
+        }
+        final byte b = mem.getByte(pos++);
+        value |= (b & 0X7FL) << shift;
+        if (b >= 0) { return value; }
+      }
+      throw new SketchesArgumentException("Possible Corruption: Varint longer than 10 bytes");
+    }
+
+    /**
+     * Reads the varint of a count or length, which must fit in a non-negative int.
+     * @return the value read
+     */
+    int getVarInt() {
+      final long value = getVarLong();
+      if ((value < 0) || (value > Integer.MAX_VALUE)) {
+        throw new SketchesArgumentException("Possible Corruption: Value out of range: " + value);
+      }
+      return (int) value;
+    }
+
+    long getPosition() {
+      return pos;
+    }
+  }
+}
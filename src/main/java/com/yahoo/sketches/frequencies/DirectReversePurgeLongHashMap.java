@@ -0,0 +1,327 @@
+/*
+ * Copyright 2016, Yahoo! Inc. Licensed under the terms of the Apache License 2.0. See LICENSE file
+ * at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import static com.yahoo.sketches.frequencies.PreambleUtil.ACTIVE_ITEMS_INT;
+import static com.yahoo.sketches.frequencies.PreambleUtil.LG_CUR_MAP_SIZE_BYTE;
+import static com.yahoo.sketches.frequencies.Util.LG_MIN_MAP_SIZE;
+import static com.yahoo.sketches.frequencies.Util.hash;
+
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.FastMemory;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.MemoryRequest;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * The implementation of the ReversePurgeLongHashMap in a Memory, which holds the preamble of a
+ * Direct LongsSketch followed by the keys, values and states of the map:
+ *
+ * <pre>
+ * Bytes 0 to 31                     : preamble, see PreambleUtil. Byte 4 is lg(length) and
+ *                                     bytes 8 to 11 are the number of active keys.
+ * Bytes 32 to 32 + 8 * length       : keys
+ * Bytes 32 + 8 * length, 8 * length : values
+ * Bytes 32 + 16 * length, 2 * length: states
+ * </pre>
+ *
+ * <p>The map resizes in place if the Memory is large enough, otherwise in new Memory obtained
+ * from the MemoryRequest of the Memory, which is then responsible for freeing the old Memory.</p>
+ */
+class DirectReversePurgeLongHashMap extends ReversePurgeLongHashMap {
+  static final int PREAMBLE_BYTES = Family.FREQUENCY.getMaxPreLongs() << 3;
+
+  private Memory mem;
+  private FastMemory fastMem; //used for all table accesses, replaced with mem
+  private int lgLength;
+  private int loadThreshold;
+  private long valuesOffset;
+  private long statesOffset;
+  private int numActive;
+
+  /**
+   * Wraps the hash map in the given Memory, which must hold the preamble of a Direct LongsSketch.
+   *
+   * @param mem the given Memory
+   */
+  DirectReversePurgeLongHashMap(final Memory mem) {
+    setMemory(mem, checkMemory(mem));
+    numActive = mem.getInt(ACTIVE_ITEMS_INT);
+  }
+
+  /**
+   * Gets the value of the given key from the hash map in the given Memory without wrapping it,
+   * so that a query of a serialized Direct sketch allocates nothing.
+   *
+   * @param mem the given Memory, which must hold the preamble of a Direct LongsSketch
+   * @param key the given key
+   * @return the positive value of the key, or zero if the key is not found in the hash map
+   */
+  static long get(final Memory mem, final long key) {
+    final int lgLength = checkMemory(mem);
+    final int arrayMask = (1 << lgLength) - 1;
+    final long statesOffset = PREAMBLE_BYTES + (16L << lgLength);
+    int probe = (int) hash(key) & arrayMask;
+    for (int i = 0; i <= arrayMask; i++) { //bounded, as the Memory may be corrupt
+      if (mem.getShort(statesOffset + ((long) probe << 1)) <= 0) { return 0; }
+      if (mem.getLong(PREAMBLE_BYTES + ((long) probe << 3)) == key) {
+        return mem.getLong(PREAMBLE_BYTES + (8L << lgLength) + ((long) probe << 3));
+      }
+      probe = (probe + 1) & arrayMask;
+    }
+    return 0;
+  }
+
+  /**
+   * Checks the size of the hash map and the number of active keys in the given Memory.
+   *
+   * @param mem the given Memory, which must hold the preamble of a Direct LongsSketch
+   * @return log2 of the length of the hash map
+   */
+  private static int checkMemory(final Memory mem) {
+    final int lgLength = mem.getByte(LG_CUR_MAP_SIZE_BYTE) & 0XFF;
+    if ((lgLength < LG_MIN_MAP_SIZE) || (lgLength > 30)) {
+      throw new SketchesArgumentException("Possible Corruption: LgCurMapSize: " + lgLength);
+    }
+    final long reqBytes = getRequiredBytes(lgLength);
+    if (mem.getCapacity() < reqBytes) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: Memory too small: " + mem.getCapacity() + " < " + reqBytes);
+    }
+    final int numActive = mem.getInt(ACTIVE_ITEMS_INT);
+    if ((numActive < 0) || (numActive > (int) ((1 << lgLength) * LOAD_FACTOR))) {
+      throw new SketchesArgumentException("Possible Corruption: ActiveItems: " + numActive);
+    }
+    return lgLength;
+  }
+
+  /**
+   * Returns the bytes of Memory required by the preamble and a hash map of the given size.
+   *
+   * @param lgLength log2 of the length of the hash map
+   * @return the bytes of Memory required by the preamble and a hash map of the given size.
+   */
+  static long getRequiredBytes(final int lgLength) {
+    return PREAMBLE_BYTES + (18L << lgLength);
+  }
+
+  @Override
+  long get(final long key) {
+    final int probe = hashProbe(key);
+    if (getState(probe) > 0) {
+      assert (getKey(probe) == key);
+      return getValue(probe);
+    }
+    return 0;
+  }
+
+  @Override
+  void adjustOrPutValue(final long key, final long adjustAmount) {
+    final int arrayMask = (1 << lgLength) - 1;
+    int probe = (int) hash(key) & arrayMask;
+    int drift = 1;
+    while (getState(probe) != 0 && getKey(probe) != key) {
+      probe = (probe + 1) & arrayMask;
+      drift++;
+      //only used for theoretical analysis
+      assert (drift < DRIFT_LIMIT) : "drift: " + drift + " >= DRIFT_LIMIT";
+    }
+
+    if (getState(probe) == 0) {
+      // adding the key to the table the value
+      assert (numActive <= loadThreshold)
+        : "numActive: " + numActive + " > loadThreshold : " + loadThreshold;
+      put(probe, key, adjustAmount, (short) drift);
+      fastMem.putInt(ACTIVE_ITEMS_INT, ++numActive);
+    } else {
+      // adjusting the value of an existing key
+      assert (getKey(probe) == key);
+      setValue(probe, getValue(probe) + adjustAmount);
+    }
+  }
+
+  @Override
+  void keepOnlyPositiveCounts() {
+    final int length = 1 << lgLength;
+    // Starting from the back, find the first empty cell,
+    //  which establishes the high end of a cluster.
+    int firstProbe = length - 1;
+    while (getState(firstProbe) > 0) {
+      firstProbe--;
+    }
+    // Work towards the front; delete any non-positive entries.
+    for (int probe = firstProbe; probe-- > 0;) {
+      if (getState(probe) > 0 && getValue(probe) <= 0) {
+        hashDelete(probe);
+        numActive--;
+      }
+    }
+    //now work on the first cluster that was skipped.
+    for (int probe = length; probe-- > firstProbe;) {
+      if (getState(probe) > 0 && getValue(probe) <= 0) {
+        hashDelete(probe);
+        numActive--;
+      }
+    }
+    fastMem.putInt(ACTIVE_ITEMS_INT, numActive);
+  }
+
+  @Override
+  void adjustAllValuesBy(final long adjustAmount) {
+    for (int i = 1 << lgLength; i-- > 0; ) {
+      setValue(i, getValue(i) + adjustAmount);
+    }
+  }
+
+  // assume newSize is power of 2
+  @Override
+  void resize(final int newSize) {
+    final int oldLength = 1 << lgLength;
+    final int newLgLength = Integer.numberOfTrailingZeros(newSize);
+    final long reqBytes = getRequiredBytes(newLgLength);
+    final Memory oldMem = mem;
+    final Memory srcMem;
+    final long srcKeysOffset;
+    MemoryRequest memReq = null;
+    if (oldMem.getCapacity() >= reqBytes) {
+      //the new table overlaps the old one, so the old one is copied out first
+      final long tableBytes = getRequiredBytes(lgLength) - PREAMBLE_BYTES;
+      srcMem = new NativeMemory(new byte[(int) tableBytes]);
+      NativeMemory.copy(oldMem, PREAMBLE_BYTES, srcMem, 0, tableBytes);
+      srcKeysOffset = 0;
+      oldMem.clear(PREAMBLE_BYTES, reqBytes - PREAMBLE_BYTES);
+      setMemory(oldMem, newLgLength);
+    } else {
+      memReq = oldMem.getMemoryRequest();
+      if (memReq == null) {
+        throw new SketchesArgumentException(
+            "Memory is too small to resize and has no MemoryRequest: " + oldMem.getCapacity()
+            + " < " + reqBytes);
+      }
+      final Memory dstMem = memReq.request(oldMem, PREAMBLE_BYTES, reqBytes);
+      if (dstMem == null) {
+        throw new SketchesArgumentException("MemoryRequest callback cannot be null.");
+      }
+      if (dstMem.getCapacity() < reqBytes) {
+        memReq.free(dstMem);
+        throw new SketchesArgumentException("Requested memory not granted: "
+            + dstMem.getCapacity() + " < " + reqBytes);
+      }
+      srcMem = oldMem;
+      srcKeysOffset = PREAMBLE_BYTES;
+      setMemory(dstMem, newLgLength);
+    }
+    fastMem.putByte(LG_CUR_MAP_SIZE_BYTE, (byte) newLgLength);
+    numActive = 0;
+    final long srcValuesOffset = srcKeysOffset + ((long) oldLength << 3);
+    final long srcStatesOffset = srcKeysOffset + ((long) oldLength << 4);
+    for (int i = 0; i < oldLength; i++) {
+      if (srcMem.getShort(srcStatesOffset + ((long) i << 1)) > 0) {
+        adjustOrPutValue(srcMem.getLong(srcKeysOffset + ((long) i << 3)),
+            srcMem.getLong(srcValuesOffset + ((long) i << 3)));
+      }
+    }
+    fastMem.putInt(ACTIVE_ITEMS_INT, numActive);
+    if (memReq != null) {
+      memReq.free(oldMem, mem); //normal free mechanism via MemoryRequest
+    }
+  }
+
+  @Override
+  int getLgLength() {
+    return lgLength;
+  }
+
+  @Override
+  int getCapacity() {
+    return loadThreshold;
+  }
+
+  @Override
+  int getNumActive() {
+    return numActive;
+  }
+
+  @Override
+  Memory getMemory() {
+    return mem;
+  }
+
+  @Override
+  long getKey(final int probe) {
+    return fastMem.getLong(PREAMBLE_BYTES + ((long) probe << 3));
+  }
+
+  @Override
+  long getValue(final int probe) {
+    return fastMem.getLong(valuesOffset + ((long) probe << 3));
+  }
+
+  @Override
+  short getState(final int probe) {
+    return fastMem.getShort(statesOffset + ((long) probe << 1));
+  }
+
+  private void setValue(final int probe, final long value) {
+    fastMem.putLong(valuesOffset + ((long) probe << 3), value);
+  }
+
+  private void setState(final int probe, final short state) {
+    fastMem.putShort(statesOffset + ((long) probe << 1), state);
+  }
+
+  private void put(final int probe, final long key, final long value, final short state) {
+    fastMem.putLong(PREAMBLE_BYTES + ((long) probe << 3), key);
+    setValue(probe, value);
+    setState(probe, state);
+  }
+
+  private void setMemory(final Memory mem, final int lgLength) {
+    this.mem = mem;
+    fastMem = FastMemory.wrap(mem);
+    this.lgLength = lgLength;
+    loadThreshold = (int) ((1 << lgLength) * LOAD_FACTOR);
+    valuesOffset = PREAMBLE_BYTES + (8L << lgLength);
+    statesOffset = PREAMBLE_BYTES + (16L << lgLength);
+  }
+
+  private void hashDelete(int deleteProbe) {
+    // Looks ahead in the table to search for another
+    // item to move to this location
+    // if none are found, the status is changed
+    setState(deleteProbe, (short) 0); //mark as empty
+    int drift = 1;
+    final int arrayMask = (1 << lgLength) - 1;
+    int probe = (deleteProbe + drift) & arrayMask; //map length must be a power of 2
+    // advance until you find a free location replacing locations as needed
+    short state;
+    while ((state = getState(probe)) != 0) {
+      if (state > drift) {
+        // move current element
+        put(deleteProbe, getKey(probe), getValue(probe), (short) (state - drift));
+        // marking this location as deleted
+        setState(probe, (short) 0);
+        drift = 0;
+        deleteProbe = probe;
+      }
+      probe = (probe + 1) & arrayMask;
+      drift++;
+      //only used for theoretical analysis
+      assert (drift < DRIFT_LIMIT) : "drift: " + drift + " >= DRIFT_LIMIT";
+    }
+  }
+
+  private int hashProbe(final long key) {
+    final int arrayMask = (1 << lgLength) - 1;
+    int probe = (int) hash(key) & arrayMask;
+    while (getState(probe) > 0 && getKey(probe) != key) {
+      probe = (probe + 1) & arrayMask;
+    }
+    return probe;
+  }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016, Yahoo! Inc. Licensed under the terms of the Apache License 2.0. See LICENSE file
+ * at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import static com.yahoo.sketches.Util.toLog2;
+import static com.yahoo.sketches.frequencies.Util.hash;
+
+/**
+ * The on-heap implementation of the ReversePurgeLongHashMap, which keeps the keys, values and
+ * states in three arrays.
+ *
+ * @author Edo Liberty
+ * @author Justin Thaler
+ * @author Lee Rhodes
+ */
+class HeapReversePurgeLongHashMap extends ReversePurgeLongHashMap {
+  private int lgLength;
+  private int loadThreshold;
+  private long[] keys;
+  private long[] values;
+  private short[] states;
+  private int numActive = 0;
+
+  /**
+   * Constructor will create arrays of length mapSize, which must be a power of two.
+   * This restriction was made to ensure fast hashing.
+   * The protected variable this.loadThreshold is then set to the largest value that
+   * will not overload the hash table.
+   *
+   * @param mapSize This determines the number of cells in the arrays underlying the
+   * HashMap implementation and must be a power of 2.
+   * The hash table will be expected to store LOAD_FACTOR * mapSize (key, value) pairs.
+   */
+  HeapReversePurgeLongHashMap(final int mapSize) {
+    lgLength = toLog2(mapSize, "mapSize");
+    this.loadThreshold = (int) (mapSize * LOAD_FACTOR);
+    this.keys = new long[mapSize];
+    this.values = new long[mapSize];
+    this.states = new short[mapSize];
+  }
+
+  @Override
+  long get(final long key) {
+    final int probe = hashProbe(key);
+    if (states[probe] > 0) {
+      assert (keys[probe] == key);
+      return values[probe];
+    }
+    return 0;
+  }
+
+  @Override
+  void adjustOrPutValue(final long key, final long adjustAmount) {
+    final int arrayMask = keys.length - 1;
+    int probe = (int) hash(key) & arrayMask;
+    int drift = 1;
+    while (states[probe] != 0 && keys[probe] != key) {
+      probe = (probe + 1) & arrayMask;
+      drift++;
+      //only used for theoretical analysis
+      assert (drift < DRIFT_LIMIT) : "drift: " + drift + " >= DRIFT_LIMIT";
+    }
+
+    if (states[probe] == 0) {
+      // adding the key to the table the value
+      assert (numActive <= loadThreshold)
+        : "numActive: " + numActive + " > loadThreshold : " + loadThreshold;
+      keys[probe] = key;
+      values[probe] = adjustAmount;
+      states[probe] = (short) drift;
+      numActive++;
+    } else {
+      // adjusting the value of an existing key
+      assert (keys[probe] == key);
+      values[probe] += adjustAmount;
+    }
+  }
+
+  @Override
+  void keepOnlyPositiveCounts() {
+    // Starting from the back, find the first empty cell,
+    //  which establishes the high end of a cluster.
+    int firstProbe = keys.length - 1;
+    while (states[firstProbe] > 0) {
+      firstProbe--;
+    }
+    // firstProbe keeps track of this point.
+    // When we find the next non-empty cell, we know we are at the high end of a cluster
+    // Work towards the front; delete any non-positive entries.
+    for (int probe = firstProbe; probe-- > 0;) {
+      if (states[probe] > 0 && values[probe] <= 0) {
+        hashDelete(probe); //does the work of deletion and moving higher items towards the front.
+        numActive--;
+      }
+    }
+    //now work on the first cluster that was skipped.
+    for (int probe = keys.length; probe-- > firstProbe;) {
+      if (states[probe] > 0 && values[probe] <= 0) {
+        hashDelete(probe);
+        numActive--;
+      }
+    }
+  }
+
+  @Override
+  void adjustAllValuesBy(final long adjustAmount) {
+    for (int i = keys.length; i-- > 0; ) {
+      values[i] += adjustAmount;
+    }
+  }
+
+  @Override
+  void copyActive(final long[] activeKeys, final long[] activeValues) {
+    int j = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (states[i] > 0) {
+        activeKeys[j] = keys[i];
+        activeValues[j] = values[i];
+        j++;
+      }
+    }
+    assert (j == numActive);
+  }
+
+  // assume newSize is power of 2
+  @Override
+  void resize(final int newSize) {
+    final long[] oldKeys = keys;
+    final long[] oldValues = values;
+    final short[] oldStates = states;
+    keys = new long[newSize];
+    values = new long[newSize];
+    states = new short[newSize];
+    loadThreshold = (int) (newSize * LOAD_FACTOR);
+    lgLength = Integer.numberOfTrailingZeros(newSize);
+    numActive = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldStates[i] > 0) {
+        adjustOrPutValue(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  @Override
+  int getLgLength() {
+    return lgLength;
+  }
+
+  @Override
+  int getCapacity() {
+    return loadThreshold;
+  }
+
+  @Override
+  int getNumActive() {
+    return numActive;
+  }
+
+  @Override
+  long getKey(final int probe) {
+    return keys[probe];
+  }
+
+  @Override
+  long getValue(final int probe) {
+    return values[probe];
+  }
+
+  @Override
+  short getState(final int probe) {
+    return states[probe];
+  }
+
+  private void hashDelete(int deleteProbe) {
+    // Looks ahead in the table to search for another
+    // item to move to this location
+    // if none are found, the status is changed
+    states[deleteProbe] = 0; //mark as empty
+    int drift = 1;
+    final int arrayMask = keys.length - 1;
+    int probe = (deleteProbe + drift) & arrayMask; //map length must be a power of 2
+    // advance until you find a free location replacing locations as needed
+    while (states[probe] != 0) {
+      if (states[probe] > drift) {
+        // move current element
+        keys[deleteProbe] = keys[probe];
+        values[deleteProbe] = values[probe];
+        states[deleteProbe] = (short) (states[probe] - drift);
+        // marking this location as deleted
+        states[probe] = 0;
+        drift = 0;
+        deleteProbe = probe;
+      }
+      probe = (probe + 1) & arrayMask;
+      drift++;
+      //only used for theoretical analysis
+      assert (drift < DRIFT_LIMIT) : "drift: " + drift + " >= DRIFT_LIMIT";
+    }
+  }
+
+  private int hashProbe(final long key) {
+    final int arrayMask = keys.length - 1;
+    int probe = (int) hash(key) & arrayMask;
+    while (states[probe] > 0 && keys[probe] != key) {
+      probe = (probe + 1) & arrayMask;
+    }
+    return probe;
+  }
+
+}
@@ -7,8 +7,11 @@ package com.yahoo.sketches.frequencies;
 
 import static com.yahoo.sketches.Util.LS;
 import static com.yahoo.sketches.Util.toLog2;
+import static com.yahoo.sketches.frequencies.CompactFormat.varLongBytes;
+import static com.yahoo.sketches.frequencies.PreambleUtil.DELTA_KEYS_FLAG_MASK;
 import static com.yahoo.sketches.frequencies.PreambleUtil.EMPTY_FLAG_MASK;
 import static com.yahoo.sketches.frequencies.PreambleUtil.SER_VER;
+import static com.yahoo.sketches.frequencies.PreambleUtil.SER_VER_COMPACT;
 import static com.yahoo.sketches.frequencies.PreambleUtil.extractActiveItems;
 import static com.yahoo.sketches.frequencies.PreambleUtil.extractFamilyID;
 import static com.yahoo.sketches.frequencies.PreambleUtil.extractFlags;
@@ -25,12 +28,15 @@ import static com.yahoo.sketches.frequencies.PreambleUtil.insertLgMaxMapSize;
 import static com.yahoo.sketches.frequencies.PreambleUtil.insertPreLongs;
 import static com.yahoo.sketches.frequencies.PreambleUtil.insertSerDeId;
 import static com.yahoo.sketches.frequencies.PreambleUtil.insertSerVer;
+import static com.yahoo.sketches.frequencies.Util.LG_MERGE_MAP_FACTOR;
 import static com.yahoo.sketches.frequencies.Util.LG_MIN_MAP_SIZE;
 import static com.yahoo.sketches.frequencies.Util.SAMPLE_SIZE;
+import static com.yahoo.sketches.frequencies.Util.lgMapSizeFor;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 import com.yahoo.sketches.ArrayOfItemsSerDe;
 import com.yahoo.sketches.Family;
@@ -55,7 +61,7 @@ import com.yahoo.sketches.memory.NativeMemory;
  * <li>Return an array of frequent items that qualify either a NO_FALSE_POSITIVES or a 
  * NO_FALSE_NEGATIVES error type.</li>
  * <li>Merge itself with another sketch object created from this class.</li>
- * <li>Serialize/Deserialize to/from a byte array.</li>
+ * <li>Serialize/Deserialize to/from a byte array, which may be compact.</li>
  * </ul>
  * 
  * <p><b>Space Usage</b></p>
@@ -204,7 +210,8 @@ public class ItemsSketch<T> {
 
   /**
    * Returns a sketch instance of this class from the given srcMem, 
-   * which must be a Memory representation of this sketch class.
+   * which must be a Memory representation of this sketch class, either of 
+   * {@link #toByteArray(ArrayOfItemsSerDe)} or of {@link #toCompactByteArray(ArrayOfItemsSerDe)}.
    * 
    * @param <T> The type of item that this sketch will track
    * @param srcMem a Memory representation of a sketch of this class. 
@@ -232,16 +239,26 @@ public class ItemsSketch<T> {
       throw new SketchesArgumentException(
           "Possible Corruption: PreLongs must be 1 or " + maxPreLongs + ": " + preLongs);
     }
-    if (serVer != SER_VER) {                            //Byte 1
-      throw new SketchesArgumentException(
-          "Possible Corruption: Ser Ver must be " + SER_VER + ": " + serVer);
+    final boolean compact = (serVer == SER_VER_COMPACT);
+    if ((serVer != SER_VER) && !compact) {              //Byte 1
+      throw new SketchesArgumentException("Possible Corruption: Ser Ver must be " + SER_VER
+          + " or " + SER_VER_COMPACT + ": " + serVer);
     }
     final int actFamID = Family.FREQUENCY.getID();      //Byte 2
     if (familyID != actFamID) {
       throw new SketchesArgumentException(
           "Possible Corruption: FamilyID must be " + actFamID + ": " + familyID);
     }
-    if (empty ^ preLongsEq1) {                          //Byte 5 and Byte 0
+    if (compact) {                                      //Byte 5 and Byte 0
+      if (empty || !preLongsEq1) {
+        throw new SketchesArgumentException(
+            "Possible Corruption: Compact requires PreLongs == 1 and not Empty.");
+      }
+      if ((extractFlags(pre0) & DELTA_KEYS_FLAG_MASK) != 0) {
+        throw new SketchesArgumentException(
+            "The items are delta coded by a LongsSketch. Use LongsSketch.getInstance(Memory).");
+      }
+    } else if (empty ^ preLongsEq1) {
       throw new SketchesArgumentException(
           "Possible Corruption: (PreLongs == 1) ^ Empty == True.");
     }
@@ -253,6 +270,9 @@ public class ItemsSketch<T> {
     if (empty) {
       return new ItemsSketch<T>(lgMaxMapSize, LG_MIN_MAP_SIZE);
     }
+    if (compact) {
+      return getCompactInstance(srcMem, serDe, lgMaxMapSize, lgCurMapSize);
+    }
     //get full preamble
     final long[] preArr = new long[preLongs];
     srcMem.getLongArray(0, preArr, 0, preLongs);
@@ -278,6 +298,33 @@ public class ItemsSketch<T> {
     return fis;
   }
 
+  private static <T> ItemsSketch<T> getCompactInstance(final Memory srcMem,
+      final ArrayOfItemsSerDe<T> serDe, final int lgMaxMapSize, final int lgCurMapSize) {
+    final CompactFormat.Reader reader = new CompactFormat.Reader(srcMem, 8);
+    final int activeItems = reader.getVarInt();
+    final long streamLength = reader.getVarLong();
+    final long offset = reader.getVarLong();
+    //every count takes at least one byte
+    if (activeItems > (srcMem.getCapacity() - reader.getPosition())) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: Memory too small for active items: " + activeItems);
+    }
+    final long[] countArray = new long[activeItems];
+    for (int i = 0; i < activeItems; i++) {
+      countArray[i] = reader.getVarLong();
+    }
+    final long itemsOffset = reader.getPosition();
+    final T[] itemArray = serDe.deserializeFromMemory(
+        new MemoryRegion(srcMem, itemsOffset, srcMem.getCapacity() - itemsOffset), activeItems);
+    final ItemsSketch<T> fis = new ItemsSketch<T>(lgMaxMapSize, lgCurMapSize);
+    fis.offset = offset;
+    for (int i = 0; i < activeItems; i++) {
+      fis.update(itemArray[i], countArray[i]);
+    }
+    fis.streamLength = streamLength; //override streamLength due to updating
+    return fis;
+  }
+
   /**
    * Returns a byte array representation of this sketch
    * @param serDe an instance of ArrayOfItemsSerDe
@@ -328,6 +375,51 @@ public class ItemsSketch<T> {
     return outArr;
   }
 
+  /**
+   * Returns a byte array representation of this sketch in the compact serialization, in which
+   * the preamble fields and the counts are stored as varints, followed by the items as
+   * serialized by the given SerDe. The items are not reordered, as their serialized form is
+   * opaque to this sketch. The result is read by {@link #getInstance(Memory, ArrayOfItemsSerDe)}.
+   * An empty sketch is serialized the same as by {@link #toByteArray(ArrayOfItemsSerDe)}.
+   * @param serDe an instance of ArrayOfItemsSerDe
+   * @return a byte array representation of this sketch in the compact serialization
+   */
+  public byte[] toCompactByteArray(final ArrayOfItemsSerDe<T> serDe) {
+    if (isEmpty()) {
+      return toByteArray(serDe);
+    }
+    final int activeItems = getNumActiveItems();
+    final long[] counts = hashMap.getActiveValues();
+    final byte[] bytes = serDe.serializeToByteArray(hashMap.getActiveKeys());
+    long outBytes = 8 + varLongBytes(activeItems) + varLongBytes(streamLength)
+        + varLongBytes(offset) + bytes.length;
+    for (int i = 0; i < activeItems; i++) {
+      outBytes += varLongBytes(counts[i]);
+    }
+    final byte[] outArr = new byte[(int) outBytes];
+    final Memory mem = new NativeMemory(outArr);
+
+    long pre0 = 0L;
+    pre0 = insertPreLongs(1, pre0);                         //Byte 0
+    pre0 = insertSerVer(SER_VER_COMPACT, pre0);             //Byte 1
+    pre0 = insertFamilyID(Family.FREQUENCY.getID(), pre0);  //Byte 2
+    pre0 = insertLgMaxMapSize(lgMaxMapSize, pre0);          //Byte 3
+    pre0 = insertLgCurMapSize(hashMap.getLgLength(), pre0); //Byte 4
+    pre0 = insertFlags(0, pre0);                            //Byte 5
+    pre0 = insertSerDeId(serDe.getId(), pre0);              //Byte 6,7
+    mem.putLong(0, pre0);
+
+    final CompactFormat.Writer writer = new CompactFormat.Writer(mem, 8);
+    writer.putVarLong(activeItems);
+    writer.putVarLong(streamLength);
+    writer.putVarLong(offset);
+    for (int i = 0; i < activeItems; i++) {
+      writer.putVarLong(counts[i]);
+    }
+    writer.putByteArray(bytes);
+    return outArr;
+  }
+
   /**
    * Update this sketch with an item and a frequency count of one.
    * @param item for which the frequency should be increased. 
@@ -389,6 +481,72 @@ public class ItemsSketch<T> {
     return this;
   }
 
+  /**
+   * Merges the given sketches into a new sketch on the heap, see {@link ParallelMerge}. 
+   * Instead of replaying the sketches through update one at a time, the working hash map is 
+   * sized once from the combined number of active items, up to 2^LG_MERGE_MAP_FACTOR times the 
+   * maximum map size of the result. Whenever it fills, it is purged down to half of the maximum 
+   * capacity of the result, and at the end down to the maximum capacity of the result. 
+   * Null sketches are ignored.
+   * 
+   * @param sketches the sketches to merge
+   * @param lgMaxMapSize Log2 of the maximum map size of the result
+   * @return a new sketch holding the merge of the given sketches
+   */
+  static <T> ItemsSketch<T> mergeAll(final List<? extends ItemsSketch<T>> sketches, 
+      final int lgMaxMapSize) {
+    final int lgMaxMapSz = Math.max(lgMaxMapSize, LG_MIN_MAP_SIZE);
+    final double loadFactor = ReversePurgeItemHashMap.getLoadFactor();
+    final int maxMapCap = (int) ((1 << lgMaxMapSz) * loadFactor);
+    long numActive = 0;
+    long streamLen = 0;
+    long offset = 0;
+    for (final ItemsSketch<T> sketch : sketches) {
+      if (sketch == null) continue;
+      numActive += sketch.getNumActiveItems();
+      streamLen += sketch.streamLength;
+      offset += sketch.offset;
+    }
+    final int lgMapSize = lgMapSizeFor(numActive, loadFactor, lgMaxMapSz + LG_MERGE_MAP_FACTOR);
+    final ReversePurgeItemHashMap<T> map = new ReversePurgeItemHashMap<T>(1 << lgMapSize);
+    for (final ItemsSketch<T> sketch : sketches) {
+      if (sketch == null) continue;
+      offset += mergeInto(map, sketch.hashMap, maxMapCap / 2);
+    }
+    offset += map.purgeTo(maxMapCap);
+
+    final ItemsSketch<T> result = 
+        new ItemsSketch<T>(lgMaxMapSz, lgMapSizeFor(map.getNumActive(), loadFactor, lgMaxMapSz));
+    final ReversePurgeItemHashMap<T>.Iterator iter = map.iterator();
+    while (iter.next()) { //fits without a resize
+      result.hashMap.adjustOrPutValue(iter.getKey(), iter.getValue());
+    }
+    result.offset = offset;
+    result.streamLength = streamLen;
+    return result;
+  }
+
+  /**
+   * Adds the counters of the other hash map to the given working map, which is purged down to 
+   * the given number of counters whenever it fills. Kept out of mergeAll so that the JIT 
+   * compiles it as an ordinary method rather than as a loop of a method that runs once.
+   * 
+   * @return the total of the decrements of the purges
+   */
+  private static <T> long mergeInto(final ReversePurgeItemHashMap<T> map, 
+      final ReversePurgeItemHashMap<T> other, final int purgeCap) {
+    final int mapCap = map.getCapacity();
+    long offset = 0;
+    final ReversePurgeItemHashMap<T>.Iterator iter = other.iterator();
+    while (iter.next()) {
+      map.adjustOrPutValue(iter.getKey(), iter.getValue());
+      if (map.getNumActive() > mapCap) {
+        offset += map.purgeTo(purgeCap);
+      }
+    }
+    return offset;
+  }
+
   /**
    * Gets the estimate of the frequency of the given item. 
    * Note: The true frequency of a item would be the sum of the counts as a result of the 
@@ -7,8 +7,18 @@ package com.yahoo.sketches.frequencies;
 
 import static com.yahoo.sketches.Util.LS;
 import static com.yahoo.sketches.Util.toLog2;
+import static com.yahoo.sketches.frequencies.CompactFormat.putVarLong;
+import static com.yahoo.sketches.frequencies.CompactFormat.unZigZag;
+import static com.yahoo.sketches.frequencies.CompactFormat.varLongBytes;
+import static com.yahoo.sketches.frequencies.CompactFormat.zigZag;
+import static com.yahoo.sketches.frequencies.PreambleUtil.ACTIVE_ITEMS_INT;
+import static com.yahoo.sketches.frequencies.PreambleUtil.DELTA_KEYS_FLAG_MASK;
 import static com.yahoo.sketches.frequencies.PreambleUtil.EMPTY_FLAG_MASK;
+import static com.yahoo.sketches.frequencies.PreambleUtil.HASH_MAP_FLAG_MASK;
+import static com.yahoo.sketches.frequencies.PreambleUtil.OFFSET_LONG;
 import static com.yahoo.sketches.frequencies.PreambleUtil.SER_VER;
+import static com.yahoo.sketches.frequencies.PreambleUtil.SER_VER_COMPACT;
+import static com.yahoo.sketches.frequencies.PreambleUtil.STREAMLENGTH_LONG;
 import static com.yahoo.sketches.frequencies.PreambleUtil.extractActiveItems;
 import static com.yahoo.sketches.frequencies.PreambleUtil.extractFamilyID;
 import static com.yahoo.sketches.frequencies.PreambleUtil.extractFlags;
@@ -25,11 +35,15 @@ import static com.yahoo.sketches.frequencies.PreambleUtil.insertLgMaxMapSize;
 import static com.yahoo.sketches.frequencies.PreambleUtil.insertPreLongs;
 import static com.yahoo.sketches.frequencies.PreambleUtil.insertSerDeId;
 import static com.yahoo.sketches.frequencies.PreambleUtil.insertSerVer;
+import static com.yahoo.sketches.frequencies.Util.LG_MERGE_MAP_FACTOR;
 import static com.yahoo.sketches.frequencies.Util.LG_MIN_MAP_SIZE;
 import static com.yahoo.sketches.frequencies.Util.SAMPLE_SIZE;
+import static com.yahoo.sketches.frequencies.Util.lgMapSizeFor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 
 import com.yahoo.sketches.ArrayOfLongsSerDe;
 import com.yahoo.sketches.Family;
@@ -52,7 +66,7 @@ import com.yahoo.sketches.memory.NativeMemory;
  * <li>Return an array of frequent items that qualify either a NO_FALSE_POSITIVES or a 
  * NO_FALSE_NEGATIVES error type.</li>
  * <li>Merge itself with another sketch object created from this class.</li>
- * <li>Serialize/Deserialize to/from a String or byte array.</li>
+ * <li>Serialize/Deserialize to/from a String or byte array, which may be compact.</li>
  * </ul>
  * 
  * <p><b>Space Usage</b></p>
@@ -68,6 +82,14 @@ import com.yahoo.sketches.memory.NativeMemory;
  * constant number of additional bytes. The internal memory space usage of this sketch will never 
  * exceed 18 * <i>maxMapSize</i> bytes, plus a small constant number of additional bytes.</p>
  * 
+ * <p><b>Direct Sketches</b></p>
+ * 
+ * <p>A sketch constructed with a Memory keeps its hash map in that Memory instead of on the 
+ * heap, and updates, purges and resizes it in place. If the Memory is too small for the next 
+ * size of the hash map, new Memory is obtained from its MemoryRequest, see 
+ * {@link #getDirectBytes(int)}. The Memory of a Direct sketch can be wrapped again without 
+ * copying, see {@link #wrap(Memory)}.</p>
+ * 
  * <p><b>Maximum Capacity of the Sketch</b></p>
  * 
  * <p>The LOAD_FACTOR for the hash map is internally set at 75%, 
@@ -191,7 +213,7 @@ public class LongsSketch {
     //set initial size of hash map
     this.lgMaxMapSize = Math.max(lgMaxMapSize, LG_MIN_MAP_SIZE);
     final int lgCurMapSz = Math.max(lgCurMapSize, LG_MIN_MAP_SIZE);
-    hashMap = new ReversePurgeLongHashMap(1 << lgCurMapSz);
+    hashMap = new HeapReversePurgeLongHashMap(1 << lgCurMapSz);
     this.curMapCap = hashMap.getCapacity(); 
     final int maxMapCap = 
         (int) ((1 << lgMaxMapSize) * ReversePurgeLongHashMap.getLoadFactor());
@@ -199,55 +221,126 @@ public class LongsSketch {
     sampleSize = Math.min(SAMPLE_SIZE, maxMapCap); 
   }
 
+  /**
+   * Construct a Direct sketch with the parameter maxMapSize, which keeps its hash map in the 
+   * given Memory. The hash map starts at the default initial size (8).
+   * 
+   * @param maxMapSize Determines the physical size of the internal hash map managed by this 
+   * sketch and must be a power of 2.  The maximum capacity of this internal hash map is 
+   * 0.75 times * maxMapSize. Both the ultimate accuracy and size of this sketch are a 
+   * function of maxMapSize.
+   * @param dstMem the destination Memory, which will be initialized. It must have a capacity of 
+   * at least <i>getDirectBytes(8)</i> bytes. If its capacity is less than 
+   * <i>getDirectBytes(maxMapSize)</i> bytes, it must have a MemoryRequest to grow the hash map.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   */
+  public LongsSketch(final int maxMapSize, final Memory dstMem) {
+    this(initializeDirect(maxMapSize, dstMem));
+  }
+
+  /**
+   * Construct a Direct sketch from the given hash map, with the remainder of the state read from 
+   * the preamble of its Memory.
+   */
+  private LongsSketch(final DirectReversePurgeLongHashMap hashMap) {
+    final Memory mem = hashMap.getMemory();
+    lgMaxMapSize = extractLgMaxMapSize(mem.getLong(0));
+    if (hashMap.getLgLength() > lgMaxMapSize) {
+      throw new SketchesArgumentException("Possible Corruption: LgCurMapSize " 
+          + hashMap.getLgLength() + " > LgMaxMapSize " + lgMaxMapSize);
+    }
+    this.hashMap = hashMap;
+    curMapCap = hashMap.getCapacity();
+    streamLength = mem.getLong(STREAMLENGTH_LONG);
+    offset = mem.getLong(OFFSET_LONG);
+    sampleSize = Math.min(SAMPLE_SIZE, getMaximumMapCapacity());
+  }
+
+  /**
+   * Wraps the given Memory, which must hold a Direct sketch of this class, without copying it. 
+   * Updates of the returned sketch change the Memory in place.
+   * 
+   * <p>The Memory may be read only, see {@link Memory#asReadOnlyMemory()}. A sketch wrapped over 
+   * read-only Memory can be queried, for example with {@link #getEstimate(long)} and 
+   * {@link #getFrequentItems(ErrorType)}, but updating it throws a SketchesReadOnlyException. 
+   * A wrapped sketch must not be used while another sketch updates the same Memory.</p>
+   * 
+   * @param srcMem the Memory of a Direct sketch of this class. 
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return a sketch of this class backed by the given Memory.
+   */
+  public static LongsSketch wrap(final Memory srcMem) {
+    checkPreamble(srcMem);
+    if ((extractFlags(srcMem.getLong(0)) & HASH_MAP_FLAG_MASK) == 0) {
+      throw new SketchesArgumentException(
+          "Memory does not hold a Direct LongsSketch. Use getInstance(Memory).");
+    }
+    return new LongsSketch(new DirectReversePurgeLongHashMap(srcMem));
+  }
+
+  /**
+   * Returns the bytes of Memory that a Direct sketch requires for a hash map of the given size. 
+   * A Direct sketch in Memory of <i>getDirectBytes(maxMapSize)</i> bytes never needs to request 
+   * more Memory.
+   * 
+   * @param mapSize the size of the hash map, which must be a power of 2.
+   * @return the bytes of Memory that a Direct sketch requires for a hash map of the given size.
+   */
+  public static long getDirectBytes(final int mapSize) {
+    final int lgMapSize = Math.max(toLog2(mapSize, "mapSize"), LG_MIN_MAP_SIZE);
+    return DirectReversePurgeLongHashMap.getRequiredBytes(lgMapSize);
+  }
+
+  /**
+   * Initializes the preamble and an empty hash map of the initial size in the given Memory.
+   */
+  private static DirectReversePurgeLongHashMap initializeDirect(final int maxMapSize, 
+      final Memory dstMem) {
+    final int lgMaxMapSize = Math.max(toLog2(maxMapSize, "maxMapSize"), LG_MIN_MAP_SIZE);
+    final long reqBytes = DirectReversePurgeLongHashMap.getRequiredBytes(LG_MIN_MAP_SIZE);
+    if (dstMem.getCapacity() < reqBytes) {
+      throw new SketchesArgumentException(
+          "Memory too small: " + dstMem.getCapacity() + " < " + reqBytes);
+    }
+    long pre0 = 0L;
+    pre0 = insertPreLongs(Family.FREQUENCY.getMaxPreLongs(), pre0); //Byte 0
+    pre0 = insertSerVer(SER_VER, pre0);                     //Byte 1
+    pre0 = insertFamilyID(Family.FREQUENCY.getID(), pre0);  //Byte 2
+    pre0 = insertLgMaxMapSize(lgMaxMapSize, pre0);          //Byte 3
+    pre0 = insertLgCurMapSize(LG_MIN_MAP_SIZE, pre0);       //Byte 4
+    pre0 = insertFlags(HASH_MAP_FLAG_MASK, pre0);           //Byte 5
+    pre0 = insertSerDeId(ARRAY_OF_LONGS_SERDE_ID, pre0);    //Byte 6,7
+    dstMem.putLong(0, pre0);
+    dstMem.clear(8, reqBytes - 8); //active items, stream length, offset and the hash map
+    return new DirectReversePurgeLongHashMap(dstMem);
+  }
+
   /**
    * Returns a sketch instance of this class from the given srcMem, 
-   * which must be a Memory representation of this sketch class.
+   * which must be a Memory representation of this sketch class, either of 
+   * {@link #toByteArray()} or of {@link #toCompactByteArray()}. The Memory of a Direct sketch 
+   * is copied to the heap as well.
    * 
    * @param srcMem a Memory representation of a sketch of this class. 
    * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
    * @return a sketch instance of this class.
    */
   public static LongsSketch getInstance(final Memory srcMem) {
-    final long pre0 = PreambleUtil.checkPreambleSize(srcMem); //make sure preamble will fit
-    final int maxPreLongs = Family.FREQUENCY.getMaxPreLongs();
-
+    final boolean empty = checkPreamble(srcMem);
+    final long pre0 = srcMem.getLong(0);
     final int preLongs = extractPreLongs(pre0);         //Byte 0
-    final int serVer = extractSerVer(pre0);             //Byte 1
-    final int familyID = extractFamilyID(pre0);         //Byte 2
     final int lgMaxMapSize = extractLgMaxMapSize(pre0); //Byte 3
     final int lgCurMapSize = extractLgCurMapSize(pre0); //Byte 4
-    final boolean empty = (extractFlags(pre0) & EMPTY_FLAG_MASK) != 0; //Byte 5
-    final int serDeId = extractSerDeId(pre0);           //Byte 6
 
-    // Checks
-    final boolean preLongsEq1 = (preLongs == 1);        //Byte 0
-    final boolean preLongsEqMax = (preLongs == maxPreLongs);
-    if (!preLongsEq1 && !preLongsEqMax) {
-      throw new SketchesArgumentException(
-          "Possible Corruption: PreLongs must be 1 or " + maxPreLongs + ": " + preLongs);
-    }
-    if (serVer != SER_VER) {                            //Byte 1
-      throw new SketchesArgumentException(
-          "Possible Corruption: Ser Ver must be " + SER_VER + ": " + serVer);
-    }
-    final int actFamID = Family.FREQUENCY.getID();      //Byte 2
-    if (familyID != actFamID) {
-      throw new SketchesArgumentException(
-          "Possible Corruption: FamilyID must be " + actFamID + ": " + familyID);
-    }
-    if (empty ^ preLongsEq1) {                          //Byte 5 and Byte 0
-      throw new SketchesArgumentException(
-          "Possible Corruption: (PreLongs == 1) ^ Empty == True.");
+    if ((extractFlags(pre0) & HASH_MAP_FLAG_MASK) != 0) {
+      return new LongsSketch(lgMaxMapSize, lgCurMapSize).merge(wrap(srcMem));
     }
-    if (serDeId != ARRAY_OF_LONGS_SERDE_ID) {           //Byte 6,7
-      throw new SketchesArgumentException(
-          "Possible Corruption: serDeId incorrect: " + serDeId + " != " 
-              + ARRAY_OF_LONGS_SERDE_ID);
-    }
-
     if (empty) {
       return new LongsSketch(lgMaxMapSize, LG_MIN_MAP_SIZE);
     }
+    if (extractSerVer(pre0) == SER_VER_COMPACT) {
+      return getCompactInstance(srcMem, lgMaxMapSize, lgCurMapSize);
+    }
     //get full preamble
     final long[] preArr = new long[preLongs];
     srcMem.getLongArray(0, preArr, 0, preLongs);
@@ -273,6 +366,295 @@ public class LongsSketch {
     return fls;
   }
 
+  private static LongsSketch getCompactInstance(final Memory srcMem, final int lgMaxMapSize,
+      final int lgCurMapSize) {
+    final CompactFormat.Reader reader = new CompactFormat.Reader(srcMem, 8);
+    final int activeItems = reader.getVarInt();
+    final long streamLength = reader.getVarLong();
+    final long offset = reader.getVarLong();
+    //every count and every item takes at least one byte
+    if ((2L * activeItems) > (srcMem.getCapacity() - reader.getPosition())) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: Memory too small for active items: " + activeItems);
+    }
+    final long[] countArray = new long[activeItems];
+    for (int i = 0; i < activeItems; i++) {
+      countArray[i] = reader.getVarLong();
+    }
+    final long[] itemArray = getCompactItems(srcMem, reader, activeItems);
+    final LongsSketch fls = new LongsSketch(lgMaxMapSize, lgCurMapSize);
+    fls.offset = offset;
+    for (int i = 0; i < activeItems; i++) {
+      fls.update(itemArray[i], countArray[i]);
+    }
+    fls.streamLength = streamLength; //override streamLength due to updating
+    return fls;
+  }
+
+  /**
+   * Returns the items of the compact Memory representation, which follow the counts, either
+   * delta coded or, as written by an ItemsSketch with the ArrayOfLongsSerDe, as plain longs.
+   */
+  private static long[] getCompactItems(final Memory srcMem, final CompactFormat.Reader reader,
+      final int activeItems) {
+    final long[] itemArray = new long[activeItems];
+    if (isDeltaCoded(srcMem, activeItems)) {
+      long item = unZigZag(reader.getVarLong());
+      itemArray[0] = item;
+      for (int i = 1; i < activeItems; i++) {
+        item += reader.getVarLong();
+        itemArray[i] = item;
+      }
+    } else {
+      final long itemsOffset = reader.getPosition();
+      final long reqBytes = itemsOffset + ((long) activeItems << 3);
+      if (srcMem.getCapacity() < reqBytes) {
+        throw new SketchesArgumentException("Possible Corruption: Memory too small: "
+            + srcMem.getCapacity() + " < " + reqBytes);
+      }
+      srcMem.getLongArray(itemsOffset, itemArray, 0, activeItems);
+    }
+    return itemArray;
+  }
+
+  /**
+   * Returns the sum of the frequencies in the stream seen by the sketch from the given srcMem,
+   * which must be a Memory representation of this sketch class, without deserializing it.
+   * 
+   * @param srcMem a Memory representation of a sketch of this class. 
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return the sum of the frequencies in the stream seen by the sketch
+   */
+  public static long getStreamLength(final Memory srcMem) {
+    if (checkPreamble(srcMem)) { return 0; }
+    return (isCompact(srcMem)) ? compactReader(srcMem, 1).getVarLong()
+        : srcMem.getLong(STREAMLENGTH_LONG);
+  }
+
+  /**
+   * Returns the upper bound on the maximum error of any estimate of the sketch in the given 
+   * srcMem, which must be a Memory representation of this sketch class, without deserializing it.
+   * 
+   * @param srcMem a Memory representation of a sketch of this class. 
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return An upper bound on the maximum error of getEstimate(item) for any item.
+   */
+  public static long getMaximumError(final Memory srcMem) {
+    return (checkPreamble(srcMem)) ? 0 : getOffset(srcMem);
+  }
+
+  /**
+   * Returns the number of active items of the sketch in the given srcMem, which must be a 
+   * Memory representation of this sketch class, without deserializing it.
+   * 
+   * @param srcMem a Memory representation of a sketch of this class. 
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return the number of active items in the sketch.
+   */
+  public static int getNumActiveItems(final Memory srcMem) {
+    if (checkPreamble(srcMem)) { return 0; }
+    return (isCompact(srcMem)) ? compactReader(srcMem, 0).getVarInt()
+        : srcMem.getInt(ACTIVE_ITEMS_INT);
+  }
+
+  /**
+   * Gets the estimate of the frequency of the given item from the given srcMem, which must be 
+   * a Memory representation of this sketch class, without deserializing it. The serialized 
+   * items are not hashed, so this is a linear scan of the items in place, which is still 
+   * much cheaper than rebuilding the hash map of the sketch for a single query. The Memory of 
+   * a Direct sketch is searched through its hash map.
+   * 
+   * @param srcMem a Memory representation of a sketch of this class. 
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param item the given item
+   * @return the estimate of the frequency of the given item
+   */
+  public static long getEstimate(final Memory srcMem, final long item) {
+    final long itemCount = getItemCount(srcMem, item);
+    return (itemCount > 0) ? itemCount + getOffset(srcMem) : 0;
+  }
+
+  /**
+   * Gets the guaranteed upper bound frequency of the given item from the given srcMem, which 
+   * must be a Memory representation of this sketch class, without deserializing it.
+   * 
+   * @param srcMem a Memory representation of a sketch of this class. 
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param item the given item
+   * @return the guaranteed upper bound frequency of the given item.
+   */
+  public static long getUpperBound(final Memory srcMem, final long item) {
+    final long itemCount = getItemCount(srcMem, item);
+    return (itemCount < 0) ? 0 : itemCount + getOffset(srcMem);
+  }
+
+  /**
+   * Gets the guaranteed lower bound frequency of the given item from the given srcMem, which 
+   * must be a Memory representation of this sketch class, without deserializing it.
+   * 
+   * @param srcMem a Memory representation of a sketch of this class. 
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param item the given item.
+   * @return the guaranteed lower bound frequency of the given item.
+   */
+  public static long getLowerBound(final Memory srcMem, final long item) {
+    return Math.max(getItemCount(srcMem, item), 0);
+  }
+
+  /**
+   * Returns the count of the given item in the given Memory representation, zero if the item 
+   * is not active, or -1 if the sketch is empty.
+   */
+  private static long getItemCount(final Memory srcMem, final long item) {
+    if (checkPreamble(srcMem)) { return -1; }
+    if ((extractFlags(srcMem.getLong(0)) & HASH_MAP_FLAG_MASK) != 0) {
+      return DirectReversePurgeLongHashMap.get(srcMem, item);
+    }
+    if (isCompact(srcMem)) {
+      return getCompactItemCount(srcMem, item);
+    }
+    final int preBytes = Family.FREQUENCY.getMaxPreLongs() << 3;
+    final int activeItems = srcMem.getInt(ACTIVE_ITEMS_INT);
+    final long reqBytes = preBytes + ((long) activeItems << 4);
+    if (srcMem.getCapacity() < reqBytes) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: Memory too small: " + srcMem.getCapacity() + " < " + reqBytes);
+    }
+    //the counts are followed by the items in the same order
+    final long itemsOffset = preBytes + ((long) activeItems << 3);
+    for (int i = 0; i < activeItems; i++) {
+      if (srcMem.getLong(itemsOffset + (i << 3)) == item) {
+        return srcMem.getLong(preBytes + (i << 3));
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the count of the given item in the given compact Memory representation, or zero if
+   * the item is not active. Delta coded items are in ascending order, so their scan stops at
+   * the first item that is not smaller than the given item.
+   */
+  private static long getCompactItemCount(final Memory srcMem, final long item) {
+    final CompactFormat.Reader reader = compactReader(srcMem, 0);
+    final int activeItems = reader.getVarInt();
+    reader.getVarLong(); //stream length
+    reader.getVarLong(); //offset
+    final long countsOffset = reader.getPosition();
+    for (int i = 0; i < activeItems; i++) { reader.getVarLong(); } //skip the counts
+    int index = -1;
+    if (isDeltaCoded(srcMem, activeItems)) {
+      long current = 0;
+      for (int i = 0; i < activeItems; i++) {
+        current = (i == 0) ? unZigZag(reader.getVarLong()) : current + reader.getVarLong();
+        if (current >= item) {
+          index = (current == item) ? i : -1;
+          break;
+        }
+      }
+    } else {
+      final long itemsOffset = reader.getPosition();
+      final long reqBytes = itemsOffset + ((long) activeItems << 3);
+      if (srcMem.getCapacity() < reqBytes) {
+        throw new SketchesArgumentException("Possible Corruption: Memory too small: "
+            + srcMem.getCapacity() + " < " + reqBytes);
+      }
+      for (int i = 0; i < activeItems; i++) {
+        if (srcMem.getLong(itemsOffset + ((long) i << 3)) == item) {
+          index = i;
+          break;
+        }
+      }
+    }
+    if (index < 0) { return 0; }
+    final CompactFormat.Reader countReader = new CompactFormat.Reader(srcMem, countsOffset);
+    for (int i = 0; i < index; i++) { countReader.getVarLong(); } //skip the preceding counts
+    return countReader.getVarLong();
+  }
+
+  /**
+   * Returns true if the items of the given compact Memory representation are delta coded, which
+   * requires at least one active item for the first, zigzag coded item.
+   */
+  private static boolean isDeltaCoded(final Memory srcMem, final int activeItems) {
+    if ((extractFlags(srcMem.getLong(0)) & DELTA_KEYS_FLAG_MASK) == 0) { return false; }
+    if (activeItems == 0) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: Delta coded items require at least one active item.");
+    }
+    return true;
+  }
+
+  private static boolean isCompact(final Memory srcMem) {
+    return extractSerVer(srcMem.getLong(0)) == SER_VER_COMPACT;
+  }
+
+  /**
+   * Returns a reader of the compact Memory representation that has skipped the given number of
+   * varints of active items, stream length and offset.
+   */
+  private static CompactFormat.Reader compactReader(final Memory srcMem, final int skip) {
+    final CompactFormat.Reader reader = new CompactFormat.Reader(srcMem, 8);
+    for (int i = 0; i < skip; i++) { reader.getVarLong(); }
+    return reader;
+  }
+
+  private static long getOffset(final Memory srcMem) {
+    return (isCompact(srcMem)) ? compactReader(srcMem, 2).getVarLong()
+        : srcMem.getLong(OFFSET_LONG);
+  }
+
+  /**
+   * Checks the preamble of the given Memory representation of a sketch of this class.
+   * 
+   * @param srcMem a Memory representation of a sketch of this class. 
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return true if the sketch is empty.
+   */
+  private static boolean checkPreamble(final Memory srcMem) {
+    final long pre0 = PreambleUtil.checkPreambleSize(srcMem); //make sure preamble will fit
+    final int maxPreLongs = Family.FREQUENCY.getMaxPreLongs();
+
+    final int preLongs = extractPreLongs(pre0);         //Byte 0
+    final int serVer = extractSerVer(pre0);             //Byte 1
+    final int familyID = extractFamilyID(pre0);         //Byte 2
+    final boolean empty = (extractFlags(pre0) & EMPTY_FLAG_MASK) != 0; //Byte 5
+    final int serDeId = extractSerDeId(pre0);           //Byte 6
+
+    // Checks
+    final boolean preLongsEq1 = (preLongs == 1);        //Byte 0
+    final boolean preLongsEqMax = (preLongs == maxPreLongs);
+    if (!preLongsEq1 && !preLongsEqMax) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: PreLongs must be 1 or " + maxPreLongs + ": " + preLongs);
+    }
+    final boolean compact = (serVer == SER_VER_COMPACT);
+    if ((serVer != SER_VER) && !compact) {              //Byte 1
+      throw new SketchesArgumentException("Possible Corruption: Ser Ver must be " + SER_VER
+          + " or " + SER_VER_COMPACT + ": " + serVer);
+    }
+    final int actFamID = Family.FREQUENCY.getID();      //Byte 2
+    if (familyID != actFamID) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: FamilyID must be " + actFamID + ": " + familyID);
+    }
+    if (compact) {                                      //Byte 5 and Byte 0
+      if (empty || !preLongsEq1) {
+        throw new SketchesArgumentException(
+            "Possible Corruption: Compact requires PreLongs == 1 and not Empty.");
+      }
+    } else if (empty ^ preLongsEq1) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: (PreLongs == 1) ^ Empty == True.");
+    }
+    if (serDeId != ARRAY_OF_LONGS_SERDE_ID) {           //Byte 6,7
+      throw new SketchesArgumentException(
+          "Possible Corruption: serDeId incorrect: " + serDeId + " != " 
+              + ARRAY_OF_LONGS_SERDE_ID);
+    }
+    return empty;
+  }
+
   /**
    * Returns a sketch instance of this class from the given String, 
    * which must be a String representation of this sketch class.
@@ -399,6 +781,67 @@ public class LongsSketch {
     return outArr;
   }
 
+  /**
+   * Returns a byte array representation of this sketch in the compact serialization, which is
+   * usually much smaller than that of {@link #toByteArray()}. The counts are stored as varints,
+   * and the items in ascending order as varints of the differences between consecutive items,
+   * so that small counts and items that are close together take only a byte or two each.
+   * The result is read by {@link #getInstance(Memory)} and by the static methods of this class
+   * that query a Memory representation in place, but not by an ItemsSketch. An empty sketch is
+   * serialized the same as by {@link #toByteArray()}.
+   * 
+   * <p>The items are copied out of the hash map in one pass, sorted with a radix sort that makes
+   * a pass only for the bytes in which the items differ, and written into an array sized from
+   * the largest count and the range of the items. Sorting the items takes most of the time, 
+   * so this method still takes about three times as long as {@link #toByteArray()}, which only
+   * copies the arrays of the hash map, and reading the result back takes somewhat longer as 
+   * well. Both are much faster than the String form. It pays off where the size matters more, 
+   * as for storage or the network.</p>
+   * @return a byte array representation of this sketch in the compact serialization
+   */
+  public byte[] toCompactByteArray() {
+    if (isEmpty()) {
+      return toByteArray();
+    }
+    final int activeItems = getNumActiveItems();
+    final long[] items = new long[activeItems];
+    final long[] counts = new long[activeItems];
+    hashMap.copyActive(items, counts);
+    CompactFormat.sortTandem(items, counts);
+    long countBits = 0;
+    for (int i = 0; i < activeItems; i++) {
+      countBits |= counts[i]; //the counts are positive, so this has the bit length of the max
+    }
+    //no count is longer than the max and no difference is longer than the range of the items
+    final long maxBytes = 8 + varLongBytes(activeItems) + varLongBytes(streamLength)
+        + varLongBytes(offset) + varLongBytes(zigZag(items[0]))
+        + ((long) activeItems * varLongBytes(countBits))
+        + ((long) (activeItems - 1) * varLongBytes(items[activeItems - 1] - items[0]));
+    final byte[] outArr = new byte[(int) maxBytes];
+
+    long pre0 = 0L;
+    pre0 = insertPreLongs(1, pre0);                         //Byte 0
+    pre0 = insertSerVer(SER_VER_COMPACT, pre0);             //Byte 1
+    pre0 = insertFamilyID(Family.FREQUENCY.getID(), pre0);  //Byte 2
+    pre0 = insertLgMaxMapSize(lgMaxMapSize, pre0);          //Byte 3
+    pre0 = insertLgCurMapSize(hashMap.getLgLength(), pre0); //Byte 4
+    pre0 = insertFlags(DELTA_KEYS_FLAG_MASK, pre0);         //Byte 5
+    pre0 = insertSerDeId(ARRAY_OF_LONGS_SERDE_ID, pre0);    //Byte 6,7
+    new NativeMemory(outArr).putLong(0, pre0);
+
+    int pos = putVarLong(outArr, 8, activeItems);
+    pos = putVarLong(outArr, pos, streamLength);
+    pos = putVarLong(outArr, pos, offset);
+    for (int i = 0; i < activeItems; i++) {
+      pos = putVarLong(outArr, pos, counts[i]);
+    }
+    pos = putVarLong(outArr, pos, zigZag(items[0]));
+    for (int i = 1; i < activeItems; i++) {
+      pos = putVarLong(outArr, pos, items[i] - items[i - 1]);
+    }
+    return (pos == outArr.length) ? outArr : Arrays.copyOf(outArr, pos);
+  }
+
   /**
    * Update this sketch with an item and a frequency count of one.
    * @param item for which the frequency should be increased. 
@@ -419,20 +862,79 @@ public class LongsSketch {
     if (count < 0) {
       throw new SketchesArgumentException("Count may not be negative");
     }
-    this.streamLength += count;
     hashMap.adjustOrPutValue(item, count);
+    this.streamLength += count;
 
     if (getNumActiveItems() > curMapCap) { //over the threshold, we need to do something
-      if (hashMap.getLgLength() < lgMaxMapSize) { //below tgt size, we can grow
-        hashMap.resize(2 * hashMap.getLength());
-        curMapCap = hashMap.getCapacity();
-      } else { //At tgt size, must purge
-        offset += hashMap.purge(sampleSize);
-        if (getNumActiveItems() > getMaximumMapCapacity()) {
-          throw new SketchesStateException("Purge did not reduce active items.");
+      resizeOrPurge();
+    }
+    putDirectPreamble();
+  }
+
+  /**
+   * Update this sketch with an array of items, each with a frequency count of one. 
+   * This is equivalent to <i>update(items, null, items.length)</i>.
+   * 
+   * @param items the items for which the frequencies should be increased.
+   * @see #update(long[], long[], int)
+   */
+  public void update(final long[] items) {
+    if (items == null) return;
+    update(items, null, items.length);
+  }
+
+  /**
+   * Update this sketch with the first <i>n</i> items of the given array and their frequency 
+   * counts. The result is identical to updating the items one at a time, but the per-update 
+   * bookkeeping of the sketch, including the writes to the preamble of a Direct sketch, is done 
+   * once per batch.
+   * 
+   * @param items the items for which the frequencies should be increased.
+   * @param counts the amounts by which the frequencies of the items should be increased, 
+   * or null for a count of one for every item. A count of zero is a no-op, and a negative count 
+   * will throw an exception before the sketch is changed.
+   * @param n the number of items and counts to process from the start of the arrays.
+   */
+  public void update(final long[] items, final long[] counts, final int n) {
+    if ((n < 0) || (n > items.length) || ((counts != null) && (n > counts.length))) {
+      throw new SketchesArgumentException("n must be in [0, length of the arrays]: " + n);
+    }
+    if (counts != null) {
+      for (int i = 0; i < n; i++) {
+        if (counts[i] < 0) {
+          throw new SketchesArgumentException("Count may not be negative");
         }
       }
     }
+    if (n == 0) return;
+    long batchCount = 0;
+    for (int i = 0; i < n; i++) {
+      final long count = (counts == null) ? 1 : counts[i];
+      if (count == 0) continue;
+      hashMap.adjustOrPutValue(items[i], count);
+      batchCount += count;
+      if (hashMap.getNumActive() > curMapCap) { //over the threshold, we need to do something
+        resizeOrPurge();
+      }
+    }
+    this.streamLength += batchCount;
+    putDirectPreamble();
+  }
+
+  /**
+   * Grows the hash map if it is below its maximum size, otherwise purges it. Called when the 
+   * number of active items is over the current threshold.
+   */
+  private void resizeOrPurge() {
+    if (hashMap.getLgLength() < lgMaxMapSize) { //below tgt size, we can grow
+      hashMap.resize(2 * hashMap.getLength());
+      curMapCap = hashMap.getCapacity();
+    } else { //At tgt size, must purge
+      offset += hashMap.purge(sampleSize);
+      if (getNumActiveItems() > getMaximumMapCapacity()) {
+        throw new SketchesStateException("Purge did not reduce active items.");
+      }
+    }
   }
 
   /**
@@ -455,9 +957,76 @@ public class LongsSketch {
     }
     this.offset += other.offset;
     this.streamLength = streamLen; //corrected streamLength
+    putDirectPreamble();
     return this;
   }
 
+  /**
+   * Merges the given sketches into a new sketch on the heap, see {@link ParallelMerge}. 
+   * Instead of replaying the sketches through update one at a time, the working hash map is 
+   * sized once from the combined number of active items, up to 2^LG_MERGE_MAP_FACTOR times the 
+   * maximum map size of the result. Whenever it fills, it is purged down to half of the maximum 
+   * capacity of the result, and at the end down to the maximum capacity of the result. 
+   * Null sketches are ignored.
+   * 
+   * @param sketches the sketches to merge
+   * @param lgMaxMapSize Log2 of the maximum map size of the result
+   * @return a new sketch holding the merge of the given sketches
+   */
+  static LongsSketch mergeAll(final List<? extends LongsSketch> sketches, 
+      final int lgMaxMapSize) {
+    final int lgMaxMapSz = Math.max(lgMaxMapSize, LG_MIN_MAP_SIZE);
+    final double loadFactor = ReversePurgeLongHashMap.getLoadFactor();
+    final int maxMapCap = (int) ((1 << lgMaxMapSz) * loadFactor);
+    long numActive = 0;
+    long streamLen = 0;
+    long offset = 0;
+    for (final LongsSketch sketch : sketches) {
+      if (sketch == null) continue;
+      numActive += sketch.getNumActiveItems();
+      streamLen += sketch.streamLength;
+      offset += sketch.offset;
+    }
+    final int lgMapSize = lgMapSizeFor(numActive, loadFactor, lgMaxMapSz + LG_MERGE_MAP_FACTOR);
+    final ReversePurgeLongHashMap map = new HeapReversePurgeLongHashMap(1 << lgMapSize);
+    for (final LongsSketch sketch : sketches) {
+      if (sketch == null) continue;
+      offset += mergeInto(map, sketch.hashMap, maxMapCap / 2);
+    }
+    offset += map.purgeTo(maxMapCap);
+
+    final LongsSketch result = 
+        new LongsSketch(lgMaxMapSz, lgMapSizeFor(map.getNumActive(), loadFactor, lgMaxMapSz));
+    final ReversePurgeLongHashMap.Iterator iter = map.iterator();
+    while (iter.next()) { //fits without a resize
+      result.hashMap.adjustOrPutValue(iter.getKey(), iter.getValue());
+    }
+    result.offset = offset;
+    result.streamLength = streamLen;
+    return result;
+  }
+
+  /**
+   * Adds the counters of the other hash map to the given working map, which is purged down to 
+   * the given number of counters whenever it fills. Kept out of mergeAll so that the JIT 
+   * compiles it as an ordinary method rather than as a loop of a method that runs once.
+   * 
+   * @return the total of the decrements of the purges
+   */
+  private static long mergeInto(final ReversePurgeLongHashMap map, 
+      final ReversePurgeLongHashMap other, final int purgeCap) {
+    final int mapCap = map.getCapacity();
+    long offset = 0;
+    final ReversePurgeLongHashMap.Iterator iter = other.iterator();
+    while (iter.next()) {
+      map.adjustOrPutValue(iter.getKey(), iter.getValue());
+      if (map.getNumActive() > mapCap) {
+        offset += map.purgeTo(purgeCap);
+      }
+    }
+    return offset;
+  }
+
   /**
    * Gets the estimate of the frequency of the given item. 
    * Note: The true frequency of a item would be the sum of the counts as a result of the 
@@ -720,11 +1289,32 @@ public class LongsSketch {
     return 6 * 8 + 16 * getNumActiveItems();
   }
 
+  /**
+   * Returns true if this sketch keeps its hash map in Memory.
+   * 
+   * @return true if this sketch keeps its hash map in Memory.
+   */
+  public boolean isDirect() {
+    return hashMap.getMemory() != null;
+  }
+
+  /**
+   * Returns the Memory of a Direct sketch, or null if this sketch is on the heap. The Memory is 
+   * replaced when the hash map grows beyond it, see {@link #getDirectBytes(int)}.
+   * 
+   * @return the Memory of a Direct sketch, or null if this sketch is on the heap.
+   */
+  public Memory getMemory() {
+    return hashMap.getMemory();
+  }
+
   /**
    * Resets this sketch to a virgin state.
    */
   public void reset() {
-    hashMap = new ReversePurgeLongHashMap(1 << LG_MIN_MAP_SIZE);
+    final Memory mem = hashMap.getMemory();
+    hashMap = (mem == null) ? new HeapReversePurgeLongHashMap(1 << LG_MIN_MAP_SIZE)
+        : initializeDirect(1 << lgMaxMapSize, mem);
     this.curMapCap = hashMap.getCapacity();
     this.offset = 0;
     this.streamLength = 0;
@@ -754,7 +1344,7 @@ public class LongsSketch {
     final int ignore = STR_PREAMBLE_TOKENS;
     final int numActive = Integer.parseInt(tokens[ignore]); 
     final int length = Integer.parseInt(tokens[ignore + 1]);
-    final ReversePurgeLongHashMap hashMap = new ReversePurgeLongHashMap(length);
+    final ReversePurgeLongHashMap hashMap = new HeapReversePurgeLongHashMap(length);
     int j = 2 + ignore;
     for (int i = 0; i < numActive; i++) {
       long key = Long.parseLong(tokens[j++]);
@@ -764,4 +1354,15 @@ public class LongsSketch {
     return hashMap;
   }
 
+  /**
+   * Writes the stream length and offset to the Memory of a Direct sketch.
+   */
+  private void putDirectPreamble() {
+    final Memory mem = hashMap.getMemory();
+    if (mem != null) {
+      mem.putLong(STREAMLENGTH_LONG, streamLength);
+      mem.putLong(OFFSET_LONG, offset);
+    }
+  }
+
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import static com.yahoo.sketches.Util.toLog2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.yahoo.sketches.SketchesArgumentException;
+
+/**
+ * Merges a large number of frequencies sketches in parallel with a fork-join reduction tree.
+ *
+ * <p>The list of sketches is split in halves until a range holds at most the batch size of
+ * sketches. Each such range is merged into a new sketch with a single working hash map, which
+ * is sized once from the combined number of active items, so that it does not resize, and which
+ * may hold up to twice the maximum map size of the result. When the working map fills, it is
+ * purged down to half of the maximum capacity of the result by decrementing all counts by the
+ * count ranked just below that, which frees most of the working map with one decision. The
+ * results of the two halves of a range are then merged the same way, up to the root.</p>
+ *
+ * <p>Each purge decrements at least half of the maximum capacity of counters by the amount it
+ * adds to the maximum error, as does the sampled median purge of update, so the result is within
+ * the same error bound as a sequential merge into a sketch of the same maximum map size, though
+ * not necessarily identical to it.</p>
+ *
+ * <p>The sketches must not be modified until the merge has completed.</p>
+ */
+public final class ParallelMerge {
+  static final int DEFAULT_BATCH_SIZE = 64;
+
+  private final ForkJoinPool pool;
+  private final int batchSize;
+
+  /**
+   * Construct this class with the given pool and the default batch size.
+   *
+   * @param pool the ForkJoinPool that runs the merge
+   */
+  public ParallelMerge(final ForkJoinPool pool) {
+    this(pool, DEFAULT_BATCH_SIZE);
+  }
+
+  ParallelMerge(final ForkJoinPool pool, final int batchSize) {
+    if (pool == null) {
+      throw new SketchesArgumentException("The ForkJoinPool must not be null.");
+    }
+    if (batchSize < 2) {
+      throw new SketchesArgumentException("The batch size must be at least two: " + batchSize);
+    }
+    this.pool = pool;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Merges all of the given sketches into a new LongsSketch on the Java heap.
+   * A null sketch is interpreted as an empty sketch.
+   *
+   * @param sketches the sketches to merge, which may be Direct
+   * @param maxMapSize the maximum map size of the result, which must be a power of 2.
+   * See {@link LongsSketch#LongsSketch(int)}.
+   * @return the merge of the given sketches
+   */
+  public LongsSketch mergeLongs(final List<? extends LongsSketch> sketches,
+      final int maxMapSize) {
+    final int lgMaxMapSize = toLog2(maxMapSize, "maxMapSize");
+    return pool.invoke(new LongsTask(randomAccess(sketches), 0, sketches.size(), lgMaxMapSize));
+  }
+
+  /**
+   * Merges all of the given sketches into a new ItemsSketch on the Java heap.
+   * A null sketch is interpreted as an empty sketch.
+   *
+   * @param <T> The type of item that the sketches track
+   * @param sketches the sketches to merge
+   * @param maxMapSize the maximum map size of the result, which must be a power of 2.
+   * See {@link ItemsSketch#ItemsSketch(int)}.
+   * @return the merge of the given sketches
+   */
+  public <T> ItemsSketch<T> mergeItems(final List<? extends ItemsSketch<T>> sketches,
+      final int maxMapSize) {
+    final int lgMaxMapSize = toLog2(maxMapSize, "maxMapSize");
+    return pool.invoke(
+        new ItemsTask<T>(randomAccess(sketches), 0, sketches.size(), lgMaxMapSize));
+  }
+
+  private static <S> List<? extends S> randomAccess(final List<? extends S> sketches) {
+    return (sketches instanceof RandomAccess) ? sketches : new ArrayList<S>(sketches);
+  }
+
+  private final class LongsTask extends RecursiveTask<LongsSketch> {
+    private static final long serialVersionUID = 1L;
+    private final List<? extends LongsSketch> sketches;
+    private final int lo;
+    private final int hi;
+    private final int lgMaxMapSize;
+
+    LongsTask(final List<? extends LongsSketch> sketches, final int lo, final int hi,
+        final int lgMaxMapSize) {
+      this.sketches = sketches;
+      this.lo = lo;
+      this.hi = hi;
+      this.lgMaxMapSize = lgMaxMapSize;
+    }
+
+    @Override
+    protected LongsSketch compute() {
+      if ((hi - lo) <= batchSize) {
+        return LongsSketch.mergeAll(sketches.subList(lo, hi), lgMaxMapSize);
+      }
+      final int mid = (lo + hi) >>> 1;
+      final LongsTask left = new LongsTask(sketches, lo, mid, lgMaxMapSize);
+      left.fork();
+      final LongsSketch right = new LongsTask(sketches, mid, hi, lgMaxMapSize).compute();
+      return LongsSketch.mergeAll(Arrays.asList(left.join(), right), lgMaxMapSize);
+    }
+  }
+
+  private final class ItemsTask<T> extends RecursiveTask<ItemsSketch<T>> {
+    private static final long serialVersionUID = 1L;
+    private final List<? extends ItemsSketch<T>> sketches;
+    private final int lo;
+    private final int hi;
+    private final int lgMaxMapSize;
+
+    ItemsTask(final List<? extends ItemsSketch<T>> sketches, final int lo, final int hi,
+        final int lgMaxMapSize) {
+      this.sketches = sketches;
+      this.lo = lo;
+      this.hi = hi;
+      this.lgMaxMapSize = lgMaxMapSize;
+    }
+
+    @Override
+    protected ItemsSketch<T> compute() {
+      if ((hi - lo) <= batchSize) {
+        return ItemsSketch.mergeAll(sketches.subList(lo, hi), lgMaxMapSize);
+      }
+      final int mid = (lo + hi) >>> 1;
+      final ItemsTask<T> left = new ItemsTask<T>(sketches, lo, mid, lgMaxMapSize);
+      left.fork();
+      final ItemsSketch<T> right = new ItemsTask<T>(sketches, mid, hi, lgMaxMapSize).compute();
+      return ItemsSketch.mergeAll(Arrays.asList(left.join(), right), lgMaxMapSize);
+    }
+  }
+}
@@ -33,6 +33,21 @@ import com.yahoo.sketches.memory.Memory;
  * An empty FrequentItems only requires 8 bytes. All others require 32 bytes of preamble.
  * </p>
  * 
+ * <p>
+ * The image of a Direct LongsSketch always has 32 bytes of preamble, never sets the EMPTY flag
+ * and sets the HASH_MAP flag instead. It is followed by the keys, values and states of the hash map
+ * of the sketch with the length given by LgCur, see DirectReversePurgeLongHashMap.
+ * </p>
+ * 
+ * <p>
+ * The compact image of a sketch has SerVer 2 and only the first preamble long, which is not
+ * EMPTY. It is followed by the varints of ActiveItems, streamLength, offset and the values, see
+ * CompactFormat, and then by the keys in the same order. An ItemsSketch stores the keys as
+ * serialized by its SerDe. A LongsSketch sets the DELTA_KEYS flag and stores its keys in
+ * ascending order as the zigzag varint of the first key followed by the varints of the
+ * differences to the previous key.
+ * </p>
+ * 
  * <pre>
  *  * Long || Start Byte Adr:
  * Adr: 
@@ -69,9 +84,12 @@ final class PreambleUtil {
 
   // flag bit masks
   static final int EMPTY_FLAG_MASK      = 4;
+  static final int HASH_MAP_FLAG_MASK   = 8;
+  static final int DELTA_KEYS_FLAG_MASK = 16;
 
   // Specific values for this implementation
   static final int SER_VER = 1;
+  static final int SER_VER_COMPACT = 2;
 
   /**
    * Returns a human readable string summary of the preamble state of the given Memory. 
@@ -94,9 +112,12 @@ final class PreambleUtil {
 
     final String flagsStr = zeroPad(Integer.toBinaryString(flags), 8) + ", " + (flags);
     final boolean empty = (flags & EMPTY_FLAG_MASK) > 0;
+    final boolean hashMap = (flags & HASH_MAP_FLAG_MASK) > 0;
+    final boolean deltaKeys = (flags & DELTA_KEYS_FLAG_MASK) > 0;
     final int maxMapSize = 1 << lgMaxMapSize;
     final int curMapSize = 1 << lgCurMapSize;
     final int maxPreLongs = Family.FREQUENCY.getMaxPreLongs();
+    final boolean compact = (serVer == SER_VER_COMPACT) && !empty;
 
     //Assumed if preLongs == 1
     int activeItems = 0;
@@ -112,6 +133,11 @@ final class PreambleUtil {
       activeItems =  extractActiveItems(preArr[1]);
       streamLength = preArr[2];
       offset = preArr[3];
+    } else if (compact) {
+      final CompactFormat.Reader reader = new CompactFormat.Reader(srcMem, 8);
+      activeItems = reader.getVarInt();
+      streamLength = reader.getVarLong();
+      offset = reader.getVarLong();
     }
     
     final StringBuilder sb = new StringBuilder();
@@ -124,9 +150,15 @@ final class PreambleUtil {
       .append("Byte  4: CurMapSize           : ").append(curMapSize).append(LS)
       .append("Byte  5: Flags Field          : ").append(flagsStr).append(LS)
       .append("  EMPTY                       : ").append(empty).append(LS)
+      .append("  HASH_MAP                    : ").append(hashMap).append(LS)
+      .append("  DELTA_KEYS                  : ").append(deltaKeys).append(LS)
       .append("Byte  6: Freq Sketch Type     : ").append(type).append(LS);
       
-    if (preLongs == 1) {
+    if (compact) {
+      sb.append("Varint     : ActiveItems    : ").append(activeItems).append(LS);
+      sb.append("Varint     : StreamLength   : ").append(streamLength).append(LS)
+        .append("Varint     : Offset         : ").append(offset).append(LS);
+    } else if (preLongs == 1) {
       sb.append(" --ABSENT, ASSUMED:").append(LS);
     } else { //preLongs == maxPreLongs
       sb.append("Bytes 8-11 : ActiveItems    : ").append(activeItems).append(LS);
@@ -135,8 +167,10 @@ final class PreambleUtil {
     }
     
     sb.append(  "Preamble Bytes                : ").append(preLongs * 8).append(LS);
-    sb.append(  "TOTAL Sketch Bytes            : ").append((preLongs + activeItems * 2) << 3)
-      .append(LS)
+    final long totalBytes = (hashMap) ? DirectReversePurgeLongHashMap.getRequiredBytes(lgCurMapSize)
+        : (compact) ? srcMem.getCapacity() //the varints are of variable length
+        : (preLongs + activeItems * 2) << 3;
+    sb.append(  "TOTAL Sketch Bytes            : ").append(totalBytes).append(LS)
       .append("### END FREQUENCY SKETCH PREAMBLE SUMMARY").append(LS);
     return sb.toString();
   }
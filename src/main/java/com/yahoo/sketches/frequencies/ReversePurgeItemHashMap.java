@@ -285,6 +285,25 @@ class ReversePurgeItemHashMap<T> {
     return val;
   }
 
+  /**
+   * Decrements all counts by the (maxActive + 1)-th largest count and throws out all counters 
+   * that are no longer positive, which leaves at most maxActive counters. As at least 
+   * maxActive + 1 counters are decremented by the returned value, the offset this adds stays 
+   * within the error bound of a sketch with maxActive counters. Used by the multi-way merge.
+   * @param maxActive the maximum number of counters to retain
+   * @return the value by which all counts were decremented, which is zero if there are no more 
+   * than maxActive counters.
+   */
+  long purgeTo(final int maxActive) {
+    final int numActive = getNumActive();
+    if (numActive <= maxActive) return 0;
+    final long[] samples = getActiveValues();
+    final long val = QuickSelect.select(samples, 0, numActive - 1, numActive - maxActive - 1);
+    adjustAllValuesBy(-1 * val);
+    keepOnlyPositiveCounts();
+    return val;
+  }
+
   private void hashDelete(int deleteProbe) {
     // Looks ahead in the table to search for another
     // item to move to this location
@@ -6,53 +6,32 @@
 package com.yahoo.sketches.frequencies;
 
 import static com.yahoo.sketches.Util.LS;
-import static com.yahoo.sketches.Util.toLog2;
-import static com.yahoo.sketches.frequencies.Util.hash;
 
 import com.yahoo.sketches.QuickSelect;
 import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
 
 /**
- * Implements a linear-probing based hash map of (key, value) pairs and is distinguished by a 
- * "reverse" purge operation that removes all keys in the map whose associated values are &le; 0 
+ * Implements a linear-probing based hash map of (key, value) pairs and is distinguished by a
+ * "reverse" purge operation that removes all keys in the map whose associated values are &le; 0
  * and is performed in reverse, starting at the "back" of the array and moving toward the front.
- * 
+ *
+ * <p>The map is either kept on the heap, see {@link HeapReversePurgeLongHashMap}, or in a
+ * Memory, see {@link DirectReversePurgeLongHashMap}. Both place the keys in the same cells for
+ * the same sequence of operations.</p>
+ *
  * @author Edo Liberty
  * @author Justin Thaler
  * @author Lee Rhodes
  */
-class ReversePurgeLongHashMap {
-  private static final double LOAD_FACTOR = 0.75;
-  private static final int DRIFT_LIMIT = 1024; //used only in stress testing
-  private int lgLength;
-  private int loadThreshold;
-  private long[] keys;
-  private long[] values;
-  private short[] states;
-  private int numActive = 0;
-
-  /**
-   * Constructor will create arrays of length mapSize, which must be a power of two.
-   * This restriction was made to ensure fast hashing.
-   * The protected variable this.loadThreshold is then set to the largest value that 
-   * will not overload the hash table.
-   * 
-   * @param mapSize This determines the number of cells in the arrays underlying the 
-   * HashMap implementation and must be a power of 2. 
-   * The hash table will be expected to store LOAD_FACTOR * mapSize (key, value) pairs.
-   */
-  ReversePurgeLongHashMap(final int mapSize) {
-    lgLength = toLog2(mapSize, "mapSize");
-    this.loadThreshold = (int) (mapSize * LOAD_FACTOR);
-    this.keys = new long[mapSize];
-    this.values = new long[mapSize];
-    this.states = new short[mapSize];
-  }
+abstract class ReversePurgeLongHashMap {
+  static final double LOAD_FACTOR = 0.75;
+  static final int DRIFT_LIMIT = 1024; //used only in stress testing
 
   /**
    * Returns an instance of this class from the given String,
    * which must be a String representation of this class.
-   * 
+   *
    * @param string a String representation of this class.
    * @return an instance of this class.
    */
@@ -64,7 +43,7 @@ class ReversePurgeLongHashMap {
     }
     final int numActive = Integer.parseInt(tokens[0]);
     final int length = Integer.parseInt(tokens[1]);
-    final ReversePurgeLongHashMap table = new ReversePurgeLongHashMap(length);
+    final ReversePurgeLongHashMap table = new HeapReversePurgeLongHashMap(length);
     int j = 2;
     for (int i = 0; i < numActive; i++) {
       final long key = Long.parseLong(tokens[j++]);
@@ -73,32 +52,33 @@ class ReversePurgeLongHashMap {
     }
     return table;
   }
-  
+
   //Serialization
-  
+
   /**
    * Returns a String representation of this hash map.
-   * 
+   *
    * @return a String representation of this hash map.
    */
   String serializeToString() {
     final StringBuilder sb = new StringBuilder();
-    sb.append(String.format("%d,%d,", numActive, keys.length));
+    final int length = getLength();
+    sb.append(String.format("%d,%d,", getNumActive(), length));
 
-    for (int i = 0; i < keys.length; i++) {
-      if (states[i] != 0) {
-        sb.append(String.format("%d,%d,", keys[i], values[i]));
+    for (int i = 0; i < length; i++) {
+      if (getState(i) != 0) {
+        sb.append(String.format("%d,%d,", getKey(i), getValue(i)));
       }
     }
     return sb.toString();
   }
-  
+
   /**
    * @param probe location in the hash table array
    * @return true if the cell in the array contains an active key
    */
   boolean isActive(final int probe) {
-    return (states[probe] > 0);
+    return (getState(probe) > 0);
   }
 
   /**
@@ -107,96 +87,40 @@ class ReversePurgeLongHashMap {
    * @return the positive value the key corresponds to or zero if if the key is not found in the
    * hash map.
    */
-  long get(final long key) {
-    final int probe = hashProbe(key);
-    if (states[probe] > 0) {
-      assert (keys[probe] == key);
-      return values[probe];
-    }
-    return 0;
-  }
-  
+  abstract long get(long key);
+
   /**
    * Increments the value mapped to the key if the key is present in the map. Otherwise,
    * the key is inserted with the putAmount.
-   * 
+   *
    * @param key the key of the value to increment
    * @param adjustAmount the amount by which to increment the value
    */
-  void adjustOrPutValue(final long key, final long adjustAmount) {
-    final int arrayMask = keys.length - 1;
-    int probe = (int) hash(key) & arrayMask;
-    int drift = 1;
-    while (states[probe] != 0 && keys[probe] != key) {
-      probe = (probe + 1) & arrayMask;
-      drift++;
-      //only used for theoretical analysis
-      assert (drift < DRIFT_LIMIT) : "drift: " + drift + " >= DRIFT_LIMIT";
-    }
+  abstract void adjustOrPutValue(long key, long adjustAmount);
 
-    if (states[probe] == 0) {
-      // adding the key to the table the value
-      assert (numActive <= loadThreshold) 
-        : "numActive: " + numActive + " > loadThreshold : " + loadThreshold;
-      keys[probe] = key;
-      values[probe] = adjustAmount;
-      states[probe] = (short) drift;
-      numActive++;
-    } else {
-      // adjusting the value of an existing key
-      assert (keys[probe] == key);
-      values[probe] += adjustAmount;
-    }
-  }
-  
   /**
    * Processes the map arrays and retains only keys with positive counts.
    */
-  void keepOnlyPositiveCounts() {
-    // Starting from the back, find the first empty cell, 
-    //  which establishes the high end of a cluster.
-    int firstProbe = keys.length - 1;
-    while (states[firstProbe] > 0) { 
-      firstProbe--;
-    }
-    // firstProbe keeps track of this point.
-    // When we find the next non-empty cell, we know we are at the high end of a cluster
-    // Work towards the front; delete any non-positive entries.
-    for (int probe = firstProbe; probe-- > 0;) {
-      if (states[probe] > 0 && values[probe] <= 0) {
-        hashDelete(probe); //does the work of deletion and moving higher items towards the front.
-        numActive--;
-      }
-    }
-    //now work on the first cluster that was skipped.
-    for (int probe = keys.length; probe-- > firstProbe;) {
-      if (states[probe] > 0 && values[probe] <= 0) {
-        hashDelete(probe);
-        numActive--;
-      }
-    }
-  }
+  abstract void keepOnlyPositiveCounts();
 
   /**
    * @param adjustAmount value by which to shift all values. Only keys corresponding to positive
    * values are retained.
    */
-  void adjustAllValuesBy(final long adjustAmount) {
-    for (int i = keys.length; i-- > 0; ) {
-      values[i] += adjustAmount;
-    }
-  }
+  abstract void adjustAllValuesBy(long adjustAmount);
 
   /**
    * @return an array containing the active keys in the hash map.
    */
   long[] getActiveKeys() {
+    final int numActive = getNumActive();
     if (numActive == 0) return null;
     final long[] returnedKeys = new long[numActive];
     int j = 0;
-    for (int i = 0; i < keys.length; i++) {
+    final int length = getLength();
+    for (int i = 0; i < length; i++) {
       if (isActive(i)) {
-        returnedKeys[j] = keys[i];
+        returnedKeys[j] = getKey(i);
         j++;
       }
     }
@@ -208,12 +132,14 @@ class ReversePurgeLongHashMap {
    * @return an array containing the values corresponding. to the active keys in the hash
    */
   long[] getActiveValues() {
+    final int numActive = getNumActive();
     if (numActive == 0) return null;
     final long[] returnedValues = new long[numActive];
     int j = 0;
-    for (int i = 0; i < values.length; i++) {
+    final int length = getLength();
+    for (int i = 0; i < length; i++) {
       if (isActive(i)) {
-        returnedValues[j] = values[i];
+        returnedValues[j] = getValue(i);
         j++;
       }
     }
@@ -221,49 +147,74 @@ class ReversePurgeLongHashMap {
     return returnedValues;
   }
 
-  // assume newSize is power of 2
-  void resize(final int newSize) {
-    final long[] oldKeys = keys;
-    final long[] oldValues = values;
-    final short[] oldStates = states;
-    keys = new long[newSize];
-    values = new long[newSize];
-    states = new short[newSize];
-    loadThreshold = (int) (newSize * LOAD_FACTOR);
-    lgLength = Integer.numberOfTrailingZeros(newSize);
-    numActive = 0;
-    for (int i = 0; i < oldKeys.length; i++) {
-      if (oldStates[i] > 0) {
-        adjustOrPutValue(oldKeys[i], oldValues[i]);
+  /**
+   * Copies the active keys and their values into the given arrays in one pass over the map,
+   * in the same order as {@link #getActiveKeys()} and {@link #getActiveValues()}.
+   * @param activeKeys receives the active keys, must have a length of at least getNumActive()
+   * @param activeValues receives the values of the active keys, in the same order
+   */
+  void copyActive(final long[] activeKeys, final long[] activeValues) {
+    int j = 0;
+    final int length = getLength();
+    for (int i = 0; i < length; i++) {
+      if (isActive(i)) {
+        activeKeys[j] = getKey(i);
+        activeValues[j] = getValue(i);
+        j++;
       }
     }
+    assert (j == getNumActive());
   }
 
+  // assume newSize is power of 2
+  abstract void resize(int newSize);
+
   /**
    * @return length of hash table internal arrays
    */
   int getLength() {
-    return keys.length;
+    return 1 << getLgLength();
   }
 
-  int getLgLength() {
-    return lgLength;
-  }
+  abstract int getLgLength();
 
   /**
    * @return capacity of hash table internal arrays (i.e., max number of keys that can be stored)
    */
-  int getCapacity() {
-    return loadThreshold;
-  }
+  abstract int getCapacity();
 
   /**
    * @return number of populated keys
    */
-  int getNumActive() {
-    return numActive;
+  abstract int getNumActive();
+
+  /**
+   * Returns the Memory that holds this hash map, or null if it is on the heap.
+   * @return the Memory that holds this hash map, or null if it is on the heap.
+   */
+  Memory getMemory() {
+    return null;
   }
 
+  /**
+   * @param probe location in the hash table array
+   * @return the key in the given cell
+   */
+  abstract long getKey(int probe);
+
+  /**
+   * @param probe location in the hash table array
+   * @return the value in the given cell
+   */
+  abstract long getValue(int probe);
+
+  /**
+   * @param probe location in the hash table array
+   * @return the state of the given cell, which is zero if the cell is empty, or else one plus the
+   * distance of the key from its hash position.
+   */
+  abstract short getState(int probe);
+
   /**
    * Returns the hash table as a human readable string.
    */
@@ -275,9 +226,10 @@ class ReversePurgeLongHashMap {
     sb.append("ReversePurgeLongHashMap:").append(LS);
     sb.append(String.format(hfmt, "Index","States","Values","Keys")).append(LS);
 
-    for (int i = 0; i < keys.length; i++) {
-      if (states[i] <= 0) continue;
-      sb.append(String.format(fmt, i, states[i], values[i], keys[i])).append(LS);
+    final int length = getLength();
+    for (int i = 0; i < length; i++) {
+      if (getState(i) <= 0) continue;
+      sb.append(String.format(fmt, i, getState(i), getValue(i), getKey(i))).append(LS);
     }
     return sb.toString();
   }
@@ -307,7 +259,7 @@ class ReversePurgeLongHashMap {
 
     while (numSamples < limit) {
       if (isActive(i)) {
-        samples[numSamples] = values[i];
+        samples[numSamples] = getValue(i);
         numSamples++;
       }
       i++;
@@ -319,74 +271,55 @@ class ReversePurgeLongHashMap {
     return val;
   }
 
-  private void hashDelete(int deleteProbe) {
-    // Looks ahead in the table to search for another
-    // item to move to this location
-    // if none are found, the status is changed
-    states[deleteProbe] = 0; //mark as empty
-    int drift = 1;
-    final int arrayMask = keys.length - 1;
-    int probe = (deleteProbe + drift) & arrayMask; //map length must be a power of 2
-    // advance until you find a free location replacing locations as needed
-    while (states[probe] != 0) {
-      if (states[probe] > drift) {
-        // move current element
-        keys[deleteProbe] = keys[probe];
-        values[deleteProbe] = values[probe];
-        states[deleteProbe] = (short) (states[probe] - drift);
-        // marking this location as deleted
-        states[probe] = 0;
-        drift = 0;
-        deleteProbe = probe;
-      }
-      probe = (probe + 1) & arrayMask;
-      drift++;
-      //only used for theoretical analysis
-      assert (drift < DRIFT_LIMIT) : "drift: " + drift + " >= DRIFT_LIMIT";
-    }
-  }
-  
-  private int hashProbe(final long key) {
-    final int arrayMask = keys.length - 1;
-    int probe = (int) hash(key) & arrayMask;
-    while (states[probe] > 0 && keys[probe] != key) {
-      probe = (probe + 1) & arrayMask;
-    }
-    return probe;
+  /**
+   * Decrements all counts by the (maxActive + 1)-th largest count and throws out all counters 
+   * that are no longer positive, which leaves at most maxActive counters. As at least 
+   * maxActive + 1 counters are decremented by the returned value, the offset this adds stays 
+   * within the error bound of a sketch with maxActive counters. Used by the multi-way merge.
+   * @param maxActive the maximum number of counters to retain
+   * @return the value by which all counts were decremented, which is zero if there are no more 
+   * than maxActive counters.
+   */
+  long purgeTo(final int maxActive) {
+    final int numActive = getNumActive();
+    if (numActive <= maxActive) return 0;
+    final long[] samples = getActiveValues();
+    final long val = QuickSelect.select(samples, 0, numActive - 1, numActive - maxActive - 1);
+    adjustAllValuesBy(-1 * val);
+    keepOnlyPositiveCounts();
+    return val;
   }
 
   Iterator iterator() {
-    return new Iterator(keys, values, states);
+    return new Iterator(this);
   }
 
   static class Iterator {
-    private final long[] iKeys;
-    private final long[] iValues;
-    private final short[] iStates;
+    private final ReversePurgeLongHashMap map;
+    private final int length;
     private int i;
 
-    Iterator(final long[] keys, final long[] values, final short[] states) {
-      iKeys = keys;
-      iValues = values;
-      iStates = states;
+    Iterator(final ReversePurgeLongHashMap map) {
+      this.map = map;
+      length = map.getLength();
       i = -1;
     }
 
     boolean next() {
       i++;
-      while (i < iKeys.length) {
-        if (iStates[i] > 0) return true;
+      while (i < length) {
+        if (map.isActive(i)) return true;
         i++;
       }
       return false;
     }
 
     long getKey() {
-      return iKeys[i];
+      return map.getKey(i);
     }
 
     long getValue() {
-      return iValues[i];
+      return map.getValue(i);
     }
   }
 }
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2016, Yahoo! Inc. Licensed under the terms of the Apache License 2.0. See LICENSE file
+ * at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import static com.yahoo.sketches.Util.LS;
+import static com.yahoo.sketches.Util.toLog2;
+import static com.yahoo.sketches.frequencies.Util.hash;
+
+import java.nio.charset.StandardCharsets;
+
+import com.yahoo.sketches.QuickSelect;
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * Implements a linear-probing based hash map of (key, value) pairs with the "reverse" purge of
+ * the {@link ReversePurgeItemHashMap}, where the keys are strings that are identified by a 64-bit
+ * fingerprint of their UTF-8 bytes.
+ *
+ * <p>The fingerprints, values and states are kept in primitive arrays, so a probe never follows
+ * a reference. The UTF-8 bytes of each key are packed into a single byte array, the key store,
+ * each preceded by its length as an int, which is the format of the
+ * {@link com.yahoo.sketches.ArrayOfStringsSerDe}. The cell of a key holds the offset of its bytes
+ * in the key store. The bytes of deleted keys are left in place until they exceed half of the
+ * used key store, which is then compacted.</p>
+ */
+class ReversePurgeStringHashMap {
+  private static final double LOAD_FACTOR = 0.75;
+  private static final int DRIFT_LIMIT = 1024; //used only in stress testing
+  private static final int MIN_STORE_BYTES = 64;
+  private int lgLength;
+  private int loadThreshold;
+  private long[] keys;
+  private long[] values;
+  private short[] states;
+  private int[] refs; //offsets of the keys in the key store
+  private int numActive = 0;
+  private byte[] store;
+  private NativeMemory storeMem;
+  private int storeBytes = 0;
+  private int garbageBytes = 0;
+
+  /**
+   * Constructor will create arrays of length mapSize, which must be a power of two.
+   * This restriction was made to ensure fast hashing.
+   *
+   * @param mapSize This determines the number of cells in the arrays underlying the
+   * HashMap implementation and must be a power of 2.
+   * The hash table will be expected to store LOAD_FACTOR * mapSize (key, value) pairs.
+   */
+  ReversePurgeStringHashMap(final int mapSize) {
+    lgLength = toLog2(mapSize, "mapSize");
+    this.loadThreshold = (int) (mapSize * LOAD_FACTOR);
+    this.keys = new long[mapSize];
+    this.values = new long[mapSize];
+    this.states = new short[mapSize];
+    this.refs = new int[mapSize];
+    setStore(new byte[MIN_STORE_BYTES]);
+  }
+
+  /**
+   * @param probe location in the hash table array
+   * @return true if the cell in the array contains an active key
+   */
+  boolean isActive(final int probe) {
+    return (states[probe] > 0);
+  }
+
+  /**
+   * Gets the current value with the given fingerprint
+   * @param fingerprint the fingerprint of the key
+   * @return the positive value the key corresponds to or zero if if the key is not found in the
+   * hash map.
+   */
+  long get(final long fingerprint) {
+    final int probe = hashProbe(fingerprint);
+    if (states[probe] > 0) {
+      assert (keys[probe] == fingerprint);
+      return values[probe];
+    }
+    return 0;
+  }
+
+  /**
+   * Increments the value mapped to the fingerprint if it is present in the map. Otherwise,
+   * the key is inserted with the adjustAmount and its UTF-8 bytes are copied to the key store.
+   *
+   * @param fingerprint the fingerprint of the UTF-8 bytes of the key
+   * @param bytes the array that holds the UTF-8 bytes of the key
+   * @param offset the offset of the UTF-8 bytes of the key in the array
+   * @param length the number of UTF-8 bytes of the key
+   * @param adjustAmount the amount by which to increment the value
+   */
+  void adjustOrPutValue(final long fingerprint, final byte[] bytes, final int offset,
+      final int length, final long adjustAmount) {
+    final int arrayMask = keys.length - 1;
+    int probe = (int) hash(fingerprint) & arrayMask;
+    int drift = 1;
+    while (states[probe] != 0 && keys[probe] != fingerprint) {
+      probe = (probe + 1) & arrayMask;
+      drift++;
+      //only used for theoretical analysis
+      assert (drift < DRIFT_LIMIT) : "drift: " + drift + " >= DRIFT_LIMIT";
+    }
+
+    if (states[probe] == 0) {
+      // adding the key to the table the value
+      assert (numActive <= loadThreshold)
+        : "numActive: " + numActive + " > loadThreshold: " + loadThreshold;
+      keys[probe] = fingerprint;
+      values[probe] = adjustAmount;
+      states[probe] = (short) drift;
+      refs[probe] = storeKey(bytes, offset, length);
+      numActive++;
+    } else {
+      // adjusting the value of an existing key
+      assert (keys[probe] == fingerprint);
+      values[probe] += adjustAmount;
+    }
+  }
+
+  /**
+   * Processes the map arrays and retains only keys with positive counts.
+   */
+  void keepOnlyPositiveCounts() {
+    // Starting from the back, find the first empty cell,
+    //  which establishes the high end of a cluster.
+    int firstProbe = states.length - 1;
+    while (states[firstProbe] > 0) {
+      firstProbe--;
+    }
+    // firstProbe keeps track of this point.
+    // When we find the next non-empty cell, we know we are at the high end of a cluster
+    // Work towards the front; delete any non-positive entries.
+    for (int probe = firstProbe; probe-- > 0;) {
+      if (states[probe] > 0 && values[probe] <= 0) {
+        hashDelete(probe); //does the work of deletion and moving higher items towards the front.
+        numActive--;
+      }
+    }
+    //now work on the first cluster that was skipped.
+    for (int probe = states.length; probe-- > firstProbe;) {
+      if (states[probe] > 0 && values[probe] <= 0) {
+        hashDelete(probe);
+        numActive--;
+      }
+    }
+    if (garbageBytes > (storeBytes >>> 1)) {
+      compactStore();
+    }
+  }
+
+  /**
+   * @param adjustAmount value by which to shift all values. Only keys corresponding to positive
+   * values are retained.
+   */
+  void adjustAllValuesBy(final long adjustAmount) {
+    for (int i = values.length; i-- > 0;) {
+      values[i] += adjustAmount;
+    }
+  }
+
+  /**
+   * @return an array containing the active keys in the hash map.
+   */
+  String[] getActiveKeys() {
+    if (numActive == 0) return null;
+    final String[] returnedKeys = new String[numActive];
+    int j = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (isActive(i)) {
+        returnedKeys[j] = getKey(refs[i]);
+        j++;
+      }
+    }
+    assert (j == numActive) : "j: " + j + " != numActive: " + numActive;
+    return returnedKeys;
+  }
+
+  /**
+   * @return an array containing the values corresponding. to the active keys in the hash
+   */
+  long[] getActiveValues() {
+    if (numActive == 0) return null;
+    final long[] returnedValues = new long[numActive];
+    int j = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (isActive(i)) {
+        returnedValues[j] = values[i];
+        j++;
+      }
+    }
+    assert (j == numActive);
+    return returnedValues;
+  }
+
+  /**
+   * Returns the active keys in the format of the ArrayOfStringsSerDe, in the same order as
+   * getActiveValues(). The bytes are copied from the key store without decoding.
+   *
+   * @return the serialized active keys, or an empty array if there are none.
+   */
+  byte[] serializeActiveKeys() {
+    int outBytes = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (isActive(i)) {
+        outBytes += Integer.BYTES + storeMem.getInt(refs[i]);
+      }
+    }
+    final byte[] outArr = new byte[outBytes];
+    int outOffset = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (isActive(i)) {
+        final int entryBytes = Integer.BYTES + storeMem.getInt(refs[i]);
+        System.arraycopy(store, refs[i], outArr, outOffset, entryBytes);
+        outOffset += entryBytes;
+      }
+    }
+    return outArr;
+  }
+
+  // assume newSize is power of 2
+  void resize(final int newSize) {
+    final long[] oldKeys = keys;
+    final long[] oldValues = values;
+    final short[] oldStates = states;
+    final int[] oldRefs = refs;
+    keys = new long[newSize];
+    values = new long[newSize];
+    states = new short[newSize];
+    refs = new int[newSize];
+    loadThreshold = (int) (newSize * LOAD_FACTOR);
+    lgLength = Integer.numberOfTrailingZeros(newSize);
+    final int arrayMask = newSize - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldStates[i] > 0) { //the keys are distinct and stay where they are in the key store
+        int probe = (int) hash(oldKeys[i]) & arrayMask;
+        int drift = 1;
+        while (states[probe] != 0) {
+          probe = (probe + 1) & arrayMask;
+          drift++;
+        }
+        keys[probe] = oldKeys[i];
+        values[probe] = oldValues[i];
+        states[probe] = (short) drift;
+        refs[probe] = oldRefs[i];
+      }
+    }
+  }
+
+  /**
+   * @return length of hash table internal arrays
+   */
+  int getLength() {
+    return keys.length;
+  }
+
+  int getLgLength() {
+    return lgLength;
+  }
+
+  /**
+   * @return capacity of hash table internal arrays (i.e., max number of keys that can be stored)
+   */
+  int getCapacity() {
+    return loadThreshold;
+  }
+
+  /**
+   * @return number of populated keys
+   */
+  int getNumActive() {
+    return numActive;
+  }
+
+  /**
+   * @return the number of bytes of the key store that are in use, including deleted keys that
+   * have not been compacted yet.
+   */
+  int getStoreBytes() {
+    return storeBytes;
+  }
+
+  /**
+   * Returns the hash table as a human readable string.
+   */
+  @Override
+  public String toString() {
+    String fmt  = "  %12d:%11d%12d %s";
+    String hfmt = "  %12s:%11s%12s %s";
+    final StringBuilder sb = new StringBuilder();
+    sb.append("ReversePurgeStringHashMap").append(LS);
+    sb.append(String.format(hfmt, "Index","States","Values","Keys")).append(LS);
+
+    for (int i = 0; i < keys.length; i++) {
+      if (states[i] <= 0) continue;
+      sb.append(String.format(fmt, i, states[i], values[i], getKey(refs[i]))).append(LS);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the load factor of the hash table, i.e, the ratio between the capacity and the array
+   * length
+   */
+  static double getLoadFactor() {
+    return LOAD_FACTOR;
+  }
+
+  /**
+   * This function is called when a key is processed that is not currently assigned a counter, and
+   * all the counters are in use. This function estimates the median of the counters in the sketch
+   * via sampling, decrements all counts by this estimate, throws out all counters that are no
+   * longer positive, and increments offset accordingly.
+   * @param sampleSize number of samples
+   * @return the median value
+   */
+  long purge(final int sampleSize) {
+    final int limit = Math.min(sampleSize, getNumActive());
+
+    int numSamples = 0;
+    int i = 0;
+    final long[] samples = new long[limit];
+
+    while (numSamples < limit) {
+      if (isActive(i)) {
+        samples[numSamples] = values[i];
+        numSamples++;
+      }
+      i++;
+    }
+
+    final long val = QuickSelect.select(samples, 0, numSamples - 1, limit / 2);
+    adjustAllValuesBy(-1 * val);
+    keepOnlyPositiveCounts();
+    return val;
+  }
+
+  private int storeKey(final byte[] bytes, final int offset, final int length) {
+    final long reqBytes = (long) storeBytes + Integer.BYTES + length;
+    if (reqBytes > store.length) {
+      if (reqBytes > (Integer.MAX_VALUE - 8)) {
+        throw new SketchesArgumentException("The keys exceed the capacity of the key store: "
+            + reqBytes);
+      }
+      final byte[] newStore = new byte[(int) Math.min(Math.max(reqBytes, 2L * store.length),
+          Integer.MAX_VALUE - 8)];
+      System.arraycopy(store, 0, newStore, 0, storeBytes);
+      setStore(newStore);
+    }
+    final int ref = storeBytes;
+    storeMem.putInt(ref, length);
+    System.arraycopy(bytes, offset, store, ref + Integer.BYTES, length);
+    storeBytes = (int) reqBytes;
+    return ref;
+  }
+
+  private void compactStore() {
+    final byte[] newStore = new byte[Math.max(2 * (storeBytes - garbageBytes), MIN_STORE_BYTES)];
+    int newStoreBytes = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (isActive(i)) {
+        final int entryBytes = Integer.BYTES + storeMem.getInt(refs[i]);
+        System.arraycopy(store, refs[i], newStore, newStoreBytes, entryBytes);
+        refs[i] = newStoreBytes;
+        newStoreBytes += entryBytes;
+      }
+    }
+    setStore(newStore);
+    storeBytes = newStoreBytes;
+    garbageBytes = 0;
+  }
+
+  private void setStore(final byte[] store) {
+    this.store = store;
+    storeMem = new NativeMemory(store);
+  }
+
+  private String getKey(final int ref) {
+    return new String(store, ref + Integer.BYTES, storeMem.getInt(ref), StandardCharsets.UTF_8);
+  }
+
+  private void hashDelete(int deleteProbe) {
+    // Looks ahead in the table to search for another
+    // item to move to this location
+    // if none are found, the status is changed
+    states[deleteProbe] = 0; //mark as empty
+    garbageBytes += Integer.BYTES + storeMem.getInt(refs[deleteProbe]);
+    int drift = 1;
+    final int arrayMask = keys.length - 1;
+    int probe = (deleteProbe + drift) & arrayMask; //map length must be a power of 2
+    // advance until you find a free location replacing locations as needed
+    while (states[probe] != 0) {
+      if (states[probe] > drift) {
+        // move current element
+        keys[deleteProbe] = keys[probe];
+        values[deleteProbe] = values[probe];
+        states[deleteProbe] = (short) (states[probe] - drift);
+        refs[deleteProbe] = refs[probe];
+        // marking this location as deleted
+        states[probe] = 0;
+        drift = 0;
+        deleteProbe = probe;
+      }
+      probe = (probe + 1) & arrayMask;
+      drift++;
+      //only used for theoretical analysis
+      assert (drift < DRIFT_LIMIT) : "drift: " + drift + " >= DRIFT_LIMIT";
+    }
+  }
+
+  private int hashProbe(final long fingerprint) {
+    final int arrayMask = keys.length - 1;
+    int probe = (int) hash(fingerprint) & arrayMask;
+    while (states[probe] > 0 && keys[probe] != fingerprint) {
+      probe = (probe + 1) & arrayMask;
+    }
+    return probe;
+  }
+
+  Iterator iterator() {
+    return new Iterator();
+  }
+
+  class Iterator {
+    private int i = -1;
+
+    boolean next() {
+      i++;
+      while (i < keys.length) {
+        if (states[i] > 0) return true;
+        i++;
+      }
+      return false;
+    }
+
+    long getFingerprint() {
+      return keys[i];
+    }
+
+    String getKey() {
+      return ReversePurgeStringHashMap.this.getKey(refs[i]);
+    }
+
+    /**
+     * @return the key store, which holds the UTF-8 bytes of the current key
+     */
+    byte[] getKeyStore() {
+      return store;
+    }
+
+    /**
+     * @return the offset of the UTF-8 bytes of the current key in the key store
+     */
+    int getKeyOffset() {
+      return refs[i] + Integer.BYTES;
+    }
+
+    /**
+     * @return the number of UTF-8 bytes of the current key
+     */
+    int getKeyLength() {
+      return storeMem.getInt(refs[i]);
+    }
+
+    long getValue() {
+      return values[i];
+    }
+  }
+}
@@ -0,0 +1,623 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import static com.yahoo.sketches.Util.DEFAULT_UPDATE_SEED;
+import static com.yahoo.sketches.Util.LS;
+import static com.yahoo.sketches.Util.toLog2;
+import static com.yahoo.sketches.frequencies.CompactFormat.varLongBytes;
+import static com.yahoo.sketches.frequencies.PreambleUtil.EMPTY_FLAG_MASK;
+import static com.yahoo.sketches.frequencies.PreambleUtil.SER_VER;
+import static com.yahoo.sketches.frequencies.PreambleUtil.SER_VER_COMPACT;
+import static com.yahoo.sketches.frequencies.PreambleUtil.extractActiveItems;
+import static com.yahoo.sketches.frequencies.PreambleUtil.extractFamilyID;
+import static com.yahoo.sketches.frequencies.PreambleUtil.extractFlags;
+import static com.yahoo.sketches.frequencies.PreambleUtil.extractLgCurMapSize;
+import static com.yahoo.sketches.frequencies.PreambleUtil.extractLgMaxMapSize;
+import static com.yahoo.sketches.frequencies.PreambleUtil.extractPreLongs;
+import static com.yahoo.sketches.frequencies.PreambleUtil.extractSerDeId;
+import static com.yahoo.sketches.frequencies.PreambleUtil.extractSerVer;
+import static com.yahoo.sketches.frequencies.PreambleUtil.insertActiveItems;
+import static com.yahoo.sketches.frequencies.PreambleUtil.insertFamilyID;
+import static com.yahoo.sketches.frequencies.PreambleUtil.insertFlags;
+import static com.yahoo.sketches.frequencies.PreambleUtil.insertLgCurMapSize;
+import static com.yahoo.sketches.frequencies.PreambleUtil.insertLgMaxMapSize;
+import static com.yahoo.sketches.frequencies.PreambleUtil.insertPreLongs;
+import static com.yahoo.sketches.frequencies.PreambleUtil.insertSerDeId;
+import static com.yahoo.sketches.frequencies.PreambleUtil.insertSerVer;
+import static com.yahoo.sketches.frequencies.Util.LG_MIN_MAP_SIZE;
+import static com.yahoo.sketches.frequencies.Util.SAMPLE_SIZE;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+import com.yahoo.sketches.ArrayOfStringsSerDe;
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.SketchesStateException;
+import com.yahoo.sketches.frequencies.ItemsSketch.Row;
+import com.yahoo.sketches.hash.MurmurHash3;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * <p>This sketch tracks the approximate frequencies of String items, with the same algorithm,
+ * error guarantees and query semantics as an {@link ItemsSketch ItemsSketch&lt;String&gt;}, but
+ * with a hash map that is specialized for strings.</p>
+ *
+ * <p>An item is identified by the 64-bit MurmurHash3 of its UTF-8 bytes, its fingerprint, which
+ * is kept in a primitive array together with its count, so that a probe of the hash map never
+ * follows a reference or calls <i>hashCode()</i> or <i>equals()</i> of a String. The UTF-8 bytes
+ * of the tracked items are packed into a single byte array instead of being retained as String
+ * objects, and are only decoded to Strings by {@link #getFrequentItems(ErrorType)}.
+ * Two different items with the same fingerprint would be counted as one, but with <i>n</i>
+ * distinct items in the stream the probability of that is only about <i>n</i><sup>2</sup> /
+ * 2<sup>65</sup>.</p>
+ *
+ * <p><b>Space Usage</b></p>
+ *
+ * <p>The internal memory space usage of this sketch is 22 * <i>mapSize</i> bytes, plus the UTF-8
+ * bytes of the tracked items with 4 bytes of length each, plus a small constant number of
+ * additional bytes. The bytes of items that are purged are reclaimed once they make up half of
+ * the bytes of the items.</p>
+ *
+ * <p><b>Serialization</b></p>
+ *
+ * <p>The serialized forms of this sketch, standard and compact, are those of an
+ * ItemsSketch&lt;String&gt; serialized with the {@link ArrayOfStringsSerDe}, so either class can
+ * deserialize the bytes of the other.</p>
+ *
+ * @see ItemsSketch
+ */
+public class StringsSketch {
+
+  private static final short ARRAY_OF_STRINGS_SERDE_ID = new ArrayOfStringsSerDe().getId();
+
+  /**
+   * Log2 Maximum length of the arrays internal to the hash map supported by the data
+   * structure.
+   */
+  private int lgMaxMapSize;
+
+  /**
+   * The current number of counters supported by the hash map.
+   */
+  private int curMapCap; //the threshold to purge
+
+  /**
+   * Tracks the total of decremented counts.
+   */
+  private long offset;
+
+  /**
+   * The sum of all frequencies of the stream so far.
+   */
+  private long streamLength = 0;
+
+  /**
+   * The maximum number of samples used to compute approximate median of counters when doing
+   * decrement
+   */
+  private int sampleSize;
+
+  /**
+   * Hash map mapping the fingerprints of stored items to approximate counts
+   */
+  private ReversePurgeStringHashMap hashMap;
+
+  /**
+   * Reusable buffers for the UTF-8 bytes of the item being updated or queried and for its hash,
+   * so that an update of an item that is already tracked does not allocate
+   */
+  private byte[] encodeBuf = new byte[64];
+  private NativeMemory encodeMem = new NativeMemory(encodeBuf);
+  private final long[] hashOut = new long[2];
+
+  /**
+   * Construct this sketch with the parameter maxMapSize and the default initialMapSize (8).
+   *
+   * @param maxMapSize Determines the physical size of the internal hash map managed by this
+   * sketch and must be a power of 2.  The maximum capacity of this internal hash map is
+   * 0.75 times * maxMapSize. Both the ultimate accuracy and size of this sketch are a
+   * function of maxMapSize.
+   */
+  public StringsSketch(final int maxMapSize) {
+    this(toLog2(maxMapSize, "maxMapSize"), LG_MIN_MAP_SIZE);
+  }
+
+  /**
+   * Construct this sketch with parameter lgMapMapSize and lgCurMapSize. This internal
+   * constructor is used when deserializing the sketch.
+   *
+   * @param lgMaxMapSize Log2 of the physical size of the internal hash map managed by this
+   * sketch. The maximum capacity of this internal hash map is 0.75 times 2^lgMaxMapSize.
+   * Both the ultimate accuracy and size of this sketch are a function of lgMaxMapSize.
+   *
+   * @param lgCurMapSize Log2 of the starting (current) physical size of the internal hash
+   * map managed by this sketch.
+   */
+  StringsSketch(final int lgMaxMapSize, final int lgCurMapSize) {
+    //set initial size of hash map
+    this.lgMaxMapSize = Math.max(lgMaxMapSize, LG_MIN_MAP_SIZE);
+    final int lgCurMapSz = Math.max(lgCurMapSize, LG_MIN_MAP_SIZE);
+    hashMap = new ReversePurgeStringHashMap(1 << lgCurMapSz);
+    this.curMapCap = hashMap.getCapacity();
+    final int maxMapCap =
+        (int) ((1 << lgMaxMapSize) * ReversePurgeStringHashMap.getLoadFactor());
+    offset = 0;
+    sampleSize = Math.min(SAMPLE_SIZE, maxMapCap);
+  }
+
+  /**
+   * Returns a sketch instance of this class from the given srcMem, which must be a Memory
+   * representation of this sketch class or of an ItemsSketch&lt;String&gt; serialized with the
+   * ArrayOfStringsSerDe, either standard or compact.
+   *
+   * @param srcMem a Memory representation of a sketch of this class.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return a sketch instance of this class.
+   */
+  public static StringsSketch getInstance(final Memory srcMem) {
+    final long pre0 = PreambleUtil.checkPreambleSize(srcMem); //make sure preamble will fit
+    final int maxPreLongs = Family.FREQUENCY.getMaxPreLongs();
+
+    final int preLongs = extractPreLongs(pre0);         //Byte 0
+    final int serVer = extractSerVer(pre0);             //Byte 1
+    final int familyID = extractFamilyID(pre0);         //Byte 2
+    final int lgMaxMapSize = extractLgMaxMapSize(pre0); //Byte 3
+    final int lgCurMapSize = extractLgCurMapSize(pre0); //Byte 4
+    final boolean empty = (extractFlags(pre0) & EMPTY_FLAG_MASK) != 0; //Byte 5
+    final int serDeId = extractSerDeId(pre0);           //Byte 6,7
+
+    // Checks
+    final boolean preLongsEq1 = (preLongs == 1);        //Byte 0
+    final boolean preLongsEqMax = (preLongs == maxPreLongs);
+    if (!preLongsEq1 && !preLongsEqMax) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: PreLongs must be 1 or " + maxPreLongs + ": " + preLongs);
+    }
+    final boolean compact = (serVer == SER_VER_COMPACT);
+    if ((serVer != SER_VER) && !compact) {              //Byte 1
+      throw new SketchesArgumentException("Possible Corruption: Ser Ver must be " + SER_VER
+          + " or " + SER_VER_COMPACT + ": " + serVer);
+    }
+    final int actFamID = Family.FREQUENCY.getID();      //Byte 2
+    if (familyID != actFamID) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: FamilyID must be " + actFamID + ": " + familyID);
+    }
+    if (compact) {                                      //Byte 5 and Byte 0
+      if (empty || !preLongsEq1) {
+        throw new SketchesArgumentException(
+            "Possible Corruption: Compact requires PreLongs == 1 and not Empty.");
+      }
+    } else if (empty ^ preLongsEq1) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: (PreLongs == 1) ^ Empty == True.");
+    }
+    if (serDeId != ARRAY_OF_STRINGS_SERDE_ID) {         //Byte 6,7
+      throw new SketchesArgumentException("Possible Corruption: SerDe ID incorrect: "
+          + serDeId + " != " + ARRAY_OF_STRINGS_SERDE_ID);
+    }
+
+    if (empty) {
+      return new StringsSketch(lgMaxMapSize, LG_MIN_MAP_SIZE);
+    }
+    final StringsSketch fss = new StringsSketch(lgMaxMapSize, lgCurMapSize);
+    if (compact) {
+      final CompactFormat.Reader reader = new CompactFormat.Reader(srcMem, 8);
+      final int activeItems = reader.getVarInt();
+      final long streamLength = reader.getVarLong();
+      fss.offset = reader.getVarLong();
+      //every count takes at least one byte
+      if (activeItems > (srcMem.getCapacity() - reader.getPosition())) {
+        throw new SketchesArgumentException(
+            "Possible Corruption: Memory too small for active items: " + activeItems);
+      }
+      final long[] countArray = new long[activeItems];
+      for (int i = 0; i < activeItems; i++) {
+        countArray[i] = reader.getVarLong();
+      }
+      fss.updateItems(srcMem, (int) reader.getPosition(), countArray);
+      fss.streamLength = streamLength; //override streamLength due to updating
+      return fss;
+    }
+    //get full preamble
+    final long[] preArr = new long[preLongs];
+    srcMem.getLongArray(0, preArr, 0, preLongs);
+    fss.offset = preArr[3];
+
+    final int preBytes = preLongs << 3;
+    final int activeItems = extractActiveItems(preArr[1]);
+    //Get countArray
+    final long[] countArray = new long[activeItems];
+    srcMem.getLongArray(preBytes, countArray, 0, activeItems);
+    fss.updateItems(srcMem, preBytes + 8 * activeItems, countArray);
+    fss.streamLength = preArr[2]; //override streamLength due to updating
+    return fss;
+  }
+
+  /**
+   * Updates this sketch with the given counts of the items serialized by the ArrayOfStringsSerDe
+   * at the given offset, which are copied into the sketch without decoding.
+   */
+  private void updateItems(final Memory srcMem, final int itemsOffset, final long[] countArray) {
+    final int activeItems = countArray.length;
+    final byte[] itemBytes = new byte[(int) srcMem.getCapacity() - itemsOffset];
+    srcMem.getByteArray(itemsOffset, itemBytes, 0, itemBytes.length);
+    final Memory itemMem = new NativeMemory(itemBytes);
+    int itemOffset = 0;
+    for (int i = 0; i < activeItems; i++) {
+      if (itemOffset > (itemBytes.length - Integer.BYTES)) {
+        throw new SketchesArgumentException("Possible Corruption: Items truncated: " + i);
+      }
+      final int length = itemMem.getInt(itemOffset);
+      itemOffset += Integer.BYTES;
+      if ((length < 0) || (length > (itemBytes.length - itemOffset))) {
+        throw new SketchesArgumentException("Possible Corruption: Item length: " + length);
+      }
+      update(fingerprint(itemMem, itemOffset, length), itemBytes, itemOffset, length,
+          countArray[i]);
+      itemOffset += length;
+    }
+  }
+
+  /**
+   * Returns a byte array representation of this sketch, which is identical in format to that of
+   * an ItemsSketch&lt;String&gt; serialized with the ArrayOfStringsSerDe.
+   * @return a byte array representation of this sketch
+   */
+  public byte[] toByteArray() {
+    final int preLongs;
+    final int outBytes;
+    final boolean empty = isEmpty();
+    final int activeItems = getNumActiveItems();
+    byte[] bytes = null;
+    if (empty) {
+      preLongs = 1;
+      outBytes = 8;
+    } else {
+      preLongs = Family.FREQUENCY.getMaxPreLongs();
+      bytes = hashMap.serializeActiveKeys();
+      outBytes = ((preLongs + activeItems) << 3) + bytes.length;
+    }
+    final byte[] outArr = new byte[outBytes];
+    final Memory mem = new NativeMemory(outArr);
+
+    // build first preLong empty or not
+    long pre0 = 0L;
+    pre0 = insertPreLongs(preLongs, pre0);                  //Byte 0
+    pre0 = insertSerVer(SER_VER, pre0);                     //Byte 1
+    pre0 = insertFamilyID(Family.FREQUENCY.getID(), pre0);  //Byte 2
+    pre0 = insertLgMaxMapSize(lgMaxMapSize, pre0);          //Byte 3
+    pre0 = insertLgCurMapSize(hashMap.getLgLength(), pre0); //Byte 4
+    pre0 = empty ? insertFlags(EMPTY_FLAG_MASK, pre0) : insertFlags(0, pre0); //Byte 5
+    pre0 = insertSerDeId(ARRAY_OF_STRINGS_SERDE_ID, pre0);  //Byte 6,7
+
+    if (empty) {
+      mem.putLong(0, pre0);
+    } else {
+      final long pre = 0;
+      final long[] preArr = new long[preLongs];
+      preArr[0] = pre0;
+      preArr[1] = insertActiveItems(activeItems, pre);
+      preArr[2] = this.streamLength;
+      preArr[3] = this.offset;
+      mem.putLongArray(0, preArr, 0, preLongs);
+      final int preBytes = preLongs << 3;
+      mem.putLongArray(preBytes, hashMap.getActiveValues(), 0, activeItems);
+      mem.putByteArray(preBytes + (activeItems << 3), bytes, 0, bytes.length);
+    }
+    return outArr;
+  }
+
+  /**
+   * Returns a byte array representation of this sketch in the compact serialization, which is
+   * identical in format to that of an ItemsSketch&lt;String&gt; serialized by
+   * {@link ItemsSketch#toCompactByteArray(com.yahoo.sketches.ArrayOfItemsSerDe)} with the
+   * ArrayOfStringsSerDe.
+   * @return a byte array representation of this sketch in the compact serialization
+   */
+  public byte[] toCompactByteArray() {
+    if (isEmpty()) {
+      return toByteArray();
+    }
+    final int activeItems = getNumActiveItems();
+    final long[] counts = hashMap.getActiveValues();
+    final byte[] bytes = hashMap.serializeActiveKeys();
+    long outBytes = 8 + varLongBytes(activeItems) + varLongBytes(streamLength)
+        + varLongBytes(offset) + bytes.length;
+    for (int i = 0; i < activeItems; i++) {
+      outBytes += varLongBytes(counts[i]);
+    }
+    final byte[] outArr = new byte[(int) outBytes];
+    final Memory mem = new NativeMemory(outArr);
+
+    long pre0 = 0L;
+    pre0 = insertPreLongs(1, pre0);                         //Byte 0
+    pre0 = insertSerVer(SER_VER_COMPACT, pre0);             //Byte 1
+    pre0 = insertFamilyID(Family.FREQUENCY.getID(), pre0);  //Byte 2
+    pre0 = insertLgMaxMapSize(lgMaxMapSize, pre0);          //Byte 3
+    pre0 = insertLgCurMapSize(hashMap.getLgLength(), pre0); //Byte 4
+    pre0 = insertFlags(0, pre0);                            //Byte 5
+    pre0 = insertSerDeId(ARRAY_OF_STRINGS_SERDE_ID, pre0);  //Byte 6,7
+    mem.putLong(0, pre0);
+
+    final CompactFormat.Writer writer = new CompactFormat.Writer(mem, 8);
+    writer.putVarLong(activeItems);
+    writer.putVarLong(streamLength);
+    writer.putVarLong(offset);
+    for (int i = 0; i < activeItems; i++) {
+      writer.putVarLong(counts[i]);
+    }
+    writer.putByteArray(bytes);
+    return outArr;
+  }
+
+  /**
+   * Update this sketch with an item and a frequency count of one.
+   * @param item for which the frequency should be increased.
+   */
+  public void update(final String item) {
+    update(item, 1);
+  }
+
+  /**
+   * Update this sketch with a item and a positive frequency count.
+   * @param item for which the frequency should be increased.
+   * @param count the amount by which the frequency of the item should be increased.
+   * An count of zero is a no-op, and a negative count will throw an exception.
+   */
+  public void update(final String item, final long count) {
+    if (item == null || count == 0) {
+      return;
+    }
+    if (count < 0) {
+      throw new SketchesArgumentException("Count may not be negative");
+    }
+    final int length = encode(item);
+    update(fingerprint(encodeMem, 0, length), encodeBuf, 0, length, count);
+  }
+
+  private void update(final long fingerprint, final byte[] bytes, final int offset,
+      final int length, final long count) {
+    this.streamLength += count;
+    hashMap.adjustOrPutValue(fingerprint, bytes, offset, length, count);
+
+    if (getNumActiveItems() > curMapCap) { //over the threshold, we need to do something
+      if (hashMap.getLgLength() < lgMaxMapSize) { //below tgt size, we can grow
+        hashMap.resize(2 * hashMap.getLength());
+        curMapCap = hashMap.getCapacity();
+      } else { //At tgt size, must purge
+        this.offset += hashMap.purge(sampleSize);
+        if (getNumActiveItems() > getMaximumMapCapacity()) {
+          throw new SketchesStateException("Purge did not reduce active items.");
+        }
+      }
+    }
+  }
+
+  /**
+   * This function merges the other sketch into this one.
+   * The other sketch may be of a different size.
+   *
+   * @param other sketch of this class
+   * @return a sketch whose estimates are within the guarantees of the
+   * largest error tolerance of the two merged sketches.
+   */
+  public StringsSketch merge(final StringsSketch other) {
+    if (other == null) return this;
+    if (other.isEmpty()) return this;
+
+    final long streamLen = this.streamLength + other.streamLength; //capture before merge
+
+    final ReversePurgeStringHashMap.Iterator iter = other.hashMap.iterator();
+    while (iter.next()) { //this may add to offset during rebuilds
+      this.update(iter.getFingerprint(), iter.getKeyStore(), iter.getKeyOffset(),
+          iter.getKeyLength(), iter.getValue());
+    }
+    this.offset += other.offset;
+    this.streamLength = streamLen; //corrected streamLength
+    return this;
+  }
+
+  /**
+   * Gets the estimate of the frequency of the given item.
+   * Note: The true frequency of a item would be the sum of the counts as a result of the
+   * two update functions.
+   *
+   * @param item the given item
+   * @return the estimate of the frequency of the given item
+   */
+  public long getEstimate(final String item) {
+    // If item is tracked:
+    // Estimate = itemCount + offset; Otherwise it is 0.
+    final long itemCount = getCount(item);
+    return (itemCount > 0) ? itemCount + offset : 0;
+  }
+
+  /**
+   * Gets the guaranteed upper bound frequency of the given item.
+   *
+   * @param item the given item
+   * @return the guaranteed upper bound frequency of the given item. That is, a number which
+   * is guaranteed to be no smaller than the real frequency.
+   */
+  public long getUpperBound(final String item) {
+    // UB = itemCount + offset
+    return getCount(item) + offset;
+  }
+
+  /**
+   * Gets the guaranteed lower bound frequency of the given item, which can never be
+   * negative.
+   *
+   * @param item the given item.
+   * @return the guaranteed lower bound frequency of the given item. That is, a number which
+   * is guaranteed to be no larger than the real frequency.
+   */
+  public long getLowerBound(final String item) {
+    //LB = itemCount or 0
+    return getCount(item);
+  }
+
+  /**
+   * Returns an array of Rows that include frequent items, estimates, upper and lower bounds
+   * given an ErrorCondition, with the same semantics as
+   * {@link ItemsSketch#getFrequentItems(ErrorType)}.
+   *
+   * @param errorType determines whether no false positives or no false negatives are
+   * desired.
+   * @return an array of frequent items
+   */
+  public Row<String>[] getFrequentItems(final ErrorType errorType) {
+    return sortItems(getMaximumError(), errorType);
+  }
+
+  Row<String>[] sortItems(final long threshold, final ErrorType errorType) {
+    final ArrayList<Row<String>> rowList = new ArrayList<Row<String>>();
+    final ReversePurgeStringHashMap.Iterator iter = hashMap.iterator();
+    while (iter.next()) {
+      final long lb = iter.getValue();
+      final long ub = lb + offset;
+      if (((errorType == ErrorType.NO_FALSE_NEGATIVES) ? ub : lb) >= threshold) {
+        //the estimate of an active item is ub
+        rowList.add(new Row<String>(iter.getKey(), ub, ub, lb));
+      }
+    }
+
+    // descending order
+    rowList.sort(new Comparator<Row<String>>() {
+      @Override
+      public int compare(final Row<String> r1, final Row<String> r2) {
+        return r2.compareTo(r1);
+      }
+    });
+
+    @SuppressWarnings("unchecked")
+    final Row<String>[] rowsArr =
+      rowList.toArray((Row<String>[]) Array.newInstance(Row.class, rowList.size()));
+    return rowsArr;
+  }
+
+  /**
+   * Returns the current number of counters the sketch is configured to support.
+   *
+   * @return the current number of counters the sketch is configured to support.
+   */
+  public int getCurrentMapCapacity() {
+    return this.curMapCap;
+  }
+
+  /**
+   * @return An upper bound on the maximum error of getEstimate(item) for any item.
+   * This is equivalent to the maximum distance between the upper bound and the lower bound
+   * for any item.
+   */
+  public long getMaximumError() {
+    return offset;
+  }
+
+  /**
+   * Returns true if this sketch is empty
+   *
+   * @return true if this sketch is empty
+   */
+  public boolean isEmpty() {
+    return getNumActiveItems() == 0;
+  }
+
+  /**
+   * Returns the sum of the frequencies in the stream seen so far by the sketch
+   *
+   * @return the sum of the frequencies in the stream seen so far by the sketch
+   */
+  public long getStreamLength() {
+    return this.streamLength;
+  }
+
+  /**
+   * Returns the maximum number of counters the sketch is configured to support.
+   *
+   * @return the maximum number of counters the sketch is configured to support.
+   */
+  public int getMaximumMapCapacity() {
+    return (int) ((1 << lgMaxMapSize) * ReversePurgeStringHashMap.getLoadFactor());
+  }
+
+  /**
+   * @return the number of active items in the sketch.
+   */
+  public int getNumActiveItems() {
+    return hashMap.getNumActive();
+  }
+
+  /**
+   * Resets this sketch to a virgin state.
+   */
+  public void reset() {
+    hashMap = new ReversePurgeStringHashMap(1 << LG_MIN_MAP_SIZE);
+    this.curMapCap = hashMap.getCapacity();
+    this.offset = 0;
+    this.streamLength = 0;
+  }
+
+  /**
+   * Returns a human readable summary of this sketch.
+   * @return a human readable summary of this sketch.
+   */
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("FrequentStringsSketch:").append(LS);
+    sb.append("  Stream Length    : " + streamLength).append(LS);
+    sb.append("  Max Error Offset : " + offset).append(LS);
+    sb.append(hashMap.toString());
+    return sb.toString();
+  }
+
+  private long getCount(final String item) {
+    if (item == null) return 0;
+    return hashMap.get(fingerprint(encodeMem, 0, encode(item)));
+  }
+
+  /**
+   * Encodes the given item as UTF-8 into the reusable buffer, with a fast path for ASCII.
+   * @param item the given item
+   * @return the number of bytes written to the buffer
+   */
+  private int encode(final String item) {
+    final int chars = item.length();
+    if (chars > encodeBuf.length) {
+      setEncodeBuf(new byte[Math.max(chars, 2 * encodeBuf.length)]);
+    }
+    for (int i = 0; i < chars; i++) {
+      final char c = item.charAt(i);
+      if (c >= 0x80) { //not ASCII
+        final byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > encodeBuf.length) {
+          setEncodeBuf(new byte[Math.max(bytes.length, 2 * encodeBuf.length)]);
+        }
+        System.arraycopy(bytes, 0, encodeBuf, 0, bytes.length);
+        return bytes.length;
+      }
+      encodeBuf[i] = (byte) c;
+    }
+    return chars;
+  }
+
+  private void setEncodeBuf(final byte[] buf) {
+    encodeBuf = buf;
+    encodeMem = new NativeMemory(buf);
+  }
+
+  private long fingerprint(final Memory mem, final long offset, final int length) {
+    return MurmurHash3.hash(mem, offset, length, DEFAULT_UPDATE_SEED, hashOut)[0];
+  }
+
+}
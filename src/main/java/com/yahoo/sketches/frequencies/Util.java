@@ -22,7 +22,30 @@ final class Util {
    * true median with high probability.
    */
   static final int SAMPLE_SIZE = 1024;
+
+  /**
+   * Log2 of the factor by which the working hash map of a multi-way merge may exceed the maximum 
+   * map size of the result. The working map is purged down to half of the maximum capacity of 
+   * the result whenever it fills, so each purge frees most of the working map.
+   */
+  static final int LG_MERGE_MAP_FACTOR = 1;
   
+  /**
+   * Returns log2 of the smallest hash map length that holds the given number of active items 
+   * without a resize, but no less than LG_MIN_MAP_SIZE and no more than the given limit.
+   * @param numActive the number of active items
+   * @param loadFactor the load factor of the hash map
+   * @param lgMaxMapSize log2 of the largest hash map length to return
+   * @return log2 of the hash map length
+   */
+  static int lgMapSizeFor(final long numActive, final double loadFactor, final int lgMaxMapSize) {
+    int lgMapSize = LG_MIN_MAP_SIZE;
+    while ((lgMapSize < lgMaxMapSize) && ((int) ((1 << lgMapSize) * loadFactor) < numActive)) {
+      lgMapSize++;
+    }
+    return lgMapSize;
+  }
+
   /**
    * @param key to be hashed
    * @return an index into the hash table This hash function is taken from the internals of 
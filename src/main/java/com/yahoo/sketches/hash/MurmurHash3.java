@@ -6,6 +6,10 @@
 package com.yahoo.sketches.hash;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.yahoo.sketches.memory.Memory;
 
 
 /**
@@ -46,7 +50,49 @@ public final class MurmurHash3 implements Serializable {
   private static final long serialVersionUID = 0L;
   
   private MurmurHash3() {}
-  
+
+  //--Hash of long------------------------------------------------------
+  /**
+   * Returns the first 64 bits of the 128-bit hash of a single long key.
+   * This produces the same result as <i>hash(new long[] {key}, seed)[0]</i>, but does not
+   * allocate any arrays or objects.
+   *
+   * @param key The input long.
+   * @param seed A long valued seed.
+   * @return the first 64 bits of the hash.
+   */
+  public static long hashToLong(long key, long seed) {
+    long h1 = seed ^ HashState.mixK1(key) ^ Long.BYTES;
+    long h2 = seed ^ Long.BYTES; //k2 == 0 and mixK2(0) == 0
+    h1 += h2;
+    h2 += h1;
+    return HashState.finalMix64(h1) + HashState.finalMix64(h2);
+  }
+
+  /**
+   * Computes the 128-bit hash of a single long key into the given caller-owned array.
+   * This produces the same result as <i>hash(new long[] {key}, seed)</i>, but does not
+   * allocate any arrays or objects.
+   *
+   * @param key The input long.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size at least 2, which receives the hash.
+   * @return the given hashOut array.
+   */
+  public static long[] hash(long key, long seed, long[] hashOut) {
+    long h1 = seed ^ HashState.mixK1(key) ^ Long.BYTES;
+    long h2 = seed ^ Long.BYTES; //k2 == 0 and mixK2(0) == 0
+    h1 += h2;
+    h2 += h1;
+    h1 = HashState.finalMix64(h1);
+    h2 = HashState.finalMix64(h2);
+    h1 += h2;
+    h2 += h1;
+    hashOut[0] = h1;
+    hashOut[1] = h2;
+    return hashOut;
+  }
+
   //--Hash of long[]----------------------------------------------------
   /**
    * Returns a long array of size 2, which is a 128-bit hash of the input.
@@ -206,6 +252,140 @@ public final class MurmurHash3 implements Serializable {
     return hashState.finalMix128(k1, k2, bytes);
   }
   
+  //--Hash of a Memory region-------------------------------------------
+  /**
+   * Returns a long array of size 2, which is a 128-bit hash of the given region of Memory.
+   * The bytes are read in place and are not copied. This produces the same result as
+   * <i>hash(byte[], seed)</i> of a byte array with the same contents as the region.
+   * 
+   * <p>Like the rest of this library, this assumes that the Memory stores its longs in
+   * little-endian byte order.</p>
+   * 
+   * @param mem The input Memory. Must be non-null.
+   * @param offsetBytes The starting offset in bytes of the region relative to the Memory start.
+   * @param lengthBytes The length in bytes of the region. Must be greater than zero.
+   * @param seed A long valued seed.
+   * @return the hash.
+   */
+  public static long[] hash(Memory mem, long offsetBytes, long lengthBytes, long seed) {
+    return hash(mem, offsetBytes, lengthBytes, seed, new long[2]);
+  }
+  
+  /**
+   * Computes the 128-bit hash of the given region of Memory into the given caller-owned array.
+   * This produces the same result as <i>hash(mem, offsetBytes, lengthBytes, seed)</i>, but does 
+   * not allocate any arrays or objects.
+   * 
+   * @param mem The input Memory. Must be non-null.
+   * @param offsetBytes The starting offset in bytes of the region relative to the Memory start.
+   * @param lengthBytes The length in bytes of the region. Must be greater than zero.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size at least 2, which receives the hash.
+   * @return the given hashOut array.
+   */
+  public static long[] hash(Memory mem, long offsetBytes, long lengthBytes, long seed,
+      long[] hashOut) {
+    long h1 = seed;
+    long h2 = seed;
+    
+    // Number of full 128-bit blocks of 16 bytes.
+    // Possible exclusion of a remainder of up to 15 bytes.
+    final long nblocks = lengthBytes >> 4; //bytes / 16
+    
+    // Process the 128-bit blocks (the body) into the hash, as HashState.blockMix128 does
+    long offset = offsetBytes;
+    for (long i = 0; i < nblocks; i++ ) { //16 bytes per block
+      h1 ^= HashState.mixK1(mem.getLong(offset)); //0, 16, 32, ...
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = (h1 * 5) + 0x52dce729;
+      
+      h2 ^= HashState.mixK2(mem.getLong(offset + 8)); //8, 24, 40, ...
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = (h2 * 5) + 0x38495ab5;
+      offset += 16;
+    }
+    
+    // Get the remainder length
+    int rem = (int) (lengthBytes - (nblocks << 4)); // remainder bytes: 0,1,...,15
+    
+    // Get the tail
+    long k1;
+    long k2;
+    if (rem > 8) { //k1 -> whole; k2 -> partial
+      k1 = mem.getLong(offset);
+      k2 = getLong(mem, offset + 8, rem - 8);
+    } 
+    else { //k1 -> whole, partial or 0; k2 == 0
+      k1 = (rem == 0) ? 0 : getLong(mem, offset, rem);
+      k2 = 0;
+    }
+    // Mix the tail into the hash, as HashState.finalMix128 does
+    h1 ^= HashState.mixK1(k1);
+    h2 ^= HashState.mixK2(k2);
+    h1 ^= lengthBytes;
+    h2 ^= lengthBytes;
+    h1 += h2;
+    h2 += h1;
+    h1 = HashState.finalMix64(h1);
+    h2 = HashState.finalMix64(h2);
+    h1 += h2;
+    h2 += h1;
+    hashOut[0] = h1;
+    hashOut[1] = h2;
+    return hashOut;
+  }
+  
+  //--Hash of a ByteBuffer region---------------------------------------
+  /**
+   * Returns a long array of size 2, which is a 128-bit hash of the given region of a ByteBuffer.
+   * The bytes are read in place using absolute gets, so neither the contents nor the position, 
+   * limit or byte order of the ByteBuffer are changed. This produces the same result as 
+   * <i>hash(byte[], seed)</i> of a byte array with the same contents as the region, 
+   * independent of the byte order of the ByteBuffer.
+   * 
+   * @param buf The input ByteBuffer. Must be non-null.
+   * @param position The absolute index of the first byte of the region.
+   * @param lengthBytes The length in bytes of the region. Must be greater than zero.
+   * @param seed A long valued seed.
+   * @return the hash.
+   */
+  public static long[] hash(ByteBuffer buf, int position, int lengthBytes, long seed) {
+    HashState hashState = new HashState(seed, seed);
+    final boolean swap = buf.order() == ByteOrder.BIG_ENDIAN;
+    
+    // Number of full 128-bit blocks of 16 bytes.
+    // Possible exclusion of a remainder of up to 15 bytes.
+    final int nblocks = lengthBytes >> 4; //bytes / 16
+    
+    // Process the 128-bit blocks (the body) into the hash
+    int index = position;
+    for (int i = 0; i < nblocks; i++ ) { //16 bytes per block
+      long k1 = getLong(buf, index, swap); //0, 16, 32, ...
+      long k2 = getLong(buf, index + 8, swap); //8, 24, 40, ...
+      hashState.blockMix128(k1, k2);
+      index += 16;
+    }
+    
+    // Get the remainder length
+    int rem = lengthBytes - (nblocks << 4); // remainder bytes: 0,1,...,15
+    
+    // Get the tail
+    long k1;
+    long k2;
+    if (rem > 8) { //k1 -> whole; k2 -> partial
+      k1 = getLong(buf, index, swap);
+      k2 = getLong(buf, index + 8, rem - 8);
+    } 
+    else { //k1 -> whole, partial or 0; k2 == 0
+      k1 = (rem == 0) ? 0 : getLong(buf, index, rem);
+      k2 = 0;
+    }
+    // Mix the tail into the hash and return
+    return hashState.finalMix128(k1, k2, lengthBytes);
+  }
+  
   //--HashState class---------------------------------------------------
   /**
    * Common processing of the 128-bit hash state independent of input type.
@@ -352,5 +532,56 @@ public final class MurmurHash3 implements Serializable {
     }
     return out;
   }
+  
+  /**
+   * Gets a long from the given Memory starting at the given offset in bytes and continuing for
+   * remainder (rem) bytes. The bytes are extracted in little-endian order. There is no limit
+   * checking.
+   * 
+   * @param mem The given input Memory.
+   * @param offsetBytes Zero-based offset in bytes from the start of the Memory.
+   * @param rem Remainder bytes. An integer in the range [1,8].
+   * @return long
+   */
+  private static long getLong(Memory mem, long offsetBytes, int rem) {
+    long out = 0L;
+    for (int i = rem; i-- > 0;) { //i= 7,6,5,4,3,2,1,0
+      byte b = mem.getByte(offsetBytes + i);
+      out ^= (b & 0xFFL) << (i * 8); //equivalent to |=
+    }
+    return out;
+  }
+  
+  /**
+   * Gets a whole long from the given ByteBuffer at the given absolute index in little-endian
+   * order.
+   * 
+   * @param buf The given input ByteBuffer.
+   * @param index The absolute index of the first byte.
+   * @param swap true if the ByteBuffer is big-endian and the bytes must be reversed.
+   * @return long
+   */
+  private static long getLong(ByteBuffer buf, int index, boolean swap) {
+    long out = buf.getLong(index);
+    return (swap) ? Long.reverseBytes(out) : out;
+  }
+  
+  /**
+   * Gets a long from the given ByteBuffer starting at the given absolute index and continuing 
+   * for remainder (rem) bytes. The bytes are extracted in little-endian order. 
+   * 
+   * @param buf The given input ByteBuffer.
+   * @param index The absolute index of the first byte.
+   * @param rem Remainder bytes. An integer in the range [1,8].
+   * @return long
+   */
+  private static long getLong(ByteBuffer buf, int index, int rem) {
+    long out = 0L;
+    for (int i = rem; i-- > 0;) { //i= 7,6,5,4,3,2,1,0
+      byte b = buf.get(index + i);
+      out ^= (b & 0xFFL) << (i * 8); //equivalent to |=
+    }
+    return out;
+  }
 
 }
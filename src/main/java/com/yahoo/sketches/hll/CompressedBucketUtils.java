@@ -70,7 +70,8 @@ final class CompressedBucketUtils {
         ++i;
         while (i < size) {
           nibble = CompressedBucketUtils.getNibble(buckets, i);
-          if (nibble > 0 && nibble < 0x0f) {
+          // a zero nibble is a bucket at currMin, which is only empty while currMin is zero
+          if ((nibble > 0 || currMin > 0) && nibble < 0x0f) {
             break;
           }
           ++i;
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.hll;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+
+/**
+ * The Memory-backed equivalent of OnHeapFields: one byte per bucket, stored in the given Memory
+ * right after the preamble and the version byte, which is the same layout as the serialized form.
+ */
+final class DirectFields implements Fields {
+  private final Preamble preamble;
+  private final Memory mem;
+  private final int bucketsOffset;
+  private final int numBuckets;
+
+  /**
+   * Wraps the given Memory, which must already hold the preamble, the version byte and the
+   * buckets.
+   * @param preamble the Preamble
+   * @param mem the backing Memory
+   */
+  DirectFields(Preamble preamble, Memory mem) {
+    this.preamble = preamble;
+    this.mem = mem;
+    this.bucketsOffset = (preamble.getPreambleLongs() << 3) + 1;
+    this.numBuckets = preamble.getConfigK();
+    long reqBytes = bucketsOffset + numBuckets;
+    if (mem.getCapacity() < reqBytes) {
+      throw new SketchesArgumentException(
+          String.format("Memory too small[%,d] < [%,d]", mem.getCapacity(), reqBytes)
+      );
+    }
+  }
+
+  /**
+   * Writes the preamble, the version byte and cleared buckets into the given Memory and
+   * returns the Fields that use it.
+   * @param preamble the Preamble
+   * @param mem the backing Memory
+   * @return a new, clean DirectFields
+   */
+  static DirectFields initialize(Preamble preamble, Memory mem) {
+    DirectFields fields = new DirectFields(preamble, mem); //checks capacity
+    preamble.intoMemory(mem);
+    mem.putByte(fields.bucketsOffset - 1, Fields.NAIVE_DENSE_VERSION);
+    mem.clear(fields.bucketsOffset, fields.numBuckets);
+    return fields;
+  }
+
+  @Override
+  public Preamble getPreamble() {
+    return preamble;
+  }
+
+  @Override
+  public Fields updateBucket(int index, byte val, UpdateCallback callback) {
+    long offset = bucketsOffset + index;
+    byte oldVal = mem.getByte(offset);
+    if (val > oldVal) {
+      callback.bucketUpdated(index, oldVal, val);
+      mem.putByte(offset, val);
+    }
+    return this;
+  }
+
+  @Override
+  public int intoByteArray(byte[] array, int offset) {
+    int numBytesNeeded = numBytesToSerialize();
+    if (array.length - offset < numBytesNeeded) {
+      throw new SketchesArgumentException(
+          String.format("array too small[%,d] < [%,d]", array.length - offset, numBytesNeeded)
+      );
+    }
+
+    mem.getByteArray(bucketsOffset - 1, array, offset, numBytesNeeded);
+    return offset + numBytesNeeded;
+  }
+
+  @Override
+  public int numBytesToSerialize() {
+    return 1 + numBuckets;
+  }
+
+  /**
+   * As with OnHeapFields, the dense form is already the compact form. The returned Fields share
+   * the backing Memory.
+   */
+  @Override
+  public Fields toCompact() {
+    return this;
+  }
+
+  @Override
+  public BucketIterator getBucketIterator() {
+    return new BucketIterator() {
+      private int i = -1;
+      private byte value;
+
+      @Override
+      public boolean next() {
+        ++i;
+        while (i < numBuckets) {
+          value = mem.getByte(bucketsOffset + i);
+          if (value != 0) {
+            break;
+          }
+          ++i;
+        }
+        return i < numBuckets;
+      }
+
+      @Override
+      public int getKey() {
+        return i;
+      }
+
+      @Override
+      public byte getValue() {
+        return value;
+      }
+    };
+  }
+
+  @Override
+  public Fields unionInto(Fields recipient, UpdateCallback cb) {
+    return recipient.unionBucketIterator(getBucketIterator(), cb);
+  }
+
+  @Override
+  public Fields unionBucketIterator(BucketIterator iter, UpdateCallback callback) {
+    return HllUtils.unionBucketIterator(this, iter, callback);
+  }
+
+  @Override
+  public Fields unionCompressedAndExceptions(
+      byte[] compressed, int minVal, OnHeapHash exceptions, UpdateCallback cb) {
+    return unionBucketIterator(
+        CompressedBucketUtils.getBucketIterator(compressed, minVal, exceptions), cb);
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.hll;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+
+/**
+ * The Memory-backed equivalent of OnHeapHashFields: a linear-probing hash table of
+ * key/value pairs stored in the given Memory right after the preamble and the version byte,
+ * which is the same layout as the serialized form. The log_base2 of the length of the table is
+ * kept in byte {@link Preamble#LG_HASH_TABLE_LEN_BYTE} of the Memory.
+ *
+ * <p>Like the on-heap version, the table doubles in place when it fills up, and once it has the
+ * size at which the on-heap version switches to dense mode it is converted in place into a
+ * DirectFields in the same Memory. The Memory must therefore always have room for the largest
+ * table and for the dense buckets.</p>
+ */
+final class DirectHashFields implements Fields {
+  private final Preamble preamble;
+  private final Memory mem;
+  private final int tableOffset;
+  private final int maxTableLen;
+  private int tableLen;
+  private int mask;
+  private int growthBound;
+
+  private int numElements;
+
+  /**
+   * Wraps the given Memory, which must already hold the preamble, the length of the hash table,
+   * the version byte and the hash table.
+   * @param preamble the Preamble
+   * @param mem the backing Memory
+   */
+  DirectHashFields(Preamble preamble, Memory mem) {
+    this.preamble = preamble;
+    this.mem = mem;
+    this.tableOffset = (preamble.getPreambleLongs() << 3) + 1;
+    this.maxTableLen = HashUtils.getMaxHashSize(preamble.getLogConfigK());
+    checkCapacity(preamble, mem);
+    int lgTableLen = mem.getByte(Preamble.LG_HASH_TABLE_LEN_BYTE);
+    if ((lgTableLen < 2) || (lgTableLen > Integer.numberOfTrailingZeros(maxTableLen))) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: Invalid hash table length: 2^" + lgTableLen
+      );
+    }
+    setTableLen(1 << lgTableLen);
+
+    for (int i = 0; i < tableLen; i++) {
+      if (mem.getInt(tableOffset + (i << 2)) != HashUtils.NOT_A_PAIR) {
+        ++numElements;
+      }
+    }
+    //a table this full is never written, and the probe for a new key might not terminate
+    if (numElements >= growthBound) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: Hash table too full: " + numElements + " of " + tableLen
+      );
+    }
+  }
+
+  /**
+   * Writes the preamble, the version byte and an empty hash table into the given Memory and
+   * returns the Fields that use it.
+   * @param preamble the Preamble
+   * @param mem the backing Memory
+   * @return a new, clean DirectHashFields
+   */
+  static DirectHashFields initialize(Preamble preamble, Memory mem) {
+    checkCapacity(preamble, mem); //before anything is written
+    int tableOffset = (preamble.getPreambleLongs() << 3) + 1;
+    int tableBytes = HashUtils.getMaxHashSize(preamble.getLogConfigK()) << 2;
+    preamble.intoMemory(mem);
+    mem.putByte(Preamble.LG_HASH_TABLE_LEN_BYTE,
+        (byte) Integer.numberOfTrailingZeros(HashUtils.getMaxHashSize(preamble.getLogConfigK())));
+    mem.putByte(tableOffset - 1, Fields.HASH_SPARSE_VERSION);
+    mem.fill(tableOffset, tableBytes, (byte) HashUtils.NOT_A_PAIR);
+    return new DirectHashFields(preamble, mem);
+  }
+
+  /**
+   * Checks that the given Memory has room for the hash table and for the dense buckets it is
+   * converted to when full.
+   * @param preamble the Preamble
+   * @param mem the backing Memory
+   */
+  private static void checkCapacity(Preamble preamble, Memory mem) {
+    int tableOffset = (preamble.getPreambleLongs() << 3) + 1;
+    int tableBytes = HashUtils.getMaxHashSize(preamble.getLogConfigK()) << 2;
+    long reqBytes = tableOffset + Math.max(preamble.getConfigK(), tableBytes);
+    if (mem.getCapacity() < reqBytes) {
+      throw new SketchesArgumentException(
+          String.format("Memory too small[%,d] < [%,d]", mem.getCapacity(), reqBytes)
+      );
+    }
+  }
+
+  private void setTableLen(int tableLen) {
+    this.tableLen = tableLen;
+    this.mask = tableLen - 1;
+    this.growthBound = 3 * (tableLen >>> 2);
+  }
+
+  @Override
+  public Preamble getPreamble() {
+    return preamble;
+  }
+
+  @Override
+  public Fields updateBucket(int key, byte val, UpdateCallback callback) {
+    if (insert(key, val, callback) && (++numElements >= growthBound)) {
+      if (tableLen == maxTableLen) {
+        return toDense();
+      }
+      grow();
+    }
+    return this;
+  }
+
+  /**
+   * Inserts or raises the value of the given key.
+   * @param key the key
+   * @param val the value
+   * @param callback the callback to be called if the value is updated
+   * @return true if the key was not in the table
+   */
+  private boolean insert(int key, byte val, UpdateCallback callback) {
+    int probe = key & mask;
+    int field = mem.getInt(tableOffset + (probe << 2));
+    while (field != HashUtils.NOT_A_PAIR && key != HashUtils.keyOfPair(field)) {
+      probe = (probe + 1) & mask;
+      field = mem.getInt(tableOffset + (probe << 2));
+    }
+
+    if (field == HashUtils.NOT_A_PAIR) {
+      mem.putInt(tableOffset + (probe << 2), HashUtils.pairOfKeyAndVal(key, val));
+      callback.bucketUpdated(key, (byte) 0, val);
+      return true;
+    }
+    byte oldVal = HashUtils.valOfPair(field);
+    if (oldVal < val) {
+      mem.putInt(tableOffset + (probe << 2), HashUtils.pairOfKeyAndVal(key, val));
+      callback.bucketUpdated(key, oldVal, val);
+    }
+    return false;
+  }
+
+  /**
+   * Doubles the hash table in place. checkCapacity has made sure there is room.
+   */
+  private void grow() {
+    int[] fields = new int[tableLen];
+    mem.getIntArray(tableOffset, fields, 0, tableLen);
+    setTableLen(tableLen << 1);
+    mem.fill(tableOffset, tableLen << 2, (byte) HashUtils.NOT_A_PAIR);
+    mem.putByte(Preamble.LG_HASH_TABLE_LEN_BYTE, (byte) Integer.numberOfTrailingZeros(tableLen));
+    for (int field : fields) {
+      if (field != HashUtils.NOT_A_PAIR) {
+        insert(HashUtils.keyOfPair(field), HashUtils.valOfPair(field), NOOP_CB);
+      }
+    }
+  }
+
+  /**
+   * Converts this hash table into dense buckets in the same Memory.
+   * @return the DirectFields that now own the Memory
+   */
+  private Fields toDense() {
+    int[] fields = new int[tableLen];
+    mem.getIntArray(tableOffset, fields, 0, tableLen);
+    mem.putByte(Preamble.LG_HASH_TABLE_LEN_BYTE, (byte) 0);
+    mem.putByte(tableOffset - 1, Fields.NAIVE_DENSE_VERSION);
+    mem.clear(tableOffset, preamble.getConfigK());
+    for (int field : fields) {
+      if (field != HashUtils.NOT_A_PAIR) {
+        mem.putByte(tableOffset + HashUtils.keyOfPair(field), HashUtils.valOfPair(field));
+      }
+    }
+    return new DirectFields(preamble, mem);
+  }
+
+  @Override
+  public int intoByteArray(byte[] array, int offset) {
+    int numBytesNeeded = numBytesToSerialize();
+    if (array.length - offset < numBytesNeeded) {
+      throw new SketchesArgumentException(
+          String.format("array too small[%,d] < [%,d]", array.length - offset, numBytesNeeded)
+      );
+    }
+
+    mem.getByteArray(tableOffset - 1, array, offset, numBytesNeeded);
+    return offset + numBytesNeeded;
+  }
+
+  @Override
+  public int numBytesToSerialize() {
+    return 1 + (tableLen << 2);
+  }
+
+  @Override
+  public Fields toCompact() {
+    return OnHeapImmutableCompactFields.fromFields(this);
+  }
+
+  @Override
+  public BucketIterator getBucketIterator() {
+    return new BucketIterator() {
+      private int i = -1;
+      private int field;
+
+      @Override
+      public boolean next() {
+        ++i;
+        while (i < tableLen) {
+          field = mem.getInt(tableOffset + (i << 2));
+          if (field != HashUtils.NOT_A_PAIR) {
+            break;
+          }
+          ++i;
+        }
+        return i < tableLen;
+      }
+
+      @Override
+      public int getKey() {
+        return HashUtils.keyOfPair(field);
+      }
+
+      @Override
+      public byte getValue() {
+        return HashUtils.valOfPair(field);
+      }
+    };
+  }
+
+  @Override
+  public Fields unionInto(Fields recipient, UpdateCallback cb) {
+    return recipient.unionBucketIterator(getBucketIterator(), cb);
+  }
+
+  @Override
+  public Fields unionBucketIterator(BucketIterator iter, UpdateCallback callback) {
+    return HllUtils.unionBucketIterator(this, iter, callback);
+  }
+
+  @Override
+  public Fields unionCompressedAndExceptions(
+      byte[] compressed, int minVal, OnHeapHash exceptions, UpdateCallback cb) {
+    return unionBucketIterator(
+        CompressedBucketUtils.getBucketIterator(compressed, minVal, exceptions), cb);
+  }
+}
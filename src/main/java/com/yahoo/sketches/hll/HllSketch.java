@@ -9,6 +9,9 @@ import static com.yahoo.sketches.Util.DEFAULT_UPDATE_SEED;
 import static com.yahoo.sketches.hash.MurmurHash3.hash;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+
 /**
  * Top-level class for the HLL family of sketches.
  * Use the HllSketchBuilder to construct this class.
@@ -17,6 +20,8 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  */
 public class HllSketch {
   private static final double HLL_REL_ERROR_NUMER = 1.04;
+  //an update sets a bucket to at most the number of leading zeros of a 64-bit hash plus one
+  private static final int MAX_BUCKET_VALUE = 65;
 
   /**
    * Returns an HllSketchBuilder
@@ -26,24 +31,180 @@ public class HllSketch {
     return new HllSketchBuilder();
   }
 
+  /**
+   * Wraps the given Memory, which must hold a sketch in the dense or hash-sparse form, such as
+   * one built with {@link HllSketchBuilder#setMemory(Memory)} or the {@link #toByteArray()} of a
+   * sketch in one of these forms. The returned sketch updates, unions and estimates directly in
+   * the given Memory without copying it on-heap. A hash-sparse sketch grows its hash table and
+   * then converts itself to dense in place, so its Memory must have at least
+   * {@link #getMaxUpdateSketchBytes(int)} bytes, which is more than the serialized form of a
+   * hash-sparse sketch has. Such a sketch must be copied into a large enough Memory first.
+   * Several sketches may wrap the same Memory, but each keeps its own estimator state, which is
+   * computed from the buckets when wrapping and kept current by its own updates and unions only.
+   * Wrap the Memory again to see the updates made through another sketch.
+   *
+   * @param srcMem the Memory that holds the sketch
+   * @return an HllSketch backed by the given Memory
+   */
+  public static HllSketch wrap(Memory srcMem) {
+    Preamble preamble = checkPreamble(srcMem);
+    int fieldsOffset = preamble.getPreambleLongs() << 3;
+    byte version = srcMem.getByte(fieldsOffset);
+    if (version == Fields.NAIVE_DENSE_VERSION) {
+      return new HllSketch(new DirectFields(preamble, srcMem));
+    }
+    if (version == Fields.HASH_SPARSE_VERSION) {
+      return new HllSketch(new DirectHashFields(preamble, srcMem));
+    }
+    throw new SketchesArgumentException(
+        "Cannot wrap Fields version " + version + ", use heapify instead"
+    );
+  }
+
+  /**
+   * Heapifies the given Memory, which may hold a sketch in any of the serialized forms.
+   * The returned sketch does not share the given Memory.
+   *
+   * @param srcMem the Memory that holds the sketch
+   * @return an on-heap copy of the sketch in the given Memory
+   */
+  public static HllSketch heapify(Memory srcMem) {
+    Preamble preamble = checkPreamble(srcMem);
+    int offset = preamble.getPreambleLongs() << 3;
+    byte version = srcMem.getByte(offset++);
+    int configK = preamble.getConfigK();
+    long capacity = srcMem.getCapacity();
+    final Fields fields;
+
+    if (version == Fields.NAIVE_DENSE_VERSION) {
+      checkCapacity(capacity, offset + configK);
+      fields = new OnHeapFields(preamble);
+      for (int i = 0; i < configK; i++) {
+        byte val = srcMem.getByte(offset + i);
+        if (val != 0) {
+          fields.updateBucket(i, val, Fields.NOOP_CB);
+        }
+      }
+    } else if (version == Fields.HASH_SPARSE_VERSION) {
+      Fields hashFields = new OnHeapHashFields(
+          preamble, 16, HashUtils.getMaxHashSize(preamble.getLogConfigK()), new DenseFieldsFactory());
+      for (long i = offset; i + 4 <= capacity; i += 4) {
+        int pair = srcMem.getInt(i);
+        if (pair != HashUtils.NOT_A_PAIR) {
+          hashFields = hashFields.updateBucket(
+              HashUtils.keyOfPair(pair), HashUtils.valOfPair(pair), Fields.NOOP_CB);
+        }
+      }
+      fields = hashFields;
+    } else if (version == Fields.SORTED_SPARSE_VERSION) {
+      int[] pairs = new int[(int) ((capacity - offset) >>> 2)];
+      srcMem.getIntArray(offset, pairs, 0, pairs.length);
+      fields = new OnHeapImmutableCompactFields(preamble, pairs);
+    } else if (version == Fields.COMPRESSED_DENSE_VERSION) {
+      int bucketsOffset = offset + 5;
+      checkCapacity(capacity, bucketsOffset + (configK >>> 1));
+      byte currMin = srcMem.getByte(offset);
+      byte[] buckets = new byte[configK >>> 1];
+      srcMem.getByteArray(bucketsOffset, buckets, 0, buckets.length);
+      fields = new OnHeapCompressedFields(preamble);
+      for (int i = 0; i < configK; i++) {
+        byte nibble = CompressedBucketUtils.getNibble(buckets, i);
+        if (nibble != 0xf && nibble + currMin != 0) {
+          fields.updateBucket(i, (byte) (nibble + currMin), Fields.NOOP_CB);
+        }
+      }
+      //the exceptions hold the values of the buckets whose nibble is 0xf
+      for (long i = bucketsOffset + buckets.length; i + 4 <= capacity; i += 4) {
+        int pair = srcMem.getInt(i);
+        if (pair != HashUtils.NOT_A_PAIR) {
+          fields.updateBucket(HashUtils.keyOfPair(pair), HashUtils.valOfPair(pair), Fields.NOOP_CB);
+        }
+      }
+    } else {
+      throw new SketchesArgumentException("Unknown Fields version " + version);
+    }
+    return new HllSketch(fields);
+  }
+
+  /**
+   * Returns the number of bytes of Memory an updatable sketch with the given number of
+   * buckets needs, whether it starts sparse or dense.
+   * @param logBuckets the log_base2 of the number of buckets (k)
+   * @return the number of bytes of Memory needed
+   */
+  public static int getMaxUpdateSketchBytes(int logBuckets) {
+    return (Preamble.PREAMBLE_LONGS << 3) + 1
+        + Math.max(1 << logBuckets, HashUtils.getMaxHashSize(logBuckets) << 2);
+  }
+
+  private static Preamble checkPreamble(Memory srcMem) {
+    checkCapacity(srcMem.getCapacity(), (Preamble.PREAMBLE_LONGS << 3) + 1);
+    Preamble preamble = Preamble.fromMemory(srcMem);
+    if (preamble.getFamilyId() != Preamble.HLL_PREAMBLE_FAMILY_ID) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: Invalid Family ID: " + preamble.getFamilyId()
+      );
+    }
+    return preamble;
+  }
+
+  private static void checkCapacity(long capacity, long reqBytes) {
+    if (capacity < reqBytes) {
+      throw new SketchesArgumentException(
+          String.format("Memory too small[%,d] < [%,d]", capacity, reqBytes)
+      );
+    }
+  }
+
   private Fields.UpdateCallback updateCallback;
+  private final Fields.UpdateCallback estimatorCallback;
   private final Preamble preamble;
 
   private Fields fields;
 
+  //estimator state, kept current by estimatorCallback so that the estimate does not scan the buckets.
+  //The number of buckets per value gives the same sum in whatever order the buckets were updated.
+  private final int[] valueCounts = new int[MAX_BUCKET_VALUE + 1];
+
+  //scratch for the single-value update paths, which avoids allocating a new hash array per update
+  private final long[] hashOut = new long[2];
+
   /**
    * Construct this class with the given Fields
    * @param fields the given Fields
    */
   public HllSketch(Fields fields) {
     this.fields = fields;
-    this.updateCallback = new Fields.UpdateCallback() {
+    this.updateCallback = Fields.NOOP_CB;
+    this.estimatorCallback = new Fields.UpdateCallback() {
       @Override
       public void bucketUpdated(int bucket, byte oldVal, byte newVal) {
-        //intentionally empty
+        --valueCounts[oldVal];
+        ++valueCounts[newVal];
+        updateCallback.bucketUpdated(bucket, oldVal, newVal);
       }
     };
     this.preamble = fields.getPreamble();
+    //the given Fields may already hold data, e.g., when wrapping a Memory
+    scanFields();
+  }
+
+  /**
+   * Computes the estimator state from the buckets of the Fields. This is the only full scan.
+   */
+  private void scanFields() {
+    int count = 0;
+    BucketIterator bucketIter = fields.getBucketIterator();
+    while (bucketIter.next()) {
+      byte value = bucketIter.getValue();
+      if ((value < 0) || (value > MAX_BUCKET_VALUE)) {
+        throw new SketchesArgumentException("Possible Corruption: Invalid bucket value: " + value);
+      }
+      ++valueCounts[value];
+      ++count;
+    }
+    // All skipped buckets are 0.
+    valueCounts[0] += preamble.getConfigK() - count;
   }
 
   /**
@@ -52,8 +213,7 @@ public class HllSketch {
    * @param datum The given long datum.
    */
   public void update(long datum) {
-    long[] data = { datum };
-    updateWithHash(hash(data, DEFAULT_UPDATE_SEED));
+    updateWithHash(hash(datum, DEFAULT_UPDATE_SEED, hashOut));
   }
   
   /**
@@ -67,8 +227,8 @@ public class HllSketch {
    */
   public void update(double datum) {
     double d = (datum == 0.0) ? 0.0 : datum; // canonicalize -0.0, 0.0
-    long[] data = { Double.doubleToLongBits(d) };// canonicalize all NaN forms
-    updateWithHash(hash(data, DEFAULT_UPDATE_SEED));
+    long data = Double.doubleToLongBits(d);// canonicalize all NaN forms
+    updateWithHash(hash(data, DEFAULT_UPDATE_SEED, hashOut));
   }
   
   /**
@@ -125,13 +285,180 @@ public class HllSketch {
     updateWithHash(hash(data, DEFAULT_UPDATE_SEED));
   }
   
+  /**
+   * Present this sketch with the given region of Memory, which is hashed in place without
+   * copying. This produces the same hash value as {@link #update(byte[])} given a byte array 
+   * with the same contents as the region.
+   * If the Memory is null or the length is zero no update attempt is made and the method returns.
+   * 
+   * @param mem The Memory that contains the datum.
+   * @param offsetBytes The offset in bytes of the datum relative to the Memory start.
+   * @param lengthBytes The length of the datum in bytes.
+   */
+  public void update(Memory mem, long offsetBytes, int lengthBytes) {
+    if ((mem == null) || (lengthBytes == 0)) {
+      return;
+    }
+    updateWithHash(hash(mem, offsetBytes, lengthBytes, DEFAULT_UPDATE_SEED));
+  }
+  
   /**
    * Gets the unique count estimate.
    * @return the sketch's best estimate of the cardinality of the input stream.
    */
   public double getEstimate() {
-    double rawEst = getRawEstimate();
-    int logK = preamble.getLogConfigK();
+    return estimate(preamble.getLogConfigK(), inversePowerOf2Sum(), numBucketsAtZero());
+  }
+
+  /**
+   * Gets the upper bound with respect to the Estimate
+   * @param numStdDevs the number of standard deviations from the Estimate
+   * @return the upper bound
+   */
+  public double getUpperBound(double numStdDevs) {
+    return upperBound(preamble.getConfigK(), getEstimate(), numStdDevs);
+  }
+
+  /**
+   * Gets the lower bound with respect to the Estimate
+   * @param numStdDevs the number of standard deviations from the Estimate
+   * @return the lower bound
+   */
+  public double getLowerBound(double numStdDevs) {
+    return lowerBound(preamble.getConfigK(), getEstimate(), numBucketsAtZero(), numStdDevs);
+  }
+
+  /**
+   * Gets the unique count estimate of the sketch in the given Memory, which may hold a sketch in
+   * any of the serialized forms, without heapifying or wrapping it. The buckets are read once in
+   * place and nothing is allocated. This is the estimate of {@link #heapify(Memory)}, which for a
+   * {@link HipHllSketch} is not its HIP estimate.
+   *
+   * @param srcMem the Memory that holds the sketch
+   * @return the sketch's best estimate of the cardinality of the input stream.
+   */
+  public static double getEstimate(Memory srcMem) {
+    return scanMemory(srcMem, 0, 0.0);
+  }
+
+  /**
+   * Gets the upper bound with respect to the Estimate of the sketch in the given Memory without
+   * heapifying or wrapping it.
+   *
+   * @param srcMem the Memory that holds the sketch
+   * @param numStdDevs the number of standard deviations from the Estimate
+   * @return the upper bound
+   */
+  public static double getUpperBound(Memory srcMem, double numStdDevs) {
+    return scanMemory(srcMem, 1, numStdDevs);
+  }
+
+  /**
+   * Gets the lower bound with respect to the Estimate of the sketch in the given Memory without
+   * heapifying or wrapping it.
+   *
+   * @param srcMem the Memory that holds the sketch
+   * @param numStdDevs the number of standard deviations from the Estimate
+   * @return the lower bound
+   */
+  public static double getLowerBound(Memory srcMem, double numStdDevs) {
+    return scanMemory(srcMem, -1, numStdDevs);
+  }
+
+  /**
+   * Computes the inverse power of 2 sum and the number of buckets at zero of the sketch in the
+   * given Memory in one pass over the serialized buckets and returns the estimate or one of the
+   * bounds. The sum is accumulated bucket by bucket, so it may differ from that of a sketch in
+   * its last bits.
+   *
+   * @param srcMem the Memory that holds the sketch
+   * @param bound zero for the estimate, positive for the upper and negative for the lower bound
+   * @param numStdDevs the number of standard deviations from the Estimate
+   * @return the estimate or the requested bound
+   */
+  private static double scanMemory(Memory srcMem, int bound, double numStdDevs) {
+    long capacity = srcMem.getCapacity();
+    checkCapacity(capacity, (Preamble.PREAMBLE_LONGS << 3) + 1);
+    byte familyId = srcMem.getByte(2);
+    if (familyId != Preamble.HLL_PREAMBLE_FAMILY_ID) {
+      throw new SketchesArgumentException("Possible Corruption: Invalid Family ID: " + familyId);
+    }
+    int logK = srcMem.getByte(3);
+    int configK = 1 << logK;
+    int offset = srcMem.getByte(0) << 3;
+    byte version = srcMem.getByte(offset++);
+    int count = 0;
+    int numNonZeros = 0;
+    double sum = 0;
+
+    if (version == Fields.NAIVE_DENSE_VERSION) {
+      checkCapacity(capacity, offset + configK);
+      for (int i = 0; i < configK; i++) {
+        byte val = srcMem.getByte(offset + i);
+        sum += HllUtils.invPow2(val);
+        if (val != 0) {
+          ++numNonZeros;
+        }
+      }
+      count = configK;
+    } else if (version == Fields.HASH_SPARSE_VERSION || version == Fields.SORTED_SPARSE_VERSION) {
+      for (long i = offset; i + 4 <= capacity; i += 4) {
+        int pair = srcMem.getInt(i);
+        if (pair != HashUtils.NOT_A_PAIR) {
+          byte val = HashUtils.valOfPair(pair);
+          sum += HllUtils.invPow2(val);
+          if (val != 0) {
+            ++numNonZeros;
+          }
+          ++count;
+        }
+      }
+    } else if (version == Fields.COMPRESSED_DENSE_VERSION) {
+      int bucketsOffset = offset + 5;
+      int numBucketBytes = configK >>> 1;
+      checkCapacity(capacity, bucketsOffset + numBucketBytes);
+      byte currMin = srcMem.getByte(offset);
+      for (int i = 0; i < configK; i++) {
+        byte theByte = srcMem.getByte(bucketsOffset + (i >> 1));
+        int nibble = ((i & 1) == 0 ? theByte >> 4 : theByte) & 0x0f;
+        if (nibble != 0xf) { //otherwise the value is one of the exceptions
+          int val = nibble + currMin;
+          sum += HllUtils.invPow2(val);
+          if (val != 0) {
+            ++numNonZeros;
+          }
+          ++count;
+        }
+      }
+      for (long i = bucketsOffset + numBucketBytes; i + 4 <= capacity; i += 4) {
+        int pair = srcMem.getInt(i);
+        if (pair != HashUtils.NOT_A_PAIR) {
+          byte val = HashUtils.valOfPair(pair);
+          sum += HllUtils.invPow2(val);
+          if (val != 0) {
+            ++numNonZeros;
+          }
+          ++count;
+        }
+      }
+    } else {
+      throw new SketchesArgumentException("Unknown Fields version " + version);
+    }
+    // All skipped buckets are 0.
+    double invPow2Sum = sum + (configK - count);
+    int numZeros = configK - numNonZeros;
+    double estimate = estimate(logK, invPow2Sum, numZeros);
+    if (bound > 0) {
+      return upperBound(configK, estimate, numStdDevs);
+    }
+    if (bound < 0) {
+      return lowerBound(configK, estimate, numZeros, numStdDevs);
+    }
+    return estimate;
+  }
+
+  private static double estimate(int logK, double invPow2Sum, long numZeros) {
+    double rawEst = rawEstimate(1 << logK, invPow2Sum);
 
     double[] x_arr = Interpolation.interpolation_x_arrs[logK - Interpolation.INTERPOLATION_MIN_LOG_K];
     double[] y_arr = Interpolation.interpolation_y_arrs[logK - Interpolation.INTERPOLATION_MIN_LOG_K];
@@ -144,13 +471,13 @@ public class HllSketch {
     }
 
     double adjEst = Interpolation.cubicInterpolateUsingTable(x_arr, y_arr, rawEst);
-    int configK = preamble.getConfigK();
+    int configK = 1 << logK;
 
     if (adjEst > 3.0 * configK) {
       return adjEst;
     }
 
-    double linEst = getLinearEstimate();
+    double linEst = linearEstimate(configK, numZeros);
     double avgEst = (adjEst + linEst) / 2.0;
 
     // The following constant 0.64 comes from empirical measurements (see below) of the crossover
@@ -161,41 +488,29 @@ public class HllSketch {
     return linEst;
   }
 
-  /**
-   * Gets the upper bound with respect to the Estimate
-   * @param numStdDevs the number of standard deviations from the Estimate
-   * @return the upper bound
-   */
-  public double getUpperBound(double numStdDevs) {
-    return getEstimate() / (1.0 - eps(numStdDevs));
+  private static double upperBound(int configK, double estimate, double numStdDevs) {
+    return estimate / (1.0 - eps(configK, numStdDevs));
   }
 
-  /**
-   * Gets the lower bound with respect to the Estimate
-   * @param numStdDevs the number of standard deviations from the Estimate
-   * @return the lower bound
-   */
-  public double getLowerBound(double numStdDevs) {
-    double lowerBound = getEstimate() / (1.0 + eps(numStdDevs));
-    double numNonZeros = preamble.getConfigK();
-    numNonZeros -= numBucketsAtZero();
+  private static double lowerBound(int configK, double estimate, long numZeros,
+      double numStdDevs) {
+    double lowerBound = estimate / (1.0 + eps(configK, numStdDevs));
+    double numNonZeros = configK;
+    numNonZeros -= numZeros;
     if (lowerBound < numNonZeros) {
       return numNonZeros;
     }
     return lowerBound;
   }
 
-  private double getRawEstimate() {
-    int numBuckets = preamble.getConfigK();
+  private static double rawEstimate(int numBuckets, double invPow2Sum) {
     double correctionFactor = 0.7213 / (1.0 + 1.079 / numBuckets);
     correctionFactor *= numBuckets * numBuckets;
-    correctionFactor /= inversePowerOf2Sum();
+    correctionFactor /= invPow2Sum;
     return correctionFactor;
   }
 
-  private double getLinearEstimate() {
-    int configK = preamble.getConfigK();
-    long longV = numBucketsAtZero();
+  private static double linearEstimate(int configK, long longV) {
     if (longV == 0) {
       return configK * Math.log(configK / 0.5);
     }
@@ -208,18 +523,18 @@ public class HllSketch {
    * @return this sketch
    */
   public HllSketch union(HllSketch that) {
-    fields = that.fields.unionInto(fields, updateCallback);
+    fields = that.fields.unionInto(fields, estimatorCallback);
     return this;
   }
 
   private void updateWithHash(long[] hash) {
     byte newValue = (byte) (Long.numberOfLeadingZeros(hash[1]) + 1);
     int slotno = (int) hash[0] & (preamble.getConfigK() - 1);
-    fields = fields.updateBucket(slotno, newValue, updateCallback);
+    fields = fields.updateBucket(slotno, newValue, estimatorCallback);
   }
 
-  private double eps(double numStdDevs) {
-    return numStdDevs * HLL_REL_ERROR_NUMER / Math.sqrt(preamble.getConfigK());
+  private static double eps(int configK, double numStdDevs) {
+    return numStdDevs * HLL_REL_ERROR_NUMER / Math.sqrt(configK);
   }
 
   /**
@@ -227,10 +542,16 @@ public class HllSketch {
    * @return this sketch as a byte array
    */
   public byte[] toByteArray() {
-    int numBytes = (preamble.getPreambleLongs() << 3) + fields.numBytesToSerialize();
+    int fieldsOffset = preamble.getPreambleLongs() << 3;
+    int numBytes = fieldsOffset + fields.numBytesToSerialize();
     byte[] retVal = new byte[numBytes];
 
     fields.intoByteArray(retVal, preamble.intoByteArray(retVal, 0));
+    if (retVal[fieldsOffset] == Fields.HASH_SPARSE_VERSION) {
+      //the version byte is followed by the hash table, record its length for wrap
+      int tableLen = (numBytes - fieldsOffset - 1) >>> 2;
+      retVal[Preamble.LG_HASH_TABLE_LEN_BYTE] = (byte) Integer.numberOfTrailingZeros(tableLen);
+    }
 
     return retVal;
   }
@@ -271,6 +592,7 @@ public class HllSketch {
 
   /**
    * Set the update callback. It is final so that it can not be overridden.
+   * The callback is called after this sketch has updated its own estimator state.
    *
    * @param updateCallback the update callback for the HllSketch to use when talking with its Fields
    */
@@ -281,29 +603,26 @@ public class HllSketch {
   //Helper methods that are potential extension points for children
 
   /**
-   * The sum of the inverse powers of 2
+   * The sum of the inverse powers of 2 over all buckets. This is computed from the number of
+   * buckets per value, which is maintained on every bucket update, so it is constant time.
    *
    * @return the sum of the inverse powers of 2
    */
   protected double inversePowerOf2Sum() {
-    return HllUtils.computeInvPow2Sum(numBuckets(), fields.getBucketIterator());
+    double sum = 0;
+    for (int value = MAX_BUCKET_VALUE; value >= 0; value--) {
+      sum += valueCounts[value] * HllUtils.invPow2(value);
+    }
+    return sum;
   }
 
+  /**
+   * The number of buckets that are still zero. This is maintained on every bucket update, so it
+   * is constant time.
+   *
+   * @return the number of buckets at zero
+   */
   protected int numBucketsAtZero() {
-    int retVal = 0;
-    int count = 0;
-
-    BucketIterator bucketIter = fields.getBucketIterator();
-    while (bucketIter.next()) {
-      if (bucketIter.getValue() == 0) {
-        ++retVal;
-      }
-      ++count;
-    }
-
-    // All skipped buckets are 0.
-    retVal += fields.getPreamble().getConfigK() - count;
-
-    return retVal;
+    return valueCounts[0];
   }
 }
@@ -9,14 +9,18 @@ import static com.yahoo.sketches.Util.DEFAULT_NOMINAL_ENTRIES;
 import static com.yahoo.sketches.Util.LS;
 import static com.yahoo.sketches.Util.TAB;
 
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+
 /**
  * @author Kevin Lang
  */
-public class HllSketchBuilder { //TODO will need to add seed and Memory, etc.
+public class HllSketchBuilder { //TODO will need to add seed, etc.
   private Preamble preamble = null;
   private boolean compressedDense = false;
   private boolean denseMode = false;
   private boolean hipEstimator = false;
+  private Memory memory = null;
   
   /**
    * Default constructor using default nominal entries (4096).
@@ -35,6 +39,7 @@ public class HllSketchBuilder { //TODO will need to add seed and Memory, etc.
     retVal.compressedDense = compressedDense;
     retVal.denseMode = denseMode;
     retVal.hipEstimator = hipEstimator;
+    retVal.memory = memory;
 
     return retVal;
   }
@@ -129,11 +134,36 @@ public class HllSketchBuilder { //TODO will need to add seed and Memory, etc.
     return hipEstimator;
   }
   
+  /**
+   * Sets the Memory that the sketch will be built in. The sketch is then updated in place and
+   * never copied on-heap. The Memory must have at least
+   * {@link HllSketch#getMaxUpdateSketchBytes(int)} bytes, and neither Compressed Dense nor the
+   * Hip Estimator may be selected.
+   * @param memory the given Memory, or null to build the sketch on-heap
+   * @return this builder
+   */
+  public HllSketchBuilder setMemory(Memory memory) {
+    this.memory = memory;
+    return this;
+  }
+
+  /**
+   * Gets the configured Memory
+   * @return the configured Memory, or null if the sketch will be built on-heap
+   */
+  public Memory getMemory() {
+    return memory;
+  }
+
   /**
    * Build a new HllSketch
    * @return a new HllSketch
    */
   public HllSketch build() {
+    if (memory != null) {
+      return buildDirect();
+    }
+
     final FieldsFactory denseFactory;
     if (compressedDense) {
       denseFactory = new DenseCompressedFieldsFactory();
@@ -155,6 +185,22 @@ public class HllSketchBuilder { //TODO will need to add seed and Memory, etc.
     }
   }
   
+  private HllSketch buildDirect() {
+    if (compressedDense || hipEstimator) {
+      throw new SketchesArgumentException(
+          "Compressed Dense and the Hip Estimator are not supported in Memory"
+      );
+    }
+
+    final Fields fields;
+    if (denseMode) {
+      fields = DirectFields.initialize(preamble, memory);
+    } else {
+      fields = DirectHashFields.initialize(preamble, memory);
+    }
+    return new HllSketch(fields);
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
@@ -163,7 +209,8 @@ public class HllSketchBuilder { //TODO will need to add seed and Memory, etc.
       .append("K:").append(TAB).append(preamble.getConfigK()).append(LS)
       .append("DenseMode:").append(TAB).append(denseMode).append(LS)
       .append("HIP Estimator:").append(TAB).append(hipEstimator).append(LS)
-      .append("Compressed Dense:").append(TAB).append(compressedDense).append(LS);
+      .append("Compressed Dense:").append(TAB).append(compressedDense).append(LS)
+      .append("DstMemory:").append(TAB).append(memory != null).append(LS);
     
     return sb.toString();
   }
@@ -20,6 +20,9 @@ public final class Preamble {
   static final byte PREAMBLE_LONGS = 1;
   static final byte PREAMBLE_VERSION = 8;
   static final byte HLL_PREAMBLE_FAMILY_ID = (byte) Family.HLL.getID();
+  //byte 4 is not part of the Preamble. The hash sparse Fields keep the log_base2 of the length
+  //of their hash table there, as that length is not known from the Fields version alone.
+  static final int LG_HASH_TABLE_LEN_BYTE = 4;
 
   static final int[] AUX_SIZE = new int[] {
       1, 4, 4, 4, 4, 4, 4, 8, 8, 8,
@@ -65,7 +68,7 @@ public final class Preamble {
         .setVersion(memory.getByte(1))
         .setFamilyId(memory.getByte(2))
         .setLogConfigK(memory.getByte(3))
-            // Invert the ++ in order to skip over the unused byte.  Some bits are wasted
+            // Skip over byte 4, which is not part of the Preamble.  Some bits are wasted
             // instead of packing the preamble so that the semantics of the various parts of the
             // preamble can be aligned across different types of sketches.
         .setFlags(memory.getByte(5));
@@ -138,14 +141,24 @@ public final class Preamble {
       throw new SketchesArgumentException("bytes too small");
     }
 
-    Memory mem = new MemoryRegion(new NativeMemory(bytes), offset, 8);
+    intoMemory(new MemoryRegion(new NativeMemory(bytes), offset, 8));
+    return offset + 8;
+  }
+
+  /**
+   * Writes this Preamble into the first 8 bytes of the given Memory
+   * @param mem the given Memory
+   */
+  void intoMemory(Memory mem) {
+    if (mem.getCapacity() < 8) {
+      throw new SketchesArgumentException("Memory too small");
+    }
     mem.putByte(0, getPreambleLongs());
     mem.putByte(1, getVersion());
     mem.putByte(2, getFamilyId());
     mem.putByte(3, getLogConfigK());
     mem.putByte(5, getFlags());
     mem.putShort(6, getSeedHash());
-    return offset + 8;
   }
 
   /** 
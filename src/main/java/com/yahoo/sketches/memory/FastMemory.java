@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.memory;
+
+import static com.yahoo.sketches.memory.UnsafeUtil.ARRAY_BYTE_INDEX_SCALE;
+import static com.yahoo.sketches.memory.UnsafeUtil.ARRAY_DOUBLE_INDEX_SCALE;
+import static com.yahoo.sketches.memory.UnsafeUtil.ARRAY_INT_INDEX_SCALE;
+import static com.yahoo.sketches.memory.UnsafeUtil.ARRAY_LONG_INDEX_SCALE;
+import static com.yahoo.sketches.memory.UnsafeUtil.ARRAY_SHORT_INDEX_SCALE;
+import static com.yahoo.sketches.memory.UnsafeUtil.assertBounds;
+import static com.yahoo.sketches.memory.UnsafeUtil.unsafe;
+
+import com.yahoo.sketches.SketchesReadOnlyException;
+
+/**
+ * A final accessor to the primitive values of a Memory for use in the inner loops of sketches.
+ *
+ * <p>The chain of MemoryRegions, if any, down to the root NativeMemory is resolved once when the
+ * accessor is created, so that each access is a single call to Unsafe with no virtual dispatch
+ * through the Memory interface, regardless of how many Memory implementations are loaded.</p>
+ *
+ * <p>As with NativeMemory and MemoryRegion, the bounds are checked only if asserts are enabled
+ * in the JVM. The put methods of an accessor of a read-only Memory throw a
+ * SketchesReadOnlyException. The accessor is valid only as long as the Memory it was obtained
+ * from is valid: it must be obtained again whenever a sketch replaces its Memory, and must not be
+ * used after that Memory has been freed.</p>
+ */
+public final class FastMemory {
+  private final Memory mem_; //keeps the root memory reachable
+  private final Object memArray_;
+  private final long baseAddress_;
+  private final long capacityBytes_;
+  private final boolean readOnly_;
+
+  private FastMemory(final Memory mem, final Object memArray, final long baseAddress) {
+    mem_ = mem;
+    memArray_ = memArray;
+    baseAddress_ = baseAddress;
+    capacityBytes_ = mem.getCapacity();
+    readOnly_ = mem.isReadOnly();
+  }
+
+  /**
+   * Returns an accessor for the given Memory.
+   * @param mem the given Memory
+   * @return an accessor for the given Memory
+   */
+  public static FastMemory wrap(final Memory mem) {
+    long address = 0;
+    Object parent = mem;
+    while ((parent != null) && (parent instanceof Memory)) {
+      address = ((Memory) parent).getAddress(address);
+      parent = ((Memory) parent).getParent();
+    }
+    return new FastMemory(mem, parent, address);
+  }
+
+  /**
+   * Returns the Memory this accessor was obtained from
+   * @return the Memory this accessor was obtained from
+   */
+  public Memory getMemory() {
+    return mem_;
+  }
+
+  /**
+   * Gets the capacity in bytes
+   * @return the capacity in bytes
+   */
+  public long getCapacity() {
+    return capacityBytes_;
+  }
+
+  /**
+   * Gets the byte at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @return the byte at the given offset
+   */
+  public byte getByte(final long offsetBytes) {
+    assertBounds(offsetBytes, ARRAY_BYTE_INDEX_SCALE, capacityBytes_);
+    return unsafe.getByte(memArray_, baseAddress_ + offsetBytes);
+  }
+
+  /**
+   * Puts the byte value at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @param srcValue the value to put
+   */
+  public void putByte(final long offsetBytes, final byte srcValue) {
+    checkWritable();
+    assertBounds(offsetBytes, ARRAY_BYTE_INDEX_SCALE, capacityBytes_);
+    unsafe.putByte(memArray_, baseAddress_ + offsetBytes, srcValue);
+  }
+
+  /**
+   * Gets the short at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @return the short at the given offset
+   */
+  public short getShort(final long offsetBytes) {
+    assertBounds(offsetBytes, ARRAY_SHORT_INDEX_SCALE, capacityBytes_);
+    return unsafe.getShort(memArray_, baseAddress_ + offsetBytes);
+  }
+
+  /**
+   * Puts the short value at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @param srcValue the value to put
+   */
+  public void putShort(final long offsetBytes, final short srcValue) {
+    checkWritable();
+    assertBounds(offsetBytes, ARRAY_SHORT_INDEX_SCALE, capacityBytes_);
+    unsafe.putShort(memArray_, baseAddress_ + offsetBytes, srcValue);
+  }
+
+  /**
+   * Gets the int at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @return the int at the given offset
+   */
+  public int getInt(final long offsetBytes) {
+    assertBounds(offsetBytes, ARRAY_INT_INDEX_SCALE, capacityBytes_);
+    return unsafe.getInt(memArray_, baseAddress_ + offsetBytes);
+  }
+
+  /**
+   * Puts the int value at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @param srcValue the value to put
+   */
+  public void putInt(final long offsetBytes, final int srcValue) {
+    checkWritable();
+    assertBounds(offsetBytes, ARRAY_INT_INDEX_SCALE, capacityBytes_);
+    unsafe.putInt(memArray_, baseAddress_ + offsetBytes, srcValue);
+  }
+
+  /**
+   * Gets the long at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @return the long at the given offset
+   */
+  public long getLong(final long offsetBytes) {
+    assertBounds(offsetBytes, ARRAY_LONG_INDEX_SCALE, capacityBytes_);
+    return unsafe.getLong(memArray_, baseAddress_ + offsetBytes);
+  }
+
+  /**
+   * Puts the long value at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @param srcValue the value to put
+   */
+  public void putLong(final long offsetBytes, final long srcValue) {
+    checkWritable();
+    assertBounds(offsetBytes, ARRAY_LONG_INDEX_SCALE, capacityBytes_);
+    unsafe.putLong(memArray_, baseAddress_ + offsetBytes, srcValue);
+  }
+
+  /**
+   * Gets the double at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @return the double at the given offset
+   */
+  public double getDouble(final long offsetBytes) {
+    assertBounds(offsetBytes, ARRAY_DOUBLE_INDEX_SCALE, capacityBytes_);
+    return unsafe.getDouble(memArray_, baseAddress_ + offsetBytes);
+  }
+
+  /**
+   * Puts the double value at the given offset
+   * @param offsetBytes offset bytes relative to the start of the Memory
+   * @param srcValue the value to put
+   */
+  public void putDouble(final long offsetBytes, final double srcValue) {
+    checkWritable();
+    assertBounds(offsetBytes, ARRAY_DOUBLE_INDEX_SCALE, capacityBytes_);
+    unsafe.putDouble(memArray_, baseAddress_ + offsetBytes, srcValue);
+  }
+
+  private void checkWritable() {
+    if (readOnly_) {
+      throw new SketchesReadOnlyException();
+    }
+  }
+
+}
@@ -81,6 +81,58 @@ public interface Memory {
    */
   long getAndSetLong(long offsetBytes, long newValue);
   
+  /**
+   * Atomically sets the int located at offsetBytes to the given updated value if the current 
+   * value equals the expected value.
+   * @param offsetBytes offset bytes relative to this Memory start
+   * @param expect the expected value
+   * @param update the new value
+   * @return true if successful. False indicates that the actual value was not equal to the
+   * expected value.
+   * @throws UnsupportedOperationException if this Memory does not support atomic access
+   */
+  default boolean compareAndSwapInt(long offsetBytes, int expect, int update) {
+    throw new UnsupportedOperationException(
+        getClass().getName() + " does not support atomic access");
+  }
+  
+  /**
+   * Atomically sets the long located at offsetBytes to the given updated value if the current 
+   * value equals the expected value.
+   * @param offsetBytes offset bytes relative to this Memory start
+   * @param expect the expected value
+   * @param update the new value
+   * @return true if successful. False indicates that the actual value was not equal to the
+   * expected value.
+   * @throws UnsupportedOperationException if this Memory does not support atomic access
+   */
+  default boolean compareAndSwapLong(long offsetBytes, long expect, long update) {
+    throw new UnsupportedOperationException(
+        getClass().getName() + " does not support atomic access");
+  }
+  
+  /**
+   * Gets the int value at the given offset with volatile load semantics.
+   * @param offsetBytes offset bytes relative to this Memory start
+   * @return the int at the given offset
+   * @throws UnsupportedOperationException if this Memory does not support atomic access
+   */
+  default int getIntVolatile(long offsetBytes) {
+    throw new UnsupportedOperationException(
+        getClass().getName() + " does not support atomic access");
+  }
+  
+  /**
+   * Gets the long value at the given offset with volatile load semantics.
+   * @param offsetBytes offset bytes relative to this Memory start
+   * @return the long at the given offset
+   * @throws UnsupportedOperationException if this Memory does not support atomic access
+   */
+  default long getLongVolatile(long offsetBytes) {
+    throw new UnsupportedOperationException(
+        getClass().getName() + " does not support atomic access");
+  }
+  
   
   /**
    * Gets the boolean value at the given offset
@@ -441,6 +493,25 @@ public interface Memory {
    */
   void setMemoryRequest(MemoryRequest memReq);
   
+  /**
+   * Returns true if this Memory is read only. All methods of a read-only Memory that would
+   * change its contents, its MemoryRequest or its region throw a SketchesReadOnlyException.
+   * @return true if this Memory is read only
+   */
+  default boolean isReadOnly() {
+    return false;
+  }
+  
+  /**
+   * Returns a read-only view of the same bytes as this Memory. No data is copied, so changes
+   * made through this Memory remain visible through the view. The view does not own the
+   * underlying memory, which must remain valid as long as the view is in use.
+   * @return a read-only view of this Memory, or this Memory if it is already read only
+   */
+  default Memory asReadOnlyMemory() {
+    return isReadOnly() ? this : new MemoryRegionR(this, 0, getCapacity());
+  }
+  
   /**
    * Returns a formatted hex string of an area of this Memory. 
    * Used primarily for testing.
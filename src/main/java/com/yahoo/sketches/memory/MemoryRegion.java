@@ -154,6 +154,30 @@ public class MemoryRegion implements Memory {
     return mem_.getAndSetLong(unsafeRawAddress, newValue);
   }
 
+  @Override
+  public boolean compareAndSwapInt(long offsetBytes, int expect, int update) {
+    assertBounds(offsetBytes, ARRAY_INT_INDEX_SCALE, capacityBytes_);
+    return mem_.compareAndSwapInt(getAddress(offsetBytes), expect, update);
+  }
+
+  @Override
+  public boolean compareAndSwapLong(long offsetBytes, long expect, long update) {
+    assertBounds(offsetBytes, ARRAY_LONG_INDEX_SCALE, capacityBytes_);
+    return mem_.compareAndSwapLong(getAddress(offsetBytes), expect, update);
+  }
+
+  @Override
+  public int getIntVolatile(long offsetBytes) {
+    assertBounds(offsetBytes, ARRAY_INT_INDEX_SCALE, capacityBytes_);
+    return mem_.getIntVolatile(getAddress(offsetBytes));
+  }
+
+  @Override
+  public long getLongVolatile(long offsetBytes) {
+    assertBounds(offsetBytes, ARRAY_LONG_INDEX_SCALE, capacityBytes_);
+    return mem_.getLongVolatile(getAddress(offsetBytes));
+  }
+
   @Override
   public boolean getBoolean(long offsetBytes) {
     assertBounds(offsetBytes, ARRAY_BOOLEAN_INDEX_SCALE, capacityBytes_);
@@ -456,6 +480,16 @@ public class MemoryRegion implements Memory {
     memReq_ = memReq;
   }
 
+  @Override
+  public boolean isReadOnly() {
+    return mem_.isReadOnly();
+  }
+
+  @Override
+  public Memory asReadOnlyMemory() {
+    return new MemoryRegionR(mem_, memOffsetBytes_, capacityBytes_);
+  }
+
   @Override
   public String toHexString(String header, long offsetBytes, int lengthBytes) {
     assertBounds(offsetBytes, lengthBytes, capacityBytes_);
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.memory;
+
+import com.yahoo.sketches.SketchesReadOnlyException;
+
+/**
+ * A read-only view of a region of a Memory, obtained from
+ * {@link MemoryRegion#asReadOnlyMemory()}. All methods that would change the contents or the
+ * region throw a SketchesReadOnlyException.
+ */
+final class MemoryRegionR extends MemoryRegion {
+
+  MemoryRegionR(final Memory memory, final long memOffsetBytes, final long capacityBytes) {
+    super(memory, memOffsetBytes, capacityBytes);
+  }
+
+  @Override
+  public void clear() {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void clear(long offsetBytes, long lengthBytes) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void clearBits(long offsetBytes, byte bitMask) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void copy(long srcOffsetBytes, long dstOffsetBytes, long lengthBytes) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public int getAndAddInt(long offsetBytes, int delta) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public long getAndAddLong(long offsetBytes, long delta) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public int getAndSetInt(long offsetBytes, int newValue) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public long getAndSetLong(long offsetBytes, long newValue) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public boolean compareAndSwapInt(long offsetBytes, int expect, int update) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public boolean compareAndSwapLong(long offsetBytes, long expect, long update) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putBoolean(long offsetBytes, boolean value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putBooleanArray(long offsetBytes, boolean[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putByte(long offsetBytes, byte value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putByteArray(long offsetBytes, byte[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putChar(long offsetBytes, char value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putCharArray(long offsetBytes, char[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putDouble(long offsetBytes, double value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putDoubleArray(long offsetBytes, double[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putFloat(long offsetBytes, float value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putFloatArray(long offsetBytes, float[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putInt(long offsetBytes, int value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putIntArray(long offsetBytes, int[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putLong(long offsetBytes, long value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putLongArray(long offsetBytes, long[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putShort(long offsetBytes, short value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putShortArray(long offsetBytes, short[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void fill(byte value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void fill(long offsetBytes, long lengthBytes, byte value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void setBits(long offsetBytes, byte bitMask) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void setMemoryRequest(MemoryRequest memReq) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void reassign(long memOffsetBytes, long capacityBytes) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+
+  @Override
+  public Memory asReadOnlyMemory() {
+    return this;
+  }
+
+}
@@ -38,6 +38,7 @@ import static com.yahoo.sketches.memory.UnsafeUtil.unsafe;
 import java.nio.ByteBuffer;
 
 import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.SketchesReadOnlyException;
 
 /**
  * The NativeMemory class implements the Memory interface and is used to access Java byte arrays, 
@@ -183,6 +184,9 @@ public class NativeMemory implements Memory {
    */
   public static void copy(Memory source, long srcOffsetBytes, Memory destination, 
       long dstOffsetBytes, long lengthBytes) {
+    if (destination.isReadOnly()) {
+      throw new SketchesReadOnlyException();
+    }
     assertBounds(srcOffsetBytes, lengthBytes, source.getCapacity());
     assertBounds(dstOffsetBytes, lengthBytes, destination.getCapacity());
     long srcAdd = srcOffsetBytes;
@@ -253,6 +257,30 @@ public class NativeMemory implements Memory {
     return v;
   }
 
+  @Override
+  public boolean compareAndSwapInt(long offsetBytes, int expect, int update) {
+    assertBounds(offsetBytes, ARRAY_INT_INDEX_SCALE, capacityBytes_);
+    return unsafe.compareAndSwapInt(memArray_, getAddress(offsetBytes), expect, update);
+  }
+
+  @Override
+  public boolean compareAndSwapLong(long offsetBytes, long expect, long update) {
+    assertBounds(offsetBytes, ARRAY_LONG_INDEX_SCALE, capacityBytes_);
+    return unsafe.compareAndSwapLong(memArray_, getAddress(offsetBytes), expect, update);
+  }
+
+  @Override
+  public int getIntVolatile(long offsetBytes) {
+    assertBounds(offsetBytes, ARRAY_INT_INDEX_SCALE, capacityBytes_);
+    return unsafe.getIntVolatile(memArray_, getAddress(offsetBytes));
+  }
+
+  @Override
+  public long getLongVolatile(long offsetBytes) {
+    assertBounds(offsetBytes, ARRAY_LONG_INDEX_SCALE, capacityBytes_);
+    return unsafe.getLongVolatile(memArray_, getAddress(offsetBytes));
+  }
+
   @Override
   public boolean getBoolean(long offsetBytes) {
     assertBounds(offsetBytes, ARRAY_BOOLEAN_INDEX_SCALE, capacityBytes_);
@@ -639,6 +667,16 @@ public class NativeMemory implements Memory {
     memReq_ = memReq;
   }
 
+  @Override
+  public boolean isReadOnly() {
+    return false;
+  }
+
+  @Override
+  public Memory asReadOnlyMemory() {
+    return new NativeMemoryR(this);
+  }
+
   @Override
   public String toHexString(String header, long offsetBytes, int lengthBytes) {
     StringBuilder sb = new StringBuilder();
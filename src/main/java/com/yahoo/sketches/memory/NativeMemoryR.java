@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.memory;
+
+import java.nio.ByteBuffer;
+
+import com.yahoo.sketches.SketchesReadOnlyException;
+
+/**
+ * A read-only view of a NativeMemory, obtained from {@link NativeMemory#asReadOnlyMemory()}.
+ * All methods that would change the contents throw a SketchesReadOnlyException, as do
+ * {@link #array()} and {@link #byteBuffer()}, which would expose the contents to writes.
+ * The view does not own the underlying memory and cannot free it.
+ */
+final class NativeMemoryR extends NativeMemory {
+
+  NativeMemoryR(final NativeMemory mem) {
+    super(mem.objectBaseOffset_, mem.memArray_, mem.byteBuf_);
+    nativeRawStartAddress_ = mem.nativeRawStartAddress_;
+    capacityBytes_ = mem.capacityBytes_;
+  }
+
+  @Override
+  public void clear() {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void clear(long offsetBytes, long lengthBytes) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void clearBits(long offsetBytes, byte bitMask) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void copy(long srcOffsetBytes, long dstOffsetBytes, long lengthBytes) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public int getAndAddInt(long offsetBytes, int delta) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public long getAndAddLong(long offsetBytes, long delta) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public int getAndSetInt(long offsetBytes, int newValue) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public long getAndSetLong(long offsetBytes, long newValue) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public boolean compareAndSwapInt(long offsetBytes, int expect, int update) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public boolean compareAndSwapLong(long offsetBytes, long expect, long update) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putBoolean(long offsetBytes, boolean value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putBooleanArray(long offsetBytes, boolean[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putByte(long offsetBytes, byte value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putByteArray(long offsetBytes, byte[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putChar(long offsetBytes, char value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putCharArray(long offsetBytes, char[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putDouble(long offsetBytes, double value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putDoubleArray(long offsetBytes, double[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putFloat(long offsetBytes, float value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putFloatArray(long offsetBytes, float[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putInt(long offsetBytes, int value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putIntArray(long offsetBytes, int[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putLong(long offsetBytes, long value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putLongArray(long offsetBytes, long[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putShort(long offsetBytes, short value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void putShortArray(long offsetBytes, short[] srcArray, int srcOffset, int length) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void fill(byte value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void fill(long offsetBytes, long lengthBytes, byte value) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void setBits(long offsetBytes, byte bitMask) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void setMemoryRequest(MemoryRequest memReq) {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+
+  @Override
+  public Memory asReadOnlyMemory() {
+    return this;
+  }
+
+  @Override
+  public Object array() {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public ByteBuffer byteBuffer() {
+    throw new SketchesReadOnlyException();
+  }
+
+  @Override
+  public void freeMemory() {
+    throw new SketchesReadOnlyException();
+  }
+
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.memory;
+
+import java.io.File;
+import java.util.Arrays;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.SketchesException;
+import com.yahoo.sketches.SketchesStateException;
+
+/**
+ * A keyed collection of fixed-capacity slots of memory that live in memory mapped files in a
+ * directory. Each slot is meant to hold one Direct sketch, such as a theta UpdateSketch built
+ * with <i>initMemory</i>, an HllSketch built with <i>setMemory</i> or a tuple
+ * ArrayOfDoublesUpdatableSketch built with <i>setMemory</i>, so the slot capacity must be at
+ * least the maximum number of bytes the chosen sketch can use.
+ *
+ * <p>The slots are laid out in segment files of a fixed number of slots each, which are mapped
+ * with {@link MemoryMappedFile}. When all of the segments are full, another segment is appended
+ * through the {@link MemoryRequest} of the store. The key of each slot is kept in an index file,
+ * which is an open addressing hash table in a mapped file as well. It is doubled through the
+ * same MemoryRequest when it becomes 3/4 full.</p>
+ *
+ * <p>A slot is handed out as a {@link MemoryRegion} of its segment, so a sketch that wraps it
+ * updates the mapped file in place. Because the index and the sketches are already in their
+ * final form in the files, a store that is opened again after a restart is ready after mapping
+ * the files, and its sketches are wrapped, not deserialized. {@link #force()} writes all
+ * changes to the storage device; without it the operating system writes them back eventually.
+ * Slots are never reused, so there is no removal of keys.</p>
+ *
+ * <p>This class is not thread safe. As with the sketches themselves, concurrent access must be
+ * synchronized externally.</p>
+ *
+ * <pre>
+ * Index file layout, followed by the table of 2^lgTableSize entries of 16 bytes:
+ * Long || Start Byte Adr:
+ * Adr:
+ *      ||    7   |    6   |    5   |    4   |    3   |    2   |    1   |     0              |
+ *  0   ||---------------------------------Magic Number--------------------------------------|
+ *
+ *      ||   15   |   14   |   13   |   12   |   11   |   10   |    9   |     8              |
+ *  1   ||-------------LgTableSize-----------|------------------SerVer-----------------------|
+ *
+ *      ||   23   |   22   |   21   |   20   |   19   |   18   |   17   |    16              |
+ *  2   ||------------------------------Slot Count--------------------------------------------|
+ *
+ *      ||   31   |   30   |   29   |   28   |   27   |   26   |   25   |    24              |
+ *  3   ||----------Slots per Segment--------|--------------Slot Bytes-----------------------|
+ *
+ * Each entry of the table holds the key followed by the slot number + 1, which is zero when
+ * the entry is empty.
+ * </pre>
+ */
+public final class SketchStore {
+  static final String INDEX_FILE = "index";
+  static final String INDEX_TMP_FILE = "index.tmp";
+  static final String SEGMENT_FILE_PREFIX = "segment-";
+
+  static final long MAGIC = 0X3145524F54534B53L; //"SKSTORE1" in little endian order
+  static final int MAGIC_LONG             = 0;
+  static final int SER_VER_INT            = 8;
+  static final int LG_TABLE_SIZE_INT      = 12;
+  static final int SLOT_COUNT_LONG        = 16;
+  static final int SLOT_BYTES_INT         = 24;
+  static final int SLOTS_PER_SEGMENT_INT  = 28;
+  static final int TABLE_START            = 32;
+  static final int SER_VER                = 1;
+  static final int ENTRY_BYTES            = 16;
+  static final int LG_MIN_TABLE_SIZE      = 10;
+
+  private final File dir_;
+  private final int slotBytes_;
+  private final int slotStride_; //keeps every slot 8-byte aligned
+  private final int slotsPerSegment_;
+  private final MemoryRequest memReq_ = new StoreRequest();
+  private MemoryMappedFile index_;
+  private MemoryMappedFile[] segments_;
+  private int numSegments_;
+  private int lgTableSize_;
+  private long slotCount_;
+
+  private SketchStore(final File dir, final int slotBytes, final int slotsPerSegment) {
+    dir_ = dir;
+    slotBytes_ = slotBytes;
+    slotStride_ = (slotBytes + 7) & ~7;
+    slotsPerSegment_ = slotsPerSegment;
+    segments_ = new MemoryMappedFile[4];
+  }
+
+  /**
+   * Creates a new, empty store in the given directory, which is created if it does not exist.
+   * @param dir the directory of the store, which must not already hold a store
+   * @param slotBytes the capacity in bytes of each slot. Slots start at multiples of 8 bytes.
+   * @param slotsPerSegment the number of slots in each segment file
+   * @return a new SketchStore
+   */
+  public static SketchStore create(final File dir, final int slotBytes,
+      final int slotsPerSegment) {
+    if (slotBytes <= 0) {
+      throw new SketchesArgumentException("Slot bytes must be positive: " + slotBytes);
+    }
+    if (slotsPerSegment <= 0) {
+      throw new SketchesArgumentException("Slots per segment must be positive: " + slotsPerSegment);
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new SketchesArgumentException("Cannot create directory: " + dir);
+    }
+    final File indexFile = new File(dir, INDEX_FILE);
+    if (indexFile.exists()) {
+      throw new SketchesArgumentException("Directory already holds a store: " + dir);
+    }
+    final SketchStore store = new SketchStore(dir, slotBytes, slotsPerSegment);
+    final MemoryMappedFile index = map(indexFile, tableBytes(LG_MIN_TABLE_SIZE));
+    index.putLong(MAGIC_LONG, MAGIC);
+    index.putInt(SER_VER_INT, SER_VER);
+    index.putInt(LG_TABLE_SIZE_INT, LG_MIN_TABLE_SIZE);
+    index.putLong(SLOT_COUNT_LONG, 0L);
+    index.putInt(SLOT_BYTES_INT, slotBytes);
+    index.putInt(SLOTS_PER_SEGMENT_INT, slotsPerSegment);
+    store.index_ = index;
+    store.lgTableSize_ = LG_MIN_TABLE_SIZE;
+    return store;
+  }
+
+  /**
+   * Opens the store in the given directory by mapping its files. Nothing is deserialized.
+   * @param dir the directory of the store
+   * @return the SketchStore in the given directory
+   */
+  public static SketchStore open(final File dir) {
+    final File indexFile = new File(dir, INDEX_FILE);
+    if (!indexFile.isFile() || (indexFile.length() < TABLE_START)) {
+      throw new SketchesArgumentException("Directory does not hold a store: " + dir);
+    }
+    final MemoryMappedFile index = map(indexFile, indexFile.length());
+    final SketchStore store;
+    try {
+      if (index.getLong(MAGIC_LONG) != MAGIC) {
+        throw new SketchesArgumentException("Possible corruption: Invalid index file: " + indexFile);
+      }
+      final int serVer = index.getInt(SER_VER_INT);
+      if (serVer != SER_VER) {
+        throw new SketchesArgumentException(
+            "Possible corruption: Invalid Serialization Version: " + serVer);
+      }
+      final int lgTableSize = index.getInt(LG_TABLE_SIZE_INT);
+      if ((lgTableSize < LG_MIN_TABLE_SIZE) || (lgTableSize > 58)
+          || (indexFile.length() != tableBytes(lgTableSize))) {
+        throw new SketchesArgumentException(
+            "Possible corruption: Index table size inconsistent with file length: " + lgTableSize);
+      }
+      store = new SketchStore(dir, index.getInt(SLOT_BYTES_INT),
+          index.getInt(SLOTS_PER_SEGMENT_INT));
+      store.index_ = index;
+      store.lgTableSize_ = lgTableSize;
+      store.slotCount_ = index.getLong(SLOT_COUNT_LONG);
+    } catch (final RuntimeException e) {
+      index.freeMemory();
+      throw e;
+    }
+    final long segmentBytes = store.getSegmentBytes();
+    final long numSegments = (store.slotCount_ + store.slotsPerSegment_ - 1)
+        / store.slotsPerSegment_;
+    for (int i = 0; i < numSegments; i++) {
+      final File segmentFile = store.segmentFile(i);
+      if (segmentFile.length() != segmentBytes) {
+        store.close();
+        throw new SketchesArgumentException("Possible corruption: Missing or short segment file: "
+            + segmentFile);
+      }
+      store.addSegment(map(segmentFile, segmentBytes));
+    }
+    return store;
+  }
+
+  /**
+   * Returns the slot of the given key, or null if the key is not in this store.
+   * A new MemoryRegion is returned on each call, but all of them view the same slot.
+   * @param key the given key
+   * @return the slot of the given key, or null
+   */
+  public Memory get(final long key) {
+    checkOpen();
+    final long entry = findEntry(key);
+    if (entry < 0) { return null; }
+    return getSlot(index_.getLong(entry + 8) - 1L);
+  }
+
+  /**
+   * Returns true if the given key is in this store.
+   * @param key the given key
+   * @return true if the given key is in this store
+   */
+  public boolean contains(final long key) {
+    checkOpen();
+    return findEntry(key) >= 0;
+  }
+
+  /**
+   * Adds the given key to this store and returns its new, cleared slot, in which a Direct
+   * sketch can then be initialized. A segment is appended if all of the slots are in use.
+   * @param key the given key, which must not already be in this store
+   * @return the slot of the given key
+   */
+  public Memory add(final long key) {
+    checkOpen();
+    if (findEntry(key) >= 0) {
+      throw new SketchesArgumentException("Key is already in the store: " + key);
+    }
+    if (((slotCount_ + 1L) << 2) > (3L << lgTableSize_)) {
+      growIndex();
+    }
+    final long slot = slotCount_;
+    if ((slot / slotsPerSegment_) == numSegments_) {
+      final Memory segment = memReq_.request(getSegmentBytes());
+      if (segment == null) {
+        throw new SketchesStateException("MemoryRequest did not provide a new segment.");
+      }
+      addSegment((MemoryMappedFile) segment);
+    }
+    //the slot is claimed before it is indexed, so a crash in between can only leak the slot
+    slotCount_++;
+    index_.putLong(SLOT_COUNT_LONG, slotCount_);
+    putEntry(index_, lgTableSize_, key, slot);
+    final Memory mem = getSlot(slot);
+    mem.clear();
+    return mem;
+  }
+
+  /**
+   * Returns the number of keys in this store
+   * @return the number of keys in this store
+   */
+  public long size() {
+    return slotCount_;
+  }
+
+  /**
+   * Returns the capacity in bytes of each slot
+   * @return the capacity in bytes of each slot
+   */
+  public int getSlotBytes() {
+    return slotBytes_;
+  }
+
+  /**
+   * Returns the number of segment files of this store
+   * @return the number of segment files of this store
+   */
+  public int getNumSegments() {
+    return numSegments_;
+  }
+
+  /**
+   * Forces all changes to the index and to the slots to be written to the storage device.
+   * See {@link MemoryMappedFile#force()}.
+   */
+  public void force() {
+    checkOpen();
+    index_.force();
+    for (int i = 0; i < numSegments_; i++) {
+      segments_[i].force();
+    }
+  }
+
+  /**
+   * Unmaps all of the files of this store. Any sketch that still wraps a slot of this store
+   * must not be used afterwards.
+   */
+  public void close() {
+    if (index_ == null) { return; }
+    for (int i = 0; i < numSegments_; i++) {
+      memReq_.free(segments_[i]);
+      segments_[i] = null;
+    }
+    numSegments_ = 0;
+    memReq_.free(index_);
+    index_ = null;
+  }
+
+  //restricted
+
+  private Memory getSlot(final long slot) {
+    final int segment = (int) (slot / slotsPerSegment_);
+    final long offsetBytes = (slot % slotsPerSegment_) * slotStride_;
+    return new MemoryRegion(segments_[segment], offsetBytes, slotBytes_);
+  }
+
+  private void addSegment(final MemoryMappedFile segment) {
+    if (numSegments_ == segments_.length) {
+      segments_ = Arrays.copyOf(segments_, 2 * numSegments_);
+    }
+    segments_[numSegments_++] = segment;
+  }
+
+  private void growIndex() {
+    final int newLgTableSize = lgTableSize_ + 1;
+    final MemoryMappedFile newIndex = (MemoryMappedFile) memReq_.request(index_, TABLE_START,
+        tableBytes(newLgTableSize));
+    if (newIndex == null) {
+      throw new SketchesStateException("MemoryRequest did not provide a new index.");
+    }
+    newIndex.putInt(LG_TABLE_SIZE_INT, newLgTableSize);
+    final long tableSize = 1L << lgTableSize_;
+    for (long i = 0; i < tableSize; i++) {
+      final long offset = TABLE_START + (i << 4);
+      final long slotPlusOne = index_.getLong(offset + 8);
+      if (slotPlusOne != 0) {
+        putEntry(newIndex, newLgTableSize, index_.getLong(offset), slotPlusOne - 1L);
+      }
+    }
+    memReq_.free(index_, newIndex);
+    index_ = newIndex;
+    lgTableSize_ = newLgTableSize;
+  }
+
+  /**
+   * Returns the offset of the entry of the given key, or the one's complement of the offset of
+   * the empty entry where it would be inserted.
+   */
+  private long findEntry(final long key) {
+    final long mask = (1L << lgTableSize_) - 1L;
+    long i = hash(key) & mask;
+    while (true) {
+      final long offset = TABLE_START + (i << 4);
+      if (index_.getLong(offset + 8) == 0L) { return ~offset; }
+      if (index_.getLong(offset) == key) { return offset; }
+      i = (i + 1L) & mask;
+    }
+  }
+
+  private static void putEntry(final Memory index, final int lgTableSize, final long key,
+      final long slot) {
+    final long mask = (1L << lgTableSize) - 1L;
+    long i = hash(key) & mask;
+    while (index.getLong(TABLE_START + (i << 4) + 8) != 0L) {
+      i = (i + 1L) & mask;
+    }
+    final long offset = TABLE_START + (i << 4);
+    index.putLong(offset, key);
+    index.putLong(offset + 8, slot + 1L);
+  }
+
+  /**
+   * The finalization mix of MurmurHash3, which spreads sequential keys over the table.
+   */
+  private static long hash(final long key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static long tableBytes(final int lgTableSize) {
+    return TABLE_START + ((long) ENTRY_BYTES << lgTableSize);
+  }
+
+  private long getSegmentBytes() {
+    return (long) slotStride_ * slotsPerSegment_;
+  }
+
+  private File segmentFile(final int segment) {
+    return new File(dir_, SEGMENT_FILE_PREFIX + segment);
+  }
+
+  private void checkOpen() {
+    if (index_ == null) {
+      throw new SketchesStateException("The store has been closed.");
+    }
+  }
+
+  private static MemoryMappedFile map(final File file, final long capacityBytes) {
+    try {
+      return new MemoryMappedFile(file, 0, capacityBytes);
+    } catch (final Exception e) {
+      throw new SketchesException("Could not map file: " + file, e);
+    }
+  }
+
+  /**
+   * Maps the files of the store. A request for new Memory maps the next segment file, and a
+   * request to allocate, copy and clear maps a new index file that replaces the current one
+   * when the current one is freed.
+   */
+  private final class StoreRequest implements MemoryRequest {
+
+    @Override
+    public Memory request(final long capacityBytes) {
+      return map(segmentFile(numSegments_), capacityBytes);
+    }
+
+    @Override
+    public Memory request(final Memory origMem, final long copyToBytes,
+        final long capacityBytes) {
+      final File tmpFile = new File(dir_, INDEX_TMP_FILE);
+      if (tmpFile.exists() && !tmpFile.delete()) {
+        throw new SketchesStateException("Could not delete: " + tmpFile);
+      }
+      final MemoryMappedFile newMem = map(tmpFile, capacityBytes); //a new file is all zeros
+      NativeMemory.copy(origMem, 0, newMem, 0, copyToBytes);
+      return newMem;
+    }
+
+    @Override
+    public void free(final Memory mem) {
+      ((NativeMemory) mem).freeMemory();
+    }
+
+    @Override
+    public void free(final Memory memToFree, final Memory newMem) {
+      ((MemoryMappedFile) newMem).force();
+      free(memToFree);
+      if (!new File(dir_, INDEX_TMP_FILE).renameTo(new File(dir_, INDEX_FILE))) {
+        throw new SketchesStateException("Could not replace the index file in: " + dir_);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.memory;
+
+import static com.yahoo.sketches.Util.LS;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.SketchesStateException;
+
+/**
+ * A MemoryRequest that pools off-heap allocations in size classes so that Direct sketches that
+ * are created, resized and freed at a high rate reuse native memory instead of going to the
+ * native allocator for every request.
+ *
+ * <p>The capacity of each size class is a power of two plus {@link #PREAMBLE_ALLOWANCE} bytes,
+ * so that the power-of-two hash tables of the theta and tuple sketches, together with their
+ * preambles, fill a class exactly. Requests larger than the largest class are allocated and freed
+ * directly.</p>
+ *
+ * <p>Freed blocks go first to a small cache owned by the freeing thread, then to a free list
+ * shared by all threads, and are returned to the native allocator only when the cached bytes
+ * would exceed the configured limit. Calling {@link NativeMemory#freeMemory()} on a block granted
+ * by this MemoryRequest returns it to the pool as well.</p>
+ *
+ * <p>The contents of a block granted by {@link #request(long)} are not initialized, as with
+ * {@link AllocMemory}. The granted capacity may be larger than the requested capacity.</p>
+ */
+public final class SlabMemoryRequest implements MemoryRequest {
+
+  /**
+   * The bytes that are added to each power-of-two size class for the preamble of a sketch.
+   */
+  public static final int PREAMBLE_ALLOWANCE = 32;
+
+  static final int LG_MIN_CLASS_BYTES = 4;
+  static final int DEFAULT_LG_MAX_CLASS_BYTES = 24;
+  static final int DEFAULT_THREAD_CACHE_BLOCKS = 4;
+
+  private final int lgMaxClassBytes_;
+  private final int threadCacheBlocks_;
+  private final long maxFreeBytes_;
+  private final long maxAllocatedBytes_;
+  private final ArrayDeque<Block>[] shared_;
+  private final ThreadLocal<ArrayDeque<Block>[]> threadCache_;
+  private final ConcurrentLinkedQueue<ArrayDeque<Block>[]> allThreadCaches_;
+  private final AtomicLong allocatedBytes_ = new AtomicLong();
+  private final AtomicLong freeBytes_ = new AtomicLong();
+  private volatile boolean closed_ = false;
+
+  /**
+   * Creates a MemoryRequest with size classes up to 2<sup>24</sup> bytes, four cached blocks per
+   * class and thread, and no limits on the cached or allocated bytes.
+   */
+  public SlabMemoryRequest() {
+    this(DEFAULT_LG_MAX_CLASS_BYTES, DEFAULT_THREAD_CACHE_BLOCKS, Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a MemoryRequest with the given configuration.
+   * @param lgMaxClassBytes the log base 2 of the power-of-two part of the largest size class.
+   * It must be in the range [4, 40].
+   * @param threadCacheBlocks the maximum number of free blocks per size class that each thread
+   * keeps for itself. Zero disables the thread caches.
+   * @param maxFreeBytes the maximum number of bytes held in free blocks. Blocks freed beyond this
+   * limit are returned to the native allocator.
+   * @param maxAllocatedBytes the maximum number of bytes allocated from the native allocator at
+   * any time. A request beyond this limit returns null.
+   */
+  public SlabMemoryRequest(final int lgMaxClassBytes, final int threadCacheBlocks,
+      final long maxFreeBytes, final long maxAllocatedBytes) {
+    if ((lgMaxClassBytes < LG_MIN_CLASS_BYTES) || (lgMaxClassBytes > 40)) {
+      throw new SketchesArgumentException("lgMaxClassBytes must be in [4, 40]: " + lgMaxClassBytes);
+    }
+    if ((threadCacheBlocks < 0) || (maxFreeBytes < 0) || (maxAllocatedBytes < 0)) {
+      throw new SketchesArgumentException("Limits must not be negative: " + threadCacheBlocks
+          + ", " + maxFreeBytes + ", " + maxAllocatedBytes);
+    }
+    lgMaxClassBytes_ = lgMaxClassBytes;
+    threadCacheBlocks_ = threadCacheBlocks;
+    maxFreeBytes_ = maxFreeBytes;
+    maxAllocatedBytes_ = maxAllocatedBytes;
+    final int numClasses = (lgMaxClassBytes - LG_MIN_CLASS_BYTES) + 1;
+    shared_ = newFreeLists(numClasses, 16);
+    allThreadCaches_ = new ConcurrentLinkedQueue<ArrayDeque<Block>[]>();
+    threadCache_ = new ThreadLocal<ArrayDeque<Block>[]>() {
+      @Override
+      protected ArrayDeque<Block>[] initialValue() {
+        final ArrayDeque<Block>[] cache = newFreeLists(numClasses, threadCacheBlocks_);
+        allThreadCaches_.add(cache);
+        return cache;
+      }
+    };
+  }
+
+  @Override
+  public Memory request(final long capacityBytes) {
+    checkOpen();
+    if (capacityBytes <= 0) {
+      throw new SketchesArgumentException("Capacity must be positive: " + capacityBytes);
+    }
+    final int sizeClass = sizeClass(capacityBytes);
+    if (sizeClass >= shared_.length) {
+      return allocate(capacityBytes, -1);
+    }
+    Block block = null;
+    if (threadCacheBlocks_ > 0) {
+      block = threadCache_.get()[sizeClass].pollFirst();
+    }
+    if (block == null) {
+      final ArrayDeque<Block> list = shared_[sizeClass];
+      synchronized (list) {
+        block = list.pollFirst();
+      }
+    }
+    if (block == null) {
+      return allocate(classBytes(sizeClass), sizeClass);
+    }
+    freeBytes_.addAndGet(-block.getCapacity());
+    block.inUse_ = 1;
+    return block;
+  }
+
+  @Override
+  public Memory request(final Memory origMem, final long copyToBytes, final long capacityBytes) {
+    final Memory newMem = request(capacityBytes);
+    if (newMem == null) { return null; }
+    NativeMemory.copy(origMem, 0, newMem, 0, copyToBytes);
+    //a reused block holds old contents, so the remainder of the block is cleared
+    newMem.clear(copyToBytes, newMem.getCapacity() - copyToBytes);
+    return newMem;
+  }
+
+  @Override
+  public void free(final Memory mem) {
+    if ((mem instanceof Block) && (((Block) mem).pool_ == this)) {
+      release((Block) mem);
+    }
+    else if (mem instanceof NativeMemory) {
+      ((NativeMemory) mem).freeMemory();
+    }
+    //a MemoryRegion is owned by the caller and is not freed here
+  }
+
+  @Override
+  public void free(final Memory memToFree, final Memory newMem) {
+    free(memToFree);
+  }
+
+  /**
+   * Returns the number of bytes currently allocated from the native allocator, which is the sum
+   * of the free and in-use bytes.
+   * @return the number of bytes currently allocated from the native allocator
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes_.get();
+  }
+
+  /**
+   * Returns the number of bytes held in free blocks in the thread caches and shared free lists.
+   * @return the number of bytes held in free blocks
+   */
+  public long getFreeBytes() {
+    return freeBytes_.get();
+  }
+
+  /**
+   * Returns the number of bytes in blocks that have been granted and not yet freed.
+   * @return the number of bytes in blocks that have been granted and not yet freed
+   */
+  public long getInUseBytes() {
+    return allocatedBytes_.get() - freeBytes_.get();
+  }
+
+  /**
+   * Returns all free blocks to the native allocator. Blocks that are still in use are returned
+   * to the native allocator when they are freed. This must not be called while other threads
+   * are using this MemoryRequest, which must not be used for new requests afterwards.
+   */
+  public void close() {
+    closed_ = true;
+    for (final ArrayDeque<Block>[] cache : allThreadCaches_) {
+      drain(cache);
+    }
+    allThreadCaches_.clear();
+    drain(shared_);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("### ").append(this.getClass().getSimpleName()).append(" SUMMARY: ").append(LS);
+    sb.append("   Size Classes (Bytes)   : ").append((1 << LG_MIN_CLASS_BYTES) + PREAMBLE_ALLOWANCE)
+      .append(" to ").append(classBytes(shared_.length - 1)).append(LS);
+    sb.append("   Thread Cache Blocks    : ").append(threadCacheBlocks_).append(LS);
+    sb.append("   Allocated Bytes        : ").append(getAllocatedBytes()).append(LS);
+    sb.append("   Free Bytes             : ").append(getFreeBytes()).append(LS);
+    sb.append("   In-use Bytes           : ").append(getInUseBytes()).append(LS);
+    sb.append("### END SKETCH SUMMARY").append(LS);
+    return sb.toString();
+  }
+
+  //restricted
+
+  /**
+   * Returns an array of empty free lists, one for each size class.
+   */
+  @SuppressWarnings("unchecked")
+  private static ArrayDeque<Block>[] newFreeLists(final int numClasses, final int numBlocks) {
+    final ArrayDeque<Block>[] freeLists = (ArrayDeque<Block>[]) new ArrayDeque<?>[numClasses];
+    for (int i = 0; i < numClasses; i++) {
+      freeLists[i] = new ArrayDeque<Block>(numBlocks);
+    }
+    return freeLists;
+  }
+
+  /**
+   * Returns the smallest size class that holds the given capacity, which may be beyond the
+   * largest class.
+   */
+  static int sizeClass(final long capacityBytes) {
+    final long tableBytes = Math.max(capacityBytes - PREAMBLE_ALLOWANCE, 1L);
+    final int lg = 64 - Long.numberOfLeadingZeros(tableBytes - 1);
+    return Math.max(lg - LG_MIN_CLASS_BYTES, 0);
+  }
+
+  static long classBytes(final int sizeClass) {
+    return (1L << (sizeClass + LG_MIN_CLASS_BYTES)) + PREAMBLE_ALLOWANCE;
+  }
+
+  private Block allocate(final long capacityBytes, final int sizeClass) {
+    if (allocatedBytes_.addAndGet(capacityBytes) > maxAllocatedBytes_) {
+      allocatedBytes_.addAndGet(-capacityBytes);
+      return null;
+    }
+    return new Block(capacityBytes, this, sizeClass);
+  }
+
+  private void release(final Block block) {
+    if (!block.markFree()) { //only one of concurrent frees of the same block gets past here
+      throw new SketchesStateException("Block has already been freed.");
+    }
+    final long bytes = block.getCapacity();
+    if ((block.sizeClass_ >= 0) && !closed_) {
+      if (freeBytes_.addAndGet(bytes) <= maxFreeBytes_) {
+        if (threadCacheBlocks_ > 0) {
+          final ArrayDeque<Block> cached = threadCache_.get()[block.sizeClass_];
+          if (cached.size() < threadCacheBlocks_) {
+            cached.addFirst(block);
+            return;
+          }
+        }
+        final ArrayDeque<Block> list = shared_[block.sizeClass_];
+        synchronized (list) {
+          list.addFirst(block);
+        }
+        return;
+      }
+      freeBytes_.addAndGet(-bytes);
+    }
+    allocatedBytes_.addAndGet(-bytes);
+    block.freeNative();
+  }
+
+  private void drain(final ArrayDeque<Block>[] lists) {
+    for (final ArrayDeque<Block> list : lists) {
+      synchronized (list) {
+        Block block;
+        while ((block = list.pollFirst()) != null) {
+          final long bytes = block.getCapacity();
+          freeBytes_.addAndGet(-bytes);
+          allocatedBytes_.addAndGet(-bytes);
+          block.freeNative();
+        }
+      }
+    }
+  }
+
+  private void checkOpen() {
+    if (closed_) {
+      throw new SketchesStateException("This MemoryRequest has been closed.");
+    }
+  }
+
+  /**
+   * An AllocMemory that is returned to its pool when it is freed.
+   */
+  private static final class Block extends AllocMemory {
+    private static final AtomicIntegerFieldUpdater<Block> IN_USE =
+        AtomicIntegerFieldUpdater.newUpdater(Block.class, "inUse_");
+    final SlabMemoryRequest pool_;
+    final int sizeClass_; //negative if not pooled
+    volatile int inUse_ = 1; //1 while handed out, 0 while free
+
+    Block(final long capacityBytes, final SlabMemoryRequest pool, final int sizeClass) {
+      super(capacityBytes, pool);
+      pool_ = pool;
+      sizeClass_ = sizeClass;
+    }
+
+    @Override
+    public void freeMemory() {
+      pool_.release(this);
+    }
+
+    void freeNative() {
+      super.freeMemory();
+    }
+
+    boolean markFree() {
+      return IN_USE.compareAndSet(this, 1, 0);
+    }
+  }
+
+}
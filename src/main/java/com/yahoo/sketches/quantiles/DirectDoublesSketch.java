@@ -0,0 +1,437 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.quantiles;
+
+import static com.yahoo.sketches.quantiles.PreambleUtil.COMBINED_BUFFER;
+import static com.yahoo.sketches.quantiles.PreambleUtil.EMPTY_FLAG_MASK;
+import static com.yahoo.sketches.quantiles.PreambleUtil.FLAGS_BYTE;
+import static com.yahoo.sketches.quantiles.PreambleUtil.MAX_DOUBLE;
+import static com.yahoo.sketches.quantiles.PreambleUtil.MIN_DOUBLE;
+import static com.yahoo.sketches.quantiles.PreambleUtil.N_LONG;
+import static com.yahoo.sketches.quantiles.PreambleUtil.SER_VER;
+import static com.yahoo.sketches.quantiles.PreambleUtil.UPDATABLE_FLAG_MASK;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractFamilyID;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractFlags;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractK;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractPreLongs;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractSerDeId;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractSerVer;
+import static com.yahoo.sketches.quantiles.PreambleUtil.insertFamilyID;
+import static com.yahoo.sketches.quantiles.PreambleUtil.insertFlags;
+import static com.yahoo.sketches.quantiles.PreambleUtil.insertK;
+import static com.yahoo.sketches.quantiles.PreambleUtil.insertPreLongs;
+import static com.yahoo.sketches.quantiles.PreambleUtil.insertSerDeId;
+import static com.yahoo.sketches.quantiles.PreambleUtil.insertSerVer;
+import static com.yahoo.sketches.quantiles.Util.computeBaseBufferItems;
+import static com.yahoo.sketches.quantiles.Util.computeBitPattern;
+import static com.yahoo.sketches.quantiles.Util.computeDirectCombBufItemCapacity;
+
+import java.util.Arrays;
+
+import com.yahoo.sketches.ArrayOfDoublesSerDe;
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.MemoryRequest;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * Implements the DoublesSketch entirely in Memory. All of the state of the sketch, including
+ * N, the min and max values and the combined buffer, lives in the given Memory so that no
+ * data arrays are kept on the Java heap between updates. Updates are made in place. When more
+ * levels are required than the Memory can hold, more space is obtained through the
+ * {@link MemoryRequest} of the Memory.
+ *
+ * <p>Several instances may wrap the same Memory, but as with the on-heap sketch, concurrent
+ * updates must be synchronized externally.</p>
+ */
+final class DirectDoublesSketch extends DoublesSketch {
+
+  private static final short ARRAY_OF_DOUBLES_SERDE_ID = new ArrayOfDoublesSerDe().getId();
+  private static final int PREAMBLE_LONGS = 2;
+
+  private Memory mem_;
+
+  //**CONSTRUCTORS**********************************************************
+  private DirectDoublesSketch(final int k, final Memory mem) {
+    super(k); //checks k
+    mem_ = mem;
+  }
+
+  /**
+   * Obtains a new instance of a DirectDoublesSketch in the given Memory, which will be
+   * initialized. Any prior contents of the Memory are lost.
+   *
+   * @param k Parameter that controls space usage of sketch and accuracy of estimates.
+   * Must be greater than 2 and less than 65536 and a power of 2.
+   * @param dstMem the destination Memory, which must be at least
+   * {@link DoublesSketch#getUpdatableStorageBytes(int, long) getUpdatableStorageBytes(k, 0)} bytes.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return a DirectDoublesSketch
+   */
+  static DirectDoublesSketch newInstance(final int k, final Memory dstMem) {
+    Util.checkK(k);
+    final long memCap = dstMem.getCapacity();
+    final int minBytes = getUpdatableStorageBytes(k, 0);
+    if (memCap < minBytes) {
+      throw new SketchesArgumentException(
+          "Destination Memory not large enough: " + memCap + " < " + minBytes);
+    }
+    long pre0 = 0L;
+    pre0 = insertPreLongs(PREAMBLE_LONGS, pre0);
+    pre0 = insertSerVer(SER_VER, pre0);
+    pre0 = insertFamilyID(Family.QUANTILES.getID(), pre0);
+    pre0 = insertFlags(UPDATABLE_FLAG_MASK | EMPTY_FLAG_MASK, pre0);
+    pre0 = insertK(k, pre0);
+    pre0 = insertSerDeId(ARRAY_OF_DOUBLES_SERDE_ID, pre0);
+    dstMem.putLong(0, pre0);
+
+    final DirectDoublesSketch dds = new DirectDoublesSketch(k, dstMem);
+    dds.reset();
+    return dds;
+  }
+
+  /**
+   * Wraps the given srcMem, which must hold the updatable image of a DirectDoublesSketch.
+   * No data is copied; reads and updates operate on the given Memory.
+   *
+   * @param srcMem a Memory image of an updatable DoublesSketch.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return a DirectDoublesSketch that wraps the given Memory
+   */
+  static DirectDoublesSketch wrapInstance(final Memory srcMem) {
+    final long memCapBytes = srcMem.getCapacity();
+    if (memCapBytes < COMBINED_BUFFER) {
+      throw new SketchesArgumentException("Memory too small: " + memCapBytes);
+    }
+    final long pre0 = srcMem.getLong(0);
+    final int preambleLongs = extractPreLongs(pre0);
+    final int serVer = extractSerVer(pre0);
+    final int familyID = extractFamilyID(pre0);
+    final int flags = extractFlags(pre0);
+    final int k = extractK(pre0);
+    final short serDeId = extractSerDeId(pre0);
+
+    if (serDeId != ARRAY_OF_DOUBLES_SERDE_ID) {
+      throw new SketchesArgumentException(
+      "Possible Corruption: serDeId incorrect: " + serDeId + " != " + ARRAY_OF_DOUBLES_SERDE_ID);
+    }
+    Util.checkFamilyID(familyID);
+    Util.checkSerVer(serVer);
+    if ((flags & UPDATABLE_FLAG_MASK) == 0) {
+      throw new SketchesArgumentException(
+          "Memory does not hold an updatable DoublesSketch, use heapify() instead.");
+    }
+    if ((flags & ~(UPDATABLE_FLAG_MASK | EMPTY_FLAG_MASK)) > 0) {
+      throw new SketchesArgumentException(
+          "Possible corruption: Invalid flags field: " + Integer.toBinaryString(flags));
+    }
+    if (preambleLongs != PREAMBLE_LONGS) {
+      throw new SketchesArgumentException(
+          "Possible corruption: PreambleLongs must be 2: " + preambleLongs);
+    }
+    final long n = srcMem.getLong(N_LONG);
+    final boolean empty = (flags & EMPTY_FLAG_MASK) > 0;
+    if (empty != (n == 0)) {
+      throw new SketchesArgumentException(
+          "Possible corruption: Empty flag inconsistent with N: " + n);
+    }
+    final int reqBytes = getUpdatableStorageBytes(k, n); //checks k
+    if (memCapBytes < reqBytes) {
+      throw new SketchesArgumentException("Possible corruption: Memory capacity too small: "
+          + memCapBytes + " < " + reqBytes);
+    }
+    return new DirectDoublesSketch(k, srcMem);
+  }
+
+  @Override
+  public void update(final double dataItem) {
+    if (Double.isNaN(dataItem)) return;
+
+    if (dataItem > getMaxValue()) { mem_.putDouble(MAX_DOUBLE, dataItem); }
+    if (dataItem < getMinValue()) { mem_.putDouble(MIN_DOUBLE, dataItem); }
+
+    final long curN = getN();
+    if (curN == 0) {
+      mem_.clearBits(FLAGS_BYTE, (byte) EMPTY_FLAG_MASK);
+    }
+    final int bbCount = computeBaseBufferItems(k_, curN);
+    mem_.putDouble(COMBINED_BUFFER + (bbCount << 3), dataItem);
+    final long newN = curN + 1;
+    if (bbCount + 1 == 2 * k_) {
+      processFullBaseBuffer(newN);
+    }
+    mem_.putLong(N_LONG, newN);
+  }
+
+  @Override
+  public double getQuantile(final double fraction) {
+    if ((fraction < 0.0) || (fraction > 1.0)) {
+      throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
+    }
+    if      (fraction == 0.0) { return getMinValue(); }
+    else if (fraction == 1.0) { return getMaxValue(); }
+    else {
+      return getAuxiliary().getQuantile(fraction);
+    }
+  }
+
+  @Override
+  public double[] getQuantiles(final double[] fractions) {
+    Util.validateFractions(fractions);
+    DoublesAuxiliary aux = null;
+    final double[] answers = new double[fractions.length];
+    for (int i = 0; i < fractions.length; i++) {
+      final double fraction = fractions[i];
+      if      (fraction == 0.0) { answers[i] = getMinValue(); }
+      else if (fraction == 1.0) { answers[i] = getMaxValue(); }
+      else {
+        if (aux == null) aux = getAuxiliary();
+        answers[i] = aux.getQuantile(fraction);
+      }
+    }
+    return answers;
+  }
+
+  @Override
+  public double[] getPMF(final double[] splitPoints) {
+    return getAuxiliary().getPMF(splitPoints);
+  }
+
+  @Override
+  public double[] getCDF(final double[] splitPoints) {
+    return getAuxiliary().getCDF(splitPoints);
+  }
+
+  @Override
+  public int getK() {
+    return k_;
+  }
+
+  @Override
+  public double getMinValue() {
+    return mem_.getDouble(MIN_DOUBLE);
+  }
+
+  @Override
+  public double getMaxValue() {
+    return mem_.getDouble(MAX_DOUBLE);
+  }
+
+  @Override
+  public long getN() {
+    return mem_.getLong(N_LONG);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return getN() == 0;
+  }
+
+  @Override
+  public void reset() {
+    mem_.putLong(N_LONG, 0L);
+    mem_.setBits(FLAGS_BYTE, (byte) EMPTY_FLAG_MASK);
+    mem_.putDouble(MIN_DOUBLE, Double.POSITIVE_INFINITY);
+    mem_.putDouble(MAX_DOUBLE, Double.NEGATIVE_INFINITY);
+    resetAuxiliary();
+  }
+
+  @Override
+  public byte[] toByteArray(final boolean sort) {
+    final int preLongs, arrLongs, flags;
+    final long n = getN();
+    final boolean empty = n == 0;
+
+    if (empty) {
+      preLongs = 1;
+      arrLongs = 1;
+      flags = EMPTY_FLAG_MASK;
+    }
+    else {
+      preLongs = 2;
+      arrLongs = preLongs + 2 + Util.computeRetainedItems(k_, n); // 2 for min and max values
+      flags = 0;
+    }
+    //build prelong 0
+    long pre0 = 0L;
+    pre0 = insertPreLongs(preLongs, pre0);
+    pre0 = insertSerVer(SER_VER, pre0);
+    pre0 = insertFamilyID(Family.QUANTILES.getID(), pre0);
+    pre0 = insertFlags(flags, pre0);
+    pre0 = insertK(k_, pre0);
+    pre0 = insertSerDeId(ARRAY_OF_DOUBLES_SERDE_ID, pre0);
+
+    final byte[] outArr = new byte[arrLongs << 3];
+    final Memory memOut = new NativeMemory(outArr);
+    memOut.putLong(0, pre0);
+    if (empty) {
+      return outArr;
+    }
+    //insert preamble + min and max
+    memOut.putLong(N_LONG, n);
+    memOut.putDouble(MIN_DOUBLE, getMinValue());
+    memOut.putDouble(MAX_DOUBLE, getMaxValue());
+    //insert BaseBuffer
+    final int bbItems = computeBaseBufferItems(k_, n);
+    int offsetBytes = (preLongs + 2) << 3;
+    if (bbItems > 0) {
+      if (sort) {
+        final double[] baseBuffer = new double[bbItems];
+        mem_.getDoubleArray(COMBINED_BUFFER, baseBuffer, 0, bbItems);
+        Arrays.sort(baseBuffer);
+        memOut.putDoubleArray(offsetBytes, baseBuffer, 0, bbItems);
+      } else {
+        NativeMemory.copy(mem_, COMBINED_BUFFER, memOut, offsetBytes, bbItems << 3);
+      }
+      offsetBytes += bbItems << 3;
+    }
+    //insert levels
+    final int levelBytes = k_ << 3;
+    long bits = computeBitPattern(k_, n);
+    for (int level = 0; bits != 0L; level++, bits >>>= 1) {
+      if ((bits & 1L) > 0L) {
+        NativeMemory.copy(mem_, levelOffsetBytes(level), memOut, offsetBytes, levelBytes);
+        offsetBytes += levelBytes;
+      }
+    }
+    return outArr;
+  }
+
+  @Override
+  public String toString(final boolean sketchSummary, final boolean dataDetail) {
+    return DoublesUtil.toString(sketchSummary, dataDetail, this);
+  }
+
+  @Override
+  public DoublesSketch downSample(final int newK) {
+    final HeapDoublesSketch newSketch = HeapDoublesSketch.getInstance(newK);
+    DoublesUtil.downSamplingMergeInto(this, newSketch);
+    return newSketch;
+  }
+
+  @Override
+  public void putMemory(final Memory dstMem, final boolean sort) {
+    final byte[] byteArr = toByteArray(sort);
+    final int arrLen = byteArr.length;
+    final long memCap = dstMem.getCapacity();
+    if (memCap < arrLen) {
+      throw new SketchesArgumentException(
+          "Destination Memory not large enough: " + memCap + " < " + arrLen);
+    }
+    dstMem.putByteArray(0, byteArr, 0, arrLen);
+  }
+
+  /**
+   * Returns the backing Memory, which may have been replaced through the MemoryRequest
+   * after the sketch needed to grow.
+   * @return the backing Memory
+   */
+  Memory getMemory() {
+    return mem_;
+  }
+
+  //Restricted overrides
+
+  @Override
+  int getBaseBufferCount() {
+    return computeBaseBufferItems(k_, getN());
+  }
+
+  @Override
+  long getBitPattern() {
+    return computeBitPattern(k_, getN());
+  }
+
+  @Override
+  int getCombinedBufferItemCapacity() {
+    return computeDirectCombBufItemCapacity(k_, getN());
+  }
+
+  /**
+   * Returns a copy of the combined buffer read from Memory. This is only used by the queries and
+   * by the conversions to the on-heap sketch, never by update.
+   * @return a copy of the combined buffer
+   */
+  @Override
+  double[] getCombinedBuffer() {
+    final int itemCap = getCombinedBufferItemCapacity();
+    final double[] combinedBuffer = new double[itemCap];
+    mem_.getDoubleArray(COMBINED_BUFFER, combinedBuffer, 0, itemCap);
+    return combinedBuffer;
+  }
+
+  //Other restricted
+
+  /**
+   * Called when the base buffer has just acquired 2*k elements. This is the in-Memory equivalent
+   * of {@link DoublesUtil#processFullBaseBuffer(HeapDoublesSketch)} and
+   * {@link DoublesUtil#inPlacePropagateCarry}: the sorted base buffer is zipped into a carry,
+   * which is merged and zipped with every valid level up to the lowest invalid level where it
+   * comes to rest. N is not yet updated in Memory when this is called.
+   * @param newN the value of N including the item that just filled the base buffer
+   */
+  private void processFullBaseBuffer(final long newN) {
+    final int k = k_;
+    final long bitPattern = computeBitPattern(k, newN - 1); //the one prior to this update
+    maybeGrowLevels(newN);
+
+    final double[] size2KBuf = new double[2 * k];
+    mem_.getDoubleArray(COMBINED_BUFFER, size2KBuf, 0, 2 * k);
+    Arrays.sort(size2KBuf);
+
+    final int endingLevel = Util.positionOfLowestZeroBitStartingAt(bitPattern, 0);
+    final double[] carryBuf = new double[k];
+    DoublesUtil.zipSize2KBuffer(size2KBuf, 0, carryBuf, 0, k);
+    if (endingLevel > 0) {
+      final double[] levelBuf = new double[k];
+      for (int lvl = 0; lvl < endingLevel; lvl++) {
+        assert (bitPattern & (1L << lvl)) > 0; // internal consistency check
+        mem_.getDoubleArray(levelOffsetBytes(lvl), levelBuf, 0, k);
+        DoublesUtil.mergeTwoSizeKBuffers(levelBuf, 0, carryBuf, 0, size2KBuf, 0, k);
+        DoublesUtil.zipSize2KBuffer(size2KBuf, 0, carryBuf, 0, k);
+      }
+    }
+    mem_.putDoubleArray(levelOffsetBytes(endingLevel), carryBuf, 0, k);
+  }
+
+  /**
+   * Makes sure the Memory has room for all the levels needed for the given N. If not, a larger
+   * Memory is requested from the MemoryRequest of the current Memory, the current contents are
+   * copied into it and the current Memory is freed.
+   * @param newN the new value of N
+   */
+  private void maybeGrowLevels(final long newN) {
+    final int reqBytes = getUpdatableStorageBytes(k_, newN);
+    final long memCap = mem_.getCapacity();
+    if (reqBytes <= memCap) {
+      return;
+    }
+    final MemoryRequest memReq = mem_.getMemoryRequest();
+    if (memReq == null) {
+      throw new SketchesArgumentException("Memory not large enough and no MemoryRequest: "
+          + memCap + " < " + reqBytes);
+    }
+    final int copyBytes = getUpdatableStorageBytes(k_, newN - 1);
+    final Memory newMem = memReq.request(mem_, copyBytes, reqBytes);
+    if (newMem == null) {
+      throw new SketchesArgumentException("MemoryRequest callback cannot be null.");
+    }
+    final long newCap = newMem.getCapacity();
+    if (newCap < reqBytes) {
+      memReq.free(newMem);
+      throw new SketchesArgumentException("Requested memory not granted: " + newCap + " < "
+          + reqBytes);
+    }
+    memReq.free(mem_, newMem); //normal free mechanism via MemoryRequest
+    mem_ = newMem;
+  }
+
+  private int levelOffsetBytes(final int level) {
+    return COMBINED_BUFFER + (((2 + level) * k_) << 3);
+  }
+
+}
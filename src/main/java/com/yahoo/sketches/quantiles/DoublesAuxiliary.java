@@ -14,15 +14,15 @@ import java.util.Arrays;
  * @author Lee Rhodes
  */
 final class DoublesAuxiliary {
-  long auxN_;
-  double[] auxSamplesArr_; //array of size samples
-  long[] auxCumWtsArr_;
+  final long auxN_;
+  final double[] auxSamplesArr_; //array of size samples
+  final long[] auxCumWtsArr_;
 
   /**
-   * Constructs the Auxiliary structure from the HeapQuantilesSketch
-   * @param qs a HeapQuantilesSketch
+   * Constructs the Auxiliary structure from a DoublesSketch, which may be either Direct or on-heap
+   * @param qs a DoublesSketch
    */
-  DoublesAuxiliary(HeapDoublesSketch qs ) {
+  DoublesAuxiliary(DoublesSketch qs ) {
     int k = qs.getK();
     long n = qs.getN();
     long bitPattern = qs.getBitPattern();
@@ -72,6 +72,84 @@ final class DoublesAuxiliary {
   }
 
   
+  /**
+   * Gets the normalized rank of the given value: the approximate fraction of the stream that is
+   * strictly less than the value.
+   * @param value the given value, which must not be NaN
+   * @return the normalized rank of the given value, or NaN if the sketch is empty
+   */
+  double getRank(double value) {
+    return (double) auxCumWtsArr_[lowerBound(value)] / auxN_;
+  }
+
+  /**
+   * Gets the CDF of the given splitPoints using a binary search for each splitPoint.
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing doubles
+   * @return the <i>m+1</i> cumulative fractions, the last of which is 1.0
+   */
+  double[] getCDF(double[] splitPoints) {
+    long[] cumWts = getCumulativeWeights(splitPoints);
+    double[] result = new double[cumWts.length];
+    double n = auxN_;
+    for (int j = 0; j < cumWts.length; j++) {
+      result[j] = cumWts[j] / n;
+    }
+    return result;
+  }
+
+  /**
+   * Gets the PMF of the given splitPoints using a binary search for each splitPoint.
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing doubles
+   * @return the <i>m+1</i> fractions of the stream that fall into each interval
+   */
+  double[] getPMF(double[] splitPoints) {
+    long[] cumWts = getCumulativeWeights(splitPoints);
+    double[] result = new double[cumWts.length];
+    double n = auxN_;
+    long prev = 0;
+    for (int j = 0; j < cumWts.length; j++) {
+      result[j] = (cumWts[j] - prev) / n;
+      prev = cumWts[j];
+    }
+    return result;
+  }
+
+  /**
+   * Returns the total weight of the samples below each splitPoint, followed by n.
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing doubles
+   * @return an array of size <i>m+1</i>
+   */
+  private long[] getCumulativeWeights(double[] splitPoints) {
+    DoublesUtil.validateValues(splitPoints);
+    int numSplitPoints = splitPoints.length;
+    long[] cumWts = new long[numSplitPoints + 1];
+    for (int j = 0; j < numSplitPoints; j++) {
+      cumWts[j] = auxCumWtsArr_[lowerBound(splitPoints[j])];
+    }
+    cumWts[numSplitPoints] = auxN_;
+    return cumWts;
+  }
+
+  /**
+   * Returns the index of the first sample that is not less than the given value, or the number
+   * of samples if there is none. The samples are sorted, so this is a binary search.
+   * @param value the given value
+   * @return the index of the first sample that is not less than the given value
+   */
+  private int lowerBound(double value) {
+    int lo = 0;
+    int hi = auxSamplesArr_.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (auxSamplesArr_[mid] < value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
   /**
    * Populate the arrays and registers from a HeapQuantilesSketch
    * @param k K value of sketch
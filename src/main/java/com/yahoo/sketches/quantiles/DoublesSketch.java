@@ -136,6 +136,12 @@ public abstract class DoublesSketch {
    */
   public static final int DEFAULT_K = 128;
   
+  /**
+   * The sorted view of the retained items that answers quantile, rank, PMF and CDF queries.
+   * It is built on first use and rebuilt only after the sketch has changed.
+   */
+  private DoublesAuxiliary aux_ = null;
+
   DoublesSketch(int k) {
     Util.checkK(k);
     k_ = k;
@@ -258,6 +264,25 @@ public abstract class DoublesSketch {
    * @return an approximation to the CDF of the input stream given the splitPoints.
    */
   public abstract double[] getCDF(double[] splitPoints);
+
+  /**
+   * Returns an approximation to the normalized rank of the given value, which is the fraction of
+   * the input stream values that are strictly less than the given value. This is the inverse of
+   * getQuantile() and the same as a single-splitPoint getCDF().
+   *
+   * <p>The resulting approximation has a probabilistic guarantee that be obtained from the
+   * getNormalizedRankError() function.
+   *
+   * @param value the given value, which must not be NaN
+   * @return the normalized rank of the given value, a value between zero and one, or NaN if this
+   * sketch is empty.
+   */
+  public double getRank(double value) {
+    if (Double.isNaN(value)) {
+      throw new SketchesArgumentException("Value cannot be NaN");
+    }
+    return getAuxiliary().getRank(value);
+  }
   
   /**
    * Returns the configured value of K
@@ -379,6 +404,7 @@ public abstract class DoublesSketch {
   /**
    * Heapify takes the sketch image in Memory and instantiates an on-heap Sketch. 
    * The resulting sketch will not retain any link to the source Memory.
+   * The image may be either a serialized sketch or the Memory of a Direct sketch.
    * @param srcMem a Memory image of a Sketch.
    * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
    * @return a heap-based Sketch based on the given Memory
@@ -387,6 +413,98 @@ public abstract class DoublesSketch {
     return HeapDoublesSketch.getInstance(srcMem);
   }
 
+  /**
+   * Wrap takes the Memory of a Direct sketch, such as one built with 
+   * {@link DoublesSketchBuilder#initMemory(Memory)}, and returns a sketch that reads and updates 
+   * that Memory in place. No data is copied. 
+   * Serialized images from {@link #toByteArray()} are not updatable and must be heapified.
+   * Each sketch keeps its own sorted view for queries, which it rebuilds when N changes, so a
+   * sketch does not see a reset followed by the same number of updates through another sketch
+   * on the same Memory.
+   * The Memory may be read only, in which case updates throw a SketchesReadOnlyException and the
+   * sketch can be shared without copying by any number of threads that only query it.
+   * @param srcMem the Memory of a Direct sketch.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return a sketch backed by the given Memory
+   */
+  public static DoublesSketch wrap(Memory srcMem) {
+    return DirectDoublesSketch.wrapInstance(srcMem);
+  }
+
+  /**
+   * Returns the length of the input stream from the given Memory image of a DoublesSketch
+   * without heapifying it. The image may be either a serialized sketch or the Memory of a
+   * Direct sketch.
+   * @param srcMem a Memory image of a Sketch.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return the length of the input stream
+   */
+  public static long getN(Memory srcMem) {
+    return DoublesUtil.checkImageAndGetN(srcMem);
+  }
+
+  /**
+   * Returns the min value of the stream from the given Memory image of a DoublesSketch
+   * without heapifying it.
+   * @param srcMem a Memory image of a Sketch.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return the min value of the stream, or positive infinity if the sketch is empty
+   */
+  public static double getMinValue(Memory srcMem) {
+    if (DoublesUtil.checkImageAndGetN(srcMem) == 0) { return Double.POSITIVE_INFINITY; }
+    return srcMem.getDouble(PreambleUtil.MIN_DOUBLE);
+  }
+
+  /**
+   * Returns the max value of the stream from the given Memory image of a DoublesSketch
+   * without heapifying it.
+   * @param srcMem a Memory image of a Sketch.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return the max value of the stream, or negative infinity if the sketch is empty
+   */
+  public static double getMaxValue(Memory srcMem) {
+    if (DoublesUtil.checkImageAndGetN(srcMem) == 0) { return Double.NEGATIVE_INFINITY; }
+    return srcMem.getDouble(PreambleUtil.MAX_DOUBLE);
+  }
+
+  /**
+   * Returns the same approximate quantile as {@link #getQuantile(double)} of the heapified
+   * sketch, but reads the given Memory image in place. Nothing is allocated, but each call makes
+   * up to 64 passes over the retained items, so to obtain many quantiles of the same image it is
+   * faster to heapify it once.
+   * @param srcMem a Memory image of a Sketch.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param fraction the specified fractional position in the hypothetical sorted stream.
+   * @return the approximation to the value at the above fraction
+   */
+  public static double getQuantile(Memory srcMem, double fraction) {
+    if ((fraction < 0.0) || (fraction > 1.0)) {
+      throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
+    }
+    final long n = DoublesUtil.checkImageAndGetN(srcMem);
+    if      (fraction == 0.0) { return getMinValue(srcMem); }
+    else if (fraction == 1.0) { return getMaxValue(srcMem); }
+    else if (n == 0)          { return Double.NaN; }
+    return DoublesUtil.quantileFromMemory(srcMem, n, fraction);
+  }
+
+  /**
+   * Returns the same normalized rank as {@link #getRank(double)} of the heapified sketch, but
+   * reads the given Memory image in place with one binary search per level.
+   * @param srcMem a Memory image of a Sketch.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param value the given value, which must not be NaN
+   * @return the normalized rank of the given value, or NaN if the sketch is empty.
+   */
+  public static double getRank(Memory srcMem, double value) {
+    if (Double.isNaN(value)) {
+      throw new SketchesArgumentException("Value cannot be NaN");
+    }
+    final long n = DoublesUtil.checkImageAndGetN(srcMem);
+    if (n == 0) { return Double.NaN; }
+    return (double) DoublesUtil.weightBelow(srcMem, n, value, false) / n;
+  }
+
   /**
    * Computes the number of retained items (samples) in the sketch
    * @return the number of retained items (samples) in the sketch
@@ -404,6 +522,20 @@ public abstract class DoublesSketch {
     return 32 + Double.BYTES * Util.computeRetainedItems(getK(), getN());
   }
 
+  /**
+   * Returns the number of bytes a Direct sketch requires in Memory for the given <i>k</i> after
+   * it has been presented with <i>n</i> items. Use this to size the Memory given to
+   * {@link DoublesSketchBuilder#initMemory(Memory)}. Given <i>n</i> = 0, this is the minimum size.
+   * @param k the configuration parameter of a DoublesSketch
+   * @param n the number of items presented to the sketch
+   * @return the number of bytes a Direct sketch requires in Memory
+   */
+  public static int getUpdatableStorageBytes(int k, long n) {
+    Util.checkK(k);
+    return PreambleUtil.COMBINED_BUFFER 
+        + Double.BYTES * Util.computeDirectCombBufItemCapacity(k, n);
+  }
+
   /**
    * Puts the current sketch into the given Memory if there is sufficient space.
    * Otherwise, throws an error. This sorts the base buffer based on the given sort flag.
@@ -440,6 +572,28 @@ public abstract class DoublesSketch {
     return Util.computeBitPattern(k_, n_);
   }
 
+  /**
+   * Returns the sorted view of this sketch, building it only if the sketch has changed since it
+   * was last built. Every change to the retained items also changes N, except reset(), which
+   * must call {@link #resetAuxiliary()}.
+   * @return the sorted view of this sketch
+   */
+  final DoublesAuxiliary getAuxiliary() {
+    DoublesAuxiliary aux = aux_;
+    if ((aux == null) || (aux.auxN_ != getN())) {
+      aux = new DoublesAuxiliary(this);
+      aux_ = aux;
+    }
+    return aux;
+  }
+
+  /**
+   * Discards the sorted view of this sketch
+   */
+  final void resetAuxiliary() {
+    aux_ = null;
+  }
+
   /**
    * Returns the item capacity for the combined base buffer
    * @return the item capacity for the combined base buffer
@@ -45,7 +45,8 @@ public class DoublesUnionBuilder {
   /**
    * Returns a Union object that has been initialized with the given sketch to be used as a union 
    * target and will be modified. If you do not want the given sketch to be modified use the 
-   * {@link #copyBuild(DoublesSketch)}.
+   * {@link #copyBuild(DoublesSketch)}. A Direct sketch is copied onto the heap and is not 
+   * modified.
    * 
    * @param sketch a QuantilesSketch that will be used as a target of subsequent union operations. 
    * @return a Union object
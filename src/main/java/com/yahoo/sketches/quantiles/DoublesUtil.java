@@ -7,6 +7,15 @@ package com.yahoo.sketches.quantiles;
 
 import static com.yahoo.sketches.Util.LS;
 import static com.yahoo.sketches.Util.checkIfPowerOf2;
+import static com.yahoo.sketches.quantiles.PreambleUtil.COMBINED_BUFFER;
+import static com.yahoo.sketches.quantiles.PreambleUtil.EMPTY_FLAG_MASK;
+import static com.yahoo.sketches.quantiles.PreambleUtil.N_LONG;
+import static com.yahoo.sketches.quantiles.PreambleUtil.UPDATABLE_FLAG_MASK;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractFamilyID;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractFlags;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractK;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractPreLongs;
+import static com.yahoo.sketches.quantiles.PreambleUtil.extractSerVer;
 import static java.lang.System.arraycopy;
 
 import java.util.Arrays;
@@ -44,7 +53,7 @@ final class DoublesUtil {
    * @param sketch the given quantiles sketch
    * @return the unnormalized, accumulated counts of <i>m + 1</i> intervals.
    */
-  static long[] internalBuildHistogram(final double[] splitPoints, final HeapDoublesSketch sketch) {
+  static long[] internalBuildHistogram(final double[] splitPoints, final DoublesSketch sketch) {
     final double[] levelsArr  = sketch.getCombinedBuffer();
     final double[] baseBuffer = levelsArr;
     final int bbCount = sketch.getBaseBufferCount();
@@ -183,7 +192,7 @@ final class DoublesUtil {
    * @param src The source sketch
    * @param tgt The target sketch
    */
-  static void downSamplingMergeInto(final HeapDoublesSketch src, final HeapDoublesSketch tgt) {
+  static void downSamplingMergeInto(final DoublesSketch src, final HeapDoublesSketch tgt) {
     final int targetK = tgt.getK();
     final int sourceK = src.getK();
 
@@ -197,7 +206,7 @@ final class DoublesUtil {
     final int lgDownFactor = Integer.numberOfTrailingZeros(downFactor);
 
     final double[] sourceLevels     = src.getCombinedBuffer(); // aliasing is a bit dangerous
-    final double[] sourceBaseBuffer = src.getCombinedBuffer(); // aliasing is a bit dangerous
+    final double[] sourceBaseBuffer = sourceLevels; // aliasing is a bit dangerous
 
     final long nFinal = tgt.getN() + src.getN();
 
@@ -239,7 +248,7 @@ final class DoublesUtil {
     if (srcMin < tgtMin) tgt.minValue_ = srcMin;
   }
 
-  private static void zipSize2KBuffer(
+  static void zipSize2KBuffer(
       final double[] bufA, final int startA, // input
       final double[] bufC, final int startC, // output
       final int k) {
@@ -262,7 +271,7 @@ final class DoublesUtil {
     }
   }
 
-  private static void mergeTwoSizeKBuffers(
+  static void mergeTwoSizeKBuffers(
       final double[] keySrc1, final int arrStart1,
       final double[] keySrc2, final int arrStart2,
       final double[] keyDst,  final int arrStart3,
@@ -285,7 +294,7 @@ final class DoublesUtil {
       System.arraycopy(keySrc1, i1, keyDst, i3, arrStop1 - i1);
     } else {
       assert i2 < arrStop2;
-      System.arraycopy(keySrc1, i2, keyDst, i3, arrStop2 - i2);
+      System.arraycopy(keySrc2, i2, keyDst, i3, arrStop2 - i2);
     }
   }
 
@@ -483,7 +492,7 @@ final class DoublesUtil {
     }
   }
 
-  static String toString(final boolean sketchSummary, final boolean dataDetail, final HeapDoublesSketch sketch) {
+  static String toString(final boolean sketchSummary, final boolean dataDetail, final DoublesSketch sketch) {
     final StringBuilder sb = new StringBuilder();
     if (dataDetail) {
       sb.append(getDataDetail(sketch));
@@ -494,7 +503,7 @@ final class DoublesUtil {
     return sb.toString();
   }
   
-  static String getDataDetail(final HeapDoublesSketch sketch) {
+  static String getDataDetail(final DoublesSketch sketch) {
     final StringBuilder sb = new StringBuilder();
     final String thisSimpleName = sketch.getClass().getSimpleName();
     sb.append(LS).append("### ").append(thisSimpleName).append(" DATA DETAIL: ").append(LS);
@@ -532,7 +541,7 @@ final class DoublesUtil {
     return sb.toString();
   }
   
-  static String getSummary(final HeapDoublesSketch sketch) {
+  static String getSummary(final DoublesSketch sketch) {
     final StringBuilder sb = new StringBuilder();
     final String thisSimpleName = sketch.getClass().getSimpleName();
     final int k = sketch.getK();
@@ -589,4 +598,136 @@ final class DoublesUtil {
     return sb.toString();
   }
   
+  /**
+   * Checks the preamble of the given Memory image of a DoublesSketch, which may be either a
+   * serialized sketch or the Memory of a Direct sketch, and returns N. No data is copied.
+   * @param srcMem the given Memory image
+   * @return the length of the input stream, which is zero if the sketch is empty
+   */
+  static long checkImageAndGetN(final Memory srcMem) {
+    final long memCapBytes = srcMem.getCapacity();
+    if (memCapBytes < Long.BYTES) {
+      throw new SketchesArgumentException("Memory too small: " + memCapBytes);
+    }
+    final long pre0 = srcMem.getLong(0);
+    Util.checkFamilyID(extractFamilyID(pre0));
+    Util.checkSerVer(extractSerVer(pre0));
+    final int flags = extractFlags(pre0);
+    final int k = extractK(pre0);
+    if ((flags & UPDATABLE_FLAG_MASK) > 0) {
+      if ((flags & EMPTY_FLAG_MASK) > 0) { return 0; }
+      final long n = srcMem.getLong(N_LONG);
+      final int reqBytes = DoublesSketch.getUpdatableStorageBytes(k, n); //checks k
+      if (memCapBytes < reqBytes) {
+        throw new SketchesArgumentException("Possible corruption: Memory capacity too small: "
+            + memCapBytes + " < " + reqBytes);
+      }
+      return n;
+    }
+    if (Util.checkPreLongsFlagsCap(extractPreLongs(pre0), flags, memCapBytes)) { return 0; }
+    Util.checkK(k);
+    final long n = srcMem.getLong(N_LONG);
+    Util.checkMemCapacity(Util.computeRetainedItems(k, n), memCapBytes);
+    return n;
+  }
+
+  /**
+   * Returns the total weight of the retained items of the given, already checked, Memory image
+   * that are less than the given value, or less than or equal to it if inclusive.
+   * The base buffer is scanned and each level, which is always sorted, is binary searched in
+   * place.
+   * @param srcMem the given Memory image of a non-empty DoublesSketch
+   * @param n the length of the input stream
+   * @param value the given value
+   * @param inclusive if true, retained items equal to the value are also counted
+   * @return the total weight of the retained items below the given value
+   */
+  static long weightBelow(final Memory srcMem, final long n, final double value,
+      final boolean inclusive) {
+    final long pre0 = srcMem.getLong(0);
+    final int k = extractK(pre0);
+    final boolean updatable = (extractFlags(pre0) & UPDATABLE_FLAG_MASK) > 0;
+    final int bbCount = Util.computeBaseBufferItems(k, n);
+    long weight = 0;
+    for (int i = 0; i < bbCount; i++) {
+      final double item = srcMem.getDouble(COMBINED_BUFFER + (i << 3));
+      if ((item < value) || (inclusive && (item == value))) { weight++; }
+    }
+    final long levelBytes = (long) k << 3;
+    //the levels of a compact image follow the base buffer and only the valid levels are present
+    long levelOffset = (updatable) ? COMBINED_BUFFER + (2 * levelBytes)
+        : COMBINED_BUFFER + ((long) bbCount << 3);
+    long bits = Util.computeBitPattern(k, n);
+    for (int lvl = 0; bits != 0L; lvl++, bits >>>= 1) {
+      if ((bits & 1L) > 0L) {
+        weight += (long) countBelow(srcMem, levelOffset, k, value, inclusive) << (lvl + 1);
+        levelOffset += levelBytes;
+      } else if (updatable) {
+        levelOffset += levelBytes;
+      }
+    }
+    return weight;
+  }
+
+  /**
+   * Returns the approximate quantile of the given, already checked, Memory image.
+   * This is the smallest retained item whose inclusive weight exceeds the position of the
+   * fraction in the hypothetical sorted stream, which is the same item the sorted view of a
+   * heapified sketch returns. It is found by bisecting the range between the min and max values
+   * using an ordering of the bits of the doubles, so at most 64 passes are made over the image.
+   * @param srcMem the given Memory image of a non-empty DoublesSketch
+   * @param n the length of the input stream
+   * @param fraction the given normalized rank, greater than zero and less than one
+   * @return the approximate quantile
+   */
+  static double quantileFromMemory(final Memory srcMem, final long n, final double fraction) {
+    final long pos = Math.min((long) Math.floor(fraction * n), n - 1);
+    long lo = toSortableBits(srcMem.getDouble(PreambleUtil.MIN_DOUBLE));
+    long hi = toSortableBits(srcMem.getDouble(PreambleUtil.MAX_DOUBLE));
+    while (lo < hi) {
+      final long mid = (lo >> 1) + (hi >> 1) + (lo & hi & 1L); //floor of the mean, no overflow
+      if (weightBelow(srcMem, n, fromSortableBits(mid), true) > pos) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    return fromSortableBits(lo) + 0.0; //-0.0 and 0.0 weigh the same, return 0.0 for both
+  }
+
+  /**
+   * Returns the number of items of the sorted run of items in Memory that are less than the
+   * given value, or less than or equal to it if inclusive.
+   */
+  private static int countBelow(final Memory mem, final long offsetBytes, final int len,
+      final double value, final boolean inclusive) {
+    int lo = 0;
+    int hi = len;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      final double item = mem.getDouble(offsetBytes + ((long) mid << 3));
+      if ((item < value) || (inclusive && (item == value))) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Maps the bits of a double to a long that sorts in the same order as the double.
+   */
+  private static long toSortableBits(final double value) {
+    final long bits = Double.doubleToLongBits(value);
+    return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+  }
+
+  /**
+   * The inverse of {@link #toSortableBits(double)}.
+   */
+  private static double fromSortableBits(final long key) {
+    return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+  }
+
 }
@@ -10,6 +10,7 @@ import static com.yahoo.sketches.quantiles.PreambleUtil.MAX_DOUBLE;
 import static com.yahoo.sketches.quantiles.PreambleUtil.MIN_DOUBLE;
 import static com.yahoo.sketches.quantiles.PreambleUtil.N_LONG;
 import static com.yahoo.sketches.quantiles.PreambleUtil.SER_VER;
+import static com.yahoo.sketches.quantiles.PreambleUtil.UPDATABLE_FLAG_MASK;
 import static com.yahoo.sketches.quantiles.PreambleUtil.extractFamilyID;
 import static com.yahoo.sketches.quantiles.PreambleUtil.extractFlags;
 import static com.yahoo.sketches.quantiles.PreambleUtil.extractK;
@@ -136,6 +137,9 @@ final class HeapDoublesSketch extends DoublesSketch {
       "Possible Corruption: serDeId incorrect: " + serDeId + " != " + ARRAY_OF_DOUBLES_SERDE_ID);
     }
 
+    if ((flags & UPDATABLE_FLAG_MASK) > 0) { //the image of a DirectDoublesSketch
+      return copy(DirectDoublesSketch.wrapInstance(srcMem));
+    }
     boolean empty = Util.checkPreLongsFlagsCap(preambleLongs, flags, memCapBytes);
     Util.checkFamilyID(familyID);
     Util.checkSerVer(serVer);
@@ -224,22 +228,21 @@ final class HeapDoublesSketch extends DoublesSketch {
     if      (fraction == 0.0) { return minValue_; }
     else if (fraction == 1.0) { return maxValue_; }
     else {
-      DoublesAuxiliary aux = this.constructAuxiliary();
-      return aux.getQuantile(fraction);
+      return getAuxiliary().getQuantile(fraction);
     }
   }
 
   @Override
   public double[] getQuantiles(double[] fractions) {
     Util.validateFractions(fractions);
-    DoublesAuxiliary aux = null; //
+    DoublesAuxiliary aux = null;
     double[] answers = new double[fractions.length];
     for (int i = 0; i < fractions.length; i++) {
       double fraction = fractions[i];
       if      (fraction == 0.0) { answers[i] = minValue_; }
       else if (fraction == 1.0) { answers[i] = maxValue_; }
       else {
-        if (aux == null) aux = this.constructAuxiliary();
+        if (aux == null) aux = getAuxiliary();
         answers[i] = aux.getQuantile(fraction);
       }
     }
@@ -248,28 +251,12 @@ final class HeapDoublesSketch extends DoublesSketch {
 
   @Override
   public double[] getPMF(double[] splitPoints) {
-    return internalGetPMF(splitPoints);
-  }
-
-  private double[] internalGetPMF(double[] splitPoints)
-  {
-    long[] counters = DoublesUtil.internalBuildHistogram(splitPoints, this);
-    int numCounters = counters.length;
-    double[] result = new double[numCounters];
-    double n = n_;
-    long subtotal = 0;
-    for (int j = 0; j < numCounters; j++) {
-      long count = counters[j];
-      subtotal += count;
-      result[j] = count / n; //normalize by n
-    }
-    assert subtotal == n; //internal consistency check
-    return result;
+    return getAuxiliary().getPMF(splitPoints);
   }
 
   @Override
   public double[] getCDF(double[] splitPoints) {
-    return internalGetPMF(splitPoints);
+    return getAuxiliary().getCDF(splitPoints);
   }
 
   @Override
@@ -296,6 +283,7 @@ final class HeapDoublesSketch extends DoublesSketch {
     bitPattern_ = 0;
     minValue_ = java.lang.Double.POSITIVE_INFINITY;
     maxValue_ = java.lang.Double.NEGATIVE_INFINITY;
+    resetAuxiliary();
   }
   
   @Override
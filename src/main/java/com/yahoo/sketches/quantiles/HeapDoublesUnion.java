@@ -22,7 +22,7 @@ final class HeapDoublesUnion extends DoublesUnion {
   
   HeapDoublesUnion(final DoublesSketch sketch) {
     k_ = sketch.getK();
-    gadget_ = (HeapDoublesSketch) sketch;
+    gadget_ = toHeap(sketch);
   }
   
   /**
@@ -37,7 +37,7 @@ final class HeapDoublesUnion extends DoublesUnion {
   
   @Override
   public void update(DoublesSketch sketchIn) {
-    gadget_ = updateLogic(k_, gadget_, (HeapDoublesSketch)sketchIn);
+    gadget_ = updateLogic(k_, gadget_, toHeap(sketchIn));
   }
 
   @Override
@@ -83,6 +83,19 @@ final class HeapDoublesUnion extends DoublesUnion {
   }
   
 
+  /**
+   * Returns the given sketch if it is on-heap, otherwise an on-heap copy of it. A Direct sketch 
+   * is never modified by or referenced from the union.
+   * @param sketch the given sketch, which may be null
+   * @return an on-heap sketch or null
+   */
+  private static HeapDoublesSketch toHeap(final DoublesSketch sketch) {
+    if ((sketch == null) || (sketch instanceof HeapDoublesSketch)) {
+      return (HeapDoublesSketch) sketch;
+    }
+    return HeapDoublesSketch.copy(sketch);
+  }
+
 //@formatter:off
   @SuppressWarnings("null")
   static HeapDoublesSketch updateLogic(final int myK, final HeapDoublesSketch myQS, 
@@ -51,6 +51,11 @@ import com.yahoo.sketches.memory.NativeMemory;
  *  4   ||---------------------------------REST OF DATA----------------------------------|
  *  </pre>
  *  
+ *  <p>The serialized (compact) form stores the base buffer items followed by only the valid 
+ *  levels. The updatable form of a DirectDoublesSketch, which sets the UPDATABLE flag, always has 
+ *  two preamble longs and stores the full combined buffer starting at byte 32: a base buffer of 
+ *  2K items followed by one K-item slot for every level, valid or not.</p>
+ *  
  *  @author Lee Rhodes
  */
 final class PreambleUtil {
@@ -70,6 +75,7 @@ final class PreambleUtil {
   //After Preamble:
   static final int MIN_DOUBLE                 = 16; //to 23 (Only for DoublesSketch)
   static final int MAX_DOUBLE                 = 24; //to 31 (Only for DoublesSketch)
+  static final int COMBINED_BUFFER            = 32; //Start of the updatable DoublesSketch data
   
   //Specific values for this implementation
   static final int SER_VER                    = 2;
@@ -80,6 +86,7 @@ final class PreambleUtil {
   static final int EMPTY_FLAG_MASK            = 4;
   //static final int COMPACT_FLAG_MASK          = 8;   //reserved
   //static final int ORDERED_FLAG_MASK          = 16;  //reserved
+  static final int UPDATABLE_FLAG_MASK        = 32;  //Only for DirectDoublesSketch
   
   static final boolean NATIVE_ORDER_IS_BIG_ENDIAN  = 
       (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
@@ -118,6 +125,7 @@ final class PreambleUtil {
     boolean bigEndian = (flags & BIG_ENDIAN_FLAG_MASK) > 0;
     String nativeOrder = ByteOrder.nativeOrder().toString();
     boolean empty = (flags & EMPTY_FLAG_MASK) > 0;
+    boolean updatable = (flags & UPDATABLE_FLAG_MASK) > 0;
     int k = mem.getShort(K_SHORT);
     short type = mem.getShort(SER_DE_ID_SHORT);
     
@@ -138,6 +146,7 @@ final class PreambleUtil {
     sb.append("  BIG_ENDIAN_STORAGE          : ").append(bigEndian).append(LS);
     sb.append("  (Native Byte Order)         : ").append(nativeOrder).append(LS);
     sb.append("  EMPTY                       : ").append(empty).append(LS);
+    sb.append("  UPDATABLE                   : ").append(updatable).append(LS);
     sb.append("Bytes  4-5  : K               : ").append(k).append(LS);
     sb.append("Byte  6: SKETCH_TYPE          : ").append(type).append(LS);
     //Byte 7 not used
@@ -165,6 +165,21 @@ final class Util {
     return Math.max(MIN_BASE_BUF_SIZE, ceilingPowerOf2(bbCnt));
   }
   
+  /**
+   * Returns the item capacity of the combined data buffer of an updatable DoublesSketch in Memory
+   * given <i>k</i> and <i>n</i>. Unlike the on-heap sketch, the base buffer always has room for
+   * 2K items, so it never has to grow.
+   * 
+   * @param k sketch parameter. This determines the accuracy of the sketch and the 
+   * size of the updatable data structure, which is a function of k.
+   * 
+   * @param n The number of items in the input stream
+   * @return the item capacity of the combined data buffer in Memory
+   */
+  static int computeDirectCombBufItemCapacity(int k, long n) {
+    return (2 + computeNumLevelsNeeded(k, n)) * k;
+  }
+
   /**
    * Computes the number of valid levels above the base buffer
    * @param bitPattern the bit pattern for valid log levels
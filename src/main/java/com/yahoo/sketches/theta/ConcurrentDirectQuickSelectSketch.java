@@ -0,0 +1,357 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.theta;
+
+import static com.yahoo.sketches.Util.MIN_LG_NOM_LONGS;
+import static com.yahoo.sketches.Util.REBUILD_THRESHOLD;
+import static com.yahoo.sketches.theta.PreambleUtil.EMPTY_FLAG_MASK;
+import static com.yahoo.sketches.theta.PreambleUtil.FLAGS_BYTE;
+import static com.yahoo.sketches.theta.PreambleUtil.MAX_THETA_LONG_AS_DOUBLE;
+import static com.yahoo.sketches.theta.PreambleUtil.RETAINED_ENTRIES_INT;
+import static com.yahoo.sketches.theta.PreambleUtil.THETA_LONG;
+import static com.yahoo.sketches.theta.Rebuilder.quickSelectAndRebuild;
+import static com.yahoo.sketches.theta.UpdateReturnState.InsertedCountIncremented;
+import static com.yahoo.sketches.theta.UpdateReturnState.RejectedDuplicate;
+import static com.yahoo.sketches.theta.UpdateReturnState.RejectedOverTheta;
+
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.HashOperations;
+import com.yahoo.sketches.ResizeFactor;
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+/**
+ * A QuickSelect Theta Sketch in Memory that may be updated concurrently by many threads, or by
+ * many processes that map the same file, without external synchronization.
+ *
+ * <p>All state lives in the Memory; nothing that can change is cached on the heap. The hash table
+ * is allocated at its full size of 2<i>k</i> up front and is never resized. Hashes are inserted
+ * with compare-and-swap, and the retained count is reserved atomically before each insert so that
+ * the table can never fill up.</p>
+ *
+ * <p>Rebuilds are coordinated by a lock word stored in the 8 bytes immediately following the hash
+ * table, outside of the serialized image of the sketch. The low 32 bits count the inserters
+ * currently active, bit 63 is set while a rebuild holds the table exclusively, and the bits in
+ * between form an epoch that is incremented by every exclusive section. Inserters never block
+ * each other; they only wait while a rebuild, reset or snapshot is in progress. A process that
+ * dies while holding the lock word leaves it held.</p>
+ *
+ * <p>{@link #compact(boolean, Memory)}, {@link #toByteArray()} and {@link #getCache()} take the
+ * table exclusively and therefore return a consistent snapshot. Set operations should be given
+ * <i>compact()</i> of this sketch rather than this sketch directly.</p>
+ */
+final class ConcurrentDirectQuickSelectSketch extends DirectUpdateSketch
+    implements ConcurrentSharedThetaSketch {
+  private static final long EXCLUSIVE_BIT = 1L << 63;
+  private static final long SHARED_MASK = 0XFFFFFFFFL;
+  private static final long EPOCH_MASK = ~(EXCLUSIVE_BIT | SHARED_MASK);
+  private static final long EPOCH_INCREMENT = 1L << 32;
+
+  private final int preambleLongs_;
+  private final int lgArrLongs_;
+  private final int hashTableThreshold_;
+  private final int lockOffsetBytes_;
+  private final Memory mem_;
+
+  private ConcurrentDirectQuickSelectSketch(int lgNomLongs, long seed, float p,
+      int preambleLongs, Memory mem) {
+    super(lgNomLongs, seed, p, ResizeFactor.X1);
+    preambleLongs_ = preambleLongs;
+    lgArrLongs_ = lgNomLongs_ + 1;
+    hashTableThreshold_ = (int) Math.floor(REBUILD_THRESHOLD * (1 << lgArrLongs_));
+    lockOffsetBytes_ = PreambleUtil.getMemBytes(lgArrLongs_, preambleLongs_);
+    mem_ = mem;
+  }
+
+  /**
+   * Get a new sketch instance using the given Memory as its backing store.
+   *
+   * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLongs">See lgNomLongs</a>.
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>.
+   * @param p
+   * <a href="{@docRoot}/resources/dictionary.html#p">See Sampling Probability, <i>p</i></a>
+   * @param dstMem the given Memory object destination. It cannot be null. It must have at least
+   * {@link UpdateSketch#getMaxSharedUpdateSketchBytes(int)} bytes and will be cleared prior to use.
+   * @return instance of this sketch
+   */
+  static ConcurrentDirectQuickSelectSketch getInstance(int lgNomLongs, long seed, float p,
+      Memory dstMem) {
+    int lgNom = Math.max(lgNomLongs, MIN_LG_NOM_LONGS);
+    checkCapacity(dstMem, lgNom, Family.QUICKSELECT.getMinPreLongs());
+    //lays out the preamble and clears a full size hash table
+    DirectQuickSelectSketch.getInstance(lgNom, seed, p, ResizeFactor.X1, dstMem, false);
+    ConcurrentDirectQuickSelectSketch cdqs = new ConcurrentDirectQuickSelectSketch(lgNom, seed, p,
+        Family.QUICKSELECT.getMinPreLongs(), dstMem);
+    dstMem.putLong(cdqs.lockOffsetBytes_, 0L);
+    return cdqs;
+  }
+
+  /**
+   * Wrap a sketch around the given source Memory, which must have been initialized by
+   * {@link #getInstance(int, long, float, Memory)}. The Memory may be concurrently in use by
+   * other instances of this class, in this or other processes.
+   *
+   * @param srcMem <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>
+   * @return instance of this sketch
+   */
+  static ConcurrentDirectQuickSelectSketch wrapInstance(Memory srcMem, long seed) {
+    DirectQuickSelectSketch dqss = DirectQuickSelectSketch.getInstance(srcMem, seed); //validates
+    if (dqss.getFamily() != Family.QUICKSELECT) {
+      throw new SketchesArgumentException(
+          "A concurrent sketch must be of the QUICKSELECT Family: " + dqss.getFamily());
+    }
+    int lgNomLongs = dqss.getLgNomLongs();
+    if (dqss.getLgArrLongs() != (lgNomLongs + 1)) {
+      throw new SketchesArgumentException(
+          "A concurrent sketch must have a full size hash table: lgArrLongs = "
+              + dqss.getLgArrLongs() + ", lgNomLongs = " + lgNomLongs);
+    }
+    checkCapacity(srcMem, lgNomLongs, dqss.getPreambleLongs());
+    return new ConcurrentDirectQuickSelectSketch(lgNomLongs, seed, dqss.getP(),
+        dqss.getPreambleLongs(), srcMem);
+  }
+
+  //ConcurrentSharedThetaSketch
+
+  @Override
+  public long getVolatileThetaLong() {
+    return mem_.getLongVolatile(THETA_LONG);
+  }
+
+  @Override
+  public void propagate(long[] hashes, int count) {
+    hashUpdateAll(hashes, count);
+  }
+
+  //Sketch
+
+  @Override
+  public int getRetainedEntries(boolean valid) {
+    return mem_.getIntVolatile(RETAINED_ENTRIES_INT);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return (mem_.getByte(FLAGS_BYTE) & EMPTY_FLAG_MASK) > 0;
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    int lengthBytes = lockOffsetBytes_;
+    byte[] byteArray = new byte[lengthBytes];
+    acquireExclusive();
+    try {
+      NativeMemory.copy(mem_, 0, new NativeMemory(byteArray), 0, lengthBytes);
+    }
+    finally {
+      releaseExclusive();
+    }
+    return byteArray;
+  }
+
+  @Override
+  public Family getFamily() {
+    return Family.QUICKSELECT;
+  }
+
+  //UpdateSketch
+
+  @Override
+  public CompactSketch compact(boolean dstOrdered, Memory dstMem) {
+    Memory image = new NativeMemory(toByteArray());
+    return HeapQuickSelectSketch.getInstance(image, getSeed()).compact(dstOrdered, dstMem);
+  }
+
+  @Override
+  public UpdateSketch rebuild() {
+    acquireExclusive();
+    try {
+      int curCount = mem_.getInt(RETAINED_ENTRIES_INT);
+      if (curCount > (1 << lgNomLongs_)) {
+        quickSelectAndRebuild(mem_, preambleLongs_, lgNomLongs_, lgArrLongs_, curCount);
+      }
+    }
+    finally {
+      releaseExclusive();
+    }
+    return this;
+  }
+
+  @Override
+  public void reset() {
+    acquireExclusive();
+    try {
+      mem_.clear(preambleLongs_ << 3, 8 << lgArrLongs_); //clear data array
+      //flags: bigEndian = readOnly = compact = ordered = false; empty = true.
+      mem_.putByte(FLAGS_BYTE, (byte) EMPTY_FLAG_MASK);
+      mem_.putInt(RETAINED_ENTRIES_INT, 0);
+      mem_.putLong(THETA_LONG, (long) (getP() * MAX_THETA_LONG_AS_DOUBLE));
+    }
+    finally {
+      releaseExclusive();
+    }
+  }
+
+  //restricted methods
+
+  @Override
+  int getPreambleLongs() {
+    return preambleLongs_;
+  }
+
+  @Override
+  long[] getCache() {
+    long[] cacheArr = new long[1 << lgArrLongs_];
+    acquireExclusive();
+    try {
+      mem_.getLongArray(preambleLongs_ << 3, cacheArr, 0, cacheArr.length);
+    }
+    finally {
+      releaseExclusive();
+    }
+    return cacheArr;
+  }
+
+  @Override
+  Memory getMemory() {
+    return mem_;
+  }
+
+  @Override
+  long getThetaLong() {
+    return mem_.getLongVolatile(THETA_LONG);
+  }
+
+  @Override
+  boolean isDirty() {
+    return false;
+  }
+
+  @Override
+  int getLgArrLongs() {
+    return lgArrLongs_;
+  }
+
+  @Override
+  UpdateReturnState hashUpdate(long hash) {
+    HashOperations.checkHashCorruption(hash);
+    final int preBytes = preambleLongs_ << 3;
+    while (true) {
+      //The over-theta pre-screen, which avoids touching the lock word
+      if (!isEmpty() && HashOperations.continueCondition(getThetaLong(), hash)) {
+        return RejectedOverTheta;
+      }
+      boolean inserted = false;
+      acquireShared();
+      try {
+        clearEmpty();
+        //theta cannot change while the shared lock is held
+        if (HashOperations.continueCondition(getThetaLong(), hash)) {
+          return RejectedOverTheta;
+        }
+        //reserve a slot first so that the table can never fill up. As on the heap, the count may
+        // exceed the threshold by one, which then triggers the rebuild.
+        int prevCount = mem_.getAndAddInt(RETAINED_ENTRIES_INT, 1);
+        if (prevCount <= hashTableThreshold_) {
+          if (HashOperations.hashSearchOrInsertAtomic(mem_, lgArrLongs_, hash, preBytes) >= 0) {
+            mem_.getAndAddInt(RETAINED_ENTRIES_INT, -1);
+            return RejectedDuplicate;
+          }
+          if (prevCount < hashTableThreshold_) {
+            return InsertedCountIncremented;
+          }
+          inserted = true; //over the threshold, must rebuild
+        } else {
+          mem_.getAndAddInt(RETAINED_ENTRIES_INT, -1); //full, must rebuild and try again
+        }
+      }
+      finally {
+        releaseShared();
+      }
+      rebuildIfFull();
+      if (inserted) {
+        return InsertedCountIncremented;
+      }
+    }
+  }
+
+  private void rebuildIfFull() {
+    acquireExclusive();
+    try {
+      int curCount = mem_.getInt(RETAINED_ENTRIES_INT);
+      if (curCount > hashTableThreshold_) {
+        quickSelectAndRebuild(mem_, preambleLongs_, lgNomLongs_, lgArrLongs_, curCount);
+      }
+    }
+    finally {
+      releaseExclusive();
+    }
+  }
+
+  //Must hold the shared lock. Other bits of the flags byte never change after initialization.
+  private void clearEmpty() {
+    if ((mem_.getByte(FLAGS_BYTE) & EMPTY_FLAG_MASK) > 0) {
+      mem_.clearBits(FLAGS_BYTE, (byte) EMPTY_FLAG_MASK);
+    }
+  }
+
+  //lock word
+
+  private void acquireShared() {
+    while (true) {
+      long word = mem_.getLongVolatile(lockOffsetBytes_);
+      if (word >= 0) { //not held exclusively
+        if (mem_.compareAndSwapLong(lockOffsetBytes_, word, word + 1)) { return; }
+      }
+      else {
+        Thread.yield();
+      }
+    }
+  }
+
+  private void releaseShared() {
+    mem_.getAndAddLong(lockOffsetBytes_, -1L);
+  }
+
+  private void acquireExclusive() {
+    while (true) {
+      long word = mem_.getLongVolatile(lockOffsetBytes_);
+      if ((word >= 0) && mem_.compareAndSwapLong(lockOffsetBytes_, word, word | EXCLUSIVE_BIT)) {
+        break;
+      }
+      Thread.yield();
+    }
+    //wait for the active inserters to drain
+    while ((mem_.getLongVolatile(lockOffsetBytes_) & SHARED_MASK) != 0) {
+      Thread.yield();
+    }
+  }
+
+  private void releaseExclusive() {
+    long word = mem_.getLongVolatile(lockOffsetBytes_);
+    mem_.getAndSetLong(lockOffsetBytes_, ((word & EPOCH_MASK) + EPOCH_INCREMENT) & EPOCH_MASK);
+  }
+
+  /**
+   * Returns the number of exclusive sections (rebuilds, resets and snapshots) that have
+   * completed on the underlying Memory, modulo 2^31.
+   * @return the epoch of the lock word
+   */
+  int getEpoch() {
+    return (int) ((mem_.getLongVolatile(lockOffsetBytes_) & EPOCH_MASK) >>> 32);
+  }
+
+  private static void checkCapacity(Memory mem, int lgNomLongs, int preambleLongs) {
+    long reqBytes = PreambleUtil.getMemBytes(lgNomLongs + 1, preambleLongs) + 8;
+    if (mem.getCapacity() < reqBytes) {
+      throw new SketchesArgumentException(
+          "Memory capacity is too small for a concurrent sketch: "
+              + mem.getCapacity() + " < " + reqBytes);
+    }
+  }
+}
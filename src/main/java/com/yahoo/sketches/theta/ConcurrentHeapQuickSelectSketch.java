@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.theta;
+
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.ResizeFactor;
+import com.yahoo.sketches.memory.Memory;
+
+/**
+ * The shared sketch of a concurrent theta sketch on the Java heap. Writer threads update their
+ * own {@link ConcurrentHeapThetaBuffer}, which screens against the volatile theta published here
+ * and propagates its buffered hashes in batches. All mutations of the underlying
+ * QuickSelect sketch are serialized on this object. After each mutation theta, the retained
+ * count, the empty flag and the estimate are published through volatile fields so that
+ * {@link #getEstimate()} and the bounds can be read at any time without blocking the writers.
+ *
+ * <p>Methods that must see the hash table itself, such as {@link #compact(boolean, Memory)} and
+ * {@link #toByteArray()}, take the lock and therefore return a consistent snapshot. Set operations
+ * should be given <i>compact()</i> of this sketch rather than this sketch directly.</p>
+ */
+final class ConcurrentHeapQuickSelectSketch extends UpdateSketch
+    implements ConcurrentSharedThetaSketch {
+  private final HeapQuickSelectSketch gadget_;
+  private volatile long volatileThetaLong_;
+  private volatile int volatileRetainedEntries_;
+  private volatile boolean volatileEmpty_;
+  private volatile double volatileEstimate_;
+
+  private ConcurrentHeapQuickSelectSketch(HeapQuickSelectSketch gadget) {
+    gadget_ = gadget;
+    publish();
+  }
+
+  /**
+   * Get a new shared sketch instance on the java heap.
+   *
+   * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLogs">See lgNomLongs</a>.
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See seed</a>
+   * @param p <a href="{@docRoot}/resources/dictionary.html#p">See Sampling Probability, <i>p</i></a>
+   * @param rf <a href="{@docRoot}/resources/dictionary.html#resizeFactor">See Resize Factor</a>
+   * @return instance of this sketch
+   */
+  static ConcurrentHeapQuickSelectSketch getInstance(int lgNomLongs, long seed, float p,
+      ResizeFactor rf) {
+    return new ConcurrentHeapQuickSelectSketch(
+        HeapQuickSelectSketch.getInstance(lgNomLongs, seed, p, rf, false));
+  }
+
+  //ConcurrentSharedThetaSketch
+
+  @Override
+  public long getVolatileThetaLong() {
+    return volatileThetaLong_;
+  }
+
+  @Override
+  public synchronized void propagate(long[] hashes, int count) {
+    gadget_.hashUpdateAll(hashes, count);
+    publish();
+  }
+
+  //Sketch
+
+  @Override
+  public double getEstimate() {
+    return volatileEstimate_;
+  }
+
+  @Override
+  public int getRetainedEntries(boolean valid) {
+    return valid ? volatileRetainedEntries_ : getRetainedEntriesAll();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return volatileEmpty_;
+  }
+
+  @Override
+  public synchronized byte[] toByteArray() {
+    return gadget_.toByteArray();
+  }
+
+  @Override
+  public Family getFamily() {
+    return gadget_.getFamily();
+  }
+
+  @Override
+  public boolean isDirect() {
+    return false;
+  }
+
+  //UpdateSketch
+
+  @Override
+  public synchronized CompactSketch compact(boolean dstOrdered, Memory dstMem) {
+    return gadget_.compact(dstOrdered, dstMem);
+  }
+
+  @Override
+  public synchronized void reset() {
+    gadget_.reset();
+    publish();
+  }
+
+  @Override
+  public synchronized UpdateSketch rebuild() {
+    gadget_.rebuild();
+    publish();
+    return this;
+  }
+
+  @Override
+  public ResizeFactor getResizeFactor() {
+    return gadget_.getResizeFactor();
+  }
+
+  //restricted methods
+
+  @Override
+  synchronized UpdateReturnState hashUpdate(long hash) {
+    UpdateReturnState state = gadget_.hashUpdate(hash);
+    publish();
+    return state;
+  }
+
+  @Override
+  synchronized void hashUpdateAll(long[] hashes, int count) {
+    gadget_.hashUpdateAll(hashes, count);
+    publish();
+  }
+
+  @Override
+  int getPreambleLongs() {
+    return gadget_.getPreambleLongs();
+  }
+
+  @Override
+  Memory getMemory() {
+    return null;
+  }
+
+  /**
+   * Returns a copy of the hash table so that the caller cannot observe concurrent mutations.
+   * @return a copy of the hash table
+   */
+  @Override
+  synchronized long[] getCache() {
+    return gadget_.getCache().clone();
+  }
+
+  @Override
+  short getSeedHash() {
+    return gadget_.getSeedHash();
+  }
+
+  @Override
+  long getThetaLong() {
+    return volatileThetaLong_;
+  }
+
+  @Override
+  boolean isDirty() {
+    return false;
+  }
+
+  @Override
+  synchronized int getLgArrLongs() {
+    return gadget_.getLgArrLongs();
+  }
+
+  @Override
+  int getLgNomLongs() {
+    return gadget_.getLgNomLongs();
+  }
+
+  @Override
+  int getLgResizeFactor() {
+    return gadget_.getLgResizeFactor();
+  }
+
+  @Override
+  float getP() {
+    return gadget_.getP();
+  }
+
+  @Override
+  long getSeed() {
+    return gadget_.getSeed();
+  }
+
+  private synchronized int getRetainedEntriesAll() {
+    return gadget_.getRetainedEntries(false);
+  }
+
+  //must be called while holding the lock
+  private void publish() {
+    volatileThetaLong_ = gadget_.getThetaLong();
+    volatileRetainedEntries_ = gadget_.getRetainedEntries(true);
+    volatileEmpty_ = gadget_.isEmpty();
+    volatileEstimate_ = gadget_.getEstimate();
+  }
+}
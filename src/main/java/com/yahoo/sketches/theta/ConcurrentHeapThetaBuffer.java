@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.theta;
+
+import static com.yahoo.sketches.theta.UpdateReturnState.InsertedCountIncremented;
+import static com.yahoo.sketches.theta.UpdateReturnState.RejectedDuplicate;
+import static com.yahoo.sketches.theta.UpdateReturnState.RejectedOverTheta;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.HashOperations;
+import com.yahoo.sketches.ResizeFactor;
+import com.yahoo.sketches.SketchesStateException;
+import com.yahoo.sketches.memory.Memory;
+
+/**
+ * A thread-local writer of a concurrent theta sketch. Each writer thread owns one of these
+ * buffers, which must not be shared between threads. Incoming hashes are screened against the
+ * volatile theta of the shared sketch and collected in a small de-duplicating hash table. When the
+ * table holds <i>k</i> hashes it is handed to a background thread that merges it into the shared
+ * sketch, so that the writer rarely waits on the shared sketch's lock. At most one propagation per
+ * buffer is in flight; a writer that fills its buffer again before the previous propagation has
+ * completed waits for it.
+ *
+ * <p>All query methods delegate to the shared sketch and therefore see only the hashes that have
+ * already been propagated. Call {@link #flush()} to make the contents of this buffer visible.</p>
+ *
+ * <p>Obtain instances through {@link UpdateSketchBuilder#buildLocal(UpdateSketch)}.</p>
+ */
+public final class ConcurrentHeapThetaBuffer extends UpdateSketch {
+  private final UpdateSketch sharedSketch_;
+  private final ConcurrentSharedThetaSketch shared_;
+  private final int lgTableLongs_;
+  private final int maxCount_;
+  private long[] table_;
+  private int curCount_;
+  private boolean dirtyEmpty_; //true if updated since the last propagation
+  private Future<?> inFlight_;
+
+  /**
+   * Constructs a local buffer for the given shared sketch.
+   * @param lgBufferLongs log-base 2 of the number of hashes buffered before propagation
+   * @param sharedSketch the shared sketch, which must implement ConcurrentSharedThetaSketch
+   */
+  ConcurrentHeapThetaBuffer(int lgBufferLongs, UpdateSketch sharedSketch) {
+    sharedSketch_ = sharedSketch;
+    shared_ = (ConcurrentSharedThetaSketch) sharedSketch;
+    lgTableLongs_ = lgBufferLongs + 1;
+    maxCount_ = 1 << lgBufferLongs;
+    table_ = new long[1 << lgTableLongs_];
+  }
+
+  /**
+   * Propagates any buffered hashes to the shared sketch and waits until all propagations of this
+   * buffer have completed. On return, the shared sketch reflects every update made through this
+   * buffer.
+   */
+  public void flush() {
+    propagateBuffer();
+    awaitPropagation();
+  }
+
+  //Sketch
+
+  @Override
+  public double getEstimate() {
+    return sharedSketch_.getEstimate();
+  }
+
+  @Override
+  public int getRetainedEntries(boolean valid) {
+    return sharedSketch_.getRetainedEntries(valid);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return sharedSketch_.isEmpty();
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    return sharedSketch_.toByteArray();
+  }
+
+  @Override
+  public Family getFamily() {
+    return sharedSketch_.getFamily();
+  }
+
+  @Override
+  public boolean isDirect() {
+    return sharedSketch_.isDirect();
+  }
+
+  //UpdateSketch
+
+  @Override
+  public CompactSketch compact(boolean dstOrdered, Memory dstMem) {
+    return sharedSketch_.compact(dstOrdered, dstMem);
+  }
+
+  /**
+   * Discards the hashes held in this buffer that have not yet been propagated.
+   * The shared sketch is not affected.
+   */
+  @Override
+  public void reset() {
+    awaitPropagation();
+    Arrays.fill(table_, 0L);
+    curCount_ = 0;
+    dirtyEmpty_ = false;
+  }
+
+  @Override
+  public UpdateSketch rebuild() {
+    sharedSketch_.rebuild();
+    return this;
+  }
+
+  @Override
+  public ResizeFactor getResizeFactor() {
+    return sharedSketch_.getResizeFactor();
+  }
+
+  //restricted methods
+
+  @Override
+  UpdateReturnState hashUpdate(long hash) {
+    HashOperations.checkHashCorruption(hash);
+    dirtyEmpty_ = true;
+
+    if (HashOperations.continueCondition(shared_.getVolatileThetaLong(), hash)) {
+      return RejectedOverTheta;
+    }
+    if (HashOperations.hashSearchOrInsert(table_, lgTableLongs_, hash) >= 0) {
+      return RejectedDuplicate;
+    }
+    if (++curCount_ >= maxCount_) {
+      propagateBuffer();
+    }
+    return InsertedCountIncremented;
+  }
+
+  @Override
+  int getPreambleLongs() {
+    return sharedSketch_.getPreambleLongs();
+  }
+
+  @Override
+  Memory getMemory() {
+    return sharedSketch_.getMemory();
+  }
+
+  @Override
+  long[] getCache() {
+    return sharedSketch_.getCache();
+  }
+
+  @Override
+  short getSeedHash() {
+    return sharedSketch_.getSeedHash();
+  }
+
+  @Override
+  long getThetaLong() {
+    return sharedSketch_.getThetaLong();
+  }
+
+  @Override
+  boolean isDirty() {
+    return sharedSketch_.isDirty();
+  }
+
+  @Override
+  int getLgArrLongs() {
+    return sharedSketch_.getLgArrLongs();
+  }
+
+  @Override
+  int getLgNomLongs() {
+    return sharedSketch_.getLgNomLongs();
+  }
+
+  @Override
+  int getLgResizeFactor() {
+    return sharedSketch_.getLgResizeFactor();
+  }
+
+  @Override
+  float getP() {
+    return sharedSketch_.getP();
+  }
+
+  @Override
+  long getSeed() {
+    return sharedSketch_.getSeed();
+  }
+
+  //Hands the buffered hashes to the propagation service and starts a new buffer.
+  private void propagateBuffer() {
+    if (!dirtyEmpty_) { return; }
+    awaitPropagation();
+    final long[] batch;
+    if (curCount_ == 0) {
+      batch = new long[1]; //a zero hash only clears the empty flag of the shared sketch
+    }
+    else {
+      batch = new long[curCount_];
+      int j = 0;
+      for (int i = 0; i < table_.length; i++) {
+        long hash = table_[i];
+        if (hash != 0) {
+          batch[j++] = hash;
+          table_[i] = 0;
+        }
+      }
+    }
+    curCount_ = 0;
+    dirtyEmpty_ = false;
+    inFlight_ = ConcurrentPropagationService.getExecutor().submit(new Runnable() {
+      @Override
+      public void run() {
+        shared_.propagate(batch, batch.length);
+      }
+    });
+  }
+
+  private void awaitPropagation() {
+    if (inFlight_ == null) { return; }
+    try {
+      inFlight_.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SketchesStateException("Interrupted while waiting for propagation.");
+    }
+    catch (ExecutionException e) {
+      throw new SketchesStateException("Propagation failed: " + e.getCause());
+    }
+    finally {
+      inFlight_ = null;
+    }
+  }
+}
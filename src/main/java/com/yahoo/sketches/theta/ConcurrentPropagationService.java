@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.theta;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the shared pool of daemon threads that propagate the buffers of the concurrent local
+ * theta sketches into their shared sketch. The pool is created lazily on first use and is sized
+ * to the number of available processors.
+ */
+final class ConcurrentPropagationService {
+
+  private ConcurrentPropagationService() {}
+
+  static ExecutorService getExecutor() {
+    return Holder.EXECUTOR;
+  }
+
+  //lazy, thread-safe initialization
+  private static final class Holder {
+    static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory());
+  }
+
+  private static final class DaemonThreadFactory implements ThreadFactory {
+    private final AtomicInteger count_ = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "theta-propagation-" + count_.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.theta;
+
+/**
+ * The contract between a concurrent shared theta sketch and the local buffers that feed it.
+ * Implementations must also extend {@link UpdateSketch}.
+ */
+interface ConcurrentSharedThetaSketch {
+
+  /**
+   * Returns the most recently published value of theta as a long. This read never blocks and is
+   * used by the local buffers to screen incoming hashes.
+   * @return the most recently published value of theta as a long
+   */
+  long getVolatileThetaLong();
+
+  /**
+   * Merges the given hashes into this shared sketch and publishes the resulting theta and
+   * estimate. A hash of zero only marks the sketch as not empty.
+   * @param hashes the given hashes
+   * @param count the number of leading entries of <i>hashes</i> to merge
+   */
+  void propagate(long[] hashes, int count);
+}
@@ -132,6 +132,11 @@ final class DirectCompactOrderedSketch extends CompactSketch {
   Memory getMemory() {
     return mem_;
   }
+  
+  @Override
+  Memory getCacheMemory() {
+    return mem_;
+  }
 
   @Override
   public boolean isOrdered() {
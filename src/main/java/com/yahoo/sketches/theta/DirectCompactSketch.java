@@ -124,6 +124,11 @@ final class DirectCompactSketch extends CompactSketch {
     return mem_;
   }
   
+  @Override
+  Memory getCacheMemory() {
+    return mem_;
+  }
+  
   @Override
   public boolean isOrdered() {
     return false;
@@ -11,6 +11,7 @@ import static com.yahoo.sketches.theta.CompactSketch.compactCachePart;
 import static com.yahoo.sketches.theta.PreambleUtil.EMPTY_FLAG_MASK;
 import static com.yahoo.sketches.theta.PreambleUtil.FLAGS_BYTE;
 import static com.yahoo.sketches.theta.PreambleUtil.LG_ARR_LONGS_BYTE;
+import static com.yahoo.sketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
 import static com.yahoo.sketches.theta.PreambleUtil.RETAINED_ENTRIES_INT;
 import static com.yahoo.sketches.theta.PreambleUtil.SEED_HASH_SHORT;
 import static com.yahoo.sketches.theta.PreambleUtil.SER_VER;
@@ -35,6 +36,7 @@ import com.yahoo.sketches.HashOperations;
 import com.yahoo.sketches.SketchesArgumentException;
 import com.yahoo.sketches.SketchesStateException;
 import com.yahoo.sketches.Util;
+import com.yahoo.sketches.memory.FastMemory;
 import com.yahoo.sketches.memory.Memory;
 
 /**
@@ -57,6 +59,7 @@ final class DirectIntersection extends SetOperation implements Intersection {
   
   private final int maxLgArrLongs_; //max size of hash table
   private final Memory mem_;
+  private final FastMemory fastMem_; //used for probing the hash table
   
   /**
    * Construct a new Intersection target direct to the given destination Memory.
@@ -97,6 +100,7 @@ final class DirectIntersection extends SetOperation implements Intersection {
     preArr[2] = thetaLong_;
     dstMem.putLongArray(0, preArr, 0, preLongs); //put into mem
     mem_ = dstMem;
+    fastMem_ = FastMemory.wrap(dstMem);
   }
   
   /**
@@ -142,6 +146,7 @@ final class DirectIntersection extends SetOperation implements Intersection {
       //empty = true AND curCount_ = 0: OK
     } //else empty = false, curCount could be anything
     mem_ = srcMem;
+    fastMem_ = FastMemory.wrap(srcMem);
   }
   
   @Override
@@ -197,7 +202,7 @@ final class DirectIntersection extends SetOperation implements Intersection {
             "Insufficient dstMem hash table space: " 
                 + (1 << requiredLgArrLongs) + " > " + (1 << lgArrLongs_));
       }
-      moveDataToHT(sketchIn.getCache(), curCount_);
+      moveDataToHT(sketchIn, curCount_);
     }
     else { //curCount > 0
       //The Nth Call (curCount  > 0) and sketchInEntries  > 0.
@@ -272,12 +277,11 @@ final class DirectIntersection extends SetOperation implements Intersection {
   private void performIntersect(Sketch sketchIn) {
     // HT and input data are nonzero, match against HT
     assert ((curCount_ > 0) && (!empty_));
-    long[] cacheIn = sketchIn.getCache();
-    int arrLongsIn = cacheIn.length;
-    
-    int htLen = 1 << lgArrLongs_;
-    long[] hashTable = new long[htLen];
-    mem_.getLongArray(CONST_PREAMBLE_LONGS << 3, hashTable, 0, htLen); 
+    Memory memIn = sketchIn.getCacheMemory(); //if not null, the cache is scanned in place
+    long[] cacheIn = (memIn == null) ? sketchIn.getCache() : null;
+    int preBytesIn = (memIn == null) ? 0 : (memIn.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    int arrLongsIn = (memIn == null) ? cacheIn.length : sketchIn.getCurrentDataLongs(false);
+    int preBytes = CONST_PREAMBLE_LONGS << 3; //the HT is searched in place
     
     //allocate space for matching
     long[] matchSet = new long[ min(curCount_, sketchIn.getRetainedEntries(true)) ];
@@ -286,12 +290,12 @@ final class DirectIntersection extends SetOperation implements Intersection {
     if (sketchIn.isOrdered()) {
       //ordered compact, which enables early stop
       for (int i = 0; i < arrLongsIn; i++ ) {
-        long hashIn = cacheIn[i];
+        long hashIn = (memIn == null) ? cacheIn[i] : memIn.getLong(preBytesIn + (i << 3));
         if (hashIn <= 0L) continue;
         if (hashIn >= thetaLong_) {
           break; //early stop assumes that hashes in input sketch are ordered!
         }
-        int foundIdx = HashOperations.hashSearch(hashTable, lgArrLongs_, hashIn);
+        int foundIdx = HashOperations.hashSearch(fastMem_, lgArrLongs_, hashIn, preBytes);
         if (foundIdx == -1) continue;
         matchSet[matchSetCount++] = hashIn;
       }
@@ -300,9 +304,9 @@ final class DirectIntersection extends SetOperation implements Intersection {
     else {
       //either unordered compact or hash table
       for (int i = 0; i < arrLongsIn; i++ ) {
-        long hashIn = cacheIn[i];
+        long hashIn = (memIn == null) ? cacheIn[i] : memIn.getLong(preBytesIn + (i << 3));
         if ((hashIn <= 0L) || (hashIn >= thetaLong_)) continue;
-        int foundIdx = HashOperations.hashSearch(hashTable, lgArrLongs_, hashIn);
+        int foundIdx = HashOperations.hashSearch(fastMem_, lgArrLongs_, hashIn, preBytes);
         if (foundIdx == -1) continue;
         matchSet[matchSetCount++] = hashIn;
       }
@@ -315,17 +319,27 @@ final class DirectIntersection extends SetOperation implements Intersection {
     moveDataToHT(matchSet, matchSetCount);
   }
   
-  private void moveDataToHT(long[] arr, int count) {
-    int arrLongsIn = arr.length;
-    int tmpCnt = 0;
+  //Scans a Direct sketch in place
+  private void moveDataToHT(Sketch sketchIn, int count) {
+    Memory memIn = sketchIn.getCacheMemory();
+    if (memIn == null) {
+      moveDataToHT(sketchIn.getCache(), count);
+      return;
+    }
+    int preBytesIn = (memIn.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    int arrLongsIn = sketchIn.getCurrentDataLongs(false);
     int preBytes = CONST_PREAMBLE_LONGS << 3;
-    for (int i = 0; i < arrLongsIn; i++ ) {
-      long hashIn = arr[i];
-      if (HashOperations.continueCondition(thetaLong_, hashIn)) continue;
-      // opportunity to use faster unconditional insert
-      tmpCnt += 
-          HashOperations.hashSearchOrInsert(mem_, lgArrLongs_, hashIn, preBytes) < 0 ? 1 : 0;
+    int tmpCnt = HashOperations.hashArrayInsert(memIn, preBytesIn, arrLongsIn, fastMem_,
+        lgArrLongs_, thetaLong_, preBytes);
+    if (tmpCnt != count) {
+      throw new SketchesArgumentException("Count Check Exception: got: " + tmpCnt 
+          + ", expected: " + count);
     }
+  }
+  
+  private void moveDataToHT(long[] arr, int count) {
+    int preBytes = CONST_PREAMBLE_LONGS << 3;
+    int tmpCnt = HashOperations.hashArrayInsert(arr, fastMem_, lgArrLongs_, thetaLong_, preBytes);
     if (tmpCnt != count) {
       throw new SketchesArgumentException("Count Check Exception: got: " + tmpCnt 
           + ", expected: " + count);
@@ -40,10 +40,12 @@ import static com.yahoo.sketches.theta.PreambleUtil.insertPreLongs;
 import static com.yahoo.sketches.theta.PreambleUtil.insertResizeFactor;
 import static com.yahoo.sketches.theta.PreambleUtil.insertSeedHash;
 import static com.yahoo.sketches.theta.PreambleUtil.insertSerVer;
+import static com.yahoo.sketches.theta.Rebuilder.REBUILD_CHUNK_SLOTS;
 import static com.yahoo.sketches.theta.Rebuilder.actLgResizeFactor;
 import static com.yahoo.sketches.theta.Rebuilder.moveAndResize;
 import static com.yahoo.sketches.theta.Rebuilder.quickSelectAndRebuild;
 import static com.yahoo.sketches.theta.Rebuilder.resize;
+import static com.yahoo.sketches.theta.Rebuilder.selectThetaLong;
 import static com.yahoo.sketches.theta.UpdateReturnState.InsertedCountIncremented;
 import static com.yahoo.sketches.theta.UpdateReturnState.RejectedDuplicate;
 import static com.yahoo.sketches.theta.UpdateReturnState.RejectedOverTheta;
@@ -53,6 +55,7 @@ import com.yahoo.sketches.HashOperations;
 import com.yahoo.sketches.ResizeFactor;
 import com.yahoo.sketches.SketchesArgumentException;
 import com.yahoo.sketches.Util;
+import com.yahoo.sketches.memory.FastMemory;
 import com.yahoo.sketches.memory.Memory;
 import com.yahoo.sketches.memory.MemoryRequest;
 import com.yahoo.sketches.memory.NativeMemory;
@@ -79,6 +82,11 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
   private boolean empty_;
   
   private Memory mem_;
+  private FastMemory fastMem_; //used in the update path, replaced with mem_
+  
+  private boolean incrementalRebuild_; //never serialized
+  private long[] rebuildSrc_; //the table being migrated by an incremental rebuild, else null
+  private int rebuildIndex_;  //the next slot of rebuildSrc_ to be migrated
   
   private DirectQuickSelectSketch(int lgNomLongs, long seed, float p, ResizeFactor rf, 
       int preambleLongs) {
@@ -165,6 +173,7 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
     dqss.thetaLong_ = thetaLong;
     dqss.empty_ = true;
     dqss.mem_ = dstMem;
+    dqss.fastMem_ = FastMemory.wrap(dstMem);
     return dqss;
   }
   
@@ -253,6 +262,7 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
     dqss.thetaLong_ = thetaLong;
     dqss.empty_ = (flags & EMPTY_FLAG_MASK) > 0;
     dqss.mem_ = srcMem;
+    dqss.fastMem_ = FastMemory.wrap(srcMem);
     return dqss;
   }
   
@@ -270,6 +280,7 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
   
   @Override
   public byte[] toByteArray() { //MY_FAMILY is stored in mem_
+    finishIncrementalRebuild();
     int lengthBytes = (preambleLongs_ + (1 << lgArrLongs_)) << 3;
     byte[] byteArray = new byte[lengthBytes];
     Memory mem = new NativeMemory(byteArray);
@@ -289,6 +300,7 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
   
   @Override
   public UpdateSketch rebuild() {
+    finishIncrementalRebuild();
     if (getRetainedEntries(true) > (1 << getLgNomLongs())) {
       quickSelectAndRebuild(mem_, preambleLongs_, lgNomLongs_, lgArrLongs_, curCount_);
       //Reset local variables
@@ -303,6 +315,7 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
     //clear hash table
     //hash table size and hashTableThreshold stays the same
     //lgArrLongs stays the same
+    rebuildSrc_ = null;
     int arrLongs = 1 << getLgArrLongs();
     int preBytes = preambleLongs_ << 3;
     mem_.clear(preBytes, arrLongs * 8); //clear data array
@@ -323,6 +336,7 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
   
   @Override
   long[] getCache() {
+    finishIncrementalRebuild();
     long[] cacheArr = new long[1 << lgArrLongs_];
     Memory mem = new NativeMemory(cacheArr);
     NativeMemory.copy(mem_, preambleLongs_ << 3, mem, 0, 8 << lgArrLongs_);
@@ -331,6 +345,13 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
   
   @Override
   Memory getMemory() {
+    finishIncrementalRebuild();
+    return mem_;
+  }
+  
+  @Override
+  Memory getCacheMemory() {
+    finishIncrementalRebuild();
     return mem_;
   }
   
@@ -357,6 +378,7 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
       mem_.clearBits(FLAGS_BYTE, (byte)EMPTY_FLAG_MASK);
       empty_ = false;
     }
+    if (rebuildSrc_ != null) { migrateSlots(); }
     
     //The over-theta test
     if (HashOperations.continueCondition(thetaLong_, hash)) {
@@ -364,62 +386,150 @@ final class DirectQuickSelectSketch extends DirectUpdateSketch {
     }
     
     //The duplicate test
-    if (HashOperations.hashSearchOrInsert(mem_, lgArrLongs_, hash, preambleLongs_ << 3) >= 0) {
+    if (((rebuildSrc_ != null) && (HashOperations.hashSearch(rebuildSrc_, lgArrLongs_, hash) >= 0))
+        || (HashOperations.hashSearchOrInsert(fastMem_, lgArrLongs_, hash, preambleLongs_ << 3)
+            >= 0)) {
       return RejectedDuplicate; //Duplicate, not inserted
     }
     //insertion occurred, increment curCount
-    mem_.putInt(RETAINED_ENTRIES_INT, ++curCount_); //update curCount
+    fastMem_.putInt(RETAINED_ENTRIES_INT, ++curCount_); //update curCount
     
     if (curCount_ > hashTableThreshold_) { //we need to do something, we are out of space
+      resizeOrRebuild();
+    }
+    return InsertedCountIncremented;
+  }
+  
+  @Override
+  void hashUpdateAll(long[] hashes, int count) {
+    if (empty_ && (count > 0)) {
+      mem_.clearBits(FLAGS_BYTE, (byte)EMPTY_FLAG_MASK);
+      empty_ = false;
+    }
+    final int preBytes = preambleLongs_ << 3;
+    for (int i = 0; i < count; i++) {
+      final long hash = hashes[i];
+      if (rebuildSrc_ != null) { migrateSlots(); }
+      //The over-theta test, also screens the zero hash
+      if (HashOperations.continueCondition(thetaLong_, hash)) { continue; }
+      //The duplicate test
+      if ((rebuildSrc_ != null)
+          && (HashOperations.hashSearch(rebuildSrc_, lgArrLongs_, hash) >= 0)) { continue; }
+      if (HashOperations.hashSearchOrInsert(fastMem_, lgArrLongs_, hash, preBytes) >= 0) {
+        continue;
+      }
+      fastMem_.putInt(RETAINED_ENTRIES_INT, ++curCount_);
+      if (curCount_ > hashTableThreshold_) {
+        resizeOrRebuild();
+      }
+    }
+  }
+  
+  //Rebuilds or resizes the hash table when it has exceeded the threshold.
+  // Used by hashUpdate(), hashUpdateAll()
+  private final void resizeOrRebuild() {
+    if (lgArrLongs_ > lgNomLongs_) { //at full size, rebuild
+      //Assumes no dirty values, changes thetaLong_, curCount_
+      assert 
+        (lgArrLongs_ == lgNomLongs_ + 1) : "lgArr: " + lgArrLongs_ + ", lgNom: " + lgNomLongs_;
+      if (incrementalRebuild_) {
+        startIncrementalRebuild();
+        return;
+      }
+      quickSelectAndRebuild(mem_, preambleLongs_, lgNomLongs_, lgArrLongs_, curCount_);  //rebuild
+      curCount_ = mem_.getInt(RETAINED_ENTRIES_INT);
+      thetaLong_ = mem_.getLong(THETA_LONG);
+    } //end of rebuild
+    
+    else { //Not at full size, resize. Should not get here if lgRF = 0 and memCap is too small.
+      int lgRF = getLgResizeFactor();
+      int actLgRF = actLgResizeFactor(mem_.getCapacity(), lgArrLongs_, preambleLongs_, lgRF);
+      int tgtLgArrLongs = Math.min(lgArrLongs_ + actLgRF, lgNomLongs_ + 1);
+      if (actLgRF > 0) { //Expand in current Memory
+        resize(mem_, preambleLongs_, lgArrLongs_, tgtLgArrLongs);
+        //update locals
+        lgArrLongs_ = mem_.getByte(LG_ARR_LONGS_BYTE);
+        hashTableThreshold_ = setHashTableThreshold(lgNomLongs_, lgArrLongs_);
+      } //end of Expand in current memory
       
-      if (lgArrLongs_ > lgNomLongs_) { //at full size, rebuild
-        //Assumes no dirty values, changes thetaLong_, curCount_
-        assert 
-          (lgArrLongs_ == lgNomLongs_ + 1) : "lgArr: " + lgArrLongs_ + ", lgNom: " + lgNomLongs_;
-        quickSelectAndRebuild(mem_, preambleLongs_, lgNomLongs_, lgArrLongs_, curCount_);  //rebuild
-        curCount_ = mem_.getInt(RETAINED_ENTRIES_INT);
-        thetaLong_ = mem_.getLong(THETA_LONG);
-      } //end of rebuild
-      
-      else { //Not at full size, resize. Should not get here if lgRF = 0 and memCap is too small.
-        int lgRF = getLgResizeFactor();
-        int actLgRF = actLgResizeFactor(mem_.getCapacity(), lgArrLongs_, preambleLongs_, lgRF);
-        int tgtLgArrLongs = Math.min(lgArrLongs_ + actLgRF, lgNomLongs_ + 1);
-        if (actLgRF > 0) { //Expand in current Memory
-          resize(mem_, preambleLongs_, lgArrLongs_, tgtLgArrLongs);
-          //update locals
-          lgArrLongs_ = mem_.getByte(LG_ARR_LONGS_BYTE);
-          hashTableThreshold_ = setHashTableThreshold(lgNomLongs_, lgArrLongs_);
-        } //end of Expand in current memory
+      else { //Request more memory, then resize
+        int preBytes = preambleLongs_ << 3;
+        tgtLgArrLongs = Math.min(lgArrLongs_ + lgRF, lgNomLongs_ + 1);
+        int tgtArrBytes = 8 << tgtLgArrLongs;
+        int reqBytes = tgtArrBytes + preBytes;
+        //if (tgtArrBytes < 2*(curMemCap));
+        
+        MemoryRequest memReq = mem_.getMemoryRequest();
+        Memory dstMem = memReq.request(reqBytes);
+        if (dstMem == null) { //returned a null
+          throw new SketchesArgumentException("MemoryRequest callback cannot be null.");
+        }
+        long newCap = dstMem.getCapacity();
+        if (newCap < reqBytes) {
+          memReq.free(dstMem);
+          throw new SketchesArgumentException("Requested memory not granted: " + newCap + " < " 
+              + reqBytes);
+        }
+        moveAndResize(mem_, preambleLongs_, lgArrLongs_, dstMem, tgtLgArrLongs, thetaLong_);
         
-        else { //Request more memory, then resize
-          int preBytes = preambleLongs_ << 3;
-          tgtLgArrLongs = Math.min(lgArrLongs_ + lgRF, lgNomLongs_ + 1);
-          int tgtArrBytes = 8 << tgtLgArrLongs;
-          int reqBytes = tgtArrBytes + preBytes;
-          //if (tgtArrBytes < 2*(curMemCap));
-          
-          MemoryRequest memReq = mem_.getMemoryRequest();
-          Memory dstMem = memReq.request(reqBytes);
-          if (dstMem == null) { //returned a null
-            throw new SketchesArgumentException("MemoryRequest callback cannot be null.");
-          }
-          long newCap = dstMem.getCapacity();
-          if (newCap < reqBytes) {
-            memReq.free(dstMem);
-            throw new SketchesArgumentException("Requested memory not granted: " + newCap + " < " 
-                + reqBytes);
-          }
-          moveAndResize(mem_, preambleLongs_, lgArrLongs_, dstMem, tgtLgArrLongs, thetaLong_);
-          
-          memReq.free(mem_, dstMem); //normal free mechanism via MemoryRequest
-          mem_ = dstMem;
-          lgArrLongs_ = mem_.getByte(LG_ARR_LONGS_BYTE);
-          hashTableThreshold_ = setHashTableThreshold(lgNomLongs_, lgArrLongs_);
-        } //end of Request more memory to resize
-      } //end of resize
+        memReq.free(mem_, dstMem); //normal free mechanism via MemoryRequest
+        mem_ = dstMem;
+        fastMem_ = FastMemory.wrap(dstMem);
+        lgArrLongs_ = mem_.getByte(LG_ARR_LONGS_BYTE);
+        hashTableThreshold_ = setHashTableThreshold(lgNomLongs_, lgArrLongs_);
+      } //end of Request more memory to resize
+    } //end of resize
+  }
+  
+  //Copies the table to the heap, selects the new theta and clears the table in Memory. The valid
+  // hashes of the copy are then migrated REBUILD_CHUNK_SLOTS slots at a time by the following
+  // updates, which search the copy as well for duplicates until the migration is complete.
+  // Until then the hash table in Memory is incomplete. Changes thetaLong_ and curCount_.
+  private final void startIncrementalRebuild() {
+    finishIncrementalRebuild(); //in case the previous one has not finished
+    int preBytes = preambleLongs_ << 3;
+    int arrLongs = 1 << lgArrLongs_;
+    long[] srcArr = new long[arrLongs];
+    mem_.getLongArray(preBytes, srcArr, 0, arrLongs);
+    int pivot = (1 << lgNomLongs_) + 1; // pivot for QS
+    thetaLong_ = setThetaLong(mem_, selectThetaLong(srcArr, curCount_, thetaLong_, pivot));
+    //the hashes less than the new theta, counted before they are migrated
+    curCount_ = setCurCount(mem_, pivot - 1);
+    mem_.clear(preBytes, arrLongs << 3);
+    rebuildSrc_ = srcArr;
+    rebuildIndex_ = 0;
+  }
+  
+  //Migrates the next REBUILD_CHUNK_SLOTS slots of the old table.
+  private final void migrateSlots() {
+    migrateSlots(Math.min(rebuildIndex_ + REBUILD_CHUNK_SLOTS, rebuildSrc_.length));
+  }
+  
+  private final void migrateSlots(int end) {
+    final long[] src = rebuildSrc_;
+    final int preBytes = preambleLongs_ << 3;
+    for (int i = rebuildIndex_; i < end; i++) {
+      final long hash = src[i];
+      if (HashOperations.continueCondition(thetaLong_, hash)) { continue; }
+      HashOperations.hashInsertOnly(fastMem_, lgArrLongs_, hash, preBytes); //not a duplicate
     }
-    return InsertedCountIncremented;
+    rebuildIndex_ = end;
+    if (end == src.length) { rebuildSrc_ = null; }
+  }
+  
+  //Completes an incremental rebuild, if one is in progress.
+  private final void finishIncrementalRebuild() {
+    if (rebuildSrc_ != null) { migrateSlots(rebuildSrc_.length); }
+  }
+  
+  /**
+   * Sets the incremental rebuild mode, see
+   * {@link UpdateSketchBuilder#setIncrementalRebuild(boolean)}.
+   * @param incremental true to enable the incremental rebuild mode
+   */
+  void setIncrementalRebuild(boolean incremental) {
+    if (!incremental) { finishIncrementalRebuild(); }
+    incrementalRebuild_ = incremental;
   }
   
   //special set methods
@@ -375,6 +375,17 @@ final class HeapAlphaSketch extends HeapUpdateSketch {
     return UpdateReturnState.InsertedCountIncremented;
   }
   
+  @Override
+  void hashUpdateAll(long[] hashes, int count) {
+    if (count > 0) { empty_ = false; }
+    for (int i = 0; i < count; i++) {
+      final long hash = hashes[i];
+      //Screen against the current theta before doing any other work
+      if (HashOperations.continueCondition(thetaLong_, hash)) { continue; }
+      hashUpdate(hash);
+    }
+  }
+  
   /**
    * Enhanced Knuth-style Open Addressing, Double Hash insert. 
    * The insertion process will overwrite an already existing, dirty (over-theta) value if one is 
@@ -5,9 +5,11 @@
 
 package com.yahoo.sketches.theta;
 
+import static com.yahoo.sketches.HashOperations.continueCondition;
 import static com.yahoo.sketches.HashOperations.hashArrayInsert;
 import static com.yahoo.sketches.HashOperations.hashSearch;
-import static com.yahoo.sketches.theta.CompactSketch.compactCache;
+import static com.yahoo.sketches.HashOperations.hashSearchOrInsert;
+import static com.yahoo.sketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
 import static java.lang.Math.min;
 
 import java.util.Arrays;
@@ -31,6 +33,8 @@ final class HeapAnotB extends SetOperation implements AnotB {
   
   private int lgArrLongsHT_; //for Hash Table only. may not need to be member after refactoring
   private long[] bHashTable_; //may not need to be member after refactoring.
+  private Memory bMem_; //if not null, the Direct HT of B, which is searched in place
+  private int bPreBytes_;
   
   /**
    * Construct a new Union SetOperation on the java heap.  Called by SetOperation.Builder.
@@ -51,6 +55,7 @@ final class HeapAnotB extends SetOperation implements AnotB {
     curCount_ = 0;
     lgArrLongsHT_ = 5;
     bHashTable_ = null;
+    bMem_ = null;
     compute();
   }
   
@@ -122,7 +127,7 @@ final class HeapAnotB extends SetOperation implements AnotB {
     //O    N    3    0    24    Return A: (ThA, |A|, E(a))
     //O    E    3    1    25    Return (min, |A|, E(a))
     //O    C    3    2    26    B -> H; => O,H
-    //O    O    3    3    27    B -> H; => O,H
+    //O    O    3    3    27    merge A with B, A early stop, on nomatch -> list
     //O    H    3    4    28    scan A early stop, search B, on nomatch -> list
     //H    N    4    0    32    Return A: (ThA, |A|, E(a))
     //H    E    4    1    33    Return (min, |A|, E(a))
@@ -167,9 +172,8 @@ final class HeapAnotB extends SetOperation implements AnotB {
         Util.checkSeedHashes(seedHash_, a_.getSeedHash());
         thetaLong_ = a_.getThetaLong();
         empty_ = a_.isEmpty();
-        //move A to cache
-        curCount_ = a_.getRetainedEntries(true);
-        cache_ = compactCache(a_.getCache(), curCount_, thetaLong_, false);
+        //move A to cache, there is no B to search
+        scanAllAsearchB();
         break; //(min, 0, Ea)
       }
       case 17: 
@@ -179,9 +183,8 @@ final class HeapAnotB extends SetOperation implements AnotB {
         Util.checkSeedHashes(seedHash_, b_.getSeedHash());
         thetaLong_ = min(a_.getThetaLong(), b_.getThetaLong());
         empty_ = a_.isEmpty();
-        //move A to cache
-        curCount_ = a_.getRetainedEntries(true);
-        cache_ = compactCache(a_.getCache(), curCount_, thetaLong_, false); 
+        //move A to cache, there is no B to search
+        scanAllAsearchB();
         break; //(min, 0, Ea)
       }
       case 18: 
@@ -197,8 +200,7 @@ final class HeapAnotB extends SetOperation implements AnotB {
         scanAllAsearchB(); //builds cache, curCount from A, HT
         break; //(min, n, Ea)
       }
-      case 26: 
-      case 27: { //A ordered early stop, B compact or ordered 
+      case 26: { //A ordered early stop, B compact 
         Util.checkSeedHashes(seedHash_, a_.getSeedHash());
         Util.checkSeedHashes(seedHash_, b_.getSeedHash());
         thetaLong_ = min(a_.getThetaLong(), b_.getThetaLong());
@@ -207,6 +209,14 @@ final class HeapAnotB extends SetOperation implements AnotB {
         scanEarlyStopAsearchB();
         break; //(min, n, Ea)
       }
+      case 27: { //A and B ordered, no HT needed
+        Util.checkSeedHashes(seedHash_, a_.getSeedHash());
+        Util.checkSeedHashes(seedHash_, b_.getSeedHash());
+        thetaLong_ = min(a_.getThetaLong(), b_.getThetaLong());
+        empty_ = a_.isEmpty();
+        mergeAwithB();
+        break; //(min, n, Ea)
+      }
       case 20: 
       case 36: { //A compact or HT, B is already HT
         Util.checkSeedHashes(seedHash_, a_.getSeedHash());
@@ -215,7 +225,7 @@ final class HeapAnotB extends SetOperation implements AnotB {
         empty_ = a_.isEmpty();
         //b is already HT
         lgArrLongsHT_ = ((UpdateSketch)b_).getLgArrLongs();
-        bHashTable_ = b_.getCache(); //safe as bHashTable is read-only
+        useBHashTable();
         scanAllAsearchB(); //builds cache, curCount from A, HT
         break; //(min, n, Ea)
       }
@@ -226,7 +236,7 @@ final class HeapAnotB extends SetOperation implements AnotB {
         empty_ = a_.isEmpty();
         //b is already HT
         lgArrLongsHT_ = ((UpdateSketch)b_).getLgArrLongs();
-        bHashTable_ = b_.getCache(); //safe as bHashTable is read-only
+        useBHashTable();
         scanEarlyStopAsearchB();
         break; //(min, n, Ea)
       }
@@ -238,37 +248,91 @@ final class HeapAnotB extends SetOperation implements AnotB {
     int curCountB = b_.getRetainedEntries(true);
     lgArrLongsHT_ = computeMinLgArrLongsFromCount(curCountB);
     bHashTable_ = new long[1 << lgArrLongsHT_];
-    int count = hashArrayInsert(b_.getCache(), bHashTable_, lgArrLongsHT_, thetaLong_);
-    assert (count == curCountB);
+    Memory memB = b_.getCacheMemory();
+    int count = 0;
+    if (memB == null) {
+      count = hashArrayInsert(b_.getCache(), bHashTable_, lgArrLongsHT_, thetaLong_);
+    }
+    else { //scan B in place
+      int preBytesB = (memB.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+      int arrLongsB = b_.getCurrentDataLongs(false);
+      for (int i = 0; i < arrLongsB; i++ ) {
+        long hashIn = memB.getLong(preBytesB + (i << 3));
+        if (continueCondition(thetaLong_, hashIn)) continue;
+        if (hashSearchOrInsert(bHashTable_, lgArrLongsHT_, hashIn) < 0) count++;
+      }
+    }
+    assert (count <= curCountB); //hashes of B at or above the min theta are not needed
+  }
+  
+  //B is already a HT, if Direct it is searched in place, read-only
+  private void useBHashTable() {
+    bMem_ = b_.getCacheMemory();
+    bPreBytes_ = (bMem_ == null) ? 0 : (bMem_.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    bHashTable_ = (bMem_ == null) ? b_.getCache() : null; //safe as bHashTable is read-only
   }
   
-  //Sketch A is either unordered compact or hash table
+  //Returns true if there is a B and it contains the given hash
+  private boolean searchB(long hash) {
+    if (bMem_ != null) {
+      return hashSearch(bMem_, lgArrLongsHT_, hash, bPreBytes_) > -1;
+    }
+    return (bHashTable_ != null) && (hashSearch(bHashTable_, lgArrLongsHT_, hash) > -1);
+  }
+  
+  //Sketch A is either unordered compact or hash table. If Direct, A is scanned in place.
   private void scanAllAsearchB() {
-    long[] scanAArr = a_.getCache();
-    int arrLongsIn = scanAArr.length;
+    Memory memA = a_.getCacheMemory();
+    long[] scanAArr = (memA == null) ? a_.getCache() : null;
+    int preBytesA = (memA == null) ? 0 : (memA.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    int arrLongsIn = (memA == null) ? scanAArr.length : a_.getCurrentDataLongs(false);
     cache_ = new long[arrLongsIn];
     for (int i = 0; i < arrLongsIn; i++ ) {
-      long hashIn = scanAArr[i];
+      long hashIn = (memA == null) ? scanAArr[i] : memA.getLong(preBytesA + (i << 3));
       if ((hashIn <= 0L) || (hashIn >= thetaLong_)) continue;
-      int foundIdx = hashSearch(bHashTable_, lgArrLongsHT_, hashIn);
-      if (foundIdx > -1) continue;
+      if (searchB(hashIn)) continue;
       cache_[curCount_++] = hashIn;
     }
   }
   
-  //Sketch A is ordered compact, which enables early stop
+  //Sketch A is ordered compact, which enables early stop. If Direct, A is scanned in place.
   private void scanEarlyStopAsearchB() {
-    long[] scanAArr = a_.getCache();
-    int arrLongsIn = scanAArr.length;
+    Memory memA = a_.getCacheMemory();
+    long[] scanAArr = (memA == null) ? a_.getCache() : null;
+    int preBytesA = (memA == null) ? 0 : (memA.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    int arrLongsIn = (memA == null) ? scanAArr.length : a_.getCurrentDataLongs(false);
     cache_ = new long[arrLongsIn]; //maybe 2x what is needed, but getRetainedEntries can be slow.
     for (int i = 0; i < arrLongsIn; i++ ) {
-      long hashIn = scanAArr[i];
+      long hashIn = (memA == null) ? scanAArr[i] : memA.getLong(preBytesA + (i << 3));
       if (hashIn <= 0L) continue;
       if (hashIn >= thetaLong_) {
         break; //early stop assumes that hashes in input sketch are ordered!
       }
-      int foundIdx = hashSearch(bHashTable_, lgArrLongsHT_, hashIn);
-      if (foundIdx > -1) continue;
+      if (searchB(hashIn)) continue;
+      cache_[curCount_++] = hashIn;
+    }
+  }
+  
+  //Sketches A and B are both ordered compact. Each hash of A is galloped to in B. 
+  // If Direct, A and B are read in place.
+  private void mergeAwithB() {
+    Memory memA = a_.getCacheMemory();
+    long[] arrA = (memA == null) ? a_.getCache() : null;
+    int preBytesA = (memA == null) ? 0 : (memA.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    int countA = a_.getRetainedEntries(true);
+    Memory memB = b_.getCacheMemory();
+    long[] arrB = (memB == null) ? b_.getCache() : null;
+    int preBytesB = (memB == null) ? 0 : (memB.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    int countB = b_.getRetainedEntries(true);
+    cache_ = new long[countA];
+    int j = 0;
+    for (int i = 0; i < countA; i++) {
+      long hashIn = getOrderedHash(arrA, memA, preBytesA, i);
+      if (hashIn >= thetaLong_) {
+        break; //early stop assumes that hashes in input sketch are ordered!
+      }
+      j = gallopSearch(arrB, memB, preBytesB, j, countB, hashIn);
+      if ((j < countB) && (getOrderedHash(arrB, memB, preBytesB, j) == hashIn)) continue;
       cache_[curCount_++] = hashIn;
     }
   }
@@ -282,6 +346,7 @@ final class HeapAnotB extends SetOperation implements AnotB {
     curCount_ = 0;
     lgArrLongsHT_ = 5;
     bHashTable_ = null;
+    bMem_ = null;
   }
   
 }
@@ -49,6 +49,9 @@ final class HeapIntersection extends SetOperation implements Intersection {
   private boolean empty_;
   
   private long[] hashTable_;  //HT => Data
+  //If not null, the data are the first curCount sorted hashes of this array instead of the HT.
+  //This is the case as long as all incoming sketches are ordered, which allows merging.
+  private long[] orderedCache_;
   
   /**
    * Construct a new Intersection target on the java heap.
@@ -62,6 +65,7 @@ final class HeapIntersection extends SetOperation implements Intersection {
     thetaLong_ = Long.MAX_VALUE;
     lgArrLongs_ = 0;
     hashTable_ = null;
+    orderedCache_ = null;
   }
   
   /**
@@ -146,6 +150,7 @@ final class HeapIntersection extends SetOperation implements Intersection {
       empty_ |= sketchIn.isEmpty();  //Empty rule
       curCount_ = 0;
       hashTable_ = null; //No need for HT.
+      orderedCache_ = null;
     }
     else if (curCount_ < 0) { //virgin
       //The 1st Call (curCount  < 0) and sketchInEntries  > 0.
@@ -156,11 +161,15 @@ final class HeapIntersection extends SetOperation implements Intersection {
       
       curCount_ = sketchIn.getRetainedEntries(true);
       
+      if (sketchIn.isOrdered()) { //keep the data ordered, which allows merging
+        moveDataToOrderedCache(sketchIn);
+        return;
+      }
       //Allocate a HT, checks lgArrLongs, then moves data to HT
       lgArrLongs_ = computeMinLgArrLongsFromCount(curCount_);
       hashTable_ = new long[1 << lgArrLongs_];
       //Then move data into HT
-      moveDataToHT(sketchIn.getCache(), curCount_);
+      moveDataToHT(sketchIn, curCount_);
     }
     else { //curCount > 0
       //The Nth Call (curCount  > 0) and sketchInEntries  > 0.
@@ -169,6 +178,17 @@ final class HeapIntersection extends SetOperation implements Intersection {
       thetaLong_ = min(thetaLong_, sketchIn.getThetaLong());
       empty_ |= sketchIn.isEmpty();
       
+      if (orderedCache_ != null) {
+        if (sketchIn.isOrdered()) {
+          performMergeIntersect(sketchIn); //Sets resulting orderedCache and curCount
+          return;
+        }
+        convertOrderedCacheToHT();
+        if (curCount_ == 0) { //no data remain below the new theta
+          hashTable_ = null; //No need for HT.
+          return;
+        }
+      }
       //Sets resulting hashTable, curCount and adjusts lgArrLongs
       performIntersect(sketchIn);
     }
@@ -188,7 +208,11 @@ final class HeapIntersection extends SetOperation implements Intersection {
           compactCacheR, empty_, seedHash_, curCount_, thetaLong_, dstOrdered, dstMem);
     } 
     //else curCount > 0
-    compactCacheR = compactCachePart(hashTable_, lgArrLongs_, curCount_, thetaLong_, dstOrdered);
+    if (orderedCache_ != null) { //already compact and ordered
+      compactCacheR = Arrays.copyOf(orderedCache_, curCount_);
+    } else {
+      compactCacheR = compactCachePart(hashTable_, lgArrLongs_, curCount_, thetaLong_, dstOrdered);
+    }
     
     //Create the CompactSketch
     return CompactSketch.createCompactSketch(
@@ -207,6 +231,9 @@ final class HeapIntersection extends SetOperation implements Intersection {
   
   @Override
   public byte[] toByteArray() {
+    if (orderedCache_ != null) { //the serialized form is always a HT
+      convertOrderedCacheToHT();
+    }
     int preBytes = CONST_PREAMBLE_LONGS << 3;
     int dataBytes = (curCount_ > 0) ? 8 << lgArrLongs_ : 0;
     byte[] byteArrOut = new byte[preBytes + dataBytes];
@@ -240,6 +267,7 @@ final class HeapIntersection extends SetOperation implements Intersection {
   public void reset() { //retains the hashSeed.
     lgArrLongs_ = 0;
     hashTable_ = null;
+    orderedCache_ = null;
     curCount_ = -1; //Universal Set is true
     thetaLong_ = Long.MAX_VALUE;
     empty_ = false;
@@ -255,8 +283,10 @@ final class HeapIntersection extends SetOperation implements Intersection {
   private void performIntersect(Sketch sketchIn) {
     // curCount and input data are nonzero, match against HT
     assert ((curCount_ > 0) && (!empty_));
-    long[] cacheIn = sketchIn.getCache();
-    int arrLongsIn = cacheIn.length;
+    Memory memIn = sketchIn.getCacheMemory(); //if not null, the cache is scanned in place
+    long[] cacheIn = (memIn == null) ? sketchIn.getCache() : null;
+    int preBytesIn = (memIn == null) ? 0 : (memIn.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    int arrLongsIn = (memIn == null) ? cacheIn.length : sketchIn.getCurrentDataLongs(false);
     
     //allocate space for matching
     long[] matchSet = new long[ min(curCount_, sketchIn.getRetainedEntries(true)) ];
@@ -265,7 +295,7 @@ final class HeapIntersection extends SetOperation implements Intersection {
     if (sketchIn.isOrdered()) {
       //ordered compact, which enables early stop
       for (int i = 0; i < arrLongsIn; i++ ) {
-        long hashIn = cacheIn[i];
+        long hashIn = (memIn == null) ? cacheIn[i] : memIn.getLong(preBytesIn + (i << 3));
         if (hashIn <= 0L) continue;
         if (hashIn >= thetaLong_) {
           break; //early stop assumes that hashes in input sketch are ordered!
@@ -279,7 +309,7 @@ final class HeapIntersection extends SetOperation implements Intersection {
     else {
       //either unordered compact or hash table
       for (int i = 0; i < arrLongsIn; i++ ) {
-        long hashIn = cacheIn[i];
+        long hashIn = (memIn == null) ? cacheIn[i] : memIn.getLong(preBytesIn + (i << 3));
         if ((hashIn <= 0L) || (hashIn >= thetaLong_)) continue;
         int foundIdx = HashOperations.hashSearch(hashTable_, lgArrLongs_, hashIn);
         if (foundIdx == -1) continue;
@@ -294,16 +324,78 @@ final class HeapIntersection extends SetOperation implements Intersection {
     moveDataToHT(matchSet, matchSetCount);
   }
   
+  //Both the data and sketchIn are ordered. Each hash of the data is galloped to in sketchIn, so 
+  // a small result against a large sketch touches little of it. Matches are written back in place.
+  private void performMergeIntersect(Sketch sketchIn) {
+    assert ((curCount_ > 0) && (!empty_));
+    Memory memIn = sketchIn.getCacheMemory(); //if not null, the cache is scanned in place
+    long[] cacheIn = (memIn == null) ? sketchIn.getCache() : null;
+    int preBytesIn = (memIn == null) ? 0 : (memIn.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    int countIn = sketchIn.getRetainedEntries(true);
+    
+    int matchCount = 0;
+    int j = 0;
+    for (int i = 0; (i < curCount_) && (j < countIn); i++) {
+      long hash = orderedCache_[i];
+      if (hash >= thetaLong_) {
+        break; //early stop, the data are ordered
+      }
+      j = gallopSearch(cacheIn, memIn, preBytesIn, j, countIn, hash);
+      if ((j < countIn) && (getOrderedHash(cacheIn, memIn, preBytesIn, j) == hash)) {
+        orderedCache_[matchCount++] = hash;
+        j++;
+      }
+    }
+    curCount_ = matchCount;
+    if (curCount_ == 0) {
+      orderedCache_ = null; //No need for data.
+    }
+  }
+  
+  //Copies the hashes of the ordered sketchIn that are below theta into the ordered cache
+  private void moveDataToOrderedCache(Sketch sketchIn) {
+    Memory memIn = sketchIn.getCacheMemory(); //if not null, the cache is read in place
+    if (memIn == null) {
+      orderedCache_ = Arrays.copyOf(sketchIn.getCache(), curCount_);
+    } else {
+      orderedCache_ = new long[curCount_];
+      int preBytesIn = (memIn.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+      memIn.getLongArray(preBytesIn, orderedCache_, 0, curCount_);
+    }
+    curCount_ = gallopSearch(orderedCache_, null, 0, 0, curCount_, thetaLong_); //drop >= theta
+    lgArrLongs_ = 0;
+    hashTable_ = null;
+  }
+  
+  private void convertOrderedCacheToHT() {
+    curCount_ = gallopSearch(orderedCache_, null, 0, 0, curCount_, thetaLong_); //drop >= theta
+    lgArrLongs_ = computeMinLgArrLongsFromCount(curCount_);
+    hashTable_ = new long[1 << lgArrLongs_];
+    long[] arr = orderedCache_;
+    orderedCache_ = null;
+    moveDataToHT(Arrays.copyOf(arr, curCount_), curCount_);
+  }
+  
+  //Assumes HT exists and is large enough. Scans a Direct sketch in place.
+  private void moveDataToHT(Sketch sketchIn, int count) {
+    Memory memIn = sketchIn.getCacheMemory();
+    if (memIn == null) {
+      moveDataToHT(sketchIn.getCache(), count);
+      return;
+    }
+    int preBytesIn = (memIn.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    int arrLongsIn = sketchIn.getCurrentDataLongs(false);
+    int tmpCnt = HashOperations.hashArrayInsert(memIn, preBytesIn, arrLongsIn, hashTable_,
+        lgArrLongs_, thetaLong_);
+    if (tmpCnt != count) {
+      throw new SketchesArgumentException("Count Check Exception: got: " + tmpCnt 
+          + ", expected: " + count);
+    }
+  }
+  
   //Assumes HT exists and is large enough
   private void moveDataToHT(long[] arr, int count) {
-    int arrLongsIn = arr.length;
-    int tmpCnt = 0;
-    for (int i = 0; i < arrLongsIn; i++ ) {
-      long hashIn = arr[i];
-      if (HashOperations.continueCondition(thetaLong_, hashIn)) continue;
-      // opportunity to use faster unconditional insert
-      tmpCnt += HashOperations.hashSearchOrInsert(hashTable_, lgArrLongs_, hashIn) < 0 ? 1 : 0;
-    }
+    int tmpCnt = HashOperations.hashArrayInsert(arr, hashTable_, lgArrLongs_, thetaLong_);
     if (tmpCnt != count) {
       throw new SketchesArgumentException("Count Check Exception: got: " + tmpCnt 
           + ", expected: " + count);
@@ -28,6 +28,8 @@ import static com.yahoo.sketches.theta.PreambleUtil.extractResizeFactor;
 import static com.yahoo.sketches.theta.PreambleUtil.extractSeedHash;
 import static com.yahoo.sketches.theta.PreambleUtil.extractSerVer;
 import static com.yahoo.sketches.theta.PreambleUtil.getMemBytes;
+import static com.yahoo.sketches.theta.Rebuilder.REBUILD_CHUNK_SLOTS;
+import static com.yahoo.sketches.theta.Rebuilder.selectThetaLong;
 import static com.yahoo.sketches.theta.UpdateReturnState.InsertedCountIncremented;
 import static com.yahoo.sketches.theta.UpdateReturnState.RejectedDuplicate;
 import static com.yahoo.sketches.theta.UpdateReturnState.RejectedOverTheta;
@@ -57,6 +59,10 @@ final class HeapQuickSelectSketch extends HeapUpdateSketch { //UpdateSketch impl
   
   private long[] cache_;
   
+  private boolean incrementalRebuild_; //never serialized
+  private long[] rebuildSrc_; //the table being migrated by an incremental rebuild, else null
+  private int rebuildIndex_;  //the next slot of rebuildSrc_ to be migrated
+  
   private HeapQuickSelectSketch(int lgNomLongs, long seed, float p, ResizeFactor rf, 
       int preambleLongs, Family family) {
     super(lgNomLongs, 
@@ -220,6 +226,7 @@ final class HeapQuickSelectSketch extends HeapUpdateSketch { //UpdateSketch impl
   
   @Override
   public UpdateSketch rebuild() {
+    finishIncrementalRebuild();
     if (getRetainedEntries(true) > (1 << getLgNomLongs())) {
       quickSelectAndRebuild();
     }
@@ -228,6 +235,7 @@ final class HeapQuickSelectSketch extends HeapUpdateSketch { //UpdateSketch impl
   
   @Override
   public final void reset() {
+    rebuildSrc_ = null;
     ResizeFactor rf = getResizeFactor();
     int lgArrLongsSM = startingSubMultiple(lgNomLongs_ + 1, rf, MIN_LG_ARR_LONGS);
     if (lgArrLongsSM == lgArrLongs_) {
@@ -259,6 +267,7 @@ final class HeapQuickSelectSketch extends HeapUpdateSketch { //UpdateSketch impl
   
   @Override
   long[] getCache() {
+    finishIncrementalRebuild();
     return cache_;
   }
   
@@ -281,6 +290,7 @@ final class HeapQuickSelectSketch extends HeapUpdateSketch { //UpdateSketch impl
   UpdateReturnState hashUpdate(long hash) {
     HashOperations.checkHashCorruption(hash);
     empty_ = false;
+    if (rebuildSrc_ != null) { migrateSlots(); }
     
     //The over-theta test
     if (HashOperations.continueCondition(thetaLong_, hash)) {
@@ -288,28 +298,101 @@ final class HeapQuickSelectSketch extends HeapUpdateSketch { //UpdateSketch impl
     }
     
     //The duplicate test
-    if (HashOperations.hashSearchOrInsert(cache_, lgArrLongs_, hash) >= 0) {
+    if (((rebuildSrc_ != null) && (HashOperations.hashSearch(rebuildSrc_, lgArrLongs_, hash) >= 0))
+        || (HashOperations.hashSearchOrInsert(cache_, lgArrLongs_, hash) >= 0)) {
       return RejectedDuplicate; //Duplicate, not inserted
     }
     //insertion occurred, must increment curCount
     curCount_++;
     
     if (curCount_ > hashTableThreshold_) { //we need to do something, we are out of space
-      //must rebuild or resize
-      if (lgArrLongs_ <= lgNomLongs_) { //resize
-        resizeCache();
-      } 
-      else { //Already at tgt size, must rebuild
-        assert (lgArrLongs_ == lgNomLongs_ + 1) : "lgArr: " + lgArrLongs_ + ", lgNom: " + lgNomLongs_;
-        quickSelectAndRebuild(); //Changes thetaLong_, curCount_, reassigns cache
-      }
+      resizeOrRebuild();
     }
     return InsertedCountIncremented;
 
   }
   
+  @Override
+  void hashUpdateAll(long[] hashes, int count) {
+    if (count > 0) { empty_ = false; }
+    for (int i = 0; i < count; i++) {
+      final long hash = hashes[i];
+      if (rebuildSrc_ != null) { migrateSlots(); }
+      //The over-theta test, also screens the zero hash
+      if (HashOperations.continueCondition(thetaLong_, hash)) { continue; }
+      //The duplicate test
+      if ((rebuildSrc_ != null)
+          && (HashOperations.hashSearch(rebuildSrc_, lgArrLongs_, hash) >= 0)) { continue; }
+      if (HashOperations.hashSearchOrInsert(cache_, lgArrLongs_, hash) >= 0) { continue; }
+      if (++curCount_ > hashTableThreshold_) {
+        resizeOrRebuild();
+      }
+    }
+  }
+  
+  //Changes lgArrLongs_ and cache_ or thetaLong_, curCount_ and cache_.
+  // Used by hashUpdate(), hashUpdateAll()
+  private final void resizeOrRebuild() {
+    if (lgArrLongs_ <= lgNomLongs_) { //resize
+      resizeCache();
+    } 
+    else { //Already at tgt size, must rebuild
+      assert (lgArrLongs_ == lgNomLongs_ + 1) : "lgArr: " + lgArrLongs_ + ", lgNom: " + lgNomLongs_;
+      if (incrementalRebuild_) {
+        startIncrementalRebuild(); //Changes thetaLong_, curCount_, reassigns cache
+      } else {
+        quickSelectAndRebuild(); //Changes thetaLong_, curCount_, reassigns cache
+      }
+    }
+  }
+  
+  //Selects the new theta and replaces the cache with an empty table. The valid hashes of the old 
+  // table are then migrated REBUILD_CHUNK_SLOTS slots at a time by the following updates, which
+  // search the old table as well for duplicates until the migration is complete.
+  // Changes thetaLong_, curCount_ and cache_.
+  private final void startIncrementalRebuild() {
+    finishIncrementalRebuild(); //in case the previous one has not finished
+    int pivot = (1 << lgNomLongs_) + 1; // pivot for QS
+    thetaLong_ = selectThetaLong(cache_, curCount_, thetaLong_, pivot);
+    curCount_ = pivot - 1; //the hashes less than the new theta, counted before they are migrated
+    rebuildSrc_ = cache_;
+    rebuildIndex_ = 0;
+    cache_ = new long[1 << lgArrLongs_];
+  }
+  
+  //Migrates the next REBUILD_CHUNK_SLOTS slots of the old table.
+  private final void migrateSlots() {
+    migrateSlots(Math.min(rebuildIndex_ + REBUILD_CHUNK_SLOTS, rebuildSrc_.length));
+  }
+  
+  private final void migrateSlots(int end) {
+    final long[] src = rebuildSrc_;
+    for (int i = rebuildIndex_; i < end; i++) {
+      final long hash = src[i];
+      if (HashOperations.continueCondition(thetaLong_, hash)) { continue; }
+      HashOperations.hashInsertOnly(cache_, lgArrLongs_, hash); //can not be a duplicate
+    }
+    rebuildIndex_ = end;
+    if (end == src.length) { rebuildSrc_ = null; }
+  }
+  
+  //Completes an incremental rebuild, if one is in progress.
+  private final void finishIncrementalRebuild() {
+    if (rebuildSrc_ != null) { migrateSlots(rebuildSrc_.length); }
+  }
+  
+  /**
+   * Sets the incremental rebuild mode, see
+   * {@link UpdateSketchBuilder#setIncrementalRebuild(boolean)}.
+   * @param incremental true to enable the incremental rebuild mode
+   */
+  void setIncrementalRebuild(boolean incremental) {
+    if (!incremental) { finishIncrementalRebuild(); }
+    incrementalRebuild_ = incremental;
+  }
+  
   //Must resize. Changes lgArrLongs_ and cache_. theta and count don't change.
-  // Used by hashUpdate()
+  // Used by resizeOrRebuild()
   private final void resizeCache() {
     ResizeFactor rf = getResizeFactor();
     int lgTgtLongs = lgNomLongs_ + 1;
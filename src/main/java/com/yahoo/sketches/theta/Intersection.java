@@ -23,6 +23,27 @@ public interface Intersection {
    */
   void update(Sketch sketchIn);
   
+  /**
+   * Intersect all of the given sketches with the internal state and return the result as an
+   * ordered CompactSketch on the Java heap. The sketches are applied in order of increasing 
+   * number of retained entries, which keeps the internal state as small as possible from the
+   * start. This is equivalent to calling update with each of the given sketches followed by
+   * getResult(), and, as with update, a null sketch makes the internal state the empty sketch.
+   * 
+   * <p>On the Java heap, as long as every sketch intersected so far is an ordered CompactSketch,
+   * the intersection keeps its data ordered and merges each new sketch into it rather than 
+   * probing a hash table. This applies to update as well.</p>
+   * 
+   * @param sketchesIn the given sketches
+   * @return the result of this operation as an ordered CompactSketch on the Java heap
+   */
+  default CompactSketch intersect(Sketch... sketchesIn) {
+    for (Sketch sketch : SetOperation.orderByRetainedEntries(sketchesIn)) {
+      update(sketch);
+    }
+    return getResult();
+  }
+  
   /**
    * Gets the result of this operation as a CompactSketch of the chosen form. 
    * The update method must have been called at least once, otherwise an exception will be
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.theta;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.yahoo.sketches.ResizeFactor;
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+
+/**
+ * Unions a large number of sketches, or Memory images of sketches, in parallel.
+ * Use {@link SetOperationBuilder#buildParallelUnion(ForkJoinPool)} to construct this class.
+ *
+ * <p>The inputs are pulled from the given Iterator in batches by one worker per thread of the
+ * pool, and each worker unions its batches into its own on-heap Union. After every batch a worker
+ * publishes the smallest theta it has reached and adopts the smallest theta any worker has
+ * reached, so that the early stop of every worker rejects hashes that the final result could not
+ * retain anyway. The partial results are then unioned into the final result.</p>
+ *
+ * <p>A theta union only depends on the set of its inputs and not on their order or grouping,
+ * so the result is identical to that of a single Union that is given all of the inputs.</p>
+ *
+ * <p>The Iterator is only accessed by one worker at a time, so it does not need to be
+ * thread-safe, but the inputs must not be modified until the union has completed.</p>
+ */
+public final class ParallelUnion {
+  static final int DEFAULT_BATCH_SIZE = 256;
+
+  private final int lgNomLongs_;
+  private final long seed_;
+  private final float p_;
+  private final ResizeFactor rf_;
+  private final ForkJoinPool pool_;
+  private final int batchSize_;
+
+  ParallelUnion(int lgNomLongs, long seed, float p, ResizeFactor rf, ForkJoinPool pool,
+      int batchSize) {
+    if (pool == null) {
+      throw new SketchesArgumentException("The ForkJoinPool must not be null.");
+    }
+    if (batchSize < 1) {
+      throw new SketchesArgumentException("The batch size must be at least one: " + batchSize);
+    }
+    lgNomLongs_ = lgNomLongs;
+    seed_ = seed;
+    p_ = p;
+    rf_ = rf;
+    pool_ = pool;
+    batchSize_ = batchSize;
+  }
+
+  /**
+   * Unions all of the given sketches and returns the result as an ordered CompactSketch on the
+   * Java heap. A null sketch is interpreted as an empty sketch.
+   * @param sketches the sketches to union
+   * @return the union of the given sketches
+   */
+  public CompactSketch unionSketches(Iterator<? extends Sketch> sketches) {
+    return unionSketches(sketches, true, null);
+  }
+
+  /**
+   * Unions all of the given sketches and returns the result as a CompactSketch of the chosen form.
+   * A null sketch is interpreted as an empty sketch.
+   * @param sketches the sketches to union
+   * @param dstOrdered
+   * <a href="{@docRoot}/resources/dictionary.html#dstOrdered">See Destination Ordered</a>
+   * @param dstMem
+   * <a href="{@docRoot}/resources/dictionary.html#dstMem">See Destination Memory</a>.
+   * @return the union of the given sketches
+   */
+  public CompactSketch unionSketches(Iterator<? extends Sketch> sketches, boolean dstOrdered,
+      Memory dstMem) {
+    return run(sketches, new Merger<Sketch>() {
+      @Override
+      public void merge(UnionImpl union, Sketch sketch) {
+        union.update(sketch);
+      }
+    }, dstOrdered, dstMem);
+  }
+
+  /**
+   * Unions all of the given Memory images of sketches, as accepted by {@link Union#update(Memory)},
+   * and returns the result as an ordered CompactSketch on the Java heap.
+   * A null Memory is interpreted as an empty sketch.
+   * @param images the Memory images of the sketches to union
+   * @return the union of the given sketches
+   */
+  public CompactSketch unionMemories(Iterator<? extends Memory> images) {
+    return unionMemories(images, true, null);
+  }
+
+  /**
+   * Unions all of the given Memory images of sketches, as accepted by {@link Union#update(Memory)},
+   * and returns the result as a CompactSketch of the chosen form.
+   * A null Memory is interpreted as an empty sketch.
+   * @param images the Memory images of the sketches to union
+   * @param dstOrdered
+   * <a href="{@docRoot}/resources/dictionary.html#dstOrdered">See Destination Ordered</a>
+   * @param dstMem
+   * <a href="{@docRoot}/resources/dictionary.html#dstMem">See Destination Memory</a>.
+   * @return the union of the given sketches
+   */
+  public CompactSketch unionMemories(Iterator<? extends Memory> images, boolean dstOrdered,
+      Memory dstMem) {
+    return run(images, new Merger<Memory>() {
+      @Override
+      public void merge(UnionImpl union, Memory image) {
+        union.update(image);
+      }
+    }, dstOrdered, dstMem);
+  }
+
+  private <T> CompactSketch run(Iterator<? extends T> inputs, final Merger<T> merger,
+      boolean dstOrdered, Memory dstMem) {
+    final SharedState<T> state = new SharedState<>(inputs);
+    int numWorkers = pool_.getParallelism();
+    List<ForkJoinTask<CompactSketch>> tasks = new ArrayList<>(numWorkers);
+    for (int i = 0; i < numWorkers; i++) {
+      tasks.add(pool_.submit(new Callable<CompactSketch>() {
+        @Override
+        public CompactSketch call() {
+          return work(state, merger);
+        }
+      }));
+    }
+
+    UnionImpl result = newUnion();
+    for (ForkJoinTask<CompactSketch> task : tasks) {
+      result.update(task.join()); //rethrows any exception of the worker
+    }
+    return result.getResult(dstOrdered, dstMem);
+  }
+
+  private <T> CompactSketch work(SharedState<T> state, Merger<T> merger) {
+    UnionImpl union = newUnion();
+    List<T> batch = new ArrayList<>(batchSize_);
+    try {
+      while (state.nextBatch(batch, batchSize_)) {
+        union.lowerUnionThetaLong(state.minThetaLong());
+        for (T input : batch) {
+          merger.merge(union, input);
+        }
+        state.publish(union.getEffectiveThetaLong());
+        batch.clear();
+      }
+    } catch (RuntimeException e) {
+      state.fail(); //stops the other workers early
+      throw e;
+    }
+    return union.getResult(true, null);
+  }
+
+  private UnionImpl newUnion() {
+    return UnionImpl.initNewHeapInstance(lgNomLongs_, seed_, p_, rf_);
+  }
+
+  /**
+   * Unions one input into a Union
+   * @param <T> the type of the input
+   */
+  private interface Merger<T> {
+    void merge(UnionImpl union, T input);
+  }
+
+  /**
+   * The state shared by the workers: the source of the inputs and the smallest theta reached
+   * by any worker.
+   * @param <T> the type of the input
+   */
+  private static final class SharedState<T> {
+    private final Iterator<? extends T> inputs_;
+    private final AtomicLong minThetaLong_ = new AtomicLong(Long.MAX_VALUE);
+    private boolean failed_ = false;
+
+    SharedState(Iterator<? extends T> inputs) {
+      inputs_ = inputs;
+    }
+
+    synchronized boolean nextBatch(List<T> batch, int batchSize) {
+      if (failed_) { return false; }
+      while ((batch.size() < batchSize) && inputs_.hasNext()) {
+        batch.add(inputs_.next());
+      }
+      return !batch.isEmpty();
+    }
+
+    synchronized void fail() {
+      failed_ = true;
+    }
+
+    long minThetaLong() {
+      return minThetaLong_.get();
+    }
+
+    void publish(long thetaLong) {
+      long cur;
+      while (thetaLong < (cur = minThetaLong_.get())) {
+        if (minThetaLong_.compareAndSet(cur, thetaLong)) { return; }
+      }
+    }
+  }
+}
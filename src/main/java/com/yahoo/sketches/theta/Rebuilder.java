@@ -10,7 +10,10 @@ import static com.yahoo.sketches.theta.PreambleUtil.LG_ARR_LONGS_BYTE;
 import static com.yahoo.sketches.theta.PreambleUtil.RETAINED_ENTRIES_INT;
 import static com.yahoo.sketches.theta.PreambleUtil.THETA_LONG;
 
+import java.util.Arrays;
+
 import com.yahoo.sketches.HashOperations;
+import com.yahoo.sketches.QuickSelect;
 import com.yahoo.sketches.Util;
 import com.yahoo.sketches.memory.Memory;
 import com.yahoo.sketches.memory.NativeMemory;
@@ -20,6 +23,16 @@ import com.yahoo.sketches.memory.NativeMemory;
  * The Memory based operations assume a specific data structure that is unique to the theta sketches.
  */
 final class Rebuilder {
+  /**
+   * The number of slots of the old hash table that each update migrates during an incremental
+   * rebuild. After a rebuild the table holds k of its 2k slots and reaches the rebuild threshold
+   * only after at least 7k/8 more insertions, each of which is an update, while the migration of
+   * all 2k slots takes at most k/4 updates.
+   */
+  static final int REBUILD_CHUNK_SLOTS = 8;
+  
+  //the number of table slots sampled by selectThetaLong()
+  private static final int SELECT_SAMPLE_LONGS = 4096;
   
   private Rebuilder() {}
   
@@ -120,6 +133,65 @@ final class Rebuilder {
     mem.putByte(LG_ARR_LONGS_BYTE, (byte) dstLgArrLongs); //update in mem
   }
   
+  /**
+   * Returns the 1-based pivot-th smallest of the valid hashes of the given hash table, which are
+   * greater than zero and less than the given thetaLong. The hash table is not changed, so it
+   * remains usable for searches while an incremental rebuild migrates it.
+   * 
+   * <p>For large tables the valid hashes are not copied and quick-selected as a whole. A sample of
+   * the table brackets the pivot, a single pass over the table counts the hashes below the bracket
+   * and copies those within it, and only the hashes within the bracket are quick-selected. If the
+   * sample misses the pivot this falls back to selecting from all valid hashes, so the result is
+   * always exact.</p>
+   * 
+   * @param hashTable the hash table, which may have dirty values
+   * @param curCount the number of valid hashes in the hash table
+   * @param thetaLong the current theta as a long
+   * @param pivot the 1-based index of the hash to select, which must be &le; curCount
+   * @return the pivot-th smallest valid hash
+   */
+  static final long selectThetaLong(final long[] hashTable, final int curCount,
+      final long thetaLong, final int pivot) {
+    final int arrLongs = hashTable.length;
+    if (arrLongs >= (16 * SELECT_SAMPLE_LONGS)) {
+      //The positions of the hashes in the table are independent of their values, so a stride
+      // through the table is a random sample.
+      final int step = arrLongs / SELECT_SAMPLE_LONGS;
+      final long[] sample = new long[SELECT_SAMPLE_LONGS];
+      int s = 0;
+      for (int i = 0; i < arrLongs; i += step) {
+        final long hash = hashTable[i];
+        sample[s] = hash;
+        s += (int) (~((hash - 1L) | (thetaLong - hash - 1L)) >>> 63);
+      }
+      Arrays.sort(sample, 0, s);
+      final int mid = (int) (((long) pivot * s) / curCount);
+      final int halfWidth = (3 * (int) Math.sqrt(s)) + 1; //3 standard deviations
+      final long lo = (mid - halfWidth <= 0) ? 1L : sample[mid - halfWidth];
+      final long hi = (mid + halfWidth >= s) ? thetaLong : sample[mid + halfWidth];
+      final int bandCap = (int) Math.min(arrLongs,
+          ((4L * curCount * halfWidth) / Math.max(s, 1)) + 1024); //twice the expected band
+      final long[] band = new long[bandCap];
+      int below = 0;
+      int m = 0;
+      for (int i = 0; i < arrLongs; i++) {
+        final long hash = hashTable[i];
+        final long belowLo = (hash - lo) >>> 63;
+        final long belowHi = (hash - hi) >>> 63;
+        below += (int) (belowLo & (-hash >>> 63)); //valid and below the band
+        band[m] = hash;
+        m += (int) (belowHi & ~belowLo); //within the band, which implies valid
+        if (m == bandCap) { break; }
+      }
+      if ((m < bandCap) && (below < pivot) && (pivot <= (below + m))) {
+        return QuickSelect.select(band, 0, m - 1, pivot - below - 1);
+      }
+    }
+    final long[] tmpArr = new long[arrLongs];
+    final int n = HashOperations.copyValidHashes(hashTable, 0, arrLongs, thetaLong, tmpArr);
+    return QuickSelect.select(tmpArr, 0, n - 1, pivot - 1);
+  }
+  
   /**
    * Returns the actual log2 Resize Factor that can be used to grow the hash table. This will be 
    * an integer value between zero and the given lgRF, inclusive;
@@ -14,6 +14,8 @@ import static com.yahoo.sketches.theta.PreambleUtil.FAMILY_BYTE;
 import static com.yahoo.sketches.theta.PreambleUtil.SER_VER_BYTE;
 import static java.lang.Math.max;
 
+import java.util.Arrays;
+
 import com.yahoo.sketches.Family;
 import com.yahoo.sketches.SketchesArgumentException;
 import com.yahoo.sketches.Util;
@@ -163,6 +165,65 @@ public abstract class SetOperation {
     return newLgArrLongs;
   }
   
+  //Used by intersection and AnotB to merge ordered caches. If mem is not null the cache is read
+  // in place from mem starting at preBytes, otherwise it is read from the array.
+  static final long getOrderedHash(long[] cache, Memory mem, int preBytes, int index) {
+    return (mem == null) ? cache[index] : mem.getLong(preBytes + (index << 3));
+  }
+  
+  /**
+   * Returns the index of the first hash in the range [from, to) of an ordered cache that is
+   * greater than or equal to the given hash, or <i>to</i> if there is none. This is a galloping
+   * search: the step doubles until it passes the hash, then a binary search finishes the job.
+   * The cost is logarithmic in the distance moved, so merging a small ordered cache into a much
+   * larger one does not have to touch most of the larger one.
+   * @param cache the ordered cache, used if mem is null
+   * @param mem the Memory holding the ordered cache, or null
+   * @param preBytes the offset in bytes of the cache in mem
+   * @param from the index to start the search from
+   * @param to the end of the range, exclusive
+   * @param hash the hash to search for
+   * @return the index of the first hash that is greater than or equal to the given hash
+   */
+  static final int gallopSearch(long[] cache, Memory mem, int preBytes, int from, int to, 
+      long hash) {
+    int lo = from;
+    int hi = from;
+    int step = 1;
+    while ((hi < to) && (getOrderedHash(cache, mem, preBytes, hi) < hash)) {
+      lo = hi + 1;
+      hi += step;
+      step <<= 1;
+    }
+    if (hi > to) { hi = to; }
+    while (lo < hi) { //all hashes before lo are smaller, the one at hi, if any, is not
+      int mid = (lo + hi) >>> 1;
+      if (getOrderedHash(cache, mem, preBytes, mid) < hash) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+  
+  //Used by intersection. Returns a copy of the given sketches ordered by increasing number of
+  // retained entries, where null counts as zero entries. The sort is stable.
+  static final Sketch[] orderByRetainedEntries(Sketch[] sketches) {
+    int len = sketches.length;
+    long[] keys = new long[len];
+    for (int i = 0; i < len; i++) {
+      long count = (sketches[i] == null) ? 0 : sketches[i].getRetainedEntries(true);
+      keys[i] = (count << 32) | i;
+    }
+    Arrays.sort(keys);
+    Sketch[] ordered = new Sketch[len];
+    for (int i = 0; i < len; i++) {
+      ordered[i] = sketches[(int) keys[i]];
+    }
+    return ordered;
+  }
+  
   /**
    * Returns true if given Family id is one of the set operations
    * @param id the given Family id
@@ -11,6 +11,8 @@ import static com.yahoo.sketches.Util.LS;
 import static com.yahoo.sketches.Util.TAB;
 import static com.yahoo.sketches.Util.ceilingPowerOf2;
 
+import java.util.concurrent.ForkJoinPool;
+
 import com.yahoo.sketches.Family;
 import com.yahoo.sketches.ResizeFactor;
 import com.yahoo.sketches.SketchesArgumentException;
@@ -239,6 +241,17 @@ public class SetOperationBuilder {
     return (AnotB) build(Family.A_NOT_B);
   }
 
+  /**
+   * Returns a ParallelUnion with the current configuration of this Builder that unions its
+   * inputs using all of the threads of the given pool. The Destination Memory of this Builder
+   * is not used; the destination of the result is chosen when the ParallelUnion is run.
+   * @param pool the ForkJoinPool that runs the workers, e.g., {@link ForkJoinPool#commonPool()}
+   * @return a ParallelUnion
+   */
+  public ParallelUnion buildParallelUnion(ForkJoinPool pool) {
+    return new ParallelUnion(bLgNomLongs, bSeed, bP, bRF, pool, ParallelUnion.DEFAULT_BATCH_SIZE);
+  }
+
   
   @Override
   public String toString() {
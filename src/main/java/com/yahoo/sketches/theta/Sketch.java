@@ -279,6 +279,11 @@ public abstract class Sketch {
    * the java heap.  Only "Direct" sketches that have been explicity stored as direct objects can
    * be wrapped.  This method assumes the 
    * <a href="{@docRoot}/resources/dictionary.html#defaultUpdateSeed">Default Update Seed</a>.
+   * 
+   * <p>The Memory may be read only, see {@link Memory#asReadOnlyMemory()}. A compact sketch
+   * wrapped over read-only Memory can be shared without copying by any number of threads that
+   * only query it. Updating a sketch wrapped over read-only Memory throws a
+   * SketchesReadOnlyException.</p>
    * @param srcMem an image of a Sketch where the image seed hash matches the default seed hash.
    * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
    * @return a Sketch backed by the given Memory
@@ -457,6 +462,17 @@ public abstract class Sketch {
    * @return the backing Memory or null.
    */
   abstract Memory getMemory();
+  
+  /**
+   * Gets the backing <a href="{@docRoot}/resources/dictionary.html#mem">Memory</a> if the
+   * internal cache can be read from it in place, otherwise returns null. If not null, the cache
+   * starts right after the preamble and holds <i>getCurrentDataLongs(false)</i> longs, which lets
+   * the set operations scan it without the copy that <i>getCache()</i> makes for Direct sketches.
+   * @return the backing Memory that holds the internal cache, or null.
+   */
+  Memory getCacheMemory() {
+    return null;
+  }
 
   
   /**
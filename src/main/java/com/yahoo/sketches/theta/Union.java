@@ -101,6 +101,28 @@ public interface Union {
    */
   public void update(long[] data);
   
+  /**
+   * Present this union with the given region of Memory, which is hashed in place without
+   * copying. This produces the same hash value as {@link #update(byte[])} given a byte array 
+   * with the same contents as the region. Unlike {@link #update(Memory)}, the region is treated
+   * as a datum and not as the image of a sketch.
+   * If the Memory is null or the length is zero no update attempt is made and the method returns.
+   * 
+   * <p>This default implementation copies the region into a byte array and calls 
+   * {@link #update(byte[])}. The unions built by {@link SetOperationBuilder} override it to 
+   * hash the region in place.</p>
+   * 
+   * @param mem The Memory that contains the datum.
+   * @param offsetBytes The offset in bytes of the datum relative to the Memory start.
+   * @param lengthBytes The length of the datum in bytes.
+   */
+  public default void update(Memory mem, long offsetBytes, int lengthBytes) {
+    if ((mem == null) || (lengthBytes == 0)) { return; }
+    final byte[] data = new byte[lengthBytes];
+    mem.getByteArray(offsetBytes, data, 0, lengthBytes);
+    update(data);
+  }
+  
   /**
    * Gets the result of this operation as a CompactSketch of the chosen form
    * @param dstOrdered 
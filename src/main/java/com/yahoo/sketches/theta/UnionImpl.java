@@ -5,6 +5,7 @@
 
 package com.yahoo.sketches.theta;
 
+import static com.yahoo.sketches.QuickSelect.selectExcludingZeros;
 import static com.yahoo.sketches.theta.CompactSketch.compactCache;
 import static com.yahoo.sketches.theta.CompactSketch.createCompactSketch;
 import static com.yahoo.sketches.theta.PreambleUtil.COMPACT_FLAG_MASK;
@@ -37,6 +38,8 @@ import com.yahoo.sketches.memory.NativeMemory;
  * @author Kevin Lang
  */
 final class UnionImpl extends SetOperation implements Union {
+  //the number of incoming hashes that are screened and passed to the gadget at a time
+  private static final int UPDATE_BATCH_LONGS = 1024;
   private UpdateSketch gadget_;
   private long unionThetaLong_;
   private short seedHash_;
@@ -121,15 +124,24 @@ final class UnionImpl extends SetOperation implements Union {
   public CompactSketch getResult(boolean dstOrdered, Memory dstMem) {
     int gadgetCurCount = gadget_.getRetainedEntries(true);
     int k = 1 << gadget_.getLgNomLongs();
+    long gadgetThetaLong;
+    long[] gadgetCache;
     
-    if (gadgetCurCount > k) {
-      gadget_.rebuild();
-    } 
+    if ((gadgetCurCount > k) && (unionMem_ != null) && unionMem_.isReadOnly()) {
+      //cannot rebuild in place, so select the same theta from a copy of the cache
+      gadgetCache = gadget_.getCache(); //Direct, thus a copy
+      gadgetThetaLong = selectExcludingZeros(gadgetCache, gadgetCurCount, k + 1);
+    } else {
+      if (gadgetCurCount > k) {
+        gadget_.rebuild();
+      }
+      gadgetThetaLong = gadget_.getThetaLong();
+      gadgetCache = gadget_.getCache(); //if Direct, always a copy
+    }
     //curCount <= k; gadget theta could be p < 1.0, but cannot do a quick select
-    long thetaLongR = min(gadget_.getThetaLong(), unionThetaLong_);
+    long thetaLongR = min(gadgetThetaLong, unionThetaLong_);
     double p = gadget_.getP();
     double thetaR = thetaLongR / MAX_THETA_LONG_AS_DOUBLE;
-    long[] gadgetCache = gadget_.getCache(); //if Direct, always a copy
     //CurCount must be recounted with a scan using the new theta
     int curCountR = HashOperations.count(gadgetCache, thetaLongR);
     long[] compactCacheR = compactCache(gadgetCache, curCountR, thetaLongR, dstOrdered);
@@ -180,31 +192,36 @@ final class UnionImpl extends SetOperation implements Union {
       if (sketchIn.isDirect()) { //ordered, direct thus compact
         Memory skMem = sketchIn.getMemory();
         int preambleLongs = skMem.getByte(PREAMBLE_LONGS_BYTE) & 0X3F;
-        for (int i = 0; i < curCountIn; i++ ) {
-          int offsetBytes = (preambleLongs + i) << 3;
-          long hashIn = skMem.getLong(offsetBytes);
-          if (hashIn >= unionThetaLong_) break; // "early stop"
-          gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
-        }
+        updateOrdered(skMem, preambleLongs << 3, curCountIn);
       } 
       else { //sketchIn is on the Java Heap, ordered, thus compact
         long[] cacheIn = sketchIn.getCache(); //not a copy!
-        for (int i = 0; i < curCountIn; i++ ) {
-          long hashIn = cacheIn[i];
-          if (hashIn >= unionThetaLong_) break; // "early stop"
-          gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
-        }
+        int count = 0;
+        while ((count < curCountIn) && (cacheIn[count] < unionThetaLong_)) { count++; } //early stop
+        if (count > 0) { HashOperations.checkHashCorruption(cacheIn[0]); }
+        gadget_.hashUpdateAll(cacheIn, count); //backdoor update, hash function is bypassed
       }
     } //End ordered, compact
     else { //either not-ordered compact or Hash Table form. A HT may have dirty values.
-      long[] cacheIn = sketchIn.getCache(); //if off-heap this will be a copy
-      int arrLongs = cacheIn.length;
-      for (int i = 0, c = 0; (i < arrLongs) && (c < curCountIn); i++ ) {
-        long hashIn = cacheIn[i];
-        if ((hashIn <= 0L) || (hashIn >= unionThetaLong_)) continue; //rejects dirty values
-        gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
-        c++; //insures against invalid state inside the incoming sketch
-        
+      Memory skMem = sketchIn.getCacheMemory();
+      if (skMem != null) { //Direct, scan the cache in place rather than copying it
+        int preBytes = (skMem.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+        int arrLongs = sketchIn.getCurrentDataLongs(false);
+        updateUnordered(skMem, preBytes, arrLongs, curCountIn);
+      }
+      else {
+        long[] cacheIn = sketchIn.getCache(); //on-heap or concurrent, this may be a copy
+        long[] batch = new long[min(cacheIn.length, UPDATE_BATCH_LONGS)];
+        //the count limit insures against invalid state inside the incoming sketch
+        int remaining = curCountIn;
+        for (int start = 0; (start < cacheIn.length) && (remaining > 0); start += batch.length) {
+          int end = min(start + batch.length, cacheIn.length);
+          //rejects dirty values
+          int n = min(HashOperations.copyValidHashes(cacheIn, start, end, unionThetaLong_, batch),
+              remaining);
+          gadget_.hashUpdateAll(batch, n); //backdoor update, hash function is bypassed
+          remaining -= n;
+        }
       }
     }
     unionThetaLong_ = min(unionThetaLong_, gadget_.getThetaLong()); //Theta rule with gadget
@@ -238,6 +255,29 @@ final class UnionImpl extends SetOperation implements Union {
     }
   }
   
+  /**
+   * Returns the theta below which this union can still retain incoming hashes, which is the
+   * lesser of the union theta and the gadget theta.
+   * @return the theta below which this union can still retain incoming hashes
+   */
+  long getEffectiveThetaLong() {
+    return min(unionThetaLong_, gadget_.getThetaLong());
+  }
+
+  /**
+   * Lowers the union theta to the given theta if that is smaller. This is only valid if the
+   * final result of the union can never retain a hash at or above the given theta, e.g., when the
+   * given theta is the effective theta of another union whose result will be merged with this one.
+   * It lets the early stop reject more incoming hashes.
+   * @param thetaLong the given theta
+   */
+  void lowerUnionThetaLong(long thetaLong) {
+    if (thetaLong < unionThetaLong_) {
+      unionThetaLong_ = thetaLong;
+      if (unionMem_ != null) unionMem_.putLong(UNION_THETA_LONG, unionThetaLong_);
+    }
+  }
+
   @Override
   public void update(long datum) {
     gadget_.update(datum);
@@ -273,6 +313,11 @@ final class UnionImpl extends SetOperation implements Union {
     gadget_.update(data);
   }
   
+  @Override
+  public void update(Memory mem, long offsetBytes, int lengthBytes) {
+    gadget_.update(mem, offsetBytes, lengthBytes);
+  }
+  
   //no seedhash, assumes given seed is correct. No p, no empty flag, 
   // can only be compact, ordered, size > 24
   private void processVer1(Memory skMem) {
@@ -280,12 +325,7 @@ final class UnionImpl extends SetOperation implements Union {
     unionThetaLong_ = min(unionThetaLong_, thetaLongIn); //Theta rule
     int curCount = skMem.getInt(RETAINED_ENTRIES_INT);
     int preLongs = 3;
-    for (int i = 0; i < curCount; i++ ) {
-      int offsetBytes = (preLongs + i) << 3;
-      long hashIn = skMem.getLong(offsetBytes);
-      if (hashIn >= unionThetaLong_) break; // "early stop"
-      gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
-    }
+    updateOrdered(skMem, preLongs << 3, curCount);
     unionThetaLong_ = min(unionThetaLong_, gadget_.getThetaLong());
     if (unionMem_ != null) unionMem_.putLong(UNION_THETA_LONG, unionThetaLong_);
   }
@@ -307,12 +347,7 @@ final class UnionImpl extends SetOperation implements Union {
       thetaLongIn = skMem.getLong(THETA_LONG);
     }
     unionThetaLong_ = min(unionThetaLong_, thetaLongIn); //Theta rule
-    for (int i = 0; i < curCount; i++ ) {
-      int offsetBytes = (preLongs + i) << 3;
-      long hashIn = skMem.getLong(offsetBytes);
-      if (hashIn >= unionThetaLong_) break; // "early stop"
-      gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
-    }
+    updateOrdered(skMem, preLongs << 3, curCount);
     unionThetaLong_ = min(unionThetaLong_, gadget_.getThetaLong());
     if (unionMem_ != null) unionMem_.putLong(UNION_THETA_LONG, unionThetaLong_);
   }
@@ -337,25 +372,45 @@ final class UnionImpl extends SetOperation implements Union {
     unionThetaLong_ = min(unionThetaLong_, thetaLongIn); //Theta rule
     boolean ordered = skMem.isAnyBitsSet(FLAGS_BYTE, (byte) ORDERED_FLAG_MASK);
     if (ordered) { //must be compact
-      for (int i = 0; i < curCount; i++ ) {
-        int offsetBytes = (preLongs + i) << 3;
-        long hashIn = skMem.getLong(offsetBytes);
-        if (hashIn >= unionThetaLong_) break; // "early stop"
-        gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
-      }
+      updateOrdered(skMem, preLongs << 3, curCount);
     }
     else { //not-ordered, could be compact or hash-table form
       boolean compact = skMem.isAnyBitsSet(FLAGS_BYTE, (byte) COMPACT_FLAG_MASK);
       int size = (compact) ? curCount : 1 << skMem.getByte(LG_ARR_LONGS_BYTE);
-      for (int i = 0; i < size; i++ ) {
-        int offsetBytes = (preLongs + i) << 3;
-        long hashIn = skMem.getLong(offsetBytes);
-        if ((hashIn <= 0L) || (hashIn >= unionThetaLong_)) continue;
-        gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
-      }
+      updateUnordered(skMem, preLongs << 3, size, size);
     }
     unionThetaLong_ = min(unionThetaLong_, gadget_.getThetaLong());
     if (unionMem_ != null) unionMem_.putLong(UNION_THETA_LONG, unionThetaLong_);
   }
 
+  //Updates the gadget with the hashes of an ordered cache in Memory that are less than the union
+  // theta, in batches. Stops at the first hash at or above the union theta, the "early stop".
+  private void updateOrdered(Memory skMem, int preBytes, int curCount) {
+    long[] batch = new long[min(curCount, UPDATE_BATCH_LONGS)];
+    for (int start = 0; start < curCount; start += batch.length) {
+      int len = min(batch.length, curCount - start);
+      skMem.getLongArray(preBytes + (start << 3), batch, 0, len);
+      if (start == 0) { HashOperations.checkHashCorruption(batch[0]); } //the smallest hash
+      int n = 0;
+      while ((n < len) && (batch[n] < unionThetaLong_)) { n++; }
+      gadget_.hashUpdateAll(batch, n); //backdoor update, hash function is bypassed
+      if (n < len) { return; } // "early stop"
+    }
+  }
+
+  //Updates the gadget with at most maxCount hashes of an unordered cache or hash table in Memory
+  // that are greater than zero and less than the union theta, in batches.
+  private void updateUnordered(Memory skMem, int preBytes, int arrLongs, int maxCount) {
+    long[] batch = new long[min(arrLongs, UPDATE_BATCH_LONGS)];
+    int remaining = maxCount;
+    for (int start = 0; (start < arrLongs) && (remaining > 0); start += batch.length) {
+      int len = min(batch.length, arrLongs - start);
+      skMem.getLongArray(preBytes + (start << 3), batch, 0, len);
+      //rejects dirty values
+      int n = min(HashOperations.copyValidHashes(batch, 0, len, unionThetaLong_, batch), remaining);
+      gadget_.hashUpdateAll(batch, n); //backdoor update, hash function is bypassed
+      remaining -= n;
+    }
+  }
+
 }
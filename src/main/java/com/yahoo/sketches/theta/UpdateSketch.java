@@ -5,11 +5,14 @@
 
 package com.yahoo.sketches.theta;
 
+import static com.yahoo.sketches.Util.DEFAULT_UPDATE_SEED;
 import static com.yahoo.sketches.hash.MurmurHash3.hash;
+import static com.yahoo.sketches.hash.MurmurHash3.hashToLong;
 import static com.yahoo.sketches.theta.UpdateReturnState.RejectedNullOrEmpty;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.yahoo.sketches.ResizeFactor;
+import com.yahoo.sketches.SketchesArgumentException;
 import com.yahoo.sketches.memory.Memory;
 
 /**
@@ -20,6 +23,8 @@ import com.yahoo.sketches.memory.Memory;
  * @author Lee Rhodes 
  */
 public abstract class UpdateSketch extends Sketch {
+  //the number of hashes computed per block by the updateAll(...) methods
+  private static final int HASH_BLOCK_SIZE = 1024;
   
   UpdateSketch() {}
   
@@ -49,6 +54,45 @@ public abstract class UpdateSketch extends Sketch {
     return new UpdateSketchBuilder();
   }
   
+  /**
+   * Wraps a concurrent shared sketch around the given Memory, which must have been initialized
+   * by {@link UpdateSketchBuilder#buildShared()} with a destination Memory. The Memory, for 
+   * example a {@link com.yahoo.sketches.memory.MemoryMappedFile}, may be updated concurrently 
+   * through other wrapped instances in this or other processes.
+   * This method assumes the 
+   * <a href="{@docRoot}/resources/dictionary.html#defaultUpdateSeed">Default Update Seed</a>.
+   * @param srcMem <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return a concurrent shared UpdateSketch backed by the given Memory
+   */
+  public static UpdateSketch wrapShared(Memory srcMem) {
+    return wrapShared(srcMem, DEFAULT_UPDATE_SEED);
+  }
+  
+  /**
+   * Wraps a concurrent shared sketch around the given Memory, which must have been initialized
+   * by {@link UpdateSketchBuilder#buildShared()} with a destination Memory. The Memory, for 
+   * example a {@link com.yahoo.sketches.memory.MemoryMappedFile}, may be updated concurrently 
+   * through other wrapped instances in this or other processes.
+   * @param srcMem <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>.
+   * @return a concurrent shared UpdateSketch backed by the given Memory
+   */
+  public static UpdateSketch wrapShared(Memory srcMem, long seed) {
+    return ConcurrentDirectQuickSelectSketch.wrapInstance(srcMem, seed);
+  }
+  
+  /**
+   * Returns the number of storage bytes required for a concurrent shared sketch in Memory with 
+   * the given number of nominal entries (power of 2). This includes the full size hash table and 
+   * the lock word that follows it.
+   * @param nomEntries <a href="{@docRoot}/resources/dictionary.html#nomEntries">Nominal Entres</a>
+   * This will become the ceiling power of 2 if it is not.
+   * @return the number of storage bytes required for a concurrent shared sketch in Memory
+   */
+  public static int getMaxSharedUpdateSketchBytes(int nomEntries) {
+    return getMaxUpdateSketchBytes(nomEntries) + 8;
+  }
+  
   /**
    * Resets this sketch back to a virgin empty state.
    */
@@ -127,8 +171,7 @@ public abstract class UpdateSketch extends Sketch {
    * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">See Update Return State</a>
    */
   public UpdateReturnState update(long datum) {
-    long[] data = { datum };
-    return hashUpdate(hash(data, getSeed())[0] >>> 1);
+    return hashUpdate(hashToLong(datum, getSeed()) >>> 1);
   }
   
   /**
@@ -144,8 +187,8 @@ public abstract class UpdateSketch extends Sketch {
    */
   public UpdateReturnState update(double datum) {
     double d = (datum == 0.0) ? 0.0 : datum; // canonicalize -0.0, 0.0
-    long[] data = { Double.doubleToLongBits(d) };// canonicalize all NaN forms
-    return hashUpdate(hash(data, getSeed())[0] >>> 1);
+    long data = Double.doubleToLongBits(d);// canonicalize all NaN forms
+    return hashUpdate(hashToLong(data, getSeed()) >>> 1);
   }
   
   /**
@@ -232,8 +275,123 @@ public abstract class UpdateSketch extends Sketch {
     return hashUpdate(hash(data, getSeed())[0] >>> 1);
   }
   
+  /**
+   * Present this sketch with the given region of Memory, which is hashed in place without
+   * copying. This produces the same hash value as {@link #update(byte[])} given a byte array 
+   * with the same contents as the region.
+   * If the Memory is null or the length is zero no update attempt is made and the method returns.
+   * 
+   * @param mem The Memory that contains the datum.
+   * @param offsetBytes The offset in bytes of the datum relative to the Memory start.
+   * @param lengthBytes The length of the datum in bytes.
+   * @return 
+   * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">See Update Return State</a>
+   */
+  public UpdateReturnState update(Memory mem, long offsetBytes, int lengthBytes) {
+    if ((mem == null) || (lengthBytes == 0)) {
+      return RejectedNullOrEmpty;
+    }
+    return hashUpdate(hash(mem, offsetBytes, lengthBytes, getSeed())[0] >>> 1);
+  }
+  
+  /**
+   * Present this sketch with each long in the given range of the given array. 
+   * The result is the same as calling {@link #update(long)} with each value in turn, but the 
+   * values are hashed in blocks and the hashes are screened against theta in a tight loop 
+   * within the concrete sketch.
+   * If the array is null no update attempt is made and the method returns.
+   * 
+   * @param data The given long array.
+   * @param fromIndex the index of the first value to be presented, inclusive.
+   * @param toIndex the index of the last value to be presented, exclusive.
+   */
+  public void updateAll(long[] data, int fromIndex, int toIndex) {
+    if (data == null) { return; }
+    checkRange(data.length, fromIndex, toIndex);
+    final long seed = getSeed();
+    final long[] hashes = new long[Math.min(toIndex - fromIndex, HASH_BLOCK_SIZE)];
+    for (int i = fromIndex; i < toIndex; i += hashes.length) {
+      final int n = Math.min(toIndex - i, hashes.length);
+      for (int j = 0; j < n; j++) {
+        hashes[j] = hashToLong(data[i + j], seed) >>> 1;
+      }
+      hashUpdateAll(hashes, n);
+    }
+  }
+  
+  /**
+   * Present this sketch with each double in the given range of the given array. 
+   * The result is the same as calling {@link #update(double)} with each value in turn, but the 
+   * values are hashed in blocks and the hashes are screened against theta in a tight loop 
+   * within the concrete sketch.
+   * If the array is null no update attempt is made and the method returns.
+   * 
+   * @param data The given double array.
+   * @param fromIndex the index of the first value to be presented, inclusive.
+   * @param toIndex the index of the last value to be presented, exclusive.
+   */
+  public void updateAll(double[] data, int fromIndex, int toIndex) {
+    if (data == null) { return; }
+    checkRange(data.length, fromIndex, toIndex);
+    final long seed = getSeed();
+    final long[] hashes = new long[Math.min(toIndex - fromIndex, HASH_BLOCK_SIZE)];
+    for (int i = fromIndex; i < toIndex; i += hashes.length) {
+      final int n = Math.min(toIndex - i, hashes.length);
+      for (int j = 0; j < n; j++) {
+        final double d = data[i + j];
+        final long bits = Double.doubleToLongBits((d == 0.0) ? 0.0 : d); //canonicalize
+        hashes[j] = hashToLong(bits, seed) >>> 1;
+      }
+      hashUpdateAll(hashes, n);
+    }
+  }
+  
+  /**
+   * Present this sketch with a column of longs that are stored contiguously in the given Memory.
+   * The result is the same as calling {@link #update(long)} with each value in turn. The values 
+   * are read in place, hashed in blocks and the hashes are screened against theta in a tight 
+   * loop within the concrete sketch.
+   * If the Memory is null no update attempt is made and the method returns.
+   * 
+   * @param mem The Memory that contains the column of longs.
+   * @param offsetBytes The offset in bytes of the first long relative to the Memory start.
+   * @param count The number of longs to be presented.
+   */
+  public void updateAll(Memory mem, long offsetBytes, int count) {
+    if (mem == null) { return; }
+    if ((count < 0) || ((offsetBytes + ((long) count << 3)) > mem.getCapacity())) {
+      throw new SketchesArgumentException("Column of " + count + " longs at offset " 
+          + offsetBytes + " exceeds the Memory capacity: " + mem.getCapacity());
+    }
+    final long seed = getSeed();
+    final long[] hashes = new long[Math.min(count, HASH_BLOCK_SIZE)];
+    long offset = offsetBytes;
+    for (int i = 0; i < count; i += hashes.length) {
+      final int n = Math.min(count - i, hashes.length);
+      for (int j = 0; j < n; j++) {
+        hashes[j] = hashToLong(mem.getLong(offset), seed) >>> 1;
+        offset += 8;
+      }
+      hashUpdateAll(hashes, n);
+    }
+  }
+  
   //restricted methods
   
+  /**
+   * The batch form of {@link #hashUpdate(long)} used by the updateAll(...) methods.
+   * Concrete sketches may override this with a loop that screens against theta before doing 
+   * any other work. 
+   * 
+   * @param hashes the given input hash values. The contents may be modified.
+   * @param count the number of leading hash values to be presented.
+   */
+  void hashUpdateAll(long[] hashes, int count) {
+    for (int i = 0; i < count; i++) {
+      hashUpdate(hashes[i]);
+    }
+  }
+  
   /**
    * All potential updates converge here.
    * <p>Don't ever call this unless you really know what you are doing!</p>
@@ -298,4 +456,11 @@ public abstract class UpdateSketch extends Sketch {
     return (lgTarget <= lgMin) ? lgMin : (lgRR == 0) ? lgTarget : (lgTarget - lgMin) % lgRR + lgMin;
   }
   
+  private static void checkRange(int arrLength, int fromIndex, int toIndex) {
+    if ((fromIndex < 0) || (fromIndex > toIndex) || (toIndex > arrLength)) {
+      throw new SketchesArgumentException("Illegal range: fromIndex: " + fromIndex 
+          + ", toIndex: " + toIndex + ", array length: " + arrLength);
+    }
+  }
+  
 }
@@ -22,12 +22,20 @@ import com.yahoo.sketches.memory.Memory;
  * @author Lee Rhodes 
  */
 public class UpdateSketchBuilder {
+  /**
+   * The default number of hashes a concurrent local buffer holds before it propagates them to
+   * the shared sketch.
+   */
+  public static final int DEFAULT_LOCAL_NOMINAL_ENTRIES = 16;
+  
   private int bLgNomLongs;
   private long bSeed;
   private ResizeFactor bRF;
   private Family bFam;
   private float bP;
   private Memory bDstMem;
+  private int bLocalLgNomLongs;
+  private boolean bIncrementalRebuild;
   
   /**
    * Constructor for building a new UpdateSketch. The default configuration is 
@@ -42,6 +50,9 @@ public class UpdateSketchBuilder {
    * <li>{@link com.yahoo.sketches.Family#QUICKSELECT}</li>
    * <li>Input Sampling Probability: 1.0</li>
    * <li>Memory: null</li>
+   * <li>Local Nominal Entries of concurrent local buffers: 
+   * {@value #DEFAULT_LOCAL_NOMINAL_ENTRIES}</li>
+   * <li>Incremental Rebuild: false</li>
    * </ul>
    */
   public UpdateSketchBuilder() {
@@ -51,6 +62,8 @@ public class UpdateSketchBuilder {
     bRF = ResizeFactor.X8;
     bFam = Family.QUICKSELECT;
     bDstMem = null;
+    bLocalLgNomLongs = Integer.numberOfTrailingZeros(DEFAULT_LOCAL_NOMINAL_ENTRIES);
+    bIncrementalRebuild = false;
   }
   
   /**
@@ -159,6 +172,56 @@ public class UpdateSketchBuilder {
     return this;
   }
   
+  /**
+   * Sets the number of hashes a concurrent local buffer holds before it propagates them to the
+   * shared sketch. Larger values reduce contention on the shared sketch at the cost of a larger
+   * lag before updates become visible in the shared estimate.
+   * @param nomEntries the local nominal entries.
+   * This will become the ceiling power of 2 if it is not.
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setLocalNominalEntries(int nomEntries) {
+    bLocalLgNomLongs = Integer.numberOfTrailingZeros(ceilingPowerOf2(nomEntries));
+    return this;
+  }
+  
+  /**
+   * Returns Log-base 2 Local Nominal Entries
+   * @return Log-base 2 Local Nominal Entries
+   */
+  public int getLocalLgNominalEntries() {
+    return bLocalLgNomLongs;
+  }
+  
+  /**
+   * Sets the incremental rebuild mode of the QuickSelect sketches. When the hash table of a sketch
+   * in this mode reaches its rebuild threshold, the update that triggers the rebuild only selects
+   * the new theta, with a single pass over the table, and starts a new table. The retained hashes
+   * of the old table are then migrated to the new table a few slots at a time by each of the
+   * following updates, so that no update pays for the rebuild of the whole table.
+   * 
+   * <p>The migration is completed whenever the hash table is read as a whole, e.g., by 
+   * <i>compact()</i>, <i>toByteArray()</i>, <i>rebuild()</i> or a set operation. The hash table
+   * in the Memory of a Direct sketch is incomplete while a migration is in progress, so a sketch
+   * that is wrapped over the same Memory sees all of its hashes only after one of these calls.
+   * This mode is not serialized: a sketch that is heapified or wrapped rebuilds synchronously.</p>
+   * 
+   * @param incremental true to enable the incremental rebuild mode. The default is false.
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setIncrementalRebuild(boolean incremental) {
+    bIncrementalRebuild = incremental;
+    return this;
+  }
+  
+  /**
+   * Returns true if the incremental rebuild mode is enabled
+   * @return true if the incremental rebuild mode is enabled
+   */
+  public boolean isIncrementalRebuild() {
+    return bIncrementalRebuild;
+  }
+  
   /**
    * Returns the Destination Memory
    * <a href="{@docRoot}/resources/dictionary.html#dstMem">See Destination Memory</a>.
@@ -176,6 +239,9 @@ public class UpdateSketchBuilder {
     UpdateSketch sketch = null;
     switch (bFam) {
       case ALPHA: {
+        if (bIncrementalRebuild) {
+          throw new SketchesArgumentException("AlphaSketch cannot be rebuilt incrementally.");
+        }
         if (bDstMem == null) {
           sketch = HeapAlphaSketch.getInstance(bLgNomLongs, bSeed, bP, bRF);
         } 
@@ -186,10 +252,16 @@ public class UpdateSketchBuilder {
       }
       case QUICKSELECT: {
         if (bDstMem == null) {
-          sketch = HeapQuickSelectSketch.getInstance(bLgNomLongs, bSeed, bP, bRF, false);
+          HeapQuickSelectSketch hqss = 
+              HeapQuickSelectSketch.getInstance(bLgNomLongs, bSeed, bP, bRF, false);
+          hqss.setIncrementalRebuild(bIncrementalRebuild);
+          sketch = hqss;
         } 
         else {
-          sketch = DirectQuickSelectSketch.getInstance(bLgNomLongs, bSeed, bP, bRF, bDstMem, false);
+          DirectQuickSelectSketch dqss = 
+              DirectQuickSelectSketch.getInstance(bLgNomLongs, bSeed, bP, bRF, bDstMem, false);
+          dqss.setIncrementalRebuild(bIncrementalRebuild);
+          sketch = dqss;
         }
         break;
       }
@@ -213,6 +285,45 @@ public class UpdateSketchBuilder {
     return build();
   }  
   
+  /**
+   * Returns a thread-safe shared UpdateSketch with the current configuration of this Builder.
+   * Writer threads should not update it directly but through their own local buffer obtained
+   * from {@link #buildLocal(UpdateSketch)}. Its estimate and bounds may be read at any time 
+   * without blocking the writers. Only the {@link com.yahoo.sketches.Family#QUICKSELECT} family
+   * is supported.
+   * 
+   * <p>If a destination Memory has been given, the shared sketch lives entirely in that Memory,
+   * which must have at least {@link UpdateSketch#getMaxSharedUpdateSketchBytes(int)} bytes.
+   * Its hash table is allocated at full size, so the Resize Factor is ignored. Hashes are 
+   * inserted with compare-and-swap, so it may also be updated directly by many threads, or by 
+   * other processes that obtain it with {@link UpdateSketch#wrapShared(Memory)}.</p>
+   * @return a thread-safe shared UpdateSketch
+   */
+  public UpdateSketch buildShared() {
+    if (bFam != Family.QUICKSELECT) {
+      throw new SketchesArgumentException(
+        "Only the QUICKSELECT Family can be built as a concurrent shared sketch: " + bFam);
+    }
+    if (bDstMem != null) {
+      return ConcurrentDirectQuickSelectSketch.getInstance(bLgNomLongs, bSeed, bP, bDstMem);
+    }
+    return ConcurrentHeapQuickSelectSketch.getInstance(bLgNomLongs, bSeed, bP, bRF);
+  }
+  
+  /**
+   * Returns a new local buffer that feeds the given shared sketch. Each writer thread must 
+   * use its own local buffer.
+   * @param shared a sketch obtained from {@link #buildShared()}
+   * @return a new local buffer for the given shared sketch
+   */
+  public ConcurrentHeapThetaBuffer buildLocal(UpdateSketch shared) {
+    if (!(shared instanceof ConcurrentSharedThetaSketch)) {
+      throw new SketchesArgumentException(
+        "The given sketch is not a concurrent shared sketch: " + shared);
+    }
+    return new ConcurrentHeapThetaBuffer(bLocalLgNomLongs, shared);
+  }
+  
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
@@ -223,7 +334,9 @@ public class UpdateSketchBuilder {
       .append("p:").append(TAB).append(bP).append(LS)
       .append("ResizeFactor:").append(TAB).append(bRF).append(LS)
       .append("Family:").append(TAB).append(bFam).append(LS)
-      .append("DstMemory:").append(TAB).append(bDstMem != null).append(LS);
+      .append("DstMemory:").append(TAB).append(bDstMem != null).append(LS)
+      .append("LocalLgK:").append(TAB).append(bLocalLgNomLongs).append(LS)
+      .append("IncrementalRebuild:").append(TAB).append(bIncrementalRebuild).append(LS);
     return sb.toString();
   }
   
@@ -7,6 +7,8 @@ package com.yahoo.sketches.tuple;
 
 import static com.yahoo.sketches.Util.DEFAULT_UPDATE_SEED;
 
+import com.yahoo.sketches.BinomialBoundsN;
+import com.yahoo.sketches.SketchesArgumentException;
 import com.yahoo.sketches.memory.Memory;
 
 /**
@@ -38,7 +40,9 @@ public final class ArrayOfDoublesSketches {
   }
 
   /**
-   * Wrap the given Memory as an ArrayOfDoublesSketch
+   * Wrap the given Memory as an ArrayOfDoublesSketch.
+   * The Memory may be read only, in which case a compact sketch can be shared without copying
+   * by any number of threads that only query it.
    * @param mem the given Memory
    * @return an ArrayOfDoublesSketch
    */
@@ -98,4 +102,120 @@ public final class ArrayOfDoublesSketches {
     return new DirectArrayOfDoublesUnion(mem, seed);
   }
 
+  /**
+   * Returns the number of retained entries of the given Memory image of an ArrayOfDoublesSketch
+   * without heapifying or wrapping it. The image may be of either a compact or a QuickSelect
+   * sketch.
+   * @param mem the given Memory
+   * @return number of retained entries
+   */
+  public static int getRetainedEntries(final Memory mem) {
+    final boolean isQuickSelect = checkSketchImage(mem);
+    if (isQuickSelect) {
+      return mem.getInt(ArrayOfDoublesQuickSelectSketch.RETAINED_ENTRIES_INT);
+    }
+    final boolean hasEntries = mem.isAnyBitsSet(ArrayOfDoublesSketch.FLAGS_BYTE,
+        (byte) (1 << ArrayOfDoublesSketch.Flags.HAS_ENTRIES.ordinal()));
+    return (hasEntries ? mem.getInt(ArrayOfDoublesCompactSketch.RETAINED_ENTRIES_INT) : 0);
+  }
+
+  /**
+   * Returns the value of theta as a double between zero and one of the given Memory image of an
+   * ArrayOfDoublesSketch without heapifying or wrapping it.
+   * @param mem the given Memory
+   * @return the value of theta as a double
+   */
+  public static double getTheta(final Memory mem) {
+    checkSketchImage(mem);
+    return mem.getLong(ArrayOfDoublesSketch.THETA_LONG) / (double) Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns true if the given Memory image of an ArrayOfDoublesSketch is of an empty sketch.
+   * <a href="{@docRoot}/resources/dictionary.html#empty">See Empty</a>
+   * @param mem the given Memory
+   * @return true if empty.
+   */
+  public static boolean isEmpty(final Memory mem) {
+    checkSketchImage(mem);
+    return isEmptyImage(mem);
+  }
+
+  /**
+   * Estimates the cardinality of the set from the given Memory image of an ArrayOfDoublesSketch
+   * without heapifying or wrapping it.
+   * @param mem the given Memory
+   * @return best estimate of the number of unique values
+   */
+  public static double getEstimate(final Memory mem) {
+    final int count = getRetainedEntries(mem);
+    if (!isEstimationMode(mem)) { return count; }
+    return count / getTheta(mem);
+  }
+
+  /**
+   * Gets the approximate upper error bound given the specified number of Standard Deviations
+   * from the given Memory image of an ArrayOfDoublesSketch without heapifying or wrapping it.
+   * @param mem the given Memory
+   * @param numStdDev
+   * <a href="{@docRoot}/resources/dictionary.html#numStdDev">See Number of Standard Deviations</a>
+   * @return the upper bound.
+   */
+  public static double getUpperBound(final Memory mem, final int numStdDev) {
+    final int count = getRetainedEntries(mem);
+    if (!isEstimationMode(mem)) { return count; }
+    return BinomialBoundsN.getUpperBound(count, getTheta(mem), numStdDev, false);
+  }
+
+  /**
+   * Gets the approximate lower error bound given the specified number of Standard Deviations
+   * from the given Memory image of an ArrayOfDoublesSketch without heapifying or wrapping it.
+   * @param mem the given Memory
+   * @param numStdDev
+   * <a href="{@docRoot}/resources/dictionary.html#numStdDev">See Number of Standard Deviations</a>
+   * @return the lower bound.
+   */
+  public static double getLowerBound(final Memory mem, final int numStdDev) {
+    final int count = getRetainedEntries(mem);
+    if (!isEstimationMode(mem)) { return count; }
+    return BinomialBoundsN.getLowerBound(count, getTheta(mem), numStdDev, false);
+  }
+
+  private static boolean isEmptyImage(final Memory mem) {
+    return mem.isAnyBitsSet(ArrayOfDoublesSketch.FLAGS_BYTE,
+        (byte) (1 << ArrayOfDoublesSketch.Flags.IS_EMPTY.ordinal()));
+  }
+
+  private static boolean isEstimationMode(final Memory mem) {
+    return (mem.getLong(ArrayOfDoublesSketch.THETA_LONG) < Long.MAX_VALUE) && !isEmptyImage(mem);
+  }
+
+  /**
+   * Checks the family, type and serial version of the given Memory image.
+   * @param mem the given Memory
+   * @return true if the image is of a QuickSelect sketch, false if it is of a compact sketch
+   */
+  private static boolean checkSketchImage(final Memory mem) {
+    SerializerDeserializer.validateFamily(mem.getByte(ArrayOfDoublesSketch.FAMILY_ID_BYTE),
+        mem.getByte(ArrayOfDoublesSketch.PREAMBLE_LONGS_BYTE));
+    final byte sketchType = mem.getByte(SerializerDeserializer.TYPE_BYTE_OFFSET);
+    final boolean isQuickSelect;
+    if (sketchType == SerializerDeserializer.SketchType.ArrayOfDoublesQuickSelectSketch.ordinal()) {
+      isQuickSelect = true;
+    } else if (sketchType
+        == SerializerDeserializer.SketchType.ArrayOfDoublesCompactSketch.ordinal()) {
+      isQuickSelect = false;
+    } else {
+      throw new SketchesArgumentException("Not an ArrayOfDoublesSketch, Sketch Type " + sketchType);
+    }
+    final byte version = mem.getByte(ArrayOfDoublesSketch.SERIAL_VERSION_BYTE);
+    final byte expected = (isQuickSelect) ? ArrayOfDoublesQuickSelectSketch.serialVersionUID
+        : ArrayOfDoublesCompactSketch.serialVersionUID;
+    if (version != expected) {
+      throw new SketchesArgumentException("Serial version mismatch. Expected: " + expected
+          + ", actual: " + version);
+    }
+    return isQuickSelect;
+  }
+
 }
@@ -28,7 +28,7 @@ public abstract class ArrayOfDoublesUpdatableSketch extends ArrayOfDoublesSketch
    * @param values The given values
    */
   public void update(final long key, final double[] values) {
-    update(new long[] {key}, values);
+    insertOrIgnore(MurmurHash3.hashToLong(key, seed_) >>> 1, values);
   }
 
   /**
@@ -39,7 +39,7 @@ public abstract class ArrayOfDoublesUpdatableSketch extends ArrayOfDoublesSketch
    * @param values The given values
    */
   public void update(final double key, final double[] values) {
-    update(Util.doubleToLongArray(key), values);
+    update(Util.doubleToLong(key), values);
   }
 
   /**
@@ -89,6 +89,23 @@ public abstract class ArrayOfDoublesUpdatableSketch extends ArrayOfDoublesSketch
     insertOrIgnore(MurmurHash3.hash(key, seed_)[0] >>> 1, values);
   }
 
+  /**
+   * Updates this sketch with a key that is the given region of Memory and double values.
+   * The key is hashed in place without copying and produces the same hash as the byte[] key
+   * with the same contents.
+   * The values will be stored or added to the ones associated with the key 
+   * 
+   * @param mem The Memory that contains the key
+   * @param offsetBytes The offset in bytes of the key relative to the Memory start
+   * @param lengthBytes The length of the key in bytes
+   * @param values The given values
+   */
+  public void update(final Memory mem, final long offsetBytes, final int lengthBytes, 
+      final double[] values) {
+    if (mem == null || lengthBytes == 0) return;
+    insertOrIgnore(MurmurHash3.hash(mem, offsetBytes, lengthBytes, seed_)[0] >>> 1, values);
+  }
+
   /**
    * Gets the configured nominal number of entries
    * @return nominal number of entries
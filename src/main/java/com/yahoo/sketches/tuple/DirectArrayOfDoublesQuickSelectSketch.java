@@ -13,6 +13,7 @@ import java.util.Arrays;
 import com.yahoo.sketches.Family;
 import com.yahoo.sketches.HashOperations;
 import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.FastMemory;
 import com.yahoo.sketches.memory.Memory;
 import com.yahoo.sketches.memory.NativeMemory;
 
@@ -26,6 +27,7 @@ final class DirectArrayOfDoublesQuickSelectSketch extends ArrayOfDoublesQuickSel
 
   // these values exist only on heap, never serialized
   private Memory mem_;
+  private FastMemory fastMem_; //used in the update path
   // these can be derived from the mem_ contents, but are kept here for performance
   private int keysOffset_;
   private int valuesOffset_;
@@ -50,6 +52,7 @@ final class DirectArrayOfDoublesQuickSelectSketch extends ArrayOfDoublesQuickSel
       final float samplingProbability, final int numValues, final long seed, final Memory dstMem) {
     super(numValues, seed);
     mem_ = dstMem;
+    fastMem_ = FastMemory.wrap(dstMem);
     final int startingCapacity = 1 << Util.startingSubMultiple(
       // target table size is twice the number of nominal entries
       Integer.numberOfTrailingZeros(ceilingPowerOf2(nomEntries) * 2), 
@@ -92,6 +95,7 @@ final class DirectArrayOfDoublesQuickSelectSketch extends ArrayOfDoublesQuickSel
   DirectArrayOfDoublesQuickSelectSketch(final Memory mem, final long seed) {
     super(mem.getByte(NUM_VALUES_BYTE), seed);
     mem_ = mem;
+    fastMem_ = FastMemory.wrap(mem);
     SerializerDeserializer.validateFamily(mem.getByte(FAMILY_ID_BYTE), 
         mem.getByte(PREAMBLE_LONGS_BYTE));
     SerializerDeserializer.validateType(mem_.getByte(SKETCH_TYPE_BYTE), 
@@ -195,7 +199,7 @@ final class DirectArrayOfDoublesQuickSelectSketch extends ArrayOfDoublesQuickSel
   protected void setValues(final int index, final double[] values) {
     long offset = valuesOffset_ + SIZE_OF_VALUE_BYTES * numValues_ * index;
     for (int i = 0; i < numValues_; i++) {
-      mem_.putDouble(offset, values[i]);
+      fastMem_.putDouble(offset, values[i]);
       offset += SIZE_OF_VALUE_BYTES;
     }
   }
@@ -204,7 +208,7 @@ final class DirectArrayOfDoublesQuickSelectSketch extends ArrayOfDoublesQuickSel
   protected void updateValues(final int index, final double[] values) {
     long offset = valuesOffset_ + SIZE_OF_VALUE_BYTES * numValues_ * index;
     for (int i = 0; i < numValues_; i++) {
-      mem_.putDouble(offset, mem_.getDouble(offset) + values[i]);
+      fastMem_.putDouble(offset, fastMem_.getDouble(offset) + values[i]);
       offset += SIZE_OF_VALUE_BYTES;
     }
   }
@@ -259,17 +263,17 @@ final class DirectArrayOfDoublesQuickSelectSketch extends ArrayOfDoublesQuickSel
 
   @Override
   protected int insertKey(final long key) {
-    return HashOperations.hashInsertOnly(mem_, lgCurrentCapacity_, key, ENTRIES_START);
+    return HashOperations.hashInsertOnly(fastMem_, lgCurrentCapacity_, key, ENTRIES_START);
   }
 
   @Override
   protected int findOrInsertKey(final long key) {
-    return HashOperations.hashSearchOrInsert(mem_, lgCurrentCapacity_, key, ENTRIES_START);
+    return HashOperations.hashSearchOrInsert(fastMem_, lgCurrentCapacity_, key, ENTRIES_START);
   }
 
   @Override
   protected double[] find(final long key) {
-    final int index = HashOperations.hashSearch(mem_, lgCurrentCapacity_, key, ENTRIES_START);
+    final int index = HashOperations.hashSearch(fastMem_, lgCurrentCapacity_, key, ENTRIES_START);
     if (index == -1) return null;
     final double[] array = new double[numValues_];
     mem_.getDoubleArray(valuesOffset_ + SIZE_OF_VALUE_BYTES * numValues_ * index, 
@@ -62,7 +62,7 @@ public class UpdatableSketch<U, S extends UpdatableSummary<U>> extends QuickSele
    * @param value The given U value
    */
   public void update(final long key, final U value) {
-  update(new long[] {key}, value);
+    insertOrIgnore(MurmurHash3.hashToLong(key, DEFAULT_UPDATE_SEED) >>> 1, value);
   }
 
   /**
@@ -73,7 +73,7 @@ public class UpdatableSketch<U, S extends UpdatableSummary<U>> extends QuickSele
    * @param value The given U value
    */
   public void update(final double key, final U value) {
-    update(Util.doubleToLongArray(key), value);
+    update(Util.doubleToLong(key), value);
   }
 
   /**
@@ -123,6 +123,24 @@ public class UpdatableSketch<U, S extends UpdatableSummary<U>> extends QuickSele
     insertOrIgnore(MurmurHash3.hash(key, DEFAULT_UPDATE_SEED)[0] >>> 1, value);
   }
 
+  /**
+   * Updates this sketch with a key that is the given region of Memory and U value.
+   * The key is hashed in place without copying and produces the same hash as the byte[] key
+   * with the same contents.
+   * The value is passed to update() method of the Summary object associated with the key 
+   * 
+   * @param mem The Memory that contains the key
+   * @param offsetBytes The offset in bytes of the key relative to the Memory start
+   * @param lengthBytes The length of the key in bytes
+   * @param value The given U value
+   */
+  public void update(final Memory mem, final long offsetBytes, final int lengthBytes, 
+      final U value) {
+    if (mem == null || lengthBytes == 0) return;
+    insertOrIgnore(
+        MurmurHash3.hash(mem, offsetBytes, lengthBytes, DEFAULT_UPDATE_SEED)[0] >>> 1, value);
+  }
+
   private void insertOrIgnore(final long key, final U value) {
     setIsEmpty(false);
     if (key >= getThetaLong()) return;
@@ -33,10 +33,9 @@ final class Util {
     return lgStart;
   }
 
-  static final long[] doubleToLongArray(final double value) {
+  static final long doubleToLong(final double value) {
     final double d = (value == 0.0) ? 0.0 : value; // canonicalize -0.0, 0.0
-    final long[] array = { Double.doubleToLongBits(d) }; // canonicalize all NaN forms
-    return array;
+    return Double.doubleToLongBits(d); // canonicalize all NaN forms
   }
 
   static final byte[] stringToByteArray(final String value) {
@@ -12,7 +12,9 @@ import static org.testng.Assert.assertEquals;
 import org.testng.annotations.Test;
 
 import static com.yahoo.sketches.hash.MurmurHash3.*;
+import com.yahoo.sketches.memory.FastMemory;
 import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.MemoryRegion;
 import com.yahoo.sketches.memory.NativeMemory;
 
 public class HashOperationsTest {
@@ -114,6 +116,82 @@ public class HashOperationsTest {
     assertEquals(table[2], 1L);
   }
 
+  @Test
+  public void testFastMemoryMatchesMemory() {
+    long[] table1 = new long[72];
+    long[] table2 = new long[72];
+    Memory mem = new MemoryRegion(new NativeMemory(table1), 32, 8 << 6);
+    FastMemory fastMem = FastMemory.wrap(new MemoryRegion(new NativeMemory(table2), 32, 8 << 6));
+    for (int i = 0; i < 40; i++) {
+      long hash = hash(new long[] {i % 30}, 0)[0] >>> 1;
+      assertEquals(hashSearchOrInsert(fastMem, 6, hash, 8), hashSearchOrInsert(mem, 6, hash, 8));
+      assertEquals(hashSearch(fastMem, 6, hash, 8), hashSearch(mem, 6, hash, 8));
+      assertEquals(hashSearch(fastMem, 6, hash + 1, 8), hashSearch(mem, 6, hash + 1, 8));
+    }
+    assertEquals(hashInsertOnly(fastMem, 6, 12345L, 8), hashInsertOnly(mem, 6, 12345L, 8));
+    assertEquals(table2, table1);
+  }
+
+  @Test
+  public void testCopyValidHashes() {
+    long thetaLong = Long.MAX_VALUE / 2;
+    long[] src = {0, 5, -1, thetaLong, thetaLong - 1, Long.MIN_VALUE, 7, thetaLong + 1};
+    long[] dst = new long[src.length];
+    assertEquals(copyValidHashes(src, 0, src.length, thetaLong, dst), 3);
+    assertEquals(dst[0], 5);
+    assertEquals(dst[1], thetaLong - 1);
+    assertEquals(dst[2], 7);
+    assertEquals(copyValidHashes(src, 2, 5, thetaLong, dst), 1);
+    assertEquals(dst[0], thetaLong - 1);
+    assertEquals(copyValidHashes(src, 0, src.length, thetaLong, src), 3); //in place
+    assertEquals(src[2], 7);
+  }
+
+  @Test
+  public void testBatchedArrayInsertMatchesScalar() {
+    int lgArrLongs = 13;
+    long thetaLong = Long.MAX_VALUE / 2;
+    long[] src = new long[3000]; //spans three batches, with zeros, duplicates and dirty values
+    for (int i = 0; i < src.length; i++) {
+      src[i] = ((i % 3) == 0) ? 0 : hash(new long[] {i % 2000}, 0)[0] >>> 1;
+    }
+    long[] expected = new long[1 << lgArrLongs];
+    int expectedCount = 0;
+    for (long hash : src) {
+      if (continueCondition(thetaLong, hash)) { continue; }
+      if (hashSearchOrInsert(expected, lgArrLongs, hash) < 0) { expectedCount++; }
+    }
+    long[] table = new long[1 << lgArrLongs];
+    assertEquals(hashArrayInsert(src, table, lgArrLongs, thetaLong), expectedCount);
+    assertEquals(table, expected);
+
+    Memory srcMem = new NativeMemory(new byte[16 + (src.length << 3)]);
+    srcMem.putLongArray(16, src, 0, src.length);
+    table = new long[1 << lgArrLongs];
+    assertEquals(hashArrayInsert(srcMem, 16, src.length, table, lgArrLongs, thetaLong),
+        expectedCount);
+    assertEquals(table, expected);
+
+    long[] table1 = new long[1 + (1 << lgArrLongs)];
+    FastMemory fastMem = FastMemory.wrap(new NativeMemory(table1));
+    assertEquals(hashArrayInsert(src, fastMem, lgArrLongs, thetaLong, 8), expectedCount);
+    long[] table2 = new long[1 + (1 << lgArrLongs)];
+    fastMem = FastMemory.wrap(new NativeMemory(table2));
+    assertEquals(hashArrayInsert(srcMem, 16, src.length, fastMem, lgArrLongs, thetaLong, 8),
+        expectedCount);
+    assertEquals(table2, table1);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(table1[i + 1], expected[i]);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void testBatchedArrayInsertHashCorruption() {
+    long[] src = new long[2000];
+    src[1500] = -1L; //in the second batch
+    hashArrayInsert(src, new long[16], 4, Long.MAX_VALUE);
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
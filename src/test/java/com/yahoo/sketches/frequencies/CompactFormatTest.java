@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import static com.yahoo.sketches.frequencies.CompactFormat.unZigZag;
+import static com.yahoo.sketches.frequencies.CompactFormat.varLongBytes;
+import static com.yahoo.sketches.frequencies.CompactFormat.zigZag;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.NativeMemory;
+
+public class CompactFormatTest {
+
+  private static final long[] VALUES = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE,
+      1L << 56, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+
+  @Test
+  public void checkVarLongRoundTrip() {
+    int bytes = 0;
+    for (long value : VALUES) { bytes += varLongBytes(value); }
+    NativeMemory mem = new NativeMemory(new byte[bytes]);
+    CompactFormat.Writer writer = new CompactFormat.Writer(mem, 0);
+    for (long value : VALUES) { writer.putVarLong(value); }
+    assertEquals(writer.getPosition(), bytes);
+    CompactFormat.Reader reader = new CompactFormat.Reader(mem, 0);
+    for (long value : VALUES) { assertEquals(reader.getVarLong(), value); }
+    assertEquals(reader.getPosition(), bytes);
+  }
+
+  @Test
+  public void checkVarLongArrayRoundTrip() {
+    //every length from 1 to 10 bytes, read with and without 10 bytes to spare
+    long[] values = new long[Long.SIZE + 1];
+    for (int i = 0; i < Long.SIZE; i++) { values[i] = 1L << i; }
+    values[Long.SIZE] = -1;
+    int bytes = 0;
+    for (long value : values) { bytes += varLongBytes(value); }
+    byte[] arr = new byte[bytes];
+    int pos = 0;
+    for (long value : values) {
+      int next = CompactFormat.putVarLong(arr, pos, value);
+      assertEquals(next - pos, varLongBytes(value));
+      pos = next;
+    }
+    CompactFormat.Reader reader = new CompactFormat.Reader(new NativeMemory(arr), 0);
+    for (long value : values) { assertEquals(reader.getVarLong(), value); }
+    assertEquals(reader.getPosition(), bytes);
+  }
+
+  @Test
+  public void checkVarLongBytes() {
+    assertEquals(varLongBytes(0), 1);
+    assertEquals(varLongBytes(127), 1);
+    assertEquals(varLongBytes(128), 2);
+    assertEquals(varLongBytes(Long.MAX_VALUE), 9);
+    assertEquals(varLongBytes(-1), 10);
+  }
+
+  @Test
+  public void checkZigZag() {
+    assertEquals(zigZag(0), 0);
+    assertEquals(zigZag(-1), 1);
+    assertEquals(zigZag(1), 2);
+    assertEquals(zigZag(Long.MIN_VALUE), -1);
+    for (long value : VALUES) { assertEquals(unZigZag(zigZag(value)), value); }
+  }
+
+  @Test
+  public void checkSortTandem() {
+    Random rand = new Random(1);
+    for (int n : new int[] {1, 2, 31, 32, 1000}) {
+      for (boolean smallKeys : new boolean[] {true, false}) {
+        long[] keys = new long[n];
+        long[] values = new long[n];
+        for (int i = 0; i < n; i++) {
+          keys[i] = (smallKeys) ? rand.nextInt(5000) - 100 : rand.nextLong();
+          values[i] = ~keys[i];
+        }
+        long[] expected = keys.clone();
+        Arrays.sort(expected);
+        CompactFormat.sortTandem(keys, values);
+        assertEquals(keys, expected);
+        for (int i = 0; i < n; i++) { assertEquals(values[i], ~keys[i]); }
+      }
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkReadPastEnd() {
+    NativeMemory mem = new NativeMemory(new byte[2]);
+    mem.putByte(0, (byte) 0X80);
+    mem.putByte(1, (byte) 0X80);
+    new CompactFormat.Reader(mem, 0).getVarLong();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkVarLongTooLong() {
+    NativeMemory mem = new NativeMemory(new byte[11]);
+    for (int i = 0; i < 11; i++) { mem.putByte(i, (byte) 0X80); }
+    new CompactFormat.Reader(mem, 0).getVarLong();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkVarIntOutOfRange() {
+    NativeMemory mem = new NativeMemory(new byte[5]);
+    new CompactFormat.Writer(mem, 0).putVarLong(1L << 31);
+    new CompactFormat.Reader(mem, 0).getVarInt();
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
@@ -359,6 +359,41 @@ public class ItemsSketchTest {
     }
   }
   
+  @Test
+  public void checkCompactSerDe() {
+    ItemsSketch<String> sk1 = new ItemsSketch<String>(64);
+    ArrayOfStringsSerDe serDe = new ArrayOfStringsSerDe();
+    assertEquals(sk1.toCompactByteArray(serDe), sk1.toByteArray(serDe)); //empty
+    for (int i = 0; i < 1000; i++) { sk1.update("item" + (i % 97), 1 + (i % 7)); }
+    byte[] bytes = sk1.toCompactByteArray(serDe);
+    assertTrue(bytes.length < sk1.toByteArray(serDe).length);
+    println(PreambleUtil.preambleToString(new NativeMemory(bytes)));
+
+    ItemsSketch<String> sk2 = ItemsSketch.getInstance(new NativeMemory(bytes), serDe);
+    assertEquals(sk2.getStreamLength(), sk1.getStreamLength());
+    assertEquals(sk2.getMaximumError(), sk1.getMaximumError());
+    assertEquals(sk2.getNumActiveItems(), sk1.getNumActiveItems());
+    for (int i = 0; i < 97; i++) {
+      assertEquals(sk2.getEstimate("item" + i), sk1.getEstimate("item" + i));
+    }
+    //the compact form reads back into a LongsSketch
+    ItemsSketch<Long> sk3 = new ItemsSketch<Long>(8);
+    sk3.update(-5L, 3);
+    LongsSketch sk4 = LongsSketch.getInstance(
+        new NativeMemory(sk3.toCompactByteArray(new ArrayOfLongsSerDe())));
+    assertEquals(sk4.getEstimate(-5L), 3);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkCompactTruncated() {
+    ItemsSketch<String> sk = new ItemsSketch<String>(64);
+    for (int i = 0; i < 100; i++) { sk.update("item" + i); }
+    byte[] bytes = sk.toCompactByteArray(new ArrayOfStringsSerDe());
+    NativeMemory mem = new NativeMemory(new byte[10]);
+    mem.putByteArray(0, bytes, 0, 10);
+    ItemsSketch.getInstance(mem, new ArrayOfStringsSerDe());
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: " + this.getClass().getName());
@@ -16,23 +16,32 @@ import static com.yahoo.sketches.frequencies.Util.LG_MIN_MAP_SIZE;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.Arrays;
+import java.util.HashMap;
+
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.yahoo.sketches.ArrayOfLongsSerDe;
 import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.SketchesReadOnlyException;
 import com.yahoo.sketches.Util;
 import com.yahoo.sketches.frequencies.LongsSketch.Row;
 import com.yahoo.sketches.memory.Memory;
 import com.yahoo.sketches.memory.NativeMemory;
+import com.yahoo.sketches.memory.SlabMemoryRequest;
 
 public class LongsSketchTest {
 
   @Test
   public void hashMapSerialTest() {
-    ReversePurgeLongHashMap map = new ReversePurgeLongHashMap(8);
+    ReversePurgeLongHashMap map = new HeapReversePurgeLongHashMap(8);
     map.adjustOrPutValue(10, 15);
     map.adjustOrPutValue(10, 5);
     map.adjustOrPutValue(1, 1);
@@ -218,6 +227,354 @@ public class LongsSketchTest {
     checkEquality(sk1, sk2);
   }
 
+  @Test
+  public void checkQueriesFromMemory() {
+    LongsSketch sk1 = new LongsSketch(32);
+    Memory mem = new NativeMemory(sk1.toByteArray());
+    assertEquals(LongsSketch.getStreamLength(mem), 0);
+    assertEquals(LongsSketch.getNumActiveItems(mem), 0);
+    assertEquals(LongsSketch.getMaximumError(mem), 0);
+    assertEquals(LongsSketch.getEstimate(mem, 1), 0);
+    assertEquals(LongsSketch.getUpperBound(mem, 1), 0);
+    assertEquals(LongsSketch.getLowerBound(mem, 1), 0);
+
+    for (int i = 0; i < 1000; i++) { sk1.update(i % 97, 1 + (i % 7)); }
+    assertTrue(sk1.getMaximumError() > 0);
+    mem = new NativeMemory(sk1.toByteArray());
+    assertEquals(LongsSketch.getStreamLength(mem), sk1.getStreamLength());
+    assertEquals(LongsSketch.getNumActiveItems(mem), sk1.getNumActiveItems());
+    assertEquals(LongsSketch.getMaximumError(mem), sk1.getMaximumError());
+    for (long item = -1; item < 100; item++) {
+      assertEquals(LongsSketch.getEstimate(mem, item), sk1.getEstimate(item));
+      assertEquals(LongsSketch.getUpperBound(mem, item), sk1.getUpperBound(item));
+      assertEquals(LongsSketch.getLowerBound(mem, item), sk1.getLowerBound(item));
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkQueriesFromMemoryTooSmall() {
+    LongsSketch sk1 = new LongsSketch(32);
+    sk1.update(1);
+    sk1.update(2);
+    byte[] bytes = sk1.toByteArray();
+    NativeMemory mem = new NativeMemory(new byte[bytes.length - 8]);
+    mem.putByteArray(0, bytes, 0, bytes.length - 8);
+    LongsSketch.getEstimate(mem, 2);
+  }
+
+  @Test
+  public void checkDirectMatchesHeap() {
+    int maxMapSize = 1024;
+    SlabMemoryRequest pool = new SlabMemoryRequest();
+    Memory mem = pool.request(LongsSketch.getDirectBytes(8));
+    LongsSketch heap = new LongsSketch(maxMapSize);
+    LongsSketch direct = new LongsSketch(maxMapSize, mem);
+    assertTrue(direct.isDirect());
+    assertFalse(heap.isDirect());
+    assertNull(heap.getMemory());
+    for (int i = 0; i < 100000; i++) {
+      long item = randomGeometricDist(0.002);
+      heap.update(item, 1 + (i % 3));
+      direct.update(item, 1 + (i % 3));
+    }
+    assertTrue(heap.getMaximumError() > 0); //purged
+    assertNotSame(direct.getMemory(), mem); //grown through the MemoryRequest
+    assertEquals(pool.getInUseBytes(), direct.getMemory().getCapacity());
+    assertEquals(direct.toByteArray(), heap.toByteArray());
+    assertEquals(direct.getCurrentMapCapacity(), heap.getCurrentMapCapacity());
+    for (long item = 0; item < 2000; item++) {
+      assertEquals(direct.getEstimate(item), heap.getEstimate(item));
+    }
+    Row[] rows = direct.getFrequentItems(ErrorType.NO_FALSE_NEGATIVES);
+    Row[] heapRows = heap.getFrequentItems(ErrorType.NO_FALSE_NEGATIVES);
+    assertEquals(rows.length, heapRows.length);
+    for (int i = 0; i < rows.length; i++) {
+      assertEquals(rows[i].getItem(), heapRows[i].getItem());
+      assertEquals(rows[i].getUpperBound(), heapRows[i].getUpperBound());
+    }
+
+    LongsSketch other = new LongsSketch(maxMapSize);
+    for (int i = 0; i < 5000; i++) { other.update(i % 1500); }
+    assertEquals(direct.merge(other).toByteArray(), heap.merge(other).toByteArray());
+
+    direct.reset();
+    assertTrue(direct.isEmpty());
+    assertEquals(direct.getStreamLength(), 0);
+    assertEquals(LongsSketch.wrap(direct.getMemory()).getStreamLength(), 0);
+    pool.free(direct.getMemory());
+    pool.close();
+  }
+
+  @Test
+  public void checkDirectWrap() {
+    int maxMapSize = 256;
+    Memory mem = new NativeMemory(new byte[(int) LongsSketch.getDirectBytes(maxMapSize)]);
+    LongsSketch sk1 = new LongsSketch(maxMapSize, mem);
+    for (int i = 0; i < 10000; i++) { sk1.update(randomGeometricDist(0.01)); }
+    assertSame(sk1.getMemory(), mem); //grown in place
+    assertTrue(sk1.getMaximumError() > 0);
+
+    LongsSketch sk2 = LongsSketch.wrap(mem.asReadOnlyMemory());
+    assertEquals(sk2.toByteArray(), sk1.toByteArray());
+    assertEquals(sk2.getStreamLength(), sk1.getStreamLength());
+    assertEquals(sk2.getMaximumError(), sk1.getMaximumError());
+    assertEquals(LongsSketch.getStreamLength(mem), sk1.getStreamLength());
+    assertEquals(LongsSketch.getNumActiveItems(mem), sk1.getNumActiveItems());
+    assertEquals(LongsSketch.getMaximumError(mem), sk1.getMaximumError());
+    for (long item = -1; item < 300; item++) {
+      assertEquals(sk2.getEstimate(item), sk1.getEstimate(item));
+      assertEquals(LongsSketch.getEstimate(mem, item), sk1.getEstimate(item));
+      assertEquals(LongsSketch.getUpperBound(mem, item), sk1.getUpperBound(item));
+      assertEquals(LongsSketch.getLowerBound(mem, item), sk1.getLowerBound(item));
+    }
+    assertEquals(LongsSketch.getInstance(mem).toByteArray(), sk1.toByteArray());
+    println(PreambleUtil.preambleToString(mem));
+    try {
+      sk2.update(1);
+      fail();
+    } catch (SketchesReadOnlyException e) {
+      //expected
+    }
+    assertEquals(sk2.getStreamLength(), sk1.getStreamLength());
+
+    //a writable wrap continues updating in place
+    LongsSketch sk3 = LongsSketch.wrap(mem);
+    sk3.update(12345, 7);
+    assertEquals(LongsSketch.getEstimate(mem, 12345), sk3.getEstimate(12345));
+    assertEquals(LongsSketch.getStreamLength(mem), sk1.getStreamLength() + 7);
+  }
+
+  @Test
+  public void checkDirectQueryOfCorruptMap() {
+    Memory mem = new NativeMemory(new byte[(int) LongsSketch.getDirectBytes(8)]);
+    LongsSketch sk = new LongsSketch(8, mem);
+    sk.update(1, 3);
+    assertEquals(LongsSketch.getEstimate(mem, 1), 3);
+    //every cell claims to be in use, so the probe for a missing key must stop on its own
+    int length = 1 << mem.getByte(PreambleUtil.LG_CUR_MAP_SIZE_BYTE);
+    long statesOffset = DirectReversePurgeLongHashMap.PREAMBLE_BYTES + (16L * length);
+    for (int i = 0; i < length; i++) { mem.putShort(statesOffset + (2L * i), (short) 1); }
+    assertEquals(LongsSketch.getEstimate(mem, 2), 0);
+  }
+
+  @Test
+  public void checkDirectEmpty() {
+    Memory mem = new NativeMemory(new byte[(int) LongsSketch.getDirectBytes(8)]);
+    LongsSketch sk = new LongsSketch(64, mem);
+    assertTrue(sk.isEmpty());
+    assertEquals(sk.toByteArray().length, 8);
+    assertEquals(LongsSketch.getEstimate(mem, 1), 0);
+    assertEquals(LongsSketch.getUpperBound(mem, 1), 0);
+    assertTrue(LongsSketch.getInstance(mem).isEmpty());
+    assertEquals(LongsSketch.wrap(mem).getMaximumMapCapacity(), 48);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkDirectMemoryTooSmall() {
+    new LongsSketch(64, new NativeMemory(new byte[(int) LongsSketch.getDirectBytes(8) - 1]));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkDirectResizeWithoutMemoryRequest() {
+    LongsSketch sk = new LongsSketch(64,
+        new NativeMemory(new byte[(int) LongsSketch.getDirectBytes(16)]));
+    for (int i = 0; i < 100; i++) { sk.update(i); }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapSerializedSketch() {
+    LongsSketch sk = new LongsSketch(64);
+    sk.update(1);
+    LongsSketch.wrap(new NativeMemory(sk.toByteArray()));
+  }
+
+  @Test
+  public void checkCompactSerDe() {
+    LongsSketch sk1 = new LongsSketch(64);
+    assertEquals(sk1.toCompactByteArray(), sk1.toByteArray()); //empty
+    for (int i = 0; i < 1000; i++) { sk1.update((i % 97) - 20, 1 + (i % 7)); }
+    sk1.update(Long.MIN_VALUE);
+    sk1.update(Long.MAX_VALUE, 5);
+    byte[] bytes = sk1.toCompactByteArray();
+    assertTrue(bytes.length < (sk1.toByteArray().length / 4));
+    Memory mem = new NativeMemory(bytes);
+    println(PreambleUtil.preambleToString(mem));
+
+    LongsSketch sk2 = LongsSketch.getInstance(mem);
+    assertEquals(sk2.getStreamLength(), sk1.getStreamLength());
+    assertEquals(sk2.getMaximumError(), sk1.getMaximumError());
+    assertEquals(sk2.getNumActiveItems(), sk1.getNumActiveItems());
+    assertEquals(sk2.getCurrentMapCapacity(), sk1.getCurrentMapCapacity());
+    assertEquals(sk2.toCompactByteArray(), bytes);
+    assertEquals(LongsSketch.getStreamLength(mem), sk1.getStreamLength());
+    assertEquals(LongsSketch.getNumActiveItems(mem), sk1.getNumActiveItems());
+    assertEquals(LongsSketch.getMaximumError(mem), sk1.getMaximumError());
+    for (long item = -22; item < 80; item++) {
+      assertEquals(sk2.getEstimate(item), sk1.getEstimate(item));
+      assertEquals(LongsSketch.getEstimate(mem, item), sk1.getEstimate(item));
+      assertEquals(LongsSketch.getUpperBound(mem, item), sk1.getUpperBound(item));
+      assertEquals(LongsSketch.getLowerBound(mem, item), sk1.getLowerBound(item));
+    }
+    assertEquals(LongsSketch.getEstimate(mem, Long.MAX_VALUE), sk1.getEstimate(Long.MAX_VALUE));
+    assertEquals(LongsSketch.getEstimate(mem, Long.MIN_VALUE), sk1.getEstimate(Long.MIN_VALUE));
+  }
+
+  @Test
+  public void checkCompactFromItemsSketch() {
+    ItemsSketch<Long> sk1 = new ItemsSketch<Long>(64);
+    for (long i = 0; i < 40; i++) { sk1.update(i * 1000, i + 1); }
+    Memory mem = new NativeMemory(sk1.toCompactByteArray(new ArrayOfLongsSerDe()));
+    LongsSketch sk2 = LongsSketch.getInstance(mem);
+    assertEquals(sk2.getNumActiveItems(), 40);
+    assertEquals(sk2.getStreamLength(), sk1.getStreamLength());
+    for (long i = 0; i < 40; i++) {
+      assertEquals(sk2.getEstimate(i * 1000), i + 1);
+      assertEquals(LongsSketch.getEstimate(mem, i * 1000), i + 1);
+    }
+    assertEquals(LongsSketch.getEstimate(mem, 1), 0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkCompactNotReadByItemsSketch() {
+    LongsSketch sk = new LongsSketch(64);
+    sk.update(1);
+    ItemsSketch.getInstance(new NativeMemory(sk.toCompactByteArray()), new ArrayOfLongsSerDe());
+  }
+
+  @Test
+  public void checkCompactCorrupt() {
+    LongsSketch sk = new LongsSketch(64);
+    for (int i = 0; i < 20; i++) { sk.update(i * 1000, 1000); }
+    byte[] bytes = sk.toCompactByteArray();
+    NativeMemory mem = new NativeMemory(new byte[bytes.length - 1]);
+    mem.putByteArray(0, bytes, 0, bytes.length - 1);
+    try {
+      LongsSketch.getInstance(mem);
+      fail();
+    } catch (SketchesArgumentException e) {
+      //expected
+    }
+    try {
+      LongsSketch.getEstimate(mem, 19000);
+      fail();
+    } catch (SketchesArgumentException e) {
+      //expected
+    }
+    mem = new NativeMemory(bytes.clone());
+    mem.putByte(8, (byte) 100); //more active items than bytes
+    try {
+      LongsSketch.getInstance(mem);
+      fail();
+    } catch (SketchesArgumentException e) {
+      //expected
+    }
+    mem.putByte(0, (byte) 4); //a compact sketch has one preamble long
+    try {
+      LongsSketch.getNumActiveItems(mem);
+      fail();
+    } catch (SketchesArgumentException e) {
+      //expected
+    }
+    mem = new NativeMemory(bytes.clone());
+    mem.putByte(8, (byte) 0); //delta coded items but no active items
+    try {
+      LongsSketch.getInstance(mem);
+      fail();
+    } catch (SketchesArgumentException e) {
+      //expected
+    }
+    try {
+      LongsSketch.getEstimate(mem, 0);
+      fail();
+    } catch (SketchesArgumentException e) {
+      //expected
+    }
+  }
+
+  @Test
+  public void checkBatchUpdateExact() {
+    int n = 5000;
+    long[] items = new long[n];
+    long[] counts = new long[n];
+    for (int i = 0; i < n; i++) {
+      items[i] = (i * 7919L) % 700;
+      counts[i] = i % 4; //includes zero counts
+    }
+    LongsSketch sk1 = new LongsSketch(1024);
+    for (int i = 0; i < n; i++) { sk1.update(items[i], counts[i]); }
+    LongsSketch sk2 = new LongsSketch(1024);
+    sk2.update(items, counts, 3000);
+    sk2.update(items, counts, 0);
+    for (int i = 3000; i < n; i++) { sk2.update(items[i], counts[i]); }
+    assertEquals(sk2.getStreamLength(), sk1.getStreamLength());
+    assertEquals(sk2.getNumActiveItems(), sk1.getNumActiveItems());
+    assertEquals(sk2.getMaximumError(), 0);
+    assertEquals(sk2.toByteArray(), sk1.toByteArray());
+    LongsSketch sk3 = new LongsSketch(1024);
+    sk3.update(items);
+    sk3.update((long[]) null);
+    assertEquals(sk3.getStreamLength(), n);
+    assertEquals(sk3.getEstimate(0), 8);
+  }
+
+  @Test
+  public void checkBatchUpdateMatchesSequential() {
+    int maxMapSize = 256;
+    int n = 200000;
+    long[] items = new long[n];
+    long[] counts = new long[n];
+    HashMap<Long, Long> trueCounts = new HashMap<Long, Long>();
+    for (int i = 0; i < n; i++) {
+      items[i] = randomGeometricDist(0.005);
+      counts[i] = 1 + (i % 3);
+      Long c = trueCounts.get(items[i]);
+      trueCounts.put(items[i], ((c == null) ? 0 : c) + counts[i]);
+    }
+    LongsSketch heap = new LongsSketch(maxMapSize);
+    LongsSketch direct = new LongsSketch(maxMapSize,
+        new NativeMemory(new byte[(int) LongsSketch.getDirectBytes(maxMapSize)]));
+    for (int i = 0; i < n; i += 10000) {
+      heap.update(Arrays.copyOfRange(items, i, i + 10000),
+          Arrays.copyOfRange(counts, i, i + 10000), 10000);
+      direct.update(Arrays.copyOfRange(items, i, i + 10000),
+          Arrays.copyOfRange(counts, i, i + 10000), 10000);
+    }
+    LongsSketch seq = new LongsSketch(maxMapSize);
+    for (int i = 0; i < n; i++) { seq.update(items[i], counts[i]); }
+    assertEquals(heap.toByteArray(), seq.toByteArray());
+    assertEquals(direct.toByteArray(), heap.toByteArray());
+    assertTrue(heap.getMaximumError() > 0);
+    assertTrue(heap.getMaximumError() <= ((3.5 * heap.getStreamLength()) / maxMapSize));
+    long streamLength = 0;
+    for (Long item : trueCounts.keySet()) {
+      long trueCount = trueCounts.get(item);
+      streamLength += trueCount;
+      assertTrue(heap.getLowerBound(item) <= trueCount);
+      assertTrue(heap.getUpperBound(item) >= trueCount);
+    }
+    assertEquals(heap.getStreamLength(), streamLength);
+    assertTrue(heap.getNumActiveItems() <= heap.getMaximumMapCapacity());
+  }
+
+  @Test
+  public void checkBatchUpdateNegativeCount() {
+    LongsSketch sk = new LongsSketch(64);
+    try {
+      sk.update(new long[] {1, 2, 3}, new long[] {1, -1, 1}, 3);
+      fail();
+    } catch (SketchesArgumentException e) {
+      //expected
+    }
+    assertTrue(sk.isEmpty());
+    sk.update(new long[] {1, 2, 3}, new long[] {1, -1, 1}, 1); //the negative count is beyond n
+    assertEquals(sk.getStreamLength(), 1);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBatchUpdateBadN() {
+    new LongsSketch(64).update(new long[4], new long[3], 4);
+  }
+
   @Test
   public void checkFreqLongsStringSerDe() {
     int minSize = 1 << LG_MIN_MAP_SIZE;
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.NativeMemory;
+
+public class ParallelMergeTest {
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @AfterClass
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void checkLongsWithinBounds() {
+    int maxMapSize = 128;
+    Random rand = new Random(1);
+    Map<Long, Long> trueCounts = new HashMap<>();
+    List<LongsSketch> sketches = new ArrayList<>();
+    long streamLength = 0;
+    for (int i = 0; i < 500; i++) {
+      LongsSketch sketch = (i % 10 == 0)
+          ? new LongsSketch(maxMapSize,
+              new NativeMemory(new byte[(int) LongsSketch.getDirectBytes(maxMapSize)]))
+          : new LongsSketch(maxMapSize);
+      for (int j = 0; j < 200; j++) {
+        long item = geometric(rand, 0.01);
+        long count = 1 + rand.nextInt(3);
+        sketch.update(item, count);
+        Long c = trueCounts.get(item);
+        trueCounts.put(item, ((c == null) ? 0 : c) + count);
+        streamLength += count;
+      }
+      sketches.add(sketch);
+    }
+    sketches.add(null);
+    LongsSketch result = new ParallelMerge(pool, 8).mergeLongs(sketches, maxMapSize);
+
+    LongsSketch expected = new LongsSketch(maxMapSize);
+    for (LongsSketch sketch : sketches) { expected.merge(sketch); }
+    assertEquals(result.getStreamLength(), streamLength);
+    assertEquals(result.getMaximumMapCapacity(), expected.getMaximumMapCapacity());
+    assertTrue(result.getNumActiveItems() <= result.getMaximumMapCapacity());
+    assertTrue(result.getMaximumError() > 0);
+    assertTrue(result.getMaximumError() <= ((3.5 * streamLength) / maxMapSize));
+    for (Map.Entry<Long, Long> entry : trueCounts.entrySet()) {
+      assertTrue(result.getLowerBound(entry.getKey()) <= entry.getValue());
+      assertTrue(result.getUpperBound(entry.getKey()) >= entry.getValue());
+    }
+    //the result can be updated and serialized as any other sketch
+    result.update(1L);
+    LongsSketch copy = LongsSketch.getInstance(new NativeMemory(result.toByteArray()));
+    assertEquals(copy.getEstimate(1L), result.getEstimate(1L));
+  }
+
+  @Test
+  public void checkLongsExact() {
+    List<LongsSketch> sketches = new LinkedList<>(); //not RandomAccess
+    LongsSketch expected = new LongsSketch(1024);
+    for (int i = 0; i < 300; i++) {
+      LongsSketch sketch = new LongsSketch(64);
+      for (int j = 0; j < 20; j++) { sketch.update((i + (100 * j)) % 400, j + 1); }
+      sketches.add(sketch);
+      expected.merge(sketch);
+    }
+    LongsSketch result = new ParallelMerge(pool, 4).mergeLongs(sketches, 1024);
+    assertEquals(result.getMaximumError(), 0);
+    assertEquals(result.getNumActiveItems(), 400);
+    assertEquals(result.getStreamLength(), expected.getStreamLength());
+    for (long item = 0; item < 400; item++) {
+      assertEquals(result.getEstimate(item), expected.getEstimate(item));
+    }
+  }
+
+  @Test
+  public void checkItemsWithinBounds() {
+    int maxMapSize = 64;
+    Random rand = new Random(2);
+    Map<String, Long> trueCounts = new HashMap<>();
+    List<ItemsSketch<String>> sketches = new ArrayList<>();
+    long streamLength = 0;
+    for (int i = 0; i < 300; i++) {
+      ItemsSketch<String> sketch = new ItemsSketch<>(maxMapSize);
+      for (int j = 0; j < 100; j++) {
+        String item = Long.toString(geometric(rand, 0.02));
+        sketch.update(item);
+        Long c = trueCounts.get(item);
+        trueCounts.put(item, ((c == null) ? 0 : c) + 1);
+        streamLength++;
+      }
+      sketches.add(sketch);
+    }
+    ItemsSketch<String> result = new ParallelMerge(pool).mergeItems(sketches, maxMapSize);
+    assertEquals(result.getStreamLength(), streamLength);
+    assertTrue(result.getNumActiveItems() <= result.getMaximumMapCapacity());
+    assertTrue(result.getMaximumError() > 0);
+    assertTrue(result.getMaximumError() <= ((3.5 * streamLength) / maxMapSize));
+    for (Map.Entry<String, Long> entry : trueCounts.entrySet()) {
+      assertTrue(result.getLowerBound(entry.getKey()) <= entry.getValue());
+      assertTrue(result.getUpperBound(entry.getKey()) >= entry.getValue());
+    }
+  }
+
+  @Test
+  public void checkEmpty() {
+    ParallelMerge pm = new ParallelMerge(pool);
+    assertTrue(pm.mergeLongs(new ArrayList<LongsSketch>(), 16).isEmpty());
+    List<ItemsSketch<String>> sketches = new ArrayList<>();
+    sketches.add(null);
+    sketches.add(new ItemsSketch<String>(16));
+    ItemsSketch<String> result = pm.mergeItems(sketches, 16);
+    assertTrue(result.isEmpty());
+    assertEquals(result.getMaximumMapCapacity(), 12);
+  }
+
+  @Test
+  public void checkPurgeTo() {
+    ReversePurgeLongHashMap map = new HeapReversePurgeLongHashMap(16);
+    for (long key = 1; key <= 10; key++) { map.adjustOrPutValue(key, key); }
+    assertEquals(map.purgeTo(10), 0);
+    assertEquals(map.purgeTo(4), 6); //the 5th largest count
+    assertEquals(map.getNumActive(), 4);
+    assertEquals(map.get(7), 1);
+    assertEquals(map.get(6), 0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkNullPool() {
+    new ParallelMerge(null);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBatchSize() {
+    new ParallelMerge(pool, 1);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkMaxMapSize() {
+    new ParallelMerge(pool).mergeLongs(new ArrayList<LongsSketch>(), 100);
+  }
+
+  private static long geometric(Random rand, double prob) {
+    return (long) Math.floor(Math.log(rand.nextDouble()) / Math.log(1 - prob));
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
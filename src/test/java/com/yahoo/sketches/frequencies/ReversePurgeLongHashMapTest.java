@@ -5,11 +5,13 @@
 
 package com.yahoo.sketches.frequencies;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
 
 import org.testng.annotations.Test;
 
 import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.NativeMemory;
 
 public class ReversePurgeLongHashMapTest {
 
@@ -20,9 +22,42 @@ public class ReversePurgeLongHashMapTest {
 
   @Test
   public void checkActiveNull() {
-    ReversePurgeLongHashMap map = new ReversePurgeLongHashMap(4);
+    ReversePurgeLongHashMap map = new HeapReversePurgeLongHashMap(4);
     assertNull(map.getActiveKeys());
     assertNull(map.getActiveValues());
   }
 
+  @Test
+  public void checkDirectMatchesHeap() {
+    ReversePurgeLongHashMap heap = new HeapReversePurgeLongHashMap(8);
+    NativeMemory mem = new NativeMemory(new byte[(int) LongsSketch.getDirectBytes(64)]);
+    mem.putByte(PreambleUtil.LG_CUR_MAP_SIZE_BYTE, (byte) 3);
+    ReversePurgeLongHashMap direct = new DirectReversePurgeLongHashMap(mem);
+    for (int i = 0; i < 2000; i++) {
+      long key = (i * 37) % 45;
+      heap.adjustOrPutValue(key, 1 + (i % 5));
+      direct.adjustOrPutValue(key, 1 + (i % 5));
+      if ((heap.getNumActive() > heap.getCapacity()) && (heap.getLength() < 64)) {
+        heap.resize(2 * heap.getLength());
+        direct.resize(2 * direct.getLength());
+      }
+      if ((i % 500) == 499) {
+        assertEquals(direct.purge(16), heap.purge(16));
+      }
+      assertEquals(direct.getNumActive(), heap.getNumActive());
+    }
+    assertEquals(direct.serializeToString(), heap.serializeToString());
+    assertEquals(direct.toString(), heap.toString());
+    assertEquals(direct.getActiveKeys(), heap.getActiveKeys());
+    assertEquals(direct.getActiveValues(), heap.getActiveValues());
+    assertEquals(mem.getInt(PreambleUtil.ACTIVE_ITEMS_INT), heap.getNumActive());
+    assertEquals(new DirectReversePurgeLongHashMap(mem).serializeToString(),
+        heap.serializeToString());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkDirectCorruptLgLength() {
+    new DirectReversePurgeLongHashMap(new NativeMemory(new byte[1024]));
+  }
+
 }
@@ -26,7 +26,7 @@ public class StressTestHashMap {
         values[i] = (i < capacity / 2) ? n : 1;
       }
 
-      ReversePurgeLongHashMap hashmap = new ReversePurgeLongHashMap(capacity);
+      ReversePurgeLongHashMap hashmap = new HeapReversePurgeLongHashMap(capacity);
       long timePerAdjust = timeOneHashMap(hashmap, keys, values, (int) (.75 * capacity));
       System.out.format("%s\t%d\t%d%n", hashmap.getClass().getSimpleName(), capacity, timePerAdjust);
     }
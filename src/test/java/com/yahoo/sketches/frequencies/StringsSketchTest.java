@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.frequencies;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.ArrayOfLongsSerDe;
+import com.yahoo.sketches.ArrayOfStringsSerDe;
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.frequencies.ItemsSketch.Row;
+import com.yahoo.sketches.memory.NativeMemory;
+
+public class StringsSketchTest {
+
+  @Test
+  public void checkExactMatchesItemsSketch() {
+    StringsSketch sk1 = new StringsSketch(256);
+    ItemsSketch<String> sk2 = new ItemsSketch<String>(256);
+    for (int i = 0; i < 1000; i++) {
+      String item = "itemé中" + (i % 150); //multi-byte UTF-8
+      sk1.update(item, 1 + (i % 3));
+      sk2.update(item, 1 + (i % 3));
+    }
+    sk1.update(null);
+    sk1.update("zero", 0);
+    assertEquals(sk1.getNumActiveItems(), 150);
+    assertEquals(sk1.getStreamLength(), sk2.getStreamLength());
+    assertEquals(sk1.getMaximumError(), 0);
+    assertEquals(sk1.getCurrentMapCapacity(), sk2.getCurrentMapCapacity());
+    for (int i = 0; i < 150; i++) {
+      String item = "itemé中" + i;
+      assertEquals(sk1.getEstimate(item), sk2.getEstimate(item));
+      assertEquals(sk1.getLowerBound(item), sk2.getLowerBound(item));
+    }
+    assertEquals(sk1.getEstimate("nope"), 0);
+    assertEquals(sk1.getUpperBound(null), 0);
+    Row<String>[] rows1 = sk1.getFrequentItems(ErrorType.NO_FALSE_POSITIVES);
+    Row<String>[] rows2 = sk2.getFrequentItems(ErrorType.NO_FALSE_POSITIVES);
+    assertEquals(rows1.length, 150);
+    for (int i = 0; i < rows1.length; i++) {
+      assertEquals(rows1[i].getEstimate(), rows2[i].getEstimate());
+      assertEquals(sk2.getEstimate(rows1[i].getItem()), rows1[i].getEstimate());
+    }
+  }
+
+  @Test
+  public void checkPurgesWithinBounds() {
+    int maxMapSize = 128;
+    StringsSketch sk = new StringsSketch(maxMapSize);
+    Map<String, Long> trueCounts = new HashMap<>();
+    Random rand = new Random(1);
+    long streamLength = 0;
+    for (int i = 0; i < 100000; i++) {
+      long n = (long) Math.floor(Math.log(rand.nextDouble()) / Math.log(1 - 0.002));
+      String item = "http://example.com/" + n + ((n % 2 == 0) ? "/a/long/path" : "");
+      sk.update(item);
+      Long c = trueCounts.get(item);
+      trueCounts.put(item, (c == null) ? 1 : c + 1);
+      streamLength++;
+    }
+    assertEquals(sk.getStreamLength(), streamLength);
+    assertTrue(sk.getMaximumError() > 0);
+    assertTrue(sk.getMaximumError() <= ((3.5 * streamLength) / maxMapSize));
+    assertTrue(sk.getNumActiveItems() <= sk.getMaximumMapCapacity());
+    for (Map.Entry<String, Long> entry : trueCounts.entrySet()) {
+      assertTrue(sk.getLowerBound(entry.getKey()) <= entry.getValue());
+      assertTrue(sk.getUpperBound(entry.getKey()) >= entry.getValue());
+    }
+    //the key store has been compacted and still decodes every tracked item
+    assertTrue(sk.getFrequentItems(ErrorType.NO_FALSE_NEGATIVES).length > 0);
+    for (Row<String> row : sk.getFrequentItems(ErrorType.NO_FALSE_NEGATIVES)) {
+      assertTrue(trueCounts.containsKey(row.getItem()));
+      assertEquals(sk.getEstimate(row.getItem()), row.getEstimate());
+      assertTrue(row.getLowerBound() <= trueCounts.get(row.getItem()));
+    }
+  }
+
+  @Test
+  public void checkSerDeCompatibleWithItemsSketch() {
+    StringsSketch sk1 = new StringsSketch(64);
+    for (int i = 0; i < 5000; i++) { sk1.update("s" + ((i * 31) % 97), 1 + (i % 5)); }
+    sk1.update("über", 7);
+    byte[] bytes = sk1.toByteArray();
+
+    ItemsSketch<String> sk2 =
+        ItemsSketch.getInstance(new NativeMemory(bytes), new ArrayOfStringsSerDe());
+    assertEquals(sk2.getStreamLength(), sk1.getStreamLength());
+    assertEquals(sk2.getMaximumError(), sk1.getMaximumError());
+    assertEquals(sk2.getNumActiveItems(), sk1.getNumActiveItems());
+    for (Row<String> row : sk1.getFrequentItems(ErrorType.NO_FALSE_NEGATIVES)) {
+      assertEquals(sk2.getEstimate(row.getItem()), row.getEstimate());
+    }
+    assertEquals(sk2.getEstimate("über"), sk1.getEstimate("über"));
+
+    StringsSketch sk3 = StringsSketch.getInstance(
+        new NativeMemory(sk2.toByteArray(new ArrayOfStringsSerDe())));
+    assertEquals(sk3.getStreamLength(), sk1.getStreamLength());
+    assertEquals(sk3.getMaximumError(), sk1.getMaximumError());
+    assertEquals(sk3.getNumActiveItems(), sk1.getNumActiveItems());
+    for (Row<String> row : sk1.getFrequentItems(ErrorType.NO_FALSE_NEGATIVES)) {
+      assertEquals(sk3.getEstimate(row.getItem()), row.getEstimate());
+    }
+    //the same sketch state serializes to the same length
+    assertEquals(sk3.toByteArray().length, bytes.length);
+  }
+
+  @Test
+  public void checkCompactSerDe() {
+    StringsSketch sk1 = new StringsSketch(64);
+    for (int i = 0; i < 5000; i++) { sk1.update("s" + ((i * 31) % 97), 1 + (i % 5)); }
+    byte[] bytes = sk1.toCompactByteArray();
+    assertTrue(bytes.length < sk1.toByteArray().length);
+    ItemsSketch<String> sk2 =
+        ItemsSketch.getInstance(new NativeMemory(bytes), new ArrayOfStringsSerDe());
+    StringsSketch sk3 = StringsSketch.getInstance(
+        new NativeMemory(sk2.toCompactByteArray(new ArrayOfStringsSerDe())));
+    assertEquals(sk3.getStreamLength(), sk1.getStreamLength());
+    assertEquals(sk3.getMaximumError(), sk1.getMaximumError());
+    assertEquals(sk3.getNumActiveItems(), sk1.getNumActiveItems());
+    for (Row<String> row : sk1.getFrequentItems(ErrorType.NO_FALSE_NEGATIVES)) {
+      assertEquals(sk2.getEstimate(row.getItem()), row.getEstimate());
+      assertEquals(sk3.getEstimate(row.getItem()), row.getEstimate());
+    }
+    assertEquals(new StringsSketch(8).toCompactByteArray().length, 8);
+  }
+
+  @Test
+  public void checkEmptySerDe() {
+    StringsSketch sk = new StringsSketch(32);
+    byte[] bytes = sk.toByteArray();
+    assertEquals(bytes.length, 8);
+    StringsSketch sk2 = StringsSketch.getInstance(new NativeMemory(bytes));
+    assertTrue(sk2.isEmpty());
+    assertEquals(sk2.getMaximumMapCapacity(), 24);
+    assertTrue(ItemsSketch.getInstance(new NativeMemory(bytes), new ArrayOfStringsSerDe())
+        .isEmpty());
+  }
+
+  @Test
+  public void checkMergeAndReset() {
+    StringsSketch sk1 = new StringsSketch(32);
+    StringsSketch sk2 = new StringsSketch(32);
+    for (int i = 0; i < 300; i++) {
+      sk1.update("a" + (i % 40));
+      sk2.update("a" + (((i % 60) < 30) ? 0 : (i % 60)), 2); //skewed, so it is not purged empty
+    }
+    long streamLength = sk1.getStreamLength() + sk2.getStreamLength();
+    assertTrue(!sk2.isEmpty());
+    sk1.merge(sk2).merge(null).merge(new StringsSketch(8));
+    assertEquals(sk1.getStreamLength(), streamLength);
+    assertTrue(sk1.getNumActiveItems() <= sk1.getMaximumMapCapacity());
+    long trueCount = 8 + (150 * 2); //of "a0"
+    assertTrue(sk1.getLowerBound("a0") <= trueCount);
+    assertTrue(sk1.getUpperBound("a0") >= trueCount);
+    println(sk1.toString());
+    sk1.reset();
+    assertTrue(sk1.isEmpty());
+    assertEquals(sk1.getStreamLength(), 0);
+    assertEquals(sk1.getMaximumError(), 0);
+  }
+
+  @Test
+  public void checkKeyStore() {
+    ReversePurgeStringHashMap map = new ReversePurgeStringHashMap(16);
+    assertNull(map.getActiveKeys());
+    byte[] bytes = "0123456789".getBytes();
+    for (int i = 0; i < 10; i++) { map.adjustOrPutValue(i, bytes, i, 10 - i, i + 1); }
+    assertEquals(map.getStoreBytes(), 40 + 55);
+    map.adjustAllValuesBy(-8);
+    map.keepOnlyPositiveCounts(); //more than half of the key store is deleted and compacted
+    assertEquals(map.getNumActive(), 2);
+    assertEquals(map.getStoreBytes(), 4 + 2 + 4 + 1);
+    assertEquals(map.get(8), 1);
+    assertEquals(map.get(9), 2);
+    ReversePurgeStringHashMap.Iterator iter = map.iterator();
+    while (iter.next()) {
+      assertEquals(iter.getKey(), (iter.getFingerprint() == 8) ? "89" : "9");
+    }
+    map.resize(32);
+    assertEquals(map.get(8), 1);
+    assertTrue(map.toString().contains("89"));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkNegativeCount() {
+    new StringsSketch(8).update("a", -1);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrongSerDe() {
+    ItemsSketch<Long> sk = new ItemsSketch<Long>(8);
+    sk.update(1L);
+    StringsSketch.getInstance(new NativeMemory(sk.toByteArray(new ArrayOfLongsSerDe())));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkCorruptItemLength() {
+    StringsSketch sk = new StringsSketch(8);
+    sk.update("abc");
+    byte[] bytes = sk.toByteArray();
+    new NativeMemory(bytes).putInt(40, 100);
+    StringsSketch.getInstance(new NativeMemory(bytes));
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
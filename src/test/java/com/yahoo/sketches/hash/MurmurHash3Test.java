@@ -7,10 +7,15 @@ package com.yahoo.sketches.hash;
 import static com.yahoo.sketches.hash.MurmurHash3.hash;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.yahoo.sketches.hash.MurmurHash3;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
 
 /**
  * Tests the MurmurHash3 against specific, known hash results given known
@@ -212,7 +217,47 @@ public class MurmurHash3Test {
     println(com.yahoo.sketches.TestingUtil.longToHexBytes(out[0]));
     println(com.yahoo.sketches.TestingUtil.longToHexBytes(out[1]));
   }
-  
+
+  @Test
+  public void checkSingleLongMatchesLongArr() {
+    long[] keys = {0L, 1L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 0X0807060504030201L};
+    long[] seeds = {0L, 9001L, -1L};
+    long[] out = new long[2];
+    for (long seed : seeds) {
+      for (long key : keys) {
+        long[] expected = hash(new long[] {key}, seed);
+        Assert.assertEquals(MurmurHash3.hashToLong(key, seed), expected[0]);
+        Assert.assertSame(hash(key, seed, out), out);
+        Assert.assertEquals(out, expected);
+      }
+    }
+  }
+
+
+  @Test
+  public void checkMemoryAndByteBufferRegionsMatchByteArr() {
+    byte[] all = "The quick brown fox jumps over the lazy dog, again and again".getBytes(UTF_8);
+    int pad = 5;
+    byte[] padded = new byte[all.length + (2 * pad)];
+    System.arraycopy(all, 0, padded, pad, all.length);
+    Memory mem = new NativeMemory(padded);
+    ByteBuffer bbLE = ByteBuffer.wrap(padded).order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer bbBE = ByteBuffer.allocateDirect(padded.length).order(ByteOrder.BIG_ENDIAN);
+    bbBE.put(padded);
+    
+    long[] hashOut = new long[2];
+    for (int len = 1; len <= all.length; len++) { //all remainders
+      byte[] key = new byte[len];
+      System.arraycopy(all, 0, key, 0, len);
+      long[] expected = hash(key, 9001L);
+      Assert.assertEquals(hash(mem, pad, len, 9001L), expected);
+      Assert.assertSame(hash(mem, pad, len, 9001L, hashOut), hashOut);
+      Assert.assertEquals(hashOut, expected);
+      Assert.assertEquals(hash(bbLE, pad, len, 9001L), expected);
+      Assert.assertEquals(hash(bbBE, pad, len, 9001L), expected);
+    }
+    Assert.assertEquals(bbBE.position(), padded.length); //untouched
+  }
   
   //Helper methods
   private static long[] stringToLongs(String in) {
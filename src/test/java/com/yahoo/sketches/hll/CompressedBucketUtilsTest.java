@@ -18,6 +18,23 @@ public class CompressedBucketUtilsTest {
     assertEquals(buckets[0], (byte) 0);
   }
   
+  @Test
+  public void checkIteratorIncludesBucketsAtCurrMin() {
+    byte[] buckets = new byte[] {(byte) 0x01, (byte) 0x20};
+    BucketIterator iter = getBucketIterator(buckets, 0, new OnHeapHash(16));
+    int count = 0;
+    while (iter.next()) { count++; }
+    assertEquals(count, 2);
+
+    iter = getBucketIterator(buckets, 3, new OnHeapHash(16));
+    byte[] expected = {3, 4, 5, 3};
+    count = 0;
+    while (iter.next()) {
+      assertEquals(iter.getValue(), expected[iter.getKey()]);
+      count++;
+    }
+    assertEquals(count, 4);
+  }
   
   @Test
   public void printlnTest() {
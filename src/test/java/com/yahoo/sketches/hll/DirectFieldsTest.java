@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.hll;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+public class DirectFieldsTest {
+
+  @Test
+  public void checkMatchesHeapSketch() {
+    int lgK = 12;
+    int n = 20000;
+    HllSketch heap = HllSketch.builder().setLogBuckets(lgK).setDenseMode(true).build();
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(lgK)]);
+    HllSketch direct = HllSketch.builder().setLogBuckets(lgK).setDenseMode(true)
+        .setMemory(mem).build();
+    for (int i = 0; i < n; i++) {
+      heap.update(i);
+      direct.update(i);
+    }
+    assertEquals(direct.getEstimate(), heap.getEstimate());
+    assertEquals(direct.getUpperBound(2), heap.getUpperBound(2));
+    assertEquals(direct.getLowerBound(2), heap.getLowerBound(2));
+    assertEquals(direct.toByteArray(), heap.toByteArray());
+    assertEquals(direct.toByteArrayNoPreamble(), heap.toByteArrayNoPreamble());
+    assertEquals(direct.asCompact().getEstimate(), heap.getEstimate());
+  }
+
+  @Test
+  public void checkWrapSharesMemory() {
+    int lgK = 10;
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(lgK)]);
+    HllSketch direct = HllSketch.builder().setLogBuckets(lgK).setDenseMode(true)
+        .setMemory(mem).build();
+    for (int i = 0; i < 1000; i++) { direct.update(i); }
+
+    HllSketch wrapped = HllSketch.wrap(mem);
+    assertEquals(wrapped.getEstimate(), direct.getEstimate());
+    for (int i = 1000; i < 2000; i++) { wrapped.update(i); }
+    //the estimator state is per sketch, so the updates show in a new wrap
+    HllSketch rewrapped = HllSketch.wrap(mem);
+    assertEquals(rewrapped.getEstimate(), wrapped.getEstimate());
+    assertEquals(rewrapped.getLowerBound(2), wrapped.getLowerBound(2));
+    assertTrue(rewrapped.getEstimate() > direct.getEstimate());
+    for (int i = 2000; i < 3000; i++) { rewrapped.update(i); }
+    assertEquals(HllSketch.wrap(mem).getEstimate(), rewrapped.getEstimate());
+
+    //a dense image is the same as its serialized form, so it can be wrapped directly
+    HllSketch fromBytes = HllSketch.wrap(new NativeMemory(direct.toByteArray()));
+    assertEquals(fromBytes.getEstimate(), rewrapped.getEstimate());
+  }
+
+  @Test
+  public void checkUnionInMemory() {
+    int lgK = 10;
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(lgK)]);
+    HllSketch direct = HllSketch.builder().setLogBuckets(lgK).setDenseMode(true)
+        .setMemory(mem).build();
+    HllSketch heap = HllSketch.builder().setLogBuckets(lgK).build();
+    HllSketch expected = HllSketch.builder().setLogBuckets(lgK).setDenseMode(true).build();
+    for (int i = 0; i < 3000; i++) {
+      direct.update(i);
+      expected.update(i);
+    }
+    for (int i = 2000; i < 5000; i++) {
+      heap.update(i);
+      expected.update(i);
+    }
+    direct.union(heap);
+    assertEquals(direct.getEstimate(), expected.getEstimate());
+    assertEquals(HllSketch.wrap(mem).getEstimate(), expected.getEstimate());
+
+    HllSketch other = HllSketch.builder().setLogBuckets(lgK).build();
+    other.union(direct);
+    assertEquals(other.getEstimate(), expected.getEstimate());
+  }
+
+  @Test
+  public void checkHeapify() {
+    int lgK = 10;
+    HllSketchBuilder bldr = HllSketch.builder().setLogBuckets(lgK);
+    HllSketch[] sketches = {
+        bldr.copy().build(),
+        bldr.copy().setDenseMode(true).build(),
+        bldr.copy().setCompressedDense(true).setDenseMode(true).build(),
+        bldr.copy().setMemory(new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(lgK)]))
+            .build()
+    };
+    for (int n : new int[] {0, 10, 100, 10000}) {
+      for (HllSketch sketch : sketches) {
+        for (int i = 0; i < n; i++) { sketch.update(i); }
+        HllSketch heapified = HllSketch.heapify(new NativeMemory(sketch.toByteArray()));
+        assertEquals(heapified.getEstimate(), sketch.getEstimate());
+        assertEquals(heapified.inversePowerOf2Sum(), sketch.inversePowerOf2Sum());
+        heapified.update(-1);
+
+        HllSketch compact = sketch.asCompact();
+        assertEquals(HllSketch.heapify(new NativeMemory(compact.toByteArray())).getEstimate(),
+            compact.getEstimate());
+      }
+    }
+  }
+
+  @Test
+  public void checkBuilder() {
+    HllSketchBuilder bldr = HllSketch.builder();
+    assertNull(bldr.getMemory());
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(12)]);
+    bldr.setMemory(mem);
+    assertSame(bldr.getMemory(), mem);
+    assertSame(bldr.copy().getMemory(), mem);
+    println(bldr.toString());
+    assertEquals(mem.getByte(3), 0); //not yet built
+    bldr.build();
+    assertEquals(Preamble.fromMemory(mem).getLogConfigK(), 12);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkMemoryTooSmall() {
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10) - 1]);
+    HllSketch.builder().setLogBuckets(10).setDenseMode(true).setMemory(mem).build();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkCompressedDenseInMemory() {
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)]);
+    HllSketch.builder().setLogBuckets(10).setCompressedDense(true).setMemory(mem).build();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkHipEstimatorInMemory() {
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)]);
+    HllSketch.builder().setLogBuckets(10).setHipEstimator(true).setMemory(mem).build();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapCompressed() {
+    HllSketch sketch = HllSketch.builder().setLogBuckets(10).setCompressedDense(true)
+        .setDenseMode(true).build();
+    HllSketch.wrap(new NativeMemory(sketch.toByteArray()));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapWrongFamily() {
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)]);
+    HllSketch.builder().setLogBuckets(10).setDenseMode(true).setMemory(mem).build();
+    mem.putByte(2, (byte) 1);
+    HllSketch.wrap(mem);
+  }
+
+  @Test
+  public void checkToCompactSharesMemory() {
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)]);
+    Fields fields = DirectFields.initialize(Preamble.fromLogK(10), mem);
+    assertSame(fields.toCompact(), fields);
+    assertTrue(fields.numBytesToSerialize() == 1 + 1024);
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
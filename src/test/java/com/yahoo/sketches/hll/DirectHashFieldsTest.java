@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.hll;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+public class DirectHashFieldsTest {
+
+  @Test
+  public void checkConvertsToDenseInPlace() {
+    int lgK = 10;
+    Preamble preamble = Preamble.fromLogK(lgK);
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(lgK)]);
+    Fields fields = DirectHashFields.initialize(preamble, mem);
+    int growthBound = 3 * (HashUtils.getMaxHashSize(lgK) >>> 2);
+
+    for (int i = 0; i < growthBound - 1; i++) {
+      assertSame(fields.updateBucket(i, (byte) 1, Fields.NOOP_CB), fields);
+    }
+    assertEquals(mem.getByte(8), Fields.HASH_SPARSE_VERSION);
+    Fields dense = fields.updateBucket(growthBound - 1, (byte) 2, Fields.NOOP_CB);
+    assertTrue(dense instanceof DirectFields);
+    assertEquals(mem.getByte(8), Fields.NAIVE_DENSE_VERSION);
+
+    int count = 0;
+    BucketIterator iter = dense.getBucketIterator();
+    while (iter.next()) {
+      assertEquals(iter.getValue(), iter.getKey() == growthBound - 1 ? 2 : 1);
+      count++;
+    }
+    assertEquals(count, growthBound);
+    assertTrue(HllSketch.wrap(mem).getEstimate() > 0);
+  }
+
+  @Test
+  public void checkWrapCountsElements() {
+    int lgK = 12;
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(lgK)]);
+    HllSketch direct = HllSketch.builder().setLogBuckets(lgK).setMemory(mem).build();
+    HllSketch heap = HllSketch.builder().setLogBuckets(lgK).build();
+    for (int i = 0; i < 100; i++) {
+      direct.update(i);
+      heap.update(i);
+    }
+
+    //finish filling through a second wrapper, which must convert to dense at the same point
+    HllSketch wrapped = HllSketch.wrap(mem);
+    for (int i = 100; i < 5000; i++) {
+      wrapped.update(i);
+      heap.update(i);
+    }
+    assertEquals(mem.getByte(8), Fields.NAIVE_DENSE_VERSION);
+    assertEquals(wrapped.getEstimate(), heap.getEstimate());
+    assertEquals(HllSketch.wrap(mem).getEstimate(), heap.getEstimate());
+  }
+
+  @Test
+  public void checkWrapsSparseHeapImage() {
+    int lgK = 12;
+    HllSketch heap = HllSketch.builder().setLogBuckets(lgK).build();
+    for (int i = 0; i < 20; i++) { heap.update(i); }
+    byte[] image = heap.toByteArray();
+    int tableLen = (image.length - 9) >>> 2;
+    assertEquals(image[8], Fields.HASH_SPARSE_VERSION);
+    assertTrue(tableLen < HashUtils.getMaxHashSize(lgK));
+    assertEquals(1 << image[Preamble.LG_HASH_TABLE_LEN_BYTE], tableLen);
+
+    //whatever follows the image in the Memory must not be read as part of the table
+    byte[] bytes = new byte[HllSketch.getMaxUpdateSketchBytes(lgK)];
+    Arrays.fill(bytes, (byte) 0x55);
+    System.arraycopy(image, 0, bytes, 0, image.length);
+    Memory mem = new NativeMemory(bytes);
+    HllSketch wrapped = HllSketch.wrap(mem);
+    assertEquals(wrapped.toByteArray(), image);
+
+    //grows in place and then converts to dense, ending up with the same buckets as the heap sketch
+    for (int i = 20; i < 5000; i++) {
+      wrapped.update(i);
+      heap.update(i);
+      if (i == 60) {
+        assertEquals(mem.getByte(8), Fields.HASH_SPARSE_VERSION);
+        assertTrue((1 << mem.getByte(Preamble.LG_HASH_TABLE_LEN_BYTE)) > tableLen);
+      }
+    }
+    assertEquals(mem.getByte(8), Fields.NAIVE_DENSE_VERSION);
+    assertEquals(wrapped.toByteArray(), heap.toByteArray());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapRejectsBadTableLength() {
+    HllSketch heap = HllSketch.builder().setLogBuckets(12).build();
+    heap.update(1);
+    byte[] bytes = new byte[HllSketch.getMaxUpdateSketchBytes(12)];
+    byte[] image = heap.toByteArray();
+    System.arraycopy(image, 0, bytes, 0, image.length);
+    bytes[Preamble.LG_HASH_TABLE_LEN_BYTE] = 33; //would be 2 if not checked
+    HllSketch.wrap(new NativeMemory(bytes));
+  }
+
+  @Test
+  public void checkSerialization() {
+    Preamble preamble = Preamble.fromLogK(10);
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)]);
+    Fields fields = DirectHashFields.initialize(preamble, mem);
+    fields.updateBucket(3, (byte) 5, Fields.NOOP_CB);
+    int tableBytes = HashUtils.getMaxHashSize(10) << 2;
+    assertEquals(fields.numBytesToSerialize(), 1 + tableBytes);
+
+    byte[] bytes = new byte[fields.numBytesToSerialize() + 2];
+    assertEquals(fields.intoByteArray(bytes, 2), bytes.length);
+    assertEquals(bytes[2], Fields.HASH_SPARSE_VERSION);
+
+    Fields compact = fields.toCompact();
+    assertTrue(compact instanceof OnHeapImmutableCompactFields);
+    BucketIterator iter = compact.getBucketIterator();
+    assertTrue(iter.next());
+    assertEquals(iter.getKey(), 3);
+    assertEquals(iter.getValue(), 5);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkArrayTooSmall() {
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)]);
+    Fields fields = DirectHashFields.initialize(Preamble.fromLogK(10), mem);
+    fields.intoByteArray(new byte[10], 0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkMemoryTooSmall() {
+    Memory mem = new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10) - 1]);
+    DirectHashFields.initialize(Preamble.fromLogK(10), mem);
+  }
+
+  @Test
+  public void checkRejectedMemoryUnchanged() {
+    byte[] bytes = new byte[HllSketch.getMaxUpdateSketchBytes(12) - 1];
+    Arrays.fill(bytes, (byte) 0x55);
+    try {
+      DirectHashFields.initialize(Preamble.fromLogK(12), new NativeMemory(bytes));
+      fail();
+    } catch (SketchesArgumentException e) {
+      //expected
+    }
+    for (byte b : bytes) { assertEquals(b, (byte) 0x55); }
+  }
+
+}
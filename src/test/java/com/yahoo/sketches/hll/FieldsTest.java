@@ -16,6 +16,8 @@ import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.yahoo.sketches.memory.NativeMemory;
+
 /**
  */
 public class FieldsTest
@@ -28,7 +30,9 @@ public class FieldsTest
     return new Object[][]{
         {new OnHeapFields(preamble)},
         { new OnHeapHashFields(preamble, 16, 0x2<<preamble.getLogConfigK(), new DenseFieldsFactory()) },
-        { new OnHeapCompressedFields(preamble) }
+        { new OnHeapCompressedFields(preamble) },
+        { DirectFields.initialize(preamble, new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)])) },
+        { DirectHashFields.initialize(preamble, new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)])) }
     };
   }
 
@@ -12,6 +12,9 @@ import org.testng.annotations.Test;
 
 import java.util.Arrays;
 
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.NativeMemory;
+
 public class HllSketchTest
 {
   @Test(dataProvider = "sketches")
@@ -38,6 +41,56 @@ public class HllSketchTest
     Assert.assertEquals(unioned.inversePowerOf2Sum(), sketch.inversePowerOf2Sum(), 0.0000001);
   }
 
+  @Test(dataProvider = "sketches")
+  public void checkEstimatorStateMatchesScan(HllSketch sketch) {
+    HllSketch other = HllSketch.builder().setPreamble(sketch.getPreamble()).build();
+    for (int i = 0; i < 1000; ++i) {
+      sketch.update(i);
+      other.update(-i);
+    }
+    sketch.union(other);
+    assertScanned(sketch);
+    assertScanned(other.union(sketch));
+  }
+
+  private static void assertScanned(HllSketch sketch) {
+    //a new sketch computes its estimator state by scanning the buckets
+    HllSketch scanned = HllSketch.heapify(new NativeMemory(sketch.toByteArray()));
+    Assert.assertEquals(sketch.inversePowerOf2Sum(), scanned.inversePowerOf2Sum());
+    Assert.assertEquals(sketch.numBucketsAtZero(), scanned.numBucketsAtZero());
+    Assert.assertEquals(sketch.getEstimate(), scanned.getEstimate());
+  }
+
+  @Test(dataProvider = "sketches")
+  public void checkEstimateFromMemory(HllSketch sketch) {
+    assertMemoryEstimates(sketch);
+    for (int i = 0; i < 20; ++i) {
+      sketch.update(i);
+    }
+    assertMemoryEstimates(sketch);
+    assertMemoryEstimates(sketch.asCompact());
+    for (int i = 0; i < 100000; ++i) {
+      sketch.update(i);
+    }
+    assertMemoryEstimates(sketch);
+    assertMemoryEstimates(sketch.asCompact());
+  }
+
+  private static void assertMemoryEstimates(HllSketch sketch) {
+    NativeMemory mem = new NativeMemory(sketch.toByteArray());
+    HllSketch heapified = HllSketch.heapify(mem);
+    Assert.assertEquals(HllSketch.getEstimate(mem), heapified.getEstimate(), 1e-9);
+    Assert.assertEquals(HllSketch.getUpperBound(mem, 2.0), heapified.getUpperBound(2.0), 1e-9);
+    Assert.assertEquals(HllSketch.getLowerBound(mem, 2.0), heapified.getLowerBound(2.0), 1e-9);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkEstimateFromMemoryWrongFamily() {
+    byte[] bytes = HllSketch.builder().build().toByteArray();
+    bytes[2] = 3; //theta family
+    HllSketch.getEstimate(new NativeMemory(bytes));
+  }
+
   @Test
   public void testEmptyToByteArray() {
     HllSketch sketch = HllSketch.builder().setLogBuckets(10).setDenseMode(true).build();
@@ -71,7 +124,10 @@ public class HllSketchTest
         {bob.copy().setDenseMode(true).build()},
         {bob.copy().setCompressedDense(true).build()},
         {new HllSketch(new OnHeapHashFields(preamble, 16, 0x2<<preamble.getLogConfigK(), new DenseFieldsFactory()))},
-        {new HllSketch(new OnHeapCompressedFields(preamble))}
+        {new HllSketch(new OnHeapCompressedFields(preamble))},
+        {bob.copy().setMemory(new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)])).build()},
+        {bob.copy().setDenseMode(true)
+            .setMemory(new NativeMemory(new byte[HllSketch.getMaxUpdateSketchBytes(10)])).build()}
     };
   }
   
@@ -94,6 +150,25 @@ public class HllSketchTest
     assertEquals(hll.getEstimate(), 0, 0.0);
   }
   
+  @Test
+  public void checkMemoryRegionUpdate() {
+    int lgK = 12;
+    HllSketch hll1 = HllSketch.builder().setLogBuckets(lgK).build();
+    HllSketch hll2 = HllSketch.builder().setLogBuckets(lgK).build();
+    byte[] arr = new byte[1000];
+    for (int i = 0; i < arr.length; i++) { arr[i] = (byte) i; }
+    NativeMemory mem = new NativeMemory(arr);
+    hll1.update(null, 0, 10);
+    hll1.update(mem, 0, 0);
+    assertEquals(hll1.getEstimate(), 0, 0.0);
+    
+    for (int i = 0; i < 990; i++) {
+      hll1.update(mem, i, 10);
+      hll2.update(Arrays.copyOfRange(arr, i, i + 10));
+    }
+    assertEquals(hll1.toByteArray(), hll2.toByteArray());
+  }
+  
   @Test
   public void checkLongUpdate() {
     int lgK = 12;
@@ -241,6 +241,16 @@ public class CommonTest {
     long newLong = mem.getLong(0);
     assertEquals(oldLong, 500);
     assertEquals(newLong, 501);
+    
+    mem.putInt(0, 500);
+    assertFalse(mem.compareAndSwapInt(0, 499, 502));
+    assertTrue(mem.compareAndSwapInt(0, 500, 502));
+    assertEquals(mem.getIntVolatile(0), 502);
+    
+    mem.putLong(0, 500);
+    assertFalse(mem.compareAndSwapLong(0, 499, 502));
+    assertTrue(mem.compareAndSwapLong(0, 500, 502));
+    assertEquals(mem.getLongVolatile(0), 502);
   }
   
   //enable println to visually check
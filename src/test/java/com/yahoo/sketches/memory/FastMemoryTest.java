@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.memory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+public class FastMemoryTest {
+
+  @Test
+  public void checkHeapMemory() {
+    checkAccessors(new NativeMemory(new byte[256]));
+    checkAccessors(new NativeMemory(new long[32]));
+    checkAccessors(new NativeMemory(ByteBuffer.allocate(256)));
+  }
+
+  @Test
+  public void checkDirectMemory() {
+    NativeMemory mem = new AllocMemory(256);
+    checkAccessors(mem);
+    mem.freeMemory();
+    checkAccessors(new NativeMemory(ByteBuffer.allocateDirect(256)));
+  }
+
+  @Test
+  public void checkRegions() {
+    NativeMemory mem = new AllocMemory(1024);
+    Memory region = new MemoryRegion(new MemoryRegion(mem, 64, 512), 128, 256);
+    checkAccessors(region);
+    FastMemory fastMem = FastMemory.wrap(region);
+    fastMem.putLong(8, 42L);
+    assertEquals(mem.getLong(64 + 128 + 8), 42L);
+    mem.freeMemory();
+    checkAccessors(new MemoryRegion(new NativeMemory(new long[64]), 8, 256));
+  }
+
+  private static void checkAccessors(Memory mem) {
+    FastMemory fastMem = FastMemory.wrap(mem);
+    assertSame(fastMem.getMemory(), mem);
+    assertEquals(fastMem.getCapacity(), mem.getCapacity());
+    fastMem.putByte(1, (byte) -3);
+    assertEquals(mem.getByte(1), -3);
+    fastMem.putShort(2, (short) 1234);
+    assertEquals(mem.getShort(2), 1234);
+    fastMem.putInt(4, 123456);
+    assertEquals(mem.getInt(4), 123456);
+    fastMem.putLong(8, -1234567890123L);
+    assertEquals(mem.getLong(8), -1234567890123L);
+    fastMem.putDouble(16, 0.25);
+    assertEquals(mem.getDouble(16), 0.25);
+    mem.putLong(248, 7L);
+    assertEquals(fastMem.getLong(248), 7L);
+    assertEquals(fastMem.getByte(1), -3);
+    assertEquals(fastMem.getShort(2), 1234);
+    assertEquals(fastMem.getInt(4), 123456);
+    assertEquals(fastMem.getDouble(16), 0.25);
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.memory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.SketchesReadOnlyException;
+
+public class ReadOnlyMemoryTest {
+
+  @Test
+  public void checkNativeMemoryView() {
+    NativeMemory mem = new AllocMemory(64);
+    mem.putLong(8, 42L);
+    Memory roMem = mem.asReadOnlyMemory();
+    assertTrue(roMem.isReadOnly());
+    assertFalse(mem.isReadOnly());
+    assertSame(roMem.asReadOnlyMemory(), roMem);
+    assertEquals(roMem.getCapacity(), 64);
+    assertEquals(roMem.getLong(8), 42L);
+    mem.putLong(8, 43L); //no copy
+    assertEquals(roMem.getLong(8), 43L);
+    assertNull(roMem.getMemoryRequest());
+    checkMutatorsThrow(roMem);
+    try {
+      ((NativeMemory) roMem).freeMemory();
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+    assertEquals(mem.getLong(8), 43L);
+    mem.freeMemory();
+  }
+
+  @Test
+  public void checkHeapViews() {
+    byte[] arr = new byte[64];
+    arr[3] = 5;
+    NativeMemory roMem = (NativeMemory) new NativeMemory(arr).asReadOnlyMemory();
+    assertEquals(roMem.getByte(3), 5);
+    checkMutatorsThrow(roMem);
+    try {
+      roMem.array();
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+    NativeMemory roBuf =
+        (NativeMemory) new NativeMemory(ByteBuffer.allocate(64)).asReadOnlyMemory();
+    try {
+      roBuf.byteBuffer();
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+  }
+
+  @Test
+  public void checkRegionViews() {
+    NativeMemory mem = new NativeMemory(new long[16]);
+    mem.putLong(40, 7L);
+    MemoryRegion region = new MemoryRegion(mem, 32, 64);
+    Memory roRegion = region.asReadOnlyMemory();
+    assertTrue(roRegion.isReadOnly());
+    assertEquals(roRegion.getLong(8), 7L);
+    assertEquals(roRegion.getCapacity(), 64);
+    checkMutatorsThrow(roRegion);
+    try {
+      ((MemoryRegion) roRegion).reassign(0, 8);
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+
+    //a region of a read-only Memory is read only
+    Memory subRegion = new MemoryRegion(mem.asReadOnlyMemory(), 32, 64);
+    assertTrue(subRegion.isReadOnly());
+    assertEquals(subRegion.getLong(8), 7L);
+    try {
+      subRegion.putLong(8, 1L);
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+  }
+
+  @Test
+  public void checkCopies() {
+    NativeMemory mem = new NativeMemory(new byte[32]);
+    mem.putInt(0, 99);
+    Memory roMem = mem.asReadOnlyMemory();
+    NativeMemory dst = new NativeMemory(new byte[32]);
+    NativeMemory.copy(roMem, 0, dst, 0, 32);
+    assertEquals(dst.getInt(0), 99);
+    try {
+      NativeMemory.copy(dst, 0, roMem, 0, 32);
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+  }
+
+  @Test
+  public void checkFastMemory() {
+    NativeMemory mem = new NativeMemory(new long[4]);
+    mem.putLong(0, 11L);
+    FastMemory fastMem = FastMemory.wrap(mem.asReadOnlyMemory());
+    assertEquals(fastMem.getLong(0), 11L);
+    try {
+      fastMem.putLong(0, 1L);
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+    assertEquals(mem.getLong(0), 11L);
+  }
+
+  private static void checkMutatorsThrow(Memory mem) {
+    int count = 0;
+    try { mem.putLong(0, 1L); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.putByte(0, (byte) 1); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.putDouble(0, 1.0); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.putIntArray(0, new int[1], 0, 1); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.clear(); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.fill((byte) 1); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.setBits(0, (byte) 1); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.clearBits(0, (byte) 1); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.copy(0, 16, 8); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.getAndAddLong(0, 1L); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.compareAndSwapLong(0, 0L, 1L); } catch (SketchesReadOnlyException e) { count++; }
+    try { mem.setMemoryRequest(null); } catch (SketchesReadOnlyException e) { count++; }
+    assertEquals(count, 12);
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.memory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.SketchesStateException;
+import com.yahoo.sketches.hll.HllSketch;
+import com.yahoo.sketches.theta.Sketches;
+import com.yahoo.sketches.theta.UpdateSketch;
+import com.yahoo.sketches.tuple.ArrayOfDoublesSketches;
+import com.yahoo.sketches.tuple.ArrayOfDoublesUpdatableSketch;
+import com.yahoo.sketches.tuple.ArrayOfDoublesUpdatableSketchBuilder;
+
+public class SketchStoreTest {
+
+  @Test
+  public void checkThetaSketchesSurviveReopen() throws Exception {
+    File dir = newDir();
+    int k = 512;
+    SketchStore store = SketchStore.create(dir, Sketches.getMaxUpdateSketchBytes(k), 100);
+    double[] estimates = new double[250];
+    for (long key = 0; key < 250; key++) {
+      UpdateSketch sketch = Sketches.updateSketchBuilder().initMemory(store.add(key)).build(k);
+      for (int i = 0; i < key * 10; i++) { sketch.update(i); }
+      estimates[(int) key] = sketch.getEstimate();
+    }
+    assertEquals(store.size(), 250);
+    assertEquals(store.getNumSegments(), 3);
+    store.force();
+    store.close();
+
+    store = SketchStore.open(dir);
+    assertEquals(store.size(), 250);
+    assertEquals(store.getSlotBytes(), Sketches.getMaxUpdateSketchBytes(k));
+    for (long key = 0; key < 250; key++) {
+      UpdateSketch sketch = (UpdateSketch) Sketches.wrapSketch(store.get(key));
+      assertEquals(sketch.getEstimate(), estimates[(int) key]);
+      if (key * 10 < k) { assertEquals(sketch.getEstimate(), key * 10.0); } //exact mode
+      sketch.update(-1L); //updates in place
+    }
+    store.close();
+
+    store = SketchStore.open(dir);
+    assertEquals(Sketches.wrapSketch(store.get(0)).getEstimate(), 1.0);
+    assertEquals(Sketches.wrapSketch(store.get(3)).getEstimate(), 31.0);
+    store.close();
+    delete(dir);
+  }
+
+  @Test
+  public void checkHllAndTupleSketches() throws Exception {
+    File hllDir = newDir();
+    SketchStore hllStore = SketchStore.create(hllDir, HllSketch.getMaxUpdateSketchBytes(10), 16);
+    File tupleDir = newDir();
+    SketchStore tupleStore = SketchStore.create(tupleDir, 1 << 15, 16);
+    double[] estimates = new double[20];
+    for (long key = 0; key < 20; key++) {
+      HllSketch hll = HllSketch.builder().setLogBuckets(10).setMemory(hllStore.add(key)).build();
+      ArrayOfDoublesUpdatableSketch tuple = new ArrayOfDoublesUpdatableSketchBuilder()
+          .setNominalEntries(512).setMemory(tupleStore.add(key)).build();
+      for (int i = 0; i < key * 100; i++) {
+        hll.update(i);
+        tuple.update(i, new double[] {1.0});
+      }
+      estimates[(int) key] = hll.getEstimate();
+    }
+    hllStore.close();
+    tupleStore.close();
+
+    hllStore = SketchStore.open(hllDir);
+    tupleStore = SketchStore.open(tupleDir);
+    for (long key = 0; key < 20; key++) {
+      assertEquals(HllSketch.wrap(hllStore.get(key)).getEstimate(), estimates[(int) key]);
+      assertEquals(HllSketch.getEstimate(hllStore.get(key)), estimates[(int) key], 1e-9);
+      Memory mem = tupleStore.get(key);
+      assertEquals(ArrayOfDoublesSketches.getRetainedEntries(mem),
+          ArrayOfDoublesSketches.wrapSketch(mem).getRetainedEntries());
+      assertEquals(ArrayOfDoublesSketches.wrapSketch(mem).getEstimate(),
+          ArrayOfDoublesSketches.getEstimate(mem));
+    }
+    hllStore.close();
+    tupleStore.close();
+    delete(hllDir);
+    delete(tupleDir);
+  }
+
+  @Test
+  public void checkIndexGrowth() throws Exception {
+    File dir = newDir();
+    SketchStore store = SketchStore.create(dir, 8, 1000);
+    int n = 10000; //grows the index from 2^10 to 2^14 entries
+    for (long key = 0; key < n; key++) {
+      store.add(key * 0x9E3779B97F4A7C15L).putLong(0, key);
+    }
+    assertEquals(store.getNumSegments(), 10);
+    store.close();
+    assertEquals(new File(dir, SketchStore.INDEX_FILE).length(),
+        SketchStore.TABLE_START + (SketchStore.ENTRY_BYTES << 14));
+    assertFalse(new File(dir, SketchStore.INDEX_TMP_FILE).exists());
+
+    store = SketchStore.open(dir);
+    assertEquals(store.size(), n);
+    for (long key = 0; key < n; key++) {
+      assertEquals(store.get(key * 0x9E3779B97F4A7C15L).getLong(0), key);
+    }
+    assertFalse(store.contains(1L));
+    assertNull(store.get(1L));
+    store.add(1L);
+    assertTrue(store.contains(1L));
+    assertEquals(store.getNumSegments(), 11);
+    store.close();
+    delete(dir);
+  }
+
+  @Test
+  public void checkNewSlotIsCleared() throws Exception {
+    File dir = newDir();
+    SketchStore store = SketchStore.create(dir, 64, 4);
+    Memory slot = store.add(7);
+    slot.fill((byte) 1);
+    //a slot of a crashed add is cleared when it is claimed again
+    new MemoryRegion(store.add(8), 0, 64).fill((byte) 1);
+    store.close();
+    store = SketchStore.open(dir);
+    assertEquals(store.get(7).getByte(63), 1);
+    Memory slot2 = store.add(9);
+    assertEquals(slot2.getLong(0), 0L);
+    store.close();
+    delete(dir);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkDuplicateKey() throws Exception {
+    File dir = newDir();
+    SketchStore store = SketchStore.create(dir, 64, 4);
+    try {
+      store.add(1);
+      store.add(1);
+    } finally {
+      store.close();
+      delete(dir);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkCreateOverExistingStore() throws Exception {
+    File dir = newDir();
+    SketchStore.create(dir, 64, 4).close();
+    try {
+      SketchStore.create(dir, 64, 4);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkOpenEmptyDirectory() throws Exception {
+    File dir = newDir();
+    try {
+      SketchStore.open(dir);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkOpenWithMissingSegment() throws Exception {
+    File dir = newDir();
+    SketchStore store = SketchStore.create(dir, 64, 4);
+    store.add(1);
+    store.close();
+    assertTrue(new File(dir, SketchStore.SEGMENT_FILE_PREFIX + 0).delete());
+    try {
+      SketchStore.open(dir);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBadSlotBytes() throws Exception {
+    SketchStore.create(new File("unused"), 0, 4);
+  }
+
+  @Test(expectedExceptions = SketchesStateException.class)
+  public void checkClosed() throws Exception {
+    File dir = newDir();
+    SketchStore store = SketchStore.create(dir, 64, 4);
+    store.close();
+    store.close();
+    delete(dir);
+    store.get(1);
+  }
+
+  private static File newDir() throws Exception {
+    return Files.createTempDirectory("sketchstore").toFile();
+  }
+
+  private static void delete(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) { file.delete(); }
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
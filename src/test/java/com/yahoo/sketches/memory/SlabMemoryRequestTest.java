@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.memory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.SketchesStateException;
+
+public class SlabMemoryRequestTest {
+
+  @Test
+  public void checkSizeClasses() {
+    assertEquals(SlabMemoryRequest.sizeClass(1), 0);
+    assertEquals(SlabMemoryRequest.sizeClass(48), 0);
+    assertEquals(SlabMemoryRequest.sizeClass(49), 1);
+    //a theta hash table of 2^10 longs with a 3 long preamble fills its class exactly
+    int bytes = (3 << 3) + (8 << 10);
+    int sizeClass = SlabMemoryRequest.sizeClass(bytes);
+    assertEquals(SlabMemoryRequest.classBytes(sizeClass), (1 << 13) + 32);
+    for (long cap = 1; cap < 100000; cap += 37) {
+      long classBytes = SlabMemoryRequest.classBytes(SlabMemoryRequest.sizeClass(cap));
+      assertTrue(classBytes >= cap);
+      assertTrue((cap <= 48) || (classBytes < (2 * cap)));
+    }
+  }
+
+  @Test
+  public void checkReuse() {
+    SlabMemoryRequest pool = new SlabMemoryRequest();
+    Memory mem1 = pool.request(1000);
+    assertEquals(mem1.getCapacity(), 1024 + 32);
+    assertSame(mem1.getMemoryRequest(), pool);
+    assertEquals(pool.getAllocatedBytes(), 1056);
+    assertEquals(pool.getInUseBytes(), 1056);
+    pool.free(mem1);
+    assertEquals(pool.getFreeBytes(), 1056);
+    assertEquals(pool.getInUseBytes(), 0);
+    Memory mem2 = pool.request(1056);
+    assertSame(mem2, mem1);
+    Memory mem3 = pool.request(1056);
+    assertNotSame(mem3, mem1);
+    assertEquals(pool.getAllocatedBytes(), 2 * 1056);
+    ((NativeMemory) mem2).freeMemory(); //returns it to the pool
+    assertEquals(pool.getFreeBytes(), 1056);
+    pool.free(mem3);
+    pool.close();
+    assertEquals(pool.getAllocatedBytes(), 0);
+    assertEquals(pool.getFreeBytes(), 0);
+    println(pool.toString());
+  }
+
+  @Test
+  public void checkCopyAndClear() {
+    SlabMemoryRequest pool = new SlabMemoryRequest();
+    Memory mem1 = pool.request(64);
+    mem1.fill((byte) 1);
+    Memory mem2 = pool.request(mem1, 16, 64);
+    assertEquals(mem2.getCapacity(), 64);
+    assertEquals(mem2.getByte(15), 1);
+    assertEquals(mem2.getByte(16), 0);
+    assertEquals(mem2.getByte(63), 0);
+    pool.free(mem1, mem2);
+    pool.free(mem2);
+    pool.close();
+  }
+
+  @Test
+  public void checkLimits() {
+    SlabMemoryRequest pool = new SlabMemoryRequest(10, 0, 0, 2000);
+    Memory mem1 = pool.request(1000);
+    assertNull(pool.request(1000));
+    pool.free(mem1);
+    assertEquals(pool.getFreeBytes(), 0); //nothing is cached
+    assertEquals(pool.getAllocatedBytes(), 0);
+    Memory large = pool.request(1500); //beyond the largest class
+    assertEquals(large.getCapacity(), 1500);
+    pool.free(large);
+    assertEquals(pool.getAllocatedBytes(), 0);
+    pool.close();
+  }
+
+  @Test
+  public void checkThreadCaches() throws Exception {
+    final SlabMemoryRequest pool = new SlabMemoryRequest(20, 1, Long.MAX_VALUE, Long.MAX_VALUE);
+    final Memory mem1 = pool.request(100);
+    final Memory mem2 = pool.request(100);
+    final Memory[] reused = new Memory[1];
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        pool.free(mem1); //kept by this thread
+        pool.free(mem2); //goes to the shared list
+        reused[0] = pool.request(100);
+      }
+    });
+    thread.start();
+    thread.join();
+    assertSame(reused[0], mem1);
+    assertSame(pool.request(100), mem2);
+    assertEquals(pool.getFreeBytes(), 0);
+    pool.free(mem1);
+    pool.free(mem2);
+    pool.close();
+    assertEquals(pool.getAllocatedBytes(), 0);
+  }
+
+  @Test
+  public void checkFreeOtherMemory() {
+    SlabMemoryRequest pool = new SlabMemoryRequest();
+    NativeMemory mem = new AllocMemory(64);
+    pool.free(mem);
+    assertEquals(mem.getCapacity(), 0);
+    Memory region = new MemoryRegion(new NativeMemory(new byte[64]), 0, 64);
+    pool.free(region);
+    assertEquals(region.getCapacity(), 64);
+    pool.close();
+  }
+
+  @Test(expectedExceptions = SketchesStateException.class)
+  public void checkDoubleFree() {
+    SlabMemoryRequest pool = new SlabMemoryRequest();
+    Memory mem = pool.request(64);
+    pool.free(mem);
+    try {
+      pool.free(mem);
+    } finally {
+      pool.close();
+    }
+  }
+
+  @Test
+  public void checkConcurrentDoubleFree() throws Exception {
+    final SlabMemoryRequest pool = new SlabMemoryRequest(20, 0, Long.MAX_VALUE, Long.MAX_VALUE);
+    final int threads = 4;
+    for (int trial = 0; trial < 500; trial++) {
+      final Memory mem = pool.request(64);
+      final long freeBytes = pool.getFreeBytes();
+      final AtomicInteger ready = new AtomicInteger();
+      final AtomicInteger rejected = new AtomicInteger();
+      Thread[] freers = new Thread[threads];
+      for (int t = 0; t < threads; t++) {
+        freers[t] = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            ready.incrementAndGet();
+            while (ready.get() < threads) { } //spin so that the frees overlap
+            try {
+              pool.free(mem);
+            } catch (SketchesStateException e) {
+              rejected.incrementAndGet();
+            }
+          }
+        });
+        freers[t].start();
+      }
+      for (Thread t : freers) { t.join(); }
+      assertEquals(rejected.get(), threads - 1);
+      //the block is on the free list once, so the next two requests get different blocks
+      assertEquals(pool.getFreeBytes(), freeBytes + mem.getCapacity());
+      Memory mem1 = pool.request(64);
+      Memory mem2 = pool.request(64);
+      assertSame(mem1, mem);
+      assertNotSame(mem2, mem);
+      pool.free(mem1);
+      pool.free(mem2);
+    }
+    pool.close();
+    assertEquals(pool.getAllocatedBytes(), 0);
+  }
+
+  @Test(expectedExceptions = SketchesStateException.class)
+  public void checkClosed() {
+    SlabMemoryRequest pool = new SlabMemoryRequest();
+    pool.close();
+    pool.request(64);
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
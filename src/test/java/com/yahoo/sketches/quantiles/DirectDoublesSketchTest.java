@@ -0,0 +1,323 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.quantiles;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.SketchesReadOnlyException;
+import com.yahoo.sketches.memory.AllocMemory;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.MemoryRequest;
+import com.yahoo.sketches.memory.NativeMemory;
+import com.yahoo.sketches.memory.SlabMemoryRequest;
+
+public class DirectDoublesSketchTest {
+
+  @BeforeMethod
+  public void setUp() {
+    DoublesSketch.rand.setSeed(32749); // make sketches deterministic for testing
+  }
+
+  @Test
+  public void checkMatchesHeapSketch() {
+    int k = 128;
+    int n = 100000;
+    DoublesSketch.rand.setSeed(1);
+    DoublesSketch hqs = DoublesSketch.builder().build(k);
+    for (int i = 0; i < n; i++) { hqs.update(i); }
+
+    DoublesSketch.rand.setSeed(1);
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(k, n)]);
+    DoublesSketch dqs = DoublesSketch.builder().initMemory(mem).build(k);
+    assertTrue(dqs instanceof DirectDoublesSketch);
+    for (int i = 0; i < n; i++) { dqs.update(i); }
+
+    assertEquals(dqs.getN(), n);
+    assertEquals(dqs.getMinValue(), 0.0);
+    assertEquals(dqs.getMaxValue(), n - 1.0);
+    assertEquals(dqs.getRetainedItems(), hqs.getRetainedItems());
+    assertEquals(dqs.toByteArray(), hqs.toByteArray());
+    assertEquals(dqs.toByteArray(true), hqs.toByteArray(true));
+    double[] fractions = {0.0, 0.1, 0.5, 0.9, 1.0};
+    assertEquals(dqs.getQuantiles(fractions), hqs.getQuantiles(fractions));
+    assertEquals(dqs.getQuantile(0.5), hqs.getQuantile(0.5));
+    double[] splitPoints = {1000, 50000, 90000};
+    assertEquals(dqs.getPMF(splitPoints), hqs.getPMF(splitPoints));
+    assertEquals(dqs.getCDF(splitPoints), hqs.getCDF(splitPoints));
+    assertEquals(dqs.getRank(50000), hqs.getRank(50000));
+    assertEquals(dqs.getStorageBytes(), hqs.getStorageBytes());
+    println(dqs.toString(true, true));
+  }
+
+  @Test
+  public void checkQueriesFromUpdatableImage() {
+    int k = 16;
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(k, 5000)]);
+    DoublesSketch dqs = DoublesSketch.builder().setK(k).initMemory(mem).build();
+    assertEquals(DoublesSketch.getN(mem), 0);
+    assertTrue(Double.isNaN(DoublesSketch.getRank(mem, 0.0)));
+    for (int i = 0; i < 5000; i++) { dqs.update(-i); }
+    assertEquals(DoublesSketch.getN(mem), dqs.getN());
+    assertEquals(DoublesSketch.getMinValue(mem), dqs.getMinValue());
+    assertEquals(DoublesSketch.getMaxValue(mem), dqs.getMaxValue());
+    for (int j = 0; j <= 10; j++) {
+      assertEquals(DoublesSketch.getQuantile(mem, j / 10.0), dqs.getQuantile(j / 10.0));
+      assertEquals(DoublesSketch.getRank(mem, -500.0 * j), dqs.getRank(-500.0 * j));
+    }
+  }
+
+  @Test
+  public void checkEmptyAndReset() {
+    int k = 16;
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(k, 1000)]);
+    DoublesSketch dqs = DoublesSketch.builder().initMemory(mem).build(k);
+    assertTrue(dqs.isEmpty());
+    assertEquals(dqs.toByteArray().length, 8);
+    assertEquals(DoublesSketch.heapify(new NativeMemory(dqs.toByteArray())).getN(), 0);
+    dqs.update(Double.NaN);
+    assertTrue(dqs.isEmpty());
+
+    for (int i = 0; i < 1000; i++) { dqs.update(i); }
+    assertFalse(dqs.isEmpty());
+    dqs.reset();
+    assertTrue(dqs.isEmpty());
+    assertEquals(dqs.getN(), 0);
+    assertEquals(dqs.getMinValue(), Double.POSITIVE_INFINITY);
+    assertEquals(dqs.getMaxValue(), Double.NEGATIVE_INFINITY);
+    dqs.update(5);
+    assertEquals(dqs.getQuantile(0.5), 5.0);
+    assertEquals(DoublesSketch.wrap(mem).getN(), 1);
+  }
+
+  @Test
+  public void checkWrapSharesMemory() {
+    int k = 64;
+    int n = 10000;
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(k, 2 * n)]);
+    DoublesSketch dqs = DoublesSketch.builder().setK(k).initMemory(mem).build();
+    for (int i = 0; i < n; i++) { dqs.update(i); }
+
+    DoublesSketch wrapped = DoublesSketch.wrap(mem);
+    assertEquals(wrapped.getK(), k);
+    assertEquals(wrapped.getN(), n);
+    assertEquals(wrapped.toByteArray(), dqs.toByteArray());
+
+    for (int i = n; i < 2 * n; i++) { wrapped.update(i); }
+    assertEquals(dqs.getN(), 2 * n);
+    assertEquals(dqs.getMaxValue(), 2.0 * n - 1);
+    assertEquals(dqs.getQuantile(0.5), 10000.0, 2 * n * dqs.getNormalizedRankError());
+  }
+
+  @Test
+  public void checkHeapifyUpdatableImage() {
+    int k = 32;
+    int n = 5000;
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(k, n)]);
+    DoublesSketch dqs = DoublesSketch.builder().setK(k).initMemory(mem).build();
+    for (int i = 0; i < n; i++) { dqs.update(i); }
+    DoublesSketch hqs = DoublesSketch.heapify(mem);
+    assertTrue(hqs instanceof HeapDoublesSketch);
+    assertEquals(hqs.toByteArray(), dqs.toByteArray());
+    hqs.update(-1);
+    assertEquals(dqs.getMinValue(), 0.0);
+    assertEquals(dqs.getN(), n);
+  }
+
+  @Test
+  public void checkGrowthThroughMemoryRequest() {
+    int k = 128;
+    int n = 1 << 20;
+    MemoryManager memMgr = new MemoryManager();
+    Memory mem = memMgr.request(DoublesSketch.getUpdatableStorageBytes(k, 0));
+    DirectDoublesSketch dqs = (DirectDoublesSketch) DoublesSketch.builder().setK(k)
+        .initMemory(mem).build();
+    for (int i = 0; i < n; i++) { dqs.update(i); }
+    assertTrue(memMgr.requests > 0);
+    Memory newMem = dqs.getMemory();
+    assertTrue(newMem.getCapacity() >= DoublesSketch.getUpdatableStorageBytes(k, n));
+    assertEquals(dqs.getN(), n);
+    assertEquals(dqs.getMaxValue(), n - 1.0);
+    double tol = n * dqs.getNormalizedRankError();
+    assertEquals(dqs.getQuantile(0.5), n / 2, tol);
+    assertEquals(DoublesSketch.wrap(newMem).getQuantile(0.5), n / 2, tol);
+    ((NativeMemory) newMem).freeMemory();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkGrowthWithoutMemoryRequest() {
+    int k = 16;
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(k, 0)]);
+    DoublesSketch dqs = DoublesSketch.builder().setK(k).initMemory(mem).build();
+    for (int i = 0; i < 2 * k; i++) { dqs.update(i); }
+  }
+
+  @Test
+  public void checkDownSampleAndUnion() {
+    int k = 256;
+    int n = 20000;
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(k, n)]);
+    DoublesSketch dqs = DoublesSketch.builder().setK(k).initMemory(mem).build();
+    for (int i = 0; i < n; i++) { dqs.update(i); }
+
+    DoublesSketch small = dqs.downSample(64);
+    assertEquals(small.getK(), 64);
+    assertEquals(small.getN(), n);
+    assertEquals(small.getMaxValue(), n - 1.0);
+
+    DoublesSketch other = DoublesSketch.builder().build(k);
+    for (int i = n; i < 2 * n; i++) { other.update(i); }
+    DoublesUnion union = DoublesUnion.builder().setK(k).build();
+    union.update(dqs);
+    union.update(other);
+    DoublesSketch result = union.getResult();
+    assertEquals(result.getN(), 2 * n);
+    assertEquals(result.getMinValue(), 0.0);
+    assertEquals(result.getMaxValue(), 2.0 * n - 1);
+    assertEquals(dqs.getN(), n); //not modified
+
+    DoublesUnion union2 = DoublesUnion.builder().build(dqs);
+    union2.update(other);
+    assertEquals(union2.getResult().getN(), 2 * n);
+    assertEquals(dqs.getN(), n); //copied, not modified
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkMemoryTooSmall() {
+    int k = 16;
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(k, 0) - 8]);
+    DoublesSketch.builder().setK(k).initMemory(mem).build();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapCompactImage() {
+    DoublesSketch hqs = DoublesSketch.builder().build(16);
+    for (int i = 0; i < 100; i++) { hqs.update(i); }
+    DoublesSketch.wrap(new NativeMemory(hqs.toByteArray()));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapCorruptN() {
+    int k = 16;
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(k, 100)]);
+    DoublesSketch dqs = DoublesSketch.builder().setK(k).initMemory(mem).build();
+    for (int i = 0; i < 100; i++) { dqs.update(i); }
+    mem.putLong(PreambleUtil.N_LONG, 1L << 20); //needs more levels than the memory holds
+    DoublesSketch.wrap(mem);
+  }
+
+  @Test
+  public void checkBuilder() {
+    DoublesSketchBuilder bldr = DoublesSketch.builder();
+    assertEquals(bldr.getMemory(), null);
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(128, 0)]);
+    bldr.initMemory(mem);
+    assertEquals(bldr.getMemory(), mem);
+    println(bldr.toString());
+    bldr.build().update(1.0);
+    println(PreambleUtil.toString(mem));
+  }
+
+  @Test
+  public void checkWrapReadOnlyMemory() throws Exception {
+    Memory mem = new NativeMemory(new byte[DoublesSketch.getUpdatableStorageBytes(128, 10000)]);
+    DoublesSketch sketch = DoublesSketch.builder().initMemory(mem).build(128);
+    for (int i = 0; i < 10000; i++) {
+      sketch.update(i);
+    }
+    final DoublesSketch roSketch = DoublesSketch.wrap(mem.asReadOnlyMemory());
+    final double[] fractions = {0.0, 0.1, 0.5, 0.9, 1.0};
+    final double[] quantiles = sketch.getQuantiles(fractions);
+    final double rank = sketch.getRank(5000);
+    Thread[] readers = new Thread[4];
+    final boolean[] ok = new boolean[readers.length];
+    for (int t = 0; t < readers.length; t++) {
+      final int id = t;
+      readers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          boolean same = true;
+          for (int i = 0; i < 100; i++) {
+            same &= java.util.Arrays.equals(roSketch.getQuantiles(fractions), quantiles);
+            same &= (roSketch.getRank(5000) == rank);
+          }
+          ok[id] = same;
+        }
+      });
+      readers[t].start();
+    }
+    for (int t = 0; t < readers.length; t++) {
+      readers[t].join();
+      assertTrue(ok[t]);
+    }
+    try {
+      roSketch.update(1.0);
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+    assertEquals(roSketch.getN(), 10000);
+  }
+
+  @Test
+  public void checkSlabMemoryRequest() {
+    SlabMemoryRequest pool = new SlabMemoryRequest();
+    Memory mem = pool.request(DoublesSketch.getUpdatableStorageBytes(128, 0));
+    DirectDoublesSketch sketch = (DirectDoublesSketch) DoublesSketch.builder().initMemory(mem)
+        .build(128);
+    for (int i = 0; i < 100000; i++) {
+      sketch.update(i);
+    }
+    assertEquals(sketch.getQuantile(0.5), 50000, 2000);
+    assertEquals(sketch.getMaxValue(), 99999.0);
+    assertEquals(pool.getInUseBytes(), sketch.getMemory().getCapacity());
+    pool.free(sketch.getMemory());
+    pool.close();
+    assertEquals(pool.getAllocatedBytes(), 0);
+  }
+
+  private static class MemoryManager implements MemoryRequest {
+    int requests = 0;
+
+    @Override
+    public Memory request(long capacityBytes) {
+      return new AllocMemory(capacityBytes, this);
+    }
+
+    @Override
+    public Memory request(Memory origMem, long copyToBytes, long capacityBytes) {
+      requests++;
+      return new AllocMemory((NativeMemory) origMem, copyToBytes, capacityBytes, this);
+    }
+
+    @Override
+    public void free(Memory mem) {
+      ((NativeMemory) mem).freeMemory();
+    }
+
+    @Override
+    public void free(Memory memToFree, Memory newMem) {
+      ((NativeMemory) memToFree).freeMemory();
+    }
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.err.println(s); //disable here
+  }
+
+}
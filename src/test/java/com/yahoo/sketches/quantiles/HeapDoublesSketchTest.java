@@ -13,6 +13,8 @@ import static com.yahoo.sketches.quantiles.Util.computeNumLevelsNeeded;
 import static com.yahoo.sketches.quantiles.Util.lg;
 import static java.lang.Math.floor;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -118,6 +120,80 @@ public class HeapDoublesSketchTest {
     // should probably assert that the final cdf value is 1.0
   }
 
+  @Test
+  public void checkAuxiliaryIsCached() {
+    DoublesSketch qs = buildQS(128, 10000);
+    DoublesAuxiliary aux = qs.getAuxiliary();
+    assertSame(qs.getAuxiliary(), aux);
+    qs.getQuantiles(new double[] {0.5, 0.9, 0.99});
+    qs.getCDF(new double[] {100, 5000});
+    assertSame(qs.getAuxiliary(), aux);
+
+    qs.update(10000);
+    DoublesAuxiliary aux2 = qs.getAuxiliary();
+    assertNotSame(aux2, aux);
+    assertEquals(aux2.auxN_, 10001);
+
+    DoublesUnion union = DoublesUnion.builder().build(qs);
+    union.update(buildQS(128, 1000));
+    DoublesSketch result = union.getResult();
+    DoublesAuxiliary aux3 = result.getAuxiliary();
+    union.update(buildQS(128, 1000));
+    assertNotSame(union.getResult().getAuxiliary(), aux3);
+
+    qs.reset();
+    for (int i = 0; i < 10001; i++) { qs.update(-i); } //same N as before the reset
+    assertNotSame(qs.getAuxiliary(), aux2);
+    assertEquals(qs.getMaxValue(), 0.0);
+    assertEquals(qs.getQuantile(0.5), -5000.0, 10001 * qs.getNormalizedRankError());
+  }
+
+  @Test
+  public void checkPmfCdfMatchHistogram() {
+    for (int n : new int[] {0, 1, 100, 1000, 100000}) {
+      DoublesSketch qs = buildQS(64, n);
+      double[] splitPoints = {-1, 0, 0.5, 1, 10, 99.5, 500, 50000, 1e9};
+      long[] counts = DoublesUtil.internalBuildHistogram(splitPoints, qs);
+      double[] pmf = qs.getPMF(splitPoints);
+      double[] cdf = qs.getCDF(splitPoints);
+      assertEquals(pmf.length, counts.length);
+      long subtotal = 0;
+      for (int j = 0; j < counts.length; j++) {
+        subtotal += counts[j];
+        assertEquals(pmf[j], (double) counts[j] / n);
+        assertEquals(cdf[j], (double) subtotal / n);
+        if (j < splitPoints.length) {
+          assertEquals(qs.getRank(splitPoints[j]), cdf[j]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkGetRank() {
+    int n = 100000;
+    DoublesSketch qs = buildQS(256, n);
+    double eps = qs.getNormalizedRankError();
+    assertEquals(qs.getRank(-1), 0.0);
+    assertEquals(qs.getRank(0), 0.0);
+    assertEquals(qs.getRank(n), 1.0);
+    for (double fraction = 0.1; fraction < 1.0; fraction += 0.1) {
+      assertEquals(qs.getRank(fraction * n), fraction, eps);
+      assertEquals(qs.getRank(qs.getQuantile(fraction)), fraction, eps);
+    }
+    assertTrue(Double.isNaN(buildQS(256, 0).getRank(1.0)));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkGetRankNaN() {
+    buildQS(256, 100).getRank(Double.NaN);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkCdfBadSplitPoints() {
+    buildQS(256, 100).getCDF(new double[] {2, 1});
+  }
+
   @Test
   public void checkConstructAuxiliary() {
     for (int k = 2; k <= 32; k *= 2) {
@@ -829,6 +905,54 @@ public class HeapDoublesSketchTest {
     
   }
 
+  @Test
+  public void checkQueriesFromMemory() {
+    int k = 32;
+    for (int n : new int[] {1, 7, 63, 64, 1000, 12345}) {
+      DoublesSketch qs = DoublesSketch.builder().build(k);
+      for (int i = 0; i < n; i++) { qs.update((i * 7919) % n - (n / 3)); }
+      for (boolean sort : new boolean[] {false, true}) {
+        Memory mem = new NativeMemory(qs.toByteArray(sort));
+        assertEquals(DoublesSketch.getN(mem), qs.getN());
+        assertEquals(DoublesSketch.getMinValue(mem), qs.getMinValue());
+        assertEquals(DoublesSketch.getMaxValue(mem), qs.getMaxValue());
+        for (int j = 0; j <= 20; j++) {
+          double fraction = j / 20.0;
+          assertEquals(DoublesSketch.getQuantile(mem, fraction), qs.getQuantile(fraction));
+        }
+        for (int v = -n; v <= n; v += 1 + (n / 50)) {
+          assertEquals(DoublesSketch.getRank(mem, v), qs.getRank(v));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkQueriesFromEmptyMemory() {
+    DoublesSketch qs = DoublesSketch.builder().build(32);
+    Memory mem = new NativeMemory(qs.toByteArray());
+    assertEquals(mem.getCapacity(), 8);
+    assertEquals(DoublesSketch.getN(mem), 0);
+    assertEquals(DoublesSketch.getMinValue(mem), qs.getMinValue());
+    assertEquals(DoublesSketch.getMaxValue(mem), qs.getMaxValue());
+    assertTrue(Double.isNaN(DoublesSketch.getQuantile(mem, 0.5)));
+    assertTrue(Double.isNaN(DoublesSketch.getRank(mem, 1.0)));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkQuantileFromMemoryBadFraction() {
+    DoublesSketch qs = buildQS(32, 100);
+    DoublesSketch.getQuantile(new NativeMemory(qs.toByteArray()), 1.5);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkQueryFromMemoryWrongFamily() {
+    DoublesSketch qs = buildQS(32, 100);
+    byte[] byteArr = qs.toByteArray();
+    byteArr[2] = 3; //theta family
+    DoublesSketch.getN(new NativeMemory(byteArr));
+  }
+
   private static void checksForImproperK(int k) {
     String s = "Did not catch improper k: "+k;
     try {
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+package com.yahoo.sketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.ResizeFactor;
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.AllocMemory;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+public class ConcurrentDirectQuickSelectSketchTest {
+
+  @Test
+  public void checkExactModeMatchesSingleThreaded() throws Exception {
+    int k = 4096;
+    int threads = 4;
+    int perThread = 800;
+    Memory mem = new NativeMemory(new byte[UpdateSketch.getMaxSharedUpdateSketchBytes(k)]);
+    UpdateSketch shared =
+        UpdateSketch.builder().initMemory(mem).setNominalEntries(k).buildShared();
+    runWriters(new UpdateSketch[] {shared}, threads, perThread);
+
+    UpdateSketch single = UpdateSketch.builder().build(k);
+    for (long i = 0; i < (threads * perThread); i++) { single.update(i); }
+
+    assertFalse(shared.isEstimationMode());
+    assertEquals(shared.getRetainedEntries(true), threads * perThread);
+    assertEquals(shared.getEstimate(), single.getEstimate());
+    assertEquals(shared.compact().toByteArray(), single.compact().toByteArray());
+  }
+
+  @Test
+  public void checkRebuildsAtSameCountAsHeap() {
+    int k = 1024;
+    for (int n : new int[] {1921, 1922, 5000, 50000}) {
+      Memory mem = new NativeMemory(new byte[UpdateSketch.getMaxSharedUpdateSketchBytes(k)]);
+      UpdateSketch shared =
+          UpdateSketch.builder().initMemory(mem).setNominalEntries(k).buildShared();
+      UpdateSketch single = UpdateSketch.builder().setResizeFactor(ResizeFactor.X1).build(k);
+      for (long i = 0; i < n; i++) {
+        shared.update(i);
+        single.update(i);
+      }
+      assertEquals(shared.getRetainedEntries(true), single.getRetainedEntries(true));
+      assertEquals(shared.compact().toByteArray(), single.compact().toByteArray());
+    }
+  }
+
+  @Test
+  public void checkEstimationModeOffHeap() throws Exception {
+    int k = 1024;
+    int threads = 4;
+    int perThread = 50000;
+    AllocMemory mem = new AllocMemory(UpdateSketch.getMaxSharedUpdateSketchBytes(k));
+    try {
+      UpdateSketch shared =
+        UpdateSketch.builder().initMemory(mem).setNominalEntries(k).buildShared();
+      runWriters(new UpdateSketch[] {shared}, threads, perThread);
+      int n = threads * perThread;
+      assertTrue(shared.isEstimationMode());
+      assertEquals(shared.getEstimate(), n, n * 0.1);
+      assertTrue(shared.getRetainedEntries(true) < (2 * k));
+      assertTrue(((ConcurrentDirectQuickSelectSketch) shared).getEpoch() > 0);
+
+      //the serialized image is an ordinary direct QuickSelect sketch
+      Sketch wrapped = Sketch.wrap(new NativeMemory(shared.toByteArray()));
+      assertEquals(wrapped.getEstimate(), shared.getEstimate());
+      assertEquals(shared.compact().getEstimate(), shared.getEstimate());
+    }
+    finally {
+      mem.freeMemory();
+    }
+  }
+
+  @Test
+  public void checkManyWrappersOfOneMemory() throws Exception {
+    int k = 512;
+    int threads = 4;
+    int perThread = 20000;
+    Memory mem = new NativeMemory(new byte[UpdateSketch.getMaxSharedUpdateSketchBytes(k)]);
+    UpdateSketch.builder().initMemory(mem).setNominalEntries(k).buildShared();
+    //each writer uses its own wrapper, as separate processes mapping one file would
+    UpdateSketch[] wrappers = new UpdateSketch[threads];
+    for (int t = 0; t < threads; t++) { wrappers[t] = UpdateSketch.wrapShared(mem); }
+    runWriters(wrappers, threads, perThread);
+
+    int n = threads * perThread;
+    UpdateSketch check = UpdateSketch.wrapShared(mem);
+    assertEquals(check.getEstimate(), n, n * 0.15);
+    //all valid entries are unique and less than theta
+    long[] cache = check.getCache();
+    long thetaLong = check.getThetaLong();
+    int count = 0;
+    for (long hash : cache) {
+      if (hash != 0) {
+        assertTrue(hash < thetaLong);
+        count++;
+      }
+    }
+    assertEquals(count, check.getRetainedEntries(true));
+    assertEquals(check.compact().getRetainedEntries(true), count);
+  }
+
+  @Test
+  public void checkLocalBuffersFeedDirectShared() {
+    int k = 256;
+    Memory mem = new NativeMemory(new byte[UpdateSketch.getMaxSharedUpdateSketchBytes(k)]);
+    UpdateSketchBuilder bldr = UpdateSketch.builder().initMemory(mem);
+    UpdateSketch shared = bldr.setNominalEntries(k).buildShared();
+    assertTrue(shared.isDirect());
+    ConcurrentHeapThetaBuffer local = bldr.buildLocal(shared);
+    for (long i = 0; i < 100; i++) { local.update(i); }
+    local.flush();
+    assertEquals(shared.getEstimate(), 100.0);
+    assertEquals(local.getEstimate(), 100.0);
+  }
+
+  @Test
+  public void checkResetAndRebuild() {
+    int k = 512;
+    Memory mem = new NativeMemory(new byte[UpdateSketch.getMaxSharedUpdateSketchBytes(k)]);
+    UpdateSketch shared = UpdateSketch.builder().setP((float) 0.5).initMemory(mem)
+        .setNominalEntries(k).buildShared();
+    assertTrue(shared.isEmpty());
+    for (long i = 0; i < (4 * k); i++) { shared.update(i); }
+    assertFalse(shared.isEmpty());
+    shared.rebuild();
+    assertTrue(shared.getRetainedEntries(true) <= k);
+    shared.reset();
+    assertTrue(shared.isEmpty());
+    assertEquals(shared.getRetainedEntries(true), 0);
+    assertEquals(shared.getTheta(), 0.5, 1e-6);
+    assertEquals(shared.getEstimate(), 0.0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapNotFullSize() {
+    int k = 512;
+    Memory mem = new NativeMemory(new byte[UpdateSketch.getMaxSharedUpdateSketchBytes(k)]);
+    UpdateSketch.builder().initMemory(mem).build(k); //ordinary direct sketch starts small
+    UpdateSketch.wrapShared(mem);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapNoLockWord() {
+    int k = 512;
+    Memory mem = new NativeMemory(new byte[UpdateSketch.getMaxSharedUpdateSketchBytes(k)]);
+    UpdateSketch.builder().initMemory(mem).setNominalEntries(k).buildShared();
+    Memory small = new NativeMemory(new byte[Sketch.getMaxUpdateSketchBytes(k)]);
+    NativeMemory.copy(mem, 0, small, 0, small.getCapacity());
+    UpdateSketch.wrapShared(small);
+  }
+
+  private static void runWriters(final UpdateSketch[] sketches, int threads, final int perThread)
+      throws InterruptedException {
+    Thread[] writers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final long start = (long) t * perThread;
+      final UpdateSketch sketch = sketches[t % sketches.length];
+      writers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (long i = start; i < (start + perThread); i++) {
+            sketch.update(i);
+            sketch.update(i); //duplicates must not inflate the estimate
+          }
+        }
+      });
+      writers[t].start();
+    }
+    for (Thread w : writers) { w.join(); }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+package com.yahoo.sketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.NativeMemory;
+
+public class ConcurrentHeapQuickSelectSketchTest {
+
+  @Test
+  public void checkExactModeMatchesSingleThreaded() throws Exception {
+    int k = 4096;
+    int threads = 4;
+    int perThread = 500;
+    UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(k);
+    UpdateSketch shared = bldr.buildShared();
+    runWriters(bldr, shared, threads, perThread);
+
+    UpdateSketch single = bldr.build();
+    for (long i = 0; i < (threads * perThread); i++) { single.update(i); }
+
+    assertFalse(shared.isEstimationMode());
+    assertEquals(shared.getEstimate(), single.getEstimate());
+    assertEquals(shared.getRetainedEntries(true), threads * perThread);
+    assertEquals(shared.compact().toByteArray(), single.compact().toByteArray());
+  }
+
+  @Test
+  public void checkEstimationMode() throws Exception {
+    int k = 4096;
+    int threads = 4;
+    int perThread = 100000;
+    UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(k);
+    UpdateSketch shared = bldr.buildShared();
+    runWriters(bldr, shared, threads, perThread);
+
+    int n = threads * perThread;
+    assertTrue(shared.isEstimationMode());
+    assertEquals(shared.getEstimate(), n, n * 0.05);
+    assertTrue(shared.getLowerBound(3) <= shared.getEstimate());
+    assertTrue(shared.getUpperBound(3) >= shared.getEstimate());
+    CompactSketch csk = shared.compact();
+    assertEquals(csk.getEstimate(), shared.getEstimate());
+    assertEquals(csk.getRetainedEntries(true), shared.getRetainedEntries(true));
+  }
+
+  @Test
+  public void checkLocalSeesOnlyPropagatedUpdates() {
+    UpdateSketchBuilder bldr = UpdateSketch.builder().setLocalNominalEntries(16);
+    UpdateSketch shared = bldr.buildShared();
+    ConcurrentHeapThetaBuffer local = bldr.buildLocal(shared);
+    assertTrue(local.isEmpty());
+    for (long i = 0; i < 10; i++) { local.update(i); }
+    local.update(1L); //duplicate within the buffer
+    assertTrue(shared.isEmpty());
+    assertEquals(local.getEstimate(), 0.0);
+    local.flush();
+    assertFalse(shared.isEmpty());
+    assertEquals(local.getEstimate(), 10.0);
+    assertEquals(shared.getEstimate(), 10.0);
+    assertEquals(local.getFamily(), Family.QUICKSELECT);
+
+    local.update(100L);
+    local.reset(); //discards the unpropagated hash
+    local.flush();
+    assertEquals(shared.getEstimate(), 10.0);
+  }
+
+  @Test
+  public void checkEmptyFlagWithSampling() {
+    UpdateSketchBuilder bldr = UpdateSketch.builder().setP((float) 0.001);
+    UpdateSketch shared = bldr.buildShared();
+    ConcurrentHeapThetaBuffer local = bldr.buildLocal(shared);
+    local.flush();
+    assertTrue(shared.isEmpty());
+    //find an item that is screened out by p
+    long item = 0;
+    while (local.update(item) != UpdateReturnState.RejectedOverTheta) { local.reset(); item++; }
+    local.flush();
+    assertFalse(shared.isEmpty());
+    assertEquals(shared.getEstimate(), 0.0);
+  }
+
+  @Test
+  public void checkSharedDirectUpdateAndReset() {
+    UpdateSketch shared = UpdateSketch.builder().buildShared();
+    for (long i = 0; i < 100; i++) { shared.update(i); }
+    assertEquals(shared.getEstimate(), 100.0);
+    assertEquals(Sketch.heapify(new NativeMemory(shared.toByteArray())).getEstimate(), 100.0);
+    shared.reset();
+    assertTrue(shared.isEmpty());
+    assertEquals(shared.getEstimate(), 0.0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBuildSharedAlpha() {
+    UpdateSketch.builder().setFamily(Family.ALPHA).buildShared();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBuildSharedDirectTooSmall() {
+    int bytes = Sketch.getMaxUpdateSketchBytes(4096); //no room for the lock word
+    UpdateSketch.builder().initMemory(new NativeMemory(new byte[bytes])).buildShared();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBuildLocalNotShared() {
+    UpdateSketchBuilder bldr = UpdateSketch.builder();
+    bldr.buildLocal(bldr.build());
+  }
+
+  private static void runWriters(final UpdateSketchBuilder bldr, final UpdateSketch shared,
+      int threads, final int perThread) throws InterruptedException {
+    Thread[] writers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final long start = (long) t * perThread;
+      writers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          ConcurrentHeapThetaBuffer local = bldr.buildLocal(shared);
+          for (long i = start; i < (start + perThread); i++) {
+            local.update(i);
+            local.update(i); //duplicates must not inflate the estimate
+          }
+          local.flush();
+        }
+      });
+      writers[t].start();
+    }
+    for (Thread w : writers) { w.join(); }
+  }
+}
@@ -723,6 +723,28 @@ public class DirectIntersectionTest {
     assertEquals(cskOut.getEstimate(), 2.0, 0.0);
   }
   
+  @Test
+  public void checkDirectInputsScannedInPlace() {
+    HeapIntersectionTest.checkIntersectionOfDirectInputs(true);
+  }
+  
+  @Test
+  public void checkIntersectOrdersBySize() {
+    int k = 512;
+    UpdateSketch[] sketches = new UpdateSketch[4];
+    for (int s = 0; s < sketches.length; s++) {
+      sketches[s] = Sketches.updateSketchBuilder().build(k);
+      for (int i = 0; i < (4 - s) * 2 * k; i++) { sketches[s].update(i); }
+    }
+    Intersection heapInter = SetOperation.builder().buildIntersection();
+    Memory iMem = new NativeMemory(new byte[getMaxIntersectionBytes(k)]);
+    Intersection inter = SetOperation.builder().initMemory(iMem).buildIntersection();
+    CompactSketch result = inter.intersect(sketches[0], sketches[1].compact(true, null),
+        sketches[2], sketches[3].compact(false, null));
+    assertEquals(result.toByteArray(), heapInter.intersect(sketches).toByteArray());
+    assertTrue(result.getEstimate() > 0);
+  }
+  
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -22,6 +22,7 @@ import com.yahoo.sketches.memory.AllocMemory;
 import com.yahoo.sketches.memory.Memory;
 import com.yahoo.sketches.memory.MemoryRequest;
 import com.yahoo.sketches.memory.NativeMemory;
+import com.yahoo.sketches.memory.SlabMemoryRequest;
 import com.yahoo.sketches.HashOperations;
 import com.yahoo.sketches.ResizeFactor;
 import com.yahoo.sketches.SketchesArgumentException;
@@ -620,6 +621,55 @@ public class DirectQuickSelectSketchTest {
     natMem1.freeMemory(); //mem2 is on heap.
   }
   
+  @Test
+  public void checkSlabMemoryRequest() {
+    SlabMemoryRequest pool = new SlabMemoryRequest();
+    int k = 4096;
+    for (int trial = 0; trial < 3; trial++) {
+      Memory mem = pool.request((k << 3) / 4);
+      UpdateSketch usk = UpdateSketch.builder().initMemory(mem).build(k);
+      for (int i = 0; i < (2 * k); i++) { usk.update(i); }
+      assertEquals(usk.getEstimate(), 2 * k, 0.05 * 2 * k);
+      assertEquals(pool.getInUseBytes(), usk.getMemory().getCapacity());
+      pool.free(usk.getMemory());
+    }
+    //later trials reuse the blocks freed by the first one
+    assertTrue(pool.getAllocatedBytes() < (2 * Sketches.getMaxUpdateSketchBytes(k)));
+    pool.close();
+    assertEquals(pool.getAllocatedBytes(), 0);
+  }
+
+  @Test
+  public void checkIncrementalRebuild() {
+    int k = 1 << 15;
+    int bytes = Sketches.getMaxUpdateSketchBytes(k);
+    UpdateSketch sync = UpdateSketch.builder().initMemory(new NativeMemory(new byte[bytes])).build(k);
+    Memory mem = new NativeMemory(new byte[bytes]);
+    UpdateSketch incr = UpdateSketch.builder().setIncrementalRebuild(true).initMemory(mem).build(k);
+    int n = 0;
+    for (; n < (10 * k); n++) {
+      sync.update(n);
+      incr.update(n);
+      if ((n % 997) == 0) {
+        assertEquals(incr.getRetainedEntries(true), sync.getRetainedEntries(true));
+        assertEquals(incr.getThetaLong(), sync.getThetaLong());
+      }
+    }
+    //stop in the middle of a migration
+    while (sync.getRetainedEntries(true) != k) {
+      sync.update(n);
+      incr.update(n++);
+    }
+    sync.update(n);
+    incr.update(n);
+    assertEquals(incr.getEstimate(), sync.getEstimate());
+    //the Memory image is complete once the hash table is read as a whole
+    assertEquals(incr.toByteArray().length, sync.toByteArray().length);
+    assertEquals(((UpdateSketch) Sketch.wrap(mem)).compact().toByteArray(),
+        sync.compact().toByteArray());
+    assertEquals(incr.compact().toByteArray(), sync.compact().toByteArray());
+  }
+
   //////////////////////////////////////////////////////
   //////////////////////////////////////////////////////
   //this one allocates what was asked from NativeMemory
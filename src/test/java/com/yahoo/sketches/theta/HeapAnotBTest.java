@@ -321,6 +321,42 @@ public class HeapAnotBTest {
     assertEquals(anotb.getFamily(), Family.A_NOT_B);
   }
   
+  @Test
+  public void checkDirectInputsScannedInPlace() {
+    int k = 512;
+    Memory skMem = new NativeMemory(new byte[Sketches.getMaxUpdateSketchBytes(k)]);
+    UpdateSketch directSk = Sketches.updateSketchBuilder().initMemory(skMem).build(k);
+    UpdateSketch heapSk = Sketches.updateSketchBuilder().build(k);
+    for (int i = 0; i < 8 * k; i++) { directSk.update(i); }
+    for (int i = 4 * k; i < 12 * k; i++) { heapSk.update(i); }
+    Sketch[] directForms = {directSk,
+        directSk.compact(false, new NativeMemory(new byte[directSk.getCurrentBytes(true)])),
+        directSk.compact(true, new NativeMemory(new byte[directSk.getCurrentBytes(true)])) };
+    Sketch[] heapForms = {heapSk, heapSk.compact(false, null), heapSk.compact(true, null) };
+    UpdateSketch emptySk = Sketches.updateSketchBuilder().build(k);
+
+    AnotB aNotB = Sketches.setOperationBuilder().buildANotB();
+    aNotB.update(directSk.compact(true, null), heapSk.compact(true, null));
+    byte[] expectedAnotB = aNotB.getResult().toByteArray();
+    aNotB.update(heapSk.compact(true, null), directSk.compact(true, null));
+    byte[] expectedBnotA = aNotB.getResult().toByteArray();
+    aNotB.update(directSk.compact(true, null), null);
+    byte[] expectedA = aNotB.getResult().toByteArray();
+
+    for (Sketch a : directForms) {
+      for (Sketch b : heapForms) {
+        aNotB.update(a, b);
+        assertEquals(aNotB.getResult().toByteArray(), expectedAnotB);
+        aNotB.update(b, a);
+        assertEquals(aNotB.getResult().toByteArray(), expectedBnotA);
+      }
+      aNotB.update(a, null);
+      assertEquals(aNotB.getResult().toByteArray(), expectedA);
+      aNotB.update(a, emptySk);
+      assertEquals(aNotB.getResult().toByteArray(), expectedA);
+    }
+  }
+  
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -11,6 +11,8 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Random;
+
 import org.testng.annotations.Test;
 
 import com.yahoo.sketches.Family;
@@ -495,6 +497,124 @@ public class HeapIntersectionTest {
     assertEquals(heapI.getFamily(), Family.INTERSECTION);
   }
   
+  @Test
+  public void checkDirectInputsScannedInPlace() {
+    checkIntersectionOfDirectInputs(false);
+  }
+  
+  /**
+   * Checks that Direct and compact inputs, which are scanned in place, intersect to the same
+   * result as their heap copies. Also used by DirectIntersectionTest.
+   * @param directTarget if true, the intersection is in Memory
+   */
+  static void checkIntersectionOfDirectInputs(boolean directTarget) {
+    int k = 512;
+    Memory skMem = new NativeMemory(new byte[Sketches.getMaxUpdateSketchBytes(k)]);
+    UpdateSketch directSk = Sketches.updateSketchBuilder().initMemory(skMem).build(k);
+    UpdateSketch heapSk = Sketches.updateSketchBuilder().build(k);
+    for (int i = 0; i < 8 * k; i++) { directSk.update(i); }
+    for (int i = 4 * k; i < 12 * k; i++) { heapSk.update(i); }
+    CompactSketch unordered = directSk.compact(false,
+        new NativeMemory(new byte[directSk.getCurrentBytes(true)]));
+    CompactSketch ordered = heapSk.compact(true,
+        new NativeMemory(new byte[heapSk.getCurrentBytes(true)]));
+
+    Intersection inter = SetOperation.builder().buildIntersection();
+    inter.update(heapSk.compact(true, null));
+    inter.update(directSk.compact(false, null));
+    byte[] expected = inter.getResult().toByteArray();
+
+    Sketch[][] pairs = {{directSk, heapSk}, {heapSk, directSk}, {unordered, ordered},
+        {ordered, unordered}, {directSk, ordered}};
+    for (Sketch[] pair : pairs) {
+      SetOperationBuilder bldr = SetOperation.builder();
+      if (directTarget) {
+        bldr.initMemory(new NativeMemory(new byte[SetOperation.getMaxIntersectionBytes(k)]));
+      }
+      inter = bldr.buildIntersection();
+      inter.update(pair[0]); //virgin, moves the data to the HT
+      inter.update(pair[1]); //full intersect
+      assertEquals(inter.getResult().toByteArray(), expected);
+    }
+  }
+  
+  @Test
+  public void checkMergeOfOrderedSketches() {
+    int k = 1024;
+    Random rand = new Random(1);
+    int numSketches = 20;
+    Sketch[] ordered = new Sketch[numSketches];
+    Sketch[] unordered = new Sketch[numSketches];
+    for (int s = 0; s < numSketches; s++) {
+      UpdateSketch sk = Sketches.updateSketchBuilder().build(k);
+      int n = (s + 1) * 1000;
+      for (int i = 0; i < n; i++) { sk.update(rand.nextInt(2 * n)); }
+      unordered[s] = sk.compact(false, null);
+      ordered[s] = (s % 2 == 0) ? sk.compact(true, null)
+          : sk.compact(true, new NativeMemory(new byte[sk.getCurrentBytes(true)]));
+    }
+    //the unordered inputs take the HT path
+    Intersection inter = SetOperation.builder().buildIntersection();
+    for (Sketch sk : unordered) { inter.update(sk); }
+    byte[] expected = inter.getResult().toByteArray();
+    byte[] expectedUnordered = inter.getResult(false, null).toByteArray();
+    
+    inter = SetOperation.builder().buildIntersection();
+    for (Sketch sk : ordered) { inter.update(sk); }
+    assertEquals(inter.getResult().toByteArray(), expected);
+    assertEquals(inter.getResult(false, null).toByteArray(), expectedUnordered);
+    
+    //the serialized form is still a HT
+    Intersection inter2 = (Intersection) SetOperation.heapify(new NativeMemory(inter.toByteArray()));
+    assertEquals(inter2.getResult().toByteArray(), expected);
+    
+    //switching to an unordered input mid-way converts the ordered data to a HT
+    inter = SetOperation.builder().buildIntersection();
+    for (int s = 0; s < numSketches; s++) { inter.update((s == 5) ? unordered[s] : ordered[s]); }
+    assertEquals(inter.getResult().toByteArray(), expected);
+    
+    //the multi-way intersect gives the same result regardless of input order
+    inter = SetOperation.builder().buildIntersection();
+    assertEquals(inter.intersect(ordered).toByteArray(), expected);
+    inter.reset();
+    Sketch[] mixed = unordered.clone();
+    mixed[3] = ordered[3];
+    assertEquals(inter.intersect(mixed).toByteArray(), expected);
+  }
+  
+  @Test
+  public void checkOrderedDataBelowThetaDropsToZero() {
+    UpdateSketch small = Sketches.updateSketchBuilder().build();
+    for (int i = 0; i < 4; i++) { small.update(i); }
+    UpdateSketch large = Sketches.updateSketchBuilder().build();
+    for (int i = 0; i < 2000000; i++) { large.update(i + 4); }
+    Intersection inter = SetOperation.builder().buildIntersection();
+    inter.update(small.compact(true, null)); //exact and ordered
+    inter.update(large.compact(false, null)); //the lower theta excludes all of the ordered data
+    CompactSketch result = inter.getResult();
+    assertEquals(result.getRetainedEntries(true), 0);
+    assertFalse(result.isEmpty());
+    assertEquals(result.getThetaLong(), large.getThetaLong());
+  }
+  
+  @Test
+  public void checkIntersectWithNullAndEmpty() {
+    UpdateSketch sk = Sketches.updateSketchBuilder().build();
+    for (int i = 0; i < 100; i++) { sk.update(i); }
+    Intersection inter = SetOperation.builder().buildIntersection();
+    CompactSketch result = inter.intersect(sk.compact(true, null), null);
+    assertTrue(result.isEmpty());
+    assertEquals(result.getEstimate(), 0.0);
+    
+    inter.reset();
+    UpdateSketch sk2 = Sketches.updateSketchBuilder().build();
+    for (int i = 200; i < 300; i++) { sk2.update(i); } //disjoint
+    result = inter.intersect(sk.compact(true, null), sk2.compact(true, null));
+    assertFalse(result.isEmpty());
+    assertEquals(result.getEstimate(), 0.0);
+    assertEquals(inter.toByteArray().length, SetOperation.CONST_PREAMBLE_LONGS << 3);
+  }
+  
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
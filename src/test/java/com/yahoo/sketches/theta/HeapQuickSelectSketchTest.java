@@ -23,6 +23,7 @@ import static org.testng.Assert.fail;
 import org.testng.annotations.Test;
 
 import com.yahoo.sketches.Family;
+import com.yahoo.sketches.HashOperations;
 import com.yahoo.sketches.ResizeFactor;
 import com.yahoo.sketches.SketchesArgumentException;
 import com.yahoo.sketches.memory.Memory;
@@ -553,6 +554,67 @@ public class HeapQuickSelectSketchTest {
     }
   }
   
+  @Test
+  public void checkIncrementalRebuild() {
+    int k = 1 << 15; //large enough for the sampled selection of theta
+    UpdateSketch sync = UpdateSketch.builder().build(k);
+    UpdateSketch incr = UpdateSketch.builder().setIncrementalRebuild(true).build(k);
+    long[] data = new long[1000];
+    for (int i = 0; i < (20 * k); i++) {
+      sync.update(i);
+      incr.update(i);
+      if ((i % 997) == 0) { //also in the middle of migrations
+        assertEquals(incr.getRetainedEntries(true), sync.getRetainedEntries(true));
+        assertEquals(incr.getThetaLong(), sync.getThetaLong());
+      }
+    }
+    for (int j = 0; j < 50; j++) {
+      for (int i = 0; i < data.length; i++) { data[i] = (20 * k) + (j * 1000) + i; }
+      sync.updateAll(data, 0, data.length);
+      incr.updateAll(data, 0, data.length);
+      assertEquals(incr.getRetainedEntries(true), sync.getRetainedEntries(true));
+    }
+    assertEquals(incr.compact().toByteArray(), sync.compact().toByteArray());
+    assertEquals(incr.getEstimate(), sync.getEstimate());
+    incr.reset();
+    assertTrue(incr.isEmpty());
+    assertEquals(incr.getRetainedEntries(true), 0);
+  }
+  
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkIncrementalRebuildAlpha() {
+    UpdateSketch.builder().setFamily(Family.ALPHA).setIncrementalRebuild(true).build();
+  }
+  
+  @Test
+  public void checkSelectThetaLong() {
+    java.util.Random rand = new java.util.Random(1);
+    for (int lgArrLongs = 8; lgArrLongs <= 18; lgArrLongs += 2) {
+      long[] table = new long[1 << lgArrLongs];
+      long thetaLong = Long.MAX_VALUE / 2;
+      int count = 0;
+      for (int i = 0; i < (table.length * 7) / 8; i++) {
+        long hash = rand.nextLong() >>> 1;
+        if ((i % 8) == 0) { //dirty values above theta
+          HashOperations.hashSearchOrInsert(table, lgArrLongs, hash | (1L << 62));
+        }
+        else if ((hash < thetaLong)
+            && (HashOperations.hashSearchOrInsert(table, lgArrLongs, hash) < 0)) {
+          count++;
+        }
+      }
+      long[] copy = table.clone();
+      long[] sorted = new long[table.length];
+      int n = HashOperations.copyValidHashes(table, 0, table.length, thetaLong, sorted);
+      assertEquals(n, count);
+      java.util.Arrays.sort(sorted, 0, n);
+      for (int pivot : new int[] {1, count / 2, count}) {
+        assertEquals(Rebuilder.selectThetaLong(table, count, thetaLong, pivot), sorted[pivot - 1]);
+      }
+      assertEquals(table, copy); //unchanged
+    }
+  }
+  
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016, Yahoo! Inc.
+ * Licensed under the terms of the Apache License 2.0. See LICENSE file at the project root for terms.
+ */
+
+package com.yahoo.sketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
+import com.yahoo.sketches.memory.NativeMemory;
+
+public class ParallelUnionTest {
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @AfterClass
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void checkMatchesSerialUnion() {
+    int k = 512;
+    List<Sketch> sketches = buildSketches(2000, k, 1);
+    ParallelUnion pu = Sketches.setOperationBuilder().setNominalEntries(k).buildParallelUnion(pool);
+    CompactSketch result = pu.unionSketches(sketches.iterator());
+
+    Union union = Sketches.setOperationBuilder().buildUnion(k);
+    for (Sketch sketch : sketches) { union.update(sketch); }
+    CompactSketch expected = union.getResult();
+    assertTrue(result.isEstimationMode());
+    assertEquals(result.toByteArray(), expected.toByteArray());
+
+    //the result does not depend on the order of the inputs
+    Collections.shuffle(sketches, new Random(1));
+    assertEquals(pu.unionSketches(sketches.iterator()).toByteArray(), expected.toByteArray());
+  }
+
+  @Test
+  public void checkMemoriesMatchSerialUnion() {
+    int k = 256;
+    List<Sketch> sketches = buildSketches(1000, k, 2);
+    List<Memory> images = new ArrayList<>();
+    Union union = Sketches.setOperationBuilder().buildUnion(k);
+    for (Sketch sketch : sketches) {
+      Sketch compact = (sketch instanceof UpdateSketch)
+          ? ((UpdateSketch) sketch).compact(false, null) : sketch;
+      Memory mem = new NativeMemory(compact.toByteArray());
+      images.add(mem);
+      union.update(mem);
+    }
+    CompactSketch expected = union.getResult(false, null);
+
+    ParallelUnion pu = Sketches.setOperationBuilder().setNominalEntries(k).buildParallelUnion(pool);
+    Memory dstMem = new NativeMemory(new byte[expected.getCurrentBytes(true)]);
+    CompactSketch result = pu.unionMemories(images.iterator(), false, dstMem);
+    assertTrue(result.isDirect());
+    assertEquals(result.getEstimate(), expected.getEstimate());
+    assertEquals(result.getRetainedEntries(true), expected.getRetainedEntries(true));
+    assertEquals(pu.unionMemories(images.iterator()).toByteArray(),
+        union.getResult().toByteArray());
+  }
+
+  @Test
+  public void checkExactMode() {
+    int k = 4096;
+    List<Sketch> sketches = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      UpdateSketch sketch = Sketches.updateSketchBuilder().build(k);
+      for (int j = 0; j < 10; j++) { sketch.update((i * 5) + j); } //overlapping
+      sketches.add(i % 2 == 0 ? sketch : sketch.compact(false, null));
+    }
+    sketches.add(null);
+    ParallelUnion pu = Sketches.setOperationBuilder().setNominalEntries(k).buildParallelUnion(pool);
+    CompactSketch result = pu.unionSketches(sketches.iterator());
+    assertEquals(result.getEstimate(), 505.0);
+    assertTrue(!result.isEstimationMode());
+  }
+
+  @Test
+  public void checkEmpty() {
+    ParallelUnion pu = Sketches.setOperationBuilder().buildParallelUnion(pool);
+    List<Sketch> sketches = new ArrayList<>();
+    assertTrue(pu.unionSketches(sketches.iterator()).isEmpty());
+    sketches.add(Sketches.updateSketchBuilder().build());
+    sketches.add(null);
+    CompactSketch result = pu.unionSketches(sketches.iterator());
+    assertTrue(result.isEmpty());
+    assertEquals(result.getEstimate(), 0.0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkSeedMismatch() {
+    List<Sketch> sketches = buildSketches(100, 64, 3);
+    UpdateSketch other = Sketches.updateSketchBuilder().setSeed(123).build(64);
+    other.update(1);
+    sketches.add(50, other);
+    Sketches.setOperationBuilder().buildParallelUnion(pool).unionSketches(sketches.iterator());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkIteratorException() {
+    Iterator<Sketch> bad = new Iterator<Sketch>() {
+      int count = 0;
+
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Sketch next() {
+        if (++count > 1000) { throw new SketchesArgumentException("bad input"); }
+        return null;
+      }
+    };
+    Sketches.setOperationBuilder().buildParallelUnion(pool).unionSketches(bad);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkNullPool() {
+    Sketches.setOperationBuilder().buildParallelUnion(null);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBatchSize() {
+    new ParallelUnion(12, 9001L, 1.0F, null, pool, 0);
+  }
+
+  @Test
+  public void checkThetaPropagation() {
+    UnionImpl union = (UnionImpl) Sketches.setOperationBuilder().buildUnion(16);
+    assertEquals(union.getEffectiveThetaLong(), Long.MAX_VALUE);
+    union.lowerUnionThetaLong(Long.MAX_VALUE / 2);
+    assertEquals(union.getEffectiveThetaLong(), Long.MAX_VALUE / 2);
+    union.lowerUnionThetaLong(Long.MAX_VALUE);
+    assertEquals(union.getEffectiveThetaLong(), Long.MAX_VALUE / 2);
+    for (int i = 0; i < 1000; i++) { union.update(i); }
+    assertTrue(union.getEffectiveThetaLong() < Long.MAX_VALUE / 2);
+  }
+
+  private static List<Sketch> buildSketches(int numSketches, int k, long seed) {
+    Random rand = new Random(seed);
+    List<Sketch> sketches = new ArrayList<>(numSketches);
+    for (int i = 0; i < numSketches; i++) {
+      UpdateSketch sketch = Sketches.updateSketchBuilder().build(k);
+      int n = rand.nextInt(4 * k);
+      long base = rand.nextInt(100000);
+      for (int j = 0; j < n; j++) { sketch.update(base + j); }
+      switch (i % 3) {
+        case 0: sketches.add(sketch); break;
+        case 1: sketches.add(sketch.compact(true, null)); break;
+        default: sketches.add(sketch.compact(false, null)); break;
+      }
+    }
+    return sketches;
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
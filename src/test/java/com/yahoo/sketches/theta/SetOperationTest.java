@@ -371,6 +371,35 @@ public class SetOperationTest {
   }
   
   
+  @Test
+  public void checkGallopSearch() {
+    long[] arr = {2, 4, 6, 8, 10, 12, 14, 16, 18, 20};
+    NativeMemory mem = new NativeMemory(new byte[16 + (arr.length << 3)]);
+    mem.putLongArray(16, arr, 0, arr.length);
+    for (long hash = 0; hash <= 22; hash++) {
+      for (int from = 0; from <= arr.length; from++) {
+        int expected = from;
+        while ((expected < arr.length) && (arr[expected] < hash)) { expected++; }
+        assertEquals(gallopSearch(arr, null, 0, from, arr.length, hash), expected);
+        assertEquals(gallopSearch(null, mem, 16, from, arr.length, hash), expected);
+      }
+    }
+    assertEquals(gallopSearch(arr, null, 0, 0, 3, 100), 3); //respects the end of the range
+  }
+  
+  @Test
+  public void checkOrderByRetainedEntries() {
+    UpdateSketch big = Sketches.updateSketchBuilder().build();
+    for (int i = 0; i < 100; i++) { big.update(i); }
+    UpdateSketch small = Sketches.updateSketchBuilder().build();
+    small.update(1);
+    Sketch[] ordered = orderByRetainedEntries(new Sketch[] {big, null, small, big});
+    assertEquals(ordered[0], null);
+    assertEquals(ordered[1], small);
+    assertEquals(ordered[2], big);
+    assertEquals(ordered[3], big);
+  }
+  
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
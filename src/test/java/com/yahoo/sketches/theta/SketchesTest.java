@@ -5,6 +5,7 @@
 package com.yahoo.sketches.theta;
 
 import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.SketchesReadOnlyException;
 import com.yahoo.sketches.Util;
 import com.yahoo.sketches.memory.Memory;
 import com.yahoo.sketches.memory.NativeMemory;
@@ -143,6 +144,60 @@ public class SketchesTest {
     Sketches.getEstimate(srcMem);
   }
   
+  @Test
+  public void checkWrapReadOnlyMemory() throws Exception {
+    int k = 1024;
+    final Memory roMem = getCompactSketch(k, 0, 4 * k).asReadOnlyMemory();
+    final Sketch sketch = wrapSketch(roMem);
+    final double est = sketch.getEstimate();
+    final long[] cache = sketch.getCache();
+    Thread[] readers = new Thread[4];
+    final boolean[] ok = new boolean[readers.length];
+    for (int t = 0; t < readers.length; t++) {
+      final int id = t;
+      readers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          boolean same = true;
+          for (int i = 0; i < 100; i++) {
+            same &= (sketch.getEstimate() == est);
+            same &= java.util.Arrays.equals(sketch.getCache(), cache);
+            same &= (wrapSketch(roMem).getRetainedEntries(true) == cache.length);
+          }
+          ok[id] = same;
+        }
+      });
+      readers[t].start();
+    }
+    for (int t = 0; t < readers.length; t++) {
+      readers[t].join();
+      assertTrue(ok[t]);
+    }
+
+    //an updatable image can be queried through a read-only view, but not updated
+    UpdateSketch usk = updateSketchBuilder().build(k);
+    for (int i = 0; i < k; i++) { usk.update(i); }
+    Memory roUpdatable = new NativeMemory(usk.toByteArray()).asReadOnlyMemory();
+    UpdateSketch wrapped = (UpdateSketch) wrapSketch(roUpdatable);
+    assertEquals(wrapped.getEstimate(), usk.getEstimate());
+    try {
+      wrapped.update(-1L);
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+
+    Union union = setOperationBuilder().initMemory(new NativeMemory(new byte[getMaxUnionBytes(k)]))
+        .buildUnion(k);
+    union.update(sketch);
+    byte[] unionBytes = union.toByteArray();
+    Union roUnion = Sketches.wrapUnion(new NativeMemory(unionBytes).asReadOnlyMemory());
+    //the same result as a union that can rebuild itself in place
+    assertEquals(roUnion.getResult().getEstimate(), union.getResult().getEstimate());
+    try {
+      roUnion.update(sketch);
+      fail();
+    } catch (SketchesReadOnlyException e) { }
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
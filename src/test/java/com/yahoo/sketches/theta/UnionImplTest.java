@@ -46,6 +46,33 @@ public class UnionImplTest {
   }
   
   
+  @Test
+  public void checkUpdateWithDirectUnorderedSketches() {
+    int k = 512;
+    UpdateSketch heapSk = Sketches.updateSketchBuilder().build(k);
+    Memory skMem = new NativeMemory(new byte[Sketches.getMaxUpdateSketchBytes(k)]);
+    UpdateSketch directSk = Sketches.updateSketchBuilder().initMemory(skMem).build(k);
+    for (int i = 0; i < 4 * k; i++) { heapSk.update(i); }
+    for (int i = 2 * k; i < 8 * k; i++) { directSk.update(i); }
+    Memory cMem = new NativeMemory(new byte[directSk.getCurrentBytes(true)]);
+    CompactSketch directCompact = directSk.compact(false, cMem);
+    assertEquals(directSk.getCacheMemory(), skMem);
+    assertEquals(directCompact.getCacheMemory(), cMem);
+
+    Union union1 = Sketches.setOperationBuilder().buildUnion(k);
+    union1.update(heapSk);
+    union1.update(directSk);
+    Union union2 = Sketches.setOperationBuilder().buildUnion(k);
+    union2.update(heapSk);
+    union2.update(directCompact);
+    Union union3 = Sketches.setOperationBuilder().buildUnion(k);
+    union3.update(heapSk);
+    union3.update(directSk.compact(false, null));
+    byte[] expected = union3.getResult().toByteArray();
+    assertEquals(union1.getResult().toByteArray(), expected);
+    assertEquals(union2.getResult().toByteArray(), expected);
+  }
+  
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
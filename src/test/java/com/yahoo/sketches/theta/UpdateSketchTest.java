@@ -11,6 +11,7 @@ import org.testng.annotations.Test;
 
 import com.yahoo.sketches.Family;
 import com.yahoo.sketches.ResizeFactor;
+import com.yahoo.sketches.SketchesArgumentException;
 import com.yahoo.sketches.memory.Memory;
 import com.yahoo.sketches.memory.NativeMemory;
 import com.yahoo.sketches.theta.UpdateSketch;
@@ -67,6 +68,77 @@ public class UpdateSketchTest {
     assertEquals(est, 8.0, 0.0);
   }
   
+  @Test
+  public void checkMemoryRegionUpdate() {
+    int k = 512;
+    UpdateSketch sk1 = UpdateSketch.builder().build(k);
+    UpdateSketch sk2 = UpdateSketch.builder().build(k);
+    Union union = SetOperation.builder().buildUnion(k);
+    byte[] byteArr = "..Byte Array..".getBytes(UTF_8);
+    Memory mem = new NativeMemory(byteArr);
+    
+    assertEquals(sk1.update(null, 0, 1), UpdateReturnState.RejectedNullOrEmpty);
+    assertEquals(sk1.update(mem, 2, 0), UpdateReturnState.RejectedNullOrEmpty);
+    
+    byte[] key = "Byte Array".getBytes(UTF_8);
+    sk1.update(mem, 2, key.length);
+    sk2.update(key);
+    union.update(mem, 2, key.length);
+    assertEquals(sk1.getEstimate(), 1.0, 0.0);
+    assertEquals(sk1.update(key), UpdateReturnState.RejectedDuplicate);
+    assertEquals(sk2.update(mem, 2, key.length), UpdateReturnState.RejectedDuplicate);
+    union.update(sk2);
+    assertEquals(union.getResult().getEstimate(), 1.0, 0.0);
+  }
+  
+  @Test
+  public void checkUpdateAllMatchesScalarUpdates() {
+    int k = 512;
+    int n = 10000;
+    long[] longArr = new long[n];
+    double[] dblArr = new double[n];
+    for (int i = 0; i < n; i++) {
+      longArr[i] = i;
+      dblArr[i] = -i; //includes -0.0 via i == 0
+    }
+    NativeMemory col = new NativeMemory(longArr);
+    Family[] families = { Family.QUICKSELECT, Family.ALPHA };
+    float[] ps = { 1.0F, 0.5F };
+    for (float p : ps) {
+      for (int mode = 0; mode < 3; mode++) {
+        UpdateSketchBuilder bldr = UpdateSketch.builder().setP(p)
+            .setFamily((mode == 1) ? families[1] : families[0]);
+        if (mode == 2) { bldr.initMemory(new NativeMemory(new byte[(k << 4) + 24])); }
+        UpdateSketch batch = bldr.build(k);
+        if (mode == 2) { bldr.initMemory(new NativeMemory(new byte[(k << 4) + 24])); }
+        UpdateSketch scalar = bldr.build(k);
+        
+        batch.updateAll(longArr, 0, 0);
+        assertEquals(batch.isEmpty(), true);
+        batch.updateAll(longArr, 0, n / 2);
+        batch.updateAll(col, (n / 2) << 3, n - (n / 2));
+        batch.updateAll(dblArr, 1, n); //0.0 already seen as a long
+        for (int i = 0; i < n; i++) { scalar.update(longArr[i]); }
+        for (int i = 1; i < n; i++) { scalar.update(dblArr[i]); }
+        assertEquals(batch.getEstimate(), scalar.getEstimate(), 0.0);
+        assertEquals(batch.getRetainedEntries(true), scalar.getRetainedEntries(true));
+        assertEquals(batch.compact().toByteArray(), scalar.compact().toByteArray());
+      }
+    }
+  }
+  
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkUpdateAllBadRange() {
+    UpdateSketch sk = UpdateSketch.builder().build(16);
+    sk.updateAll(new long[4], 3, 2);
+  }
+  
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkUpdateAllBadMemoryColumn() {
+    UpdateSketch sk = UpdateSketch.builder().build(16);
+    sk.updateAll(new NativeMemory(new long[4]), 8, 4);
+  }
+  
   @Test
   public void checkStartingSubMultiple() {
     int lgSubMul;
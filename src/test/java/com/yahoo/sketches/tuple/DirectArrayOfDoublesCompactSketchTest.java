@@ -8,6 +8,7 @@ import org.testng.annotations.Test;
 import org.testng.Assert;
 
 import com.yahoo.sketches.SketchesArgumentException;
+import com.yahoo.sketches.memory.Memory;
 import com.yahoo.sketches.memory.NativeMemory;
 
 public class DirectArrayOfDoublesCompactSketchTest {
@@ -88,6 +89,63 @@ public class DirectArrayOfDoublesCompactSketchTest {
     Assert.assertEquals(sketch2.getThetaLong(), sketch1.getThetaLong());
   }
 
+  @Test
+  public void summaryFromMemory() {
+    ArrayOfDoublesUpdatableSketch us = new ArrayOfDoublesUpdatableSketchBuilder().build();
+    NativeMemory mem = new NativeMemory(us.compact().toByteArray());
+    Assert.assertTrue(ArrayOfDoublesSketches.isEmpty(mem));
+    Assert.assertEquals(ArrayOfDoublesSketches.getRetainedEntries(mem), 0);
+    Assert.assertEquals(ArrayOfDoublesSketches.getEstimate(mem), 0.0);
+    for (int i = 0; i < 8192; i++) us.update(i, new double[] {1.0});
+    ArrayOfDoublesCompactSketch sketch = us.compact(new NativeMemory(new byte[1000000]));
+    mem = new NativeMemory(sketch.toByteArray());
+    Assert.assertFalse(ArrayOfDoublesSketches.isEmpty(mem));
+    Assert.assertEquals(ArrayOfDoublesSketches.getRetainedEntries(mem), sketch.getRetainedEntries());
+    Assert.assertEquals(ArrayOfDoublesSketches.getTheta(mem), sketch.getTheta());
+    Assert.assertEquals(ArrayOfDoublesSketches.getEstimate(mem), sketch.getEstimate());
+    Assert.assertEquals(ArrayOfDoublesSketches.getUpperBound(mem, 2), sketch.getUpperBound(2));
+    Assert.assertEquals(ArrayOfDoublesSketches.getLowerBound(mem, 2), sketch.getLowerBound(2));
+  }
+
+  @Test
+  public void wrapReadOnlyMemory() throws Exception {
+    ArrayOfDoublesUpdatableSketch us = new ArrayOfDoublesUpdatableSketchBuilder().build();
+    for (int i = 0; i < 8192; i++) us.update(i, new double[] {1.0});
+    final Memory mem = new NativeMemory(us.compact().toByteArray()).asReadOnlyMemory();
+    final ArrayOfDoublesSketch sketch = ArrayOfDoublesSketches.wrapSketch(mem);
+    final double estimate = sketch.getEstimate();
+    final double[][] values = sketch.getValues();
+    Thread[] readers = new Thread[4];
+    final boolean[] ok = new boolean[readers.length];
+    for (int t = 0; t < readers.length; t++) {
+      final int id = t;
+      readers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          boolean same = true;
+          for (int i = 0; i < 100; i++) {
+            same &= sketch.getEstimate() == estimate;
+            same &= java.util.Arrays.deepEquals(sketch.getValues(), values);
+            same &= ArrayOfDoublesSketches.wrapSketch(mem).getRetainedEntries() == values.length;
+          }
+          ok[id] = same;
+        }
+      });
+      readers[t].start();
+    }
+    for (int t = 0; t < readers.length; t++) {
+      readers[t].join();
+      Assert.assertTrue(ok[t]);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void summaryFromMemoryOfWrongType() {
+    UpdatableSketch<Double, DoubleSummary> sketch = new UpdatableSketchBuilder<Double, DoubleSummary>(new DoubleSummaryFactory()).build();
+    sketch.update(1, 1.0);
+    ArrayOfDoublesSketches.getEstimate(new NativeMemory(sketch.compact().toByteArray()));
+  }
+
   @Test(expectedExceptions = SketchesArgumentException.class)
   public void deserializeWithWrongSeed() {
     ArrayOfDoublesUpdatableSketch us = new ArrayOfDoublesUpdatableSketchBuilder().setMemory(new NativeMemory(new byte[1000000])).build();
@@ -181,4 +181,39 @@ public class HeapArrayOfDoublesQuickSelectSketchTest {
     Assert.assertEquals(sketch1.getTheta(), sketch2.getTheta());
   }
 
+  @Test
+  public void summaryFromMemory() {
+    ArrayOfDoublesUpdatableSketch sketch = new ArrayOfDoublesUpdatableSketchBuilder().setSamplingProbability(0.5f).build();
+    NativeMemory mem = new NativeMemory(sketch.toByteArray());
+    Assert.assertTrue(ArrayOfDoublesSketches.isEmpty(mem));
+    Assert.assertEquals(ArrayOfDoublesSketches.getEstimate(mem), 0.0);
+    Assert.assertEquals(ArrayOfDoublesSketches.getUpperBound(mem, 1), 0.0);
+    for (int i = 0; i < 100000; i++) sketch.update(i, new double[] {1.0});
+    mem = new NativeMemory(sketch.toByteArray());
+    Assert.assertEquals(ArrayOfDoublesSketches.getRetainedEntries(mem), sketch.getRetainedEntries());
+    Assert.assertEquals(ArrayOfDoublesSketches.getTheta(mem), sketch.getTheta());
+    Assert.assertEquals(ArrayOfDoublesSketches.getEstimate(mem), sketch.getEstimate());
+    Assert.assertEquals(ArrayOfDoublesSketches.getUpperBound(mem, 3), sketch.getUpperBound(3));
+    Assert.assertEquals(ArrayOfDoublesSketches.getLowerBound(mem, 3), sketch.getLowerBound(3));
+  }
+
+  @Test
+  public void updateWithMemoryRegion() {
+    ArrayOfDoublesUpdatableSketch sketch1 = new ArrayOfDoublesUpdatableSketchBuilder().build();
+    ArrayOfDoublesUpdatableSketch sketch2 = new ArrayOfDoublesUpdatableSketchBuilder().build();
+    byte[] bytes = new byte[100];
+    for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+    NativeMemory mem = new NativeMemory(bytes);
+    sketch1.update(null, 0, 4, new double[] {1.0});
+    sketch1.update(mem, 0, 0, new double[] {1.0});
+    Assert.assertTrue(sketch1.isEmpty());
+    for (int i = 0; i < 96; i++) {
+      sketch1.update(mem, i, 4, new double[] {1.0});
+      sketch2.update(java.util.Arrays.copyOfRange(bytes, i, i + 4), new double[] {1.0});
+    }
+    Assert.assertEquals(sketch1.compact().toByteArray(), sketch2.compact().toByteArray());
+    sketch1.update(mem, 0, 4, new double[] {1.0});
+    Assert.assertEquals(sketch1.getRetainedEntries(), 96);
+  }
+
 }